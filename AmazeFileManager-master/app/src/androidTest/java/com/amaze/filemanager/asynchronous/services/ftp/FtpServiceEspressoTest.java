@@ -6,10 +6,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Environment;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.Base64;
+import android.util.Log;
 
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.net.ftp.FTP;
@@ -37,6 +39,11 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -85,6 +92,68 @@ public class FtpServiceEspressoTest {
         testDownloadWith(ftpClient);
     }
 
+    /**
+     * Downloads a big file over loopback with one session, then with several at once, and logs
+     * the throughput of both
+     */
+    @Test
+    public void testParallelDownloadThroughput() throws Exception {
+        PreferenceManager.getDefaultSharedPreferences(service).edit()
+                .putBoolean(FtpService.KEY_PREFERENCE_SECURE, false).commit();
+        service.onStartCommand(new Intent(FtpService.ACTION_START_FTPSERVER)
+                .putExtra(FtpService.TAG_STARTED_BY_TILE, false), 0, 0);
+        waitForServer();
+
+        final int size = 32 * 1024 * 1024, sessions = 4;
+        File testFile = new File(Environment.getExternalStorageDirectory(), "benchmark.bin");
+        byte[] chunk = new byte[1024 * 1024];
+        new SecureRandom().nextBytes(chunk);
+        OutputStream out = new FileOutputStream(testFile);
+        for (int i = 0; i < size / chunk.length; i++) out.write(chunk);
+        out.close();
+
+        try {
+            long start = SystemClock.elapsedRealtime();
+            assertEquals(size, download("benchmark.bin"));
+            long single = SystemClock.elapsedRealtime() - start;
+
+            ExecutorService executor = Executors.newFixedThreadPool(sessions);
+            List<Future<Long>> downloads = new ArrayList<>();
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < sessions; i++) {
+                downloads.add(executor.submit(() -> download("benchmark.bin")));
+            }
+            for (Future<Long> download : downloads) assertEquals(size, (long) download.get());
+            long parallel = SystemClock.elapsedRealtime() - start;
+            executor.shutdown();
+
+            Log.i(getClass().getSimpleName(), "1 session: " + size / 1024 * 1000 / Math.max(1, single)
+                    + " KB/s, " + sessions + " sessions: "
+                    + (long) size * sessions / 1024 * 1000 / Math.max(1, parallel) + " KB/s");
+        } finally {
+            testFile.delete();
+        }
+    }
+
+    private long download(String file) throws IOException {
+        FTPClient ftpClient = new FTPClient();
+        ftpClient.connect("localhost", FtpService.DEFAULT_PORT);
+        ftpClient.login("anonymous", "test@example.com");
+        ftpClient.enterLocalPassiveMode();
+        ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+        ftpClient.setBufferSize(MeteredFileSystemFactory.BUFFER_SIZE);
+
+        long read = 0;
+        InputStream in = ftpClient.retrieveFileStream(file);
+        byte[] buffer = new byte[64 * 1024];
+        for (int count; (count = in.read(buffer)) != -1; ) read += count;
+        in.close();
+        ftpClient.completePendingCommand();
+        ftpClient.logout();
+        ftpClient.disconnect();
+        return read;
+    }
+
     private void loginAndVerifyWith(FTPClient ftpClient) throws IOException {
         ftpClient.connect("localhost", FtpService.DEFAULT_PORT);
         ftpClient.login("anonymous", "test@example.com");
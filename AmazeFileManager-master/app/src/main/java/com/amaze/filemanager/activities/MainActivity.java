@@ -123,6 +123,7 @@ import com.amaze.filemanager.utils.PreferenceUtils;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.application.AppConfig;
+import com.amaze.filemanager.utils.files.CryptStreamer;
 import com.amaze.filemanager.utils.files.FileUtils;
 import com.amaze.filemanager.utils.theme.AppTheme;
 import com.cloudrail.si.CloudRail;
@@ -1194,6 +1195,7 @@ public class MainActivity extends PermissionsActivity implements SmbConnectionLi
         cryptHandler.close();
         
         SshConnectionPool.getInstance().expungeAllConnections();
+        CryptStreamer.stopStreaming();
     }
 
     /**
@@ -1384,6 +1386,9 @@ public class MainActivity extends PermissionsActivity implements SmbConnectionLi
                 // otg access not provided
                 drawer.resetPendingPath();
             }
+        } else if (requestCode == CryptStreamer.REQUEST_CODE_PLAY) {
+            // the player is done with the decrypted stream
+            CryptStreamer.stopStreaming();
         }
     }
 
@@ -1774,8 +1779,10 @@ public class MainActivity extends PermissionsActivity implements SmbConnectionLi
     }
 
     @Override
-    public void onProgressUpdate(HybridFileParcelable val , String query) {
-        mainFragment.addSearchResult(val,query);
+    public void onProgressUpdate(List<HybridFileParcelable> vals, String query) {
+        for (HybridFileParcelable val : vals) {
+            mainFragment.addSearchResult(val, query);
+        }
     }
 
     @Override
@@ -36,8 +36,10 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.ColorInt;
+import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
 import android.text.Editable;
+import android.text.Layout;
 import android.text.Spanned;
 import android.text.TextWatcher;
 import android.text.style.BackgroundColorSpan;
@@ -72,13 +74,15 @@ import com.amaze.filemanager.utils.MapEntry;
 import com.amaze.filemanager.utils.PreferenceUtils;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.texteditor.PagedTextDocument;
 import com.amaze.filemanager.utils.theme.AppTheme;
 import com.readystatesoftware.systembartint.SystemBarTintManager;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -89,7 +93,14 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
 
     public EditText mInput, searchEditText;
     private EditableFileAbstraction mFile;
-    private String mOriginal;
+    private PagedTextDocument mDocument;
+    /*
+     * the part of the document shown, and its text as it is in the document
+     */
+    private long mWindowStart, mWindowEnd;
+    private String mWindowText;
+    private boolean mSaving, mDestroyed;
+    private boolean mRegexSearch;
     private Timer mTimer;
     private boolean mModified;
     private Typeface mInputTypefaceDefault, mInputTypefaceMono;
@@ -97,7 +108,8 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     ScrollView scrollView;
 
     /*
-     * List maintaining the searched text's start/end index as key/value pair
+     * List maintaining the searched text's start/end position in the document as key/value pair,
+     * and its line number
      */
     public ArrayList<MapEntry> nodes = new ArrayList<>();
 
@@ -117,6 +129,8 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     private static final String KEY_MODIFIED_TEXT = "modified";
     private static final String KEY_INDEX = "index";
     private static final String KEY_ORIGINAL_TEXT = "original";
+    private static final String KEY_WINDOW_START = "window_start";
+    private static final String KEY_WINDOW_END = "window_end";
     private static final String KEY_MONOFONT = "monofont";
 
     private RelativeLayout searchViewLayout;
@@ -210,14 +224,25 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
         mInputTypefaceDefault = mInput.getTypeface();
         mInputTypefaceMono = Typeface.MONOSPACE;
 
+        scrollView.getViewTreeObserver().addOnScrollChangedListener(this::onEditorScrolled);
+
         if (savedInstanceState != null) {
-            mOriginal = savedInstanceState.getString(KEY_ORIGINAL_TEXT);
-            int index = savedInstanceState.getInt(KEY_INDEX);
-            mInput.setText(savedInstanceState.getString(KEY_MODIFIED_TEXT));
-            mInput.setScrollY(index);
             if (savedInstanceState.getBoolean(KEY_MONOFONT)) mInput.setTypeface(mInputTypefaceMono);
+        }
+
+        RetainedDocument retained = (RetainedDocument) getLastCustomNonConfigurationInstance();
+        if (savedInstanceState != null && retained != null) {
+            cacheFile = retained.cacheFile;
+            setDocument(retained.document);
+            mWindowStart = savedInstanceState.getLong(KEY_WINDOW_START);
+            mWindowEnd = savedInstanceState.getLong(KEY_WINDOW_END);
+            mWindowText = savedInstanceState.getString(KEY_ORIGINAL_TEXT);
+            mInput.setText(savedInstanceState.getString(KEY_MODIFIED_TEXT));
+            int index = savedInstanceState.getInt(KEY_INDEX);
+            scrollView.post(() -> scrollView.scrollTo(0, index));
+            updateSubtitle();
         } else {
-            load();
+            load(savedInstanceState);
         }
     }
 
@@ -225,13 +250,41 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putString(KEY_MODIFIED_TEXT, mInput.getText().toString());
-        outState.putInt(KEY_INDEX, mInput.getScrollY());
-        outState.putString(KEY_ORIGINAL_TEXT, mOriginal);
+        outState.putInt(KEY_INDEX, scrollView.getScrollY());
+        outState.putString(KEY_ORIGINAL_TEXT, mWindowText);
+        outState.putLong(KEY_WINDOW_START, mWindowStart);
+        outState.putLong(KEY_WINDOW_END, mWindowEnd);
         outState.putBoolean(KEY_MONOFONT, mInputTypefaceMono.equals(mInput.getTypeface()));
     }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mDocument != null ? new RetainedDocument(mDocument, cacheFile) : null;
+    }
+
+    /**
+     * The document outlives the activity when it's recreated, so that it isn't read again
+     */
+    private static class RetainedDocument {
+        final PagedTextDocument document;
+        final File cacheFile;
+
+        RetainedDocument(PagedTextDocument document, File cacheFile) {
+            this.document = document;
+            this.cacheFile = cacheFile;
+        }
+    }
+
+    /**
+     * Whether there are changes to save, either in the document or in the window shown
+     */
+    private boolean isModified() {
+        return mDocument != null
+                && (mDocument.isModified() || !mInput.getText().toString().equals(mWindowText));
+    }
+
     private void checkUnsavedChanges() {
-        if (mOriginal != null && mInput.isShown() && !mOriginal.equals(mInput.getText().toString())) {
+        if (mInput.isShown() && isModified()) {
             new MaterialDialog.Builder(this)
                     .title(R.string.unsavedchanges)
                     .content(R.string.unsavedchangesdesc)
@@ -239,10 +292,7 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
                     .negativeText(R.string.no)
                     .positiveColor(getAccent())
                     .negativeColor(getAccent())
-                    .onPositive((dialog, which) -> {
-                        saveFile(mInput.getText().toString());
-                        finish();
-                    })
+                    .onPositive((dialog, which) -> saveFile(true))
                     .onNegative((dialog, which) -> finish())
                     .build().show();
         } else {
@@ -251,20 +301,27 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     }
 
     /**
-     * Method initiates a worker thread which writes the {@link #mInput} bytes to the defined
-     * file/uri 's output stream
+     * Method initiates a worker thread which writes the document, with the {@link #mInput} text
+     * in it, to the defined file/uri 's output stream
      *
-     * @param editTextString the edit text string
+     * @param finish whether to close the editor once saved; it waits, as the document can't be
+     *               closed while it's written
      */
-    private void saveFile(final String editTextString) {
+    private void saveFile(final boolean finish) {
+        if (mSaving || mDocument == null || mDocument.isSaving()) return;
+        commitWindow();
+        mSaving = true;
         Toast.makeText(this, R.string.saving, Toast.LENGTH_SHORT).show();
 
-        new WriteFileAbstraction(this, getContentResolver(), mFile, editTextString, cacheFile,
+        new WriteFileAbstraction(this, getContentResolver(), mFile, mDocument, cacheFile,
                 isRootExplorer(), (errorCode) -> {
+                    mSaving = false;
+                    if (finish) finish();
+                    if (mDestroyed) closeDocument();
+
                     switch (errorCode) {
                         case WriteFileAbstraction.NORMAL:
-                            mOriginal = editTextString;
-                            mModified = false;
+                            mModified = isModified();
                             invalidateOptionsMenu();
                             Toast.makeText(getApplicationContext(), getString(R.string.done), Toast.LENGTH_SHORT).show();
                             break;
@@ -284,43 +341,49 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     /**
      * Initiates loading of file/uri by getting an input stream associated with it
      * on a worker thread
+     *
+     * @param savedInstanceState to show the window it had, with its changes if the document is
+     *                           still the same there
      */
-    private void load() {
+    private void load(@Nullable Bundle savedInstanceState) {
         Snackbar.make(scrollView, R.string.loading, Snackbar.LENGTH_SHORT).show();
 
         new ReadFileTask(getContentResolver(), mFile, getExternalCacheDir(), isRootExplorer(), (data) -> {
             switch (data.error) {
                 case ReadFileTask.NORMAL:
                     cacheFile = data.cachedFile;
-                    mOriginal = data.fileContents;
-
-                    try {
-                        mInput.setText(data.fileContents);
-
-                        if (mFile.scheme == EditableFileAbstraction.SCHEME_FILE
-                                && getExternalCacheDir() != null
-                                && mFile.hybridFileParcelable.getPath().contains(getExternalCacheDir().getPath())
-                                && cacheFile == null) {
-                            // file in cache, and not a root temporary file
-                            mInput.setInputType(EditorInfo.TYPE_NULL);
-                            mInput.setSingleLine(false);
-                            mInput.setImeOptions(EditorInfo.IME_FLAG_NO_ENTER_ACTION);
-
-                            Snackbar snackbar = Snackbar.make(mInput,
-                                    getResources().getString(R.string.file_read_only), Snackbar.LENGTH_INDEFINITE);
-                            snackbar.setAction(getResources().getString(R.string.got_it).toUpperCase(),
-                                    v -> snackbar.dismiss());
-                            snackbar.show();
-                        }
+                    setDocument(data.document);
 
-                        if (data.fileContents.isEmpty()) {
-                            mInput.setHint(R.string.file_empty);
-                        } else {
-                            mInput.setHint(null);
+                    if (savedInstanceState == null) {
+                        showWindow(0);
+                    } else {
+                        showWindow(savedInstanceState.getLong(KEY_WINDOW_START));
+                        if (mWindowStart == savedInstanceState.getLong(KEY_WINDOW_START)
+                                && mWindowText.equals(savedInstanceState.getString(KEY_ORIGINAL_TEXT))) {
+                            mInput.setText(savedInstanceState.getString(KEY_MODIFIED_TEXT));
                         }
-                    } catch (OutOfMemoryError e) {
-                        Toast.makeText(getApplicationContext(), R.string.error, Toast.LENGTH_SHORT).show();
-                        finish();
+                    }
+
+                    if (mFile.scheme == EditableFileAbstraction.SCHEME_FILE
+                            && getExternalCacheDir() != null
+                            && mFile.hybridFileParcelable.getPath().contains(getExternalCacheDir().getPath())
+                            && cacheFile == null) {
+                        // file in cache, and not a root temporary file
+                        mInput.setInputType(EditorInfo.TYPE_NULL);
+                        mInput.setSingleLine(false);
+                        mInput.setImeOptions(EditorInfo.IME_FLAG_NO_ENTER_ACTION);
+
+                        Snackbar snackbar = Snackbar.make(mInput,
+                                getResources().getString(R.string.file_read_only), Snackbar.LENGTH_INDEFINITE);
+                        snackbar.setAction(getResources().getString(R.string.got_it).toUpperCase(),
+                                v -> snackbar.dismiss());
+                        snackbar.show();
+                    }
+
+                    if (mDocument.length() == 0) {
+                        mInput.setHint(R.string.file_empty);
+                    } else {
+                        mInput.setHint(null);
                     }
                     break;
                 case ReadFileTask.EXCEPTION_STREAM_NOT_FOUND:
@@ -335,6 +398,99 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
         }).execute();
     }
 
+    private void setDocument(PagedTextDocument document) {
+        mDocument = document;
+        mDocument.startIndexing(() -> runOnUiThread(this::updateSubtitle));
+    }
+
+    /**
+     * Puts the changes made to the window shown in the document
+     */
+    private void commitWindow() {
+        // the changes stay in the window until the document can be edited
+        if (mDocument == null || mDocument.isSaving()) return;
+
+        String text = mInput.getText().toString();
+        if (text.equals(mWindowText)) return;
+
+        mWindowEnd = mDocument.replaceChanged(mWindowStart, mWindowEnd, mWindowText, text);
+        mWindowText = text;
+    }
+
+    /**
+     * Shows the window of the document around position, which is put at the top of the screen
+     */
+    private void showWindow(long position) {
+        commitWindow();
+
+        String text;
+        long[] window;
+        try {
+            window = mDocument.getWindow(position);
+            text = mDocument.getText(window[0], window[1]);
+            position = Math.max(window[0], Math.min(position, window[1]));
+            final int offset = mDocument.getText(window[0], position).length();
+
+            scrollView.post(() -> {
+                Layout layout = mInput.getLayout();
+                if (layout == null) return;
+                scrollView.scrollTo(0, mInput.getTop() + layout.getLineTop(layout.getLineForOffset(offset)));
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(getApplicationContext(), R.string.error_io, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        mWindowStart = window[0];
+        mWindowEnd = window[1];
+        mWindowText = text;
+        mInput.setText(text);
+        highlightResults();
+        updateSubtitle();
+    }
+
+    /**
+     * Moves the window once the screen gets close to one of its ends, unless it's at that end
+     * of the document
+     */
+    private void onEditorScrolled() {
+        if (mDocument == null || mSaving || mDocument.isSaving() || mInput.getLayout() == null) return;
+
+        int margin = scrollView.getHeight();
+        int scrollY = scrollView.getScrollY();
+        boolean nearStart = scrollY < mInput.getTop() + margin && mWindowStart > 0;
+        boolean nearEnd = scrollY + 2 * margin > mInput.getBottom() && mWindowEnd < mDocument.length();
+        if (!nearStart && !nearEnd) return;
+
+        // the window is moved so that the first line on screen stays there
+        Layout layout = mInput.getLayout();
+        int offset = layout.getLineStart(layout.getLineForVertical(Math.max(0, scrollY - mInput.getTop())));
+        commitWindow();
+        showWindow(mWindowStart + mDocument.getByteCount(mInput.getText().subSequence(0, offset)));
+    }
+
+    /**
+     * Shows which lines the window has, once they are counted
+     */
+    private void updateSubtitle() {
+        if (mDocument == null || getSupportActionBar() == null) return;
+
+        try {
+            long lines = mDocument.getLineCount();
+            if (lines == -1 || mDocument.length() <= PagedTextDocument.WINDOW_SIZE) {
+                getSupportActionBar().setSubtitle(null);
+                return;
+            }
+
+            long first = mDocument.getLineNumber(mWindowStart) + 1;
+            long last = Math.max(first, mDocument.getLineNumber(mWindowEnd));
+            getSupportActionBar().setSubtitle(getString(R.string.text_editor_lines, first, last, lines));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void onBackPressed() {
         checkUnsavedChanges();
@@ -350,6 +506,7 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     public boolean onPrepareOptionsMenu(Menu menu) {
         menu.findItem(R.id.save).setVisible(mModified);
         menu.findItem(R.id.monofont).setChecked(mInputTypefaceMono.equals(mInput.getTypeface()));
+        menu.findItem(R.id.regex).setChecked(mRegexSearch);
         return super.onPrepareOptionsMenu(menu);
     }
 
@@ -361,7 +518,7 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
                 break;
             case R.id.save:
                 // Make sure EditText is visible before saving!
-                saveFile(mInput.getText().toString());
+                saveFile(false);
                 break;
             case R.id.details:
                 if (mFile.scheme == EditableFileAbstraction.SCHEME_FILE
@@ -393,6 +550,12 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
                 item.setChecked(!item.isChecked());
                 mInput.setTypeface(item.isChecked() ? mInputTypefaceMono : mInputTypefaceDefault);
                 break;
+            case R.id.regex:
+                mRegexSearch = !mRegexSearch;
+                item.setChecked(mRegexSearch);
+                // searching again
+                if (searchViewLayout.isShown()) searchEditText.setText(searchEditText.getText());
+                break;
             default:
                 return false;
         }
@@ -403,6 +566,21 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     protected void onDestroy() {
         super.onDestroy();
 
+        if (isChangingConfigurations()) return;
+
+        mDestroyed = true;
+        // otherwise once saved
+        if (!mSaving) closeDocument();
+    }
+
+    private void closeDocument() {
+        if (mDocument != null) {
+            try {
+                mDocument.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         if (cacheFile != null && cacheFile.exists()) cacheFile.delete();
     }
 
@@ -432,7 +610,7 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
 
                 @Override
                 public void run() {
-                    modified = !mInput.getText().toString().equals(mOriginal);
+                    modified = isModified();
                     if (mModified != modified) {
                         mModified = modified;
                         invalidateOptionsMenu();
@@ -446,7 +624,7 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
     public void afterTextChanged(Editable editable) {
         // searchBox callback block
         if (searchEditText != null && editable.hashCode() == searchEditText.getText().hashCode()) {
-            searchTextTask = new SearchTextTask(this);
+            searchTextTask = new SearchTextTask(this, mRegexSearch);
             searchTextTask.execute(editable);
         }
     }
@@ -531,56 +709,11 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
         switch (v.getId()) {
             case R.id.prev:
                 // upButton
-                if (mCurrent > 0) {
-
-                    // setting older span back before setting new one
-                    Map.Entry keyValueOld = nodes.get(mCurrent).getKey();
-                    if (getAppTheme().equals(AppTheme.LIGHT)) {
-                        mInput.getText().setSpan(new BackgroundColorSpan(Color.YELLOW), (Integer) keyValueOld.getKey(),
-                                (Integer) keyValueOld.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-                    } else {
-                        mInput.getText().setSpan(new BackgroundColorSpan(Color.LTGRAY), (Integer) keyValueOld.getKey(),
-                                (Integer) keyValueOld.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-                    }
-                    // highlighting previous element in list
-                    Map.Entry keyValueNew = nodes.get(--mCurrent).getKey();
-                    mInput.getText().setSpan(new BackgroundColorSpan(Utils.getColor(this, R.color.search_text_highlight)),
-                            (Integer) keyValueNew.getKey(),
-                            (Integer) keyValueNew.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-
-                    // scrolling to the highlighted element
-                    scrollView.scrollTo(0, (Integer) keyValueNew.getValue()
-                            + mInput.getLineHeight() + Math.round(mInput.getLineSpacingExtra())
-                            - getSupportActionBar().getHeight());
-                }
+                if (mCurrent > 0) selectResult(mCurrent - 1);
                 break;
             case R.id.next:
                 // downButton
-                if (mCurrent < nodes.size() - 1) {
-
-                    // setting older span back before setting new one
-                    if (mCurrent != -1) {
-
-                        Map.Entry keyValueOld = nodes.get(mCurrent).getKey();
-                        if (getAppTheme().equals(AppTheme.LIGHT)) {
-                            mInput.getText().setSpan(new BackgroundColorSpan(Color.YELLOW), (Integer) keyValueOld.getKey(),
-                                    (Integer) keyValueOld.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-                        } else {
-                            mInput.getText().setSpan(new BackgroundColorSpan(Color.LTGRAY), (Integer) keyValueOld.getKey(),
-                                    (Integer) keyValueOld.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-                        }
-                    }
-
-                    Map.Entry keyValueNew = nodes.get(++mCurrent).getKey();
-                    mInput.getText().setSpan(new BackgroundColorSpan(Utils.getColor(this, R.color.search_text_highlight)),
-                            (Integer) keyValueNew.getKey(),
-                            (Integer) keyValueNew.getValue(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-
-                    // scrolling to the highlighted element
-                    scrollView.scrollTo(0, (Integer) keyValueNew.getValue()
-                            + mInput.getLineHeight() + Math.round(mInput.getLineSpacingExtra())
-                            - getSupportActionBar().getHeight());
-                }
+                if (mCurrent < nodes.size() - 1) selectResult(mCurrent + 1);
                 break;
             case R.id.close:
                 // closeButton
@@ -604,4 +737,115 @@ public class TextEditorActivity extends ThemedActivity implements TextWatcher, V
         }
     }
 
+
+    /**
+     * The document with the changes to the window shown in it, for the search to go through
+     */
+    public PagedTextDocument getDocument() {
+        commitWindow();
+        return mDocument;
+    }
+
+    /**
+     * Adds results found by {@link SearchTextTask}, highlighting those in the window shown and
+     * going to the first one
+     */
+    public void addSearchResults(List<MapEntry> results) {
+        nodes.addAll(results);
+        highlightResults(results);
+
+        upButton.setEnabled(true);
+        downButton.setEnabled(true);
+        if (mCurrent == -1) selectResult(0);
+    }
+
+    /**
+     * Highlights the result at index as the current one, moving the window to it if needed
+     */
+    private void selectResult(int index) {
+        if (mCurrent != -1) {
+            // setting older span back before setting new one
+            int[] oldOffsets = getWindowOffsets(nodes.get(mCurrent));
+            if (oldOffsets != null) setResultSpan(oldOffsets, false);
+        }
+
+        mCurrent = index;
+        MapEntry result = nodes.get(index);
+        int[] offsets = getWindowOffsets(result);
+        if (offsets == null) {
+            showWindow(result.getKey().getKey());
+            offsets = getWindowOffsets(result);
+            if (offsets == null) return;
+        } else {
+            setResultSpan(offsets, true);
+        }
+
+        // scrolling to the highlighted element
+        final int offset = offsets[0];
+        scrollView.post(() -> {
+            Layout layout = mInput.getLayout();
+            if (layout == null) return;
+            scrollView.scrollTo(0, mInput.getTop() + layout.getLineTop(layout.getLineForOffset(offset))
+                    - mInput.getLineHeight() - Math.round(mInput.getLineSpacingExtra()));
+        });
+    }
+
+    private void highlightResults() {
+        highlightResults(nodes);
+    }
+
+    /**
+     * Highlights the results, which are in order, that are in the window shown
+     */
+    private void highlightResults(List<MapEntry> results) {
+        MapEntry current = mCurrent != -1 ? nodes.get(mCurrent) : null;
+        long position = mWindowStart;
+        int offset = 0;
+        try {
+            for (MapEntry result : results) {
+                long start = result.getKey().getKey(), end = result.getKey().getValue();
+                if (start < position) continue;
+                if (end > mWindowEnd) break;
+
+                offset += mDocument.getText(position, start).length();
+                int[] offsets = {offset, offset + mDocument.getText(start, end).length()};
+                if (offsets[1] > mInput.length()) break;
+
+                setResultSpan(offsets, result == current);
+                offset = offsets[1];
+                position = end;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Where result is in the text shown, null if it isn't in the window
+     */
+    @Nullable
+    private int[] getWindowOffsets(MapEntry result) {
+        long start = result.getKey().getKey(), end = result.getKey().getValue();
+        if (start < mWindowStart || end > mWindowEnd) return null;
+
+        try {
+            int offset = mDocument.getText(mWindowStart, start).length();
+            int[] offsets = {offset, offset + mDocument.getText(start, end).length()};
+            return offsets[1] <= mInput.length() ? offsets : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void setResultSpan(int[] offsets, boolean current) {
+        int color;
+        if (current) color = Utils.getColor(this, R.color.search_text_highlight);
+        else if (getAppTheme().equals(AppTheme.LIGHT)) color = Color.YELLOW;
+        else color = Color.LTGRAY;
+
+        mInput.getText().setSpan(new BackgroundColorSpan(color), offsets[0], offsets[1],
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+    }
+
 }
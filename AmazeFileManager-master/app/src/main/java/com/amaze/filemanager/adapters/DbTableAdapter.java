@@ -0,0 +1,100 @@
+package com.amaze.filemanager.adapters;
+
+import android.content.Context;
+import android.support.annotation.ColorInt;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.amaze.filemanager.adapters.holders.DbRowViewHolder;
+import com.amaze.filemanager.utils.DbTablePager;
+import com.amaze.filemanager.utils.Utils;
+
+/**
+ * Shows the rows of a table read by a {@link DbTablePager}, asking for the pages that aren't
+ * read yet when they come into view.
+ */
+public class DbTableAdapter extends RecyclerView.Adapter<DbRowViewHolder> {
+
+    public static final int CELL_WIDTH_DP = 140;
+
+    private final Context context;
+    private final DbTablePager pager;
+    private final int columnCount;
+    private final @ColorInt int textColor;
+    private final OnPageMissingListener listener;
+
+    public DbTableAdapter(Context context, DbTablePager pager, int columnCount, @ColorInt int textColor,
+                          OnPageMissingListener listener) {
+        this.context = context;
+        this.pager = pager;
+        this.columnCount = columnCount;
+        this.textColor = textColor;
+        this.listener = listener;
+    }
+
+    @Override
+    public DbRowViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        LinearLayout row = createRow(context, columnCount);
+        TextView[] cells = new TextView[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            cells[i] = createCell(context, textColor);
+            row.addView(cells[i]);
+        }
+        return new DbRowViewHolder(row, cells);
+    }
+
+    @Override
+    public void onBindViewHolder(DbRowViewHolder holder, int position) {
+        int page = position / DbTablePager.PAGE_SIZE;
+        String[] row = pager.getRow(position);
+        if (row == null) {
+            listener.onPageMissing(page);
+        } else if (position % DbTablePager.PAGE_SIZE == DbTablePager.PAGE_SIZE / 2
+                && (page + 1) * DbTablePager.PAGE_SIZE < getItemCount()) {
+            // read ahead, scrolling down will need it soon
+            listener.onPageMissing(page + 1);
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            holder.cells[i].setText(row == null ? "" : String.valueOf(row[i]));
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return Math.max(0, pager.getCount());
+    }
+
+    public static LinearLayout createRow(Context context, int columnCount) {
+        LinearLayout row = new LinearLayout(context);
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setLayoutParams(new RecyclerView.LayoutParams(
+                columnCount * Utils.dpToPx(context, CELL_WIDTH_DP), ViewGroup.LayoutParams.WRAP_CONTENT));
+        return row;
+    }
+
+    public static TextView createCell(Context context, @ColorInt int textColor) {
+        TextView cell = new TextView(context);
+        int padding = Utils.dpToPx(context, 4);
+        cell.setPadding(padding, padding, padding, padding);
+        cell.setLayoutParams(new LinearLayout.LayoutParams(Utils.dpToPx(context, CELL_WIDTH_DP),
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        cell.setGravity(Gravity.CENTER_VERTICAL);
+        cell.setSingleLine(true);
+        cell.setEllipsize(TextUtils.TruncateAt.END);
+        cell.setTextColor(textColor);
+        return cell;
+    }
+
+    public interface OnPageMissingListener {
+        /**
+         * Called when a row of page is shown before the page is read, several times if
+         * several of its rows are
+         */
+        void onPageMissing(int page);
+    }
+}
@@ -49,6 +49,12 @@ public class LayoutElementParcelable implements Parcelable {
     public final String dateModification;
     public final boolean header;
 
+    /**
+     * Sort keys for {@link com.amaze.filemanager.utils.files.FileListSorter}: the title case folded
+     * the same way as {@link String#compareToIgnoreCase(String)} and its extension
+     */
+    public final String nameKey, extensionKey;
+
     //same as hfile.modes but different than openmode in Main.java
     private OpenMode mode = OpenMode.FILE;
 
@@ -117,6 +123,8 @@ public class LayoutElementParcelable implements Parcelable {
             this.dateModification = "";
         }
         this.isBack = isBack;
+        this.nameKey = foldCase(title);
+        this.extensionKey = nameKey.substring(nameKey.lastIndexOf('.') + 1);
     }
 
     public OpenMode getMode() {
@@ -159,6 +167,25 @@ public class LayoutElementParcelable implements Parcelable {
         size = im.readString();
         longSize=im.readLong();
         isBack = im.readInt() != 0;
+        nameKey = foldCase(title);
+        extensionKey = nameKey.substring(nameKey.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Comparing two folded strings with {@link String#compareTo(String)} gives the same result as
+     * {@link String#compareToIgnoreCase(String)} on the originals
+     */
+    private static String foldCase(String s) {
+        char[] folded = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (f != c) {
+                if (folded == null) folded = s.toCharArray();
+                folded[i] = f;
+            }
+        }
+        return folded == null ? s : new String(folded);
     }
 
     @Override
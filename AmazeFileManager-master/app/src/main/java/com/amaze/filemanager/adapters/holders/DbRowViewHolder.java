@@ -0,0 +1,19 @@
+package com.amaze.filemanager.adapters.holders;
+
+import android.support.v7.widget.RecyclerView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * A row of a database table, with one cell per column
+ */
+public class DbRowViewHolder extends RecyclerView.ViewHolder {
+    public final TextView[] cells;
+
+    public DbRowViewHolder(LinearLayout row, TextView[] cells) {
+        super(row);
+
+        this.cells = cells;
+    }
+
+}
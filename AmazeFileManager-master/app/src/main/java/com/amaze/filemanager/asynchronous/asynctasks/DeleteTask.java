@@ -34,6 +34,7 @@ import com.amaze.filemanager.R;
 import com.amaze.filemanager.activities.MainActivity;
 import com.amaze.filemanager.database.CryptHandler;
 import com.amaze.filemanager.exceptions.ShellNotRunningException;
+import com.amaze.filemanager.filesystem.FileIndex;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.fragments.CompressedExplorerFragment;
 import com.amaze.filemanager.fragments.preference_fragments.PreferencesConstants;
@@ -44,6 +45,7 @@ import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.amaze.filemanager.utils.files.CryptUtil;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.cloudrail.si.interfaces.CloudStorage;
 
 import java.util.ArrayList;
@@ -82,6 +84,7 @@ public class DeleteTask extends AsyncTask<ArrayList<HybridFileParcelable>, Strin
             for (HybridFileParcelable file : files) {
                 DocumentFile documentFile = OTGUtil.getDocumentFile(file.getPath(), cd, false);
                 wasDeleted = documentFile.delete();
+                OTGUtil.invalidate(file.getPath());
             }
         } else if (files.get(0).isDropBoxFile()) {
             CloudStorage cloudStorageDropbox = dataUtils.getAccount(OpenMode.DROPBOX);
@@ -182,6 +185,13 @@ public class DeleteTask extends AsyncTask<ArrayList<HybridFileParcelable>, Strin
             Toast.makeText(cd, cd.getResources().getString(R.string.done), Toast.LENGTH_SHORT).show();
         }
 
+        if (wasDeleted && compressedExplorerFragment == null) {
+            for (HybridFileParcelable file : files) {
+                FileIndex.getInstance().onFileDeleted(file.getPath());
+                FolderSizeCalculator.getInstance().invalidate(file.getPath());
+            }
+        }
+
         if (compressedExplorerFragment!=null) {
             compressedExplorerFragment.files.clear();
         }
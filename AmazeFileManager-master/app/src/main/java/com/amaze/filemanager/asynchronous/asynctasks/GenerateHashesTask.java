@@ -2,6 +2,9 @@ package com.amaze.filemanager.asynchronous.asynctasks;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.TextView;
@@ -25,9 +28,23 @@ import java.security.NoSuchAlgorithmException;
 /**
  * Generates hashes from files (MD5 and SHA256)
  *
+ * All digests are fed from the same read of the file, and the results are kept in memory (keyed
+ * by path, size and modification date) so that opening the properties of the same file again
+ * doesn't read it again.
+ *
  * Created by Vishal on 05-02-2015 edited by Emmanuel Messulam<emmanuelbendavid@gmail.com>
  */
-public class GenerateHashesTask extends AsyncTask<Void, String, String[]> {
+public class GenerateHashesTask extends AsyncTask<Void, Integer, String[]> {
+
+    /**
+     * Digests computed, in the order they're returned by {@link #doInBackground(Void...)}
+     */
+    private static final String[] ALGORITHMS = {"MD5", "SHA-256"};
+
+    private static final int CACHE_SIZE = 64;
+    private static final LruCache<String, String[]> cache = new LruCache<>(CACHE_SIZE);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     private HybridFileParcelable file;
     private Context context;
@@ -48,47 +65,39 @@ public class GenerateHashesTask extends AsyncTask<Void, String, String[]> {
 
     @Override
     protected String[] doInBackground(Void... params) {
-        String md5 = context.getString(R.string.error);
-        String sha256 = context.getString(R.string.error);
+        String error = context.getString(R.string.error);
+
+        String cacheKey = file.getPath() + ':' + file.getSize() + ':' + file.getDate();
+        String[] hashes = cache.get(cacheKey);
+        if (hashes != null) return hashes;
 
         try {
             if (file.isSftp()) {
-                md5 = SshClientUtils.execute(new SshClientSessionTemplate(file.getPath()) {
-                    @Override
-                    public String execute(Session session) throws IOException {
-                        Session.Command cmd = session.exec(String.format("md5sum -b \"%s\" | cut -c -32", SshClientUtils.extractRemotePathFrom(file.getPath())));
-                        String result = new String(IOUtils.readFully(cmd.getInputStream()).toByteArray());
-                        cmd.close();
-                        if(cmd.getExitStatus() == 0)
-                            return result;
-                        else {
-                            return null;
-                        }
-                    }
-                });
-                sha256 = SshClientUtils.execute(new SshClientSessionTemplate(file.getPath()) {
-                    @Override
-                    public String execute(Session session) throws IOException {
-                        Session.Command cmd = session.exec(String.format("sha256sum -b \"%s\" | cut -c -64", SshClientUtils.extractRemotePathFrom(file.getPath())));
-                        String result = new String(IOUtils.readFully(cmd.getInputStream()).toByteArray());
-                        cmd.close();
-                        if(cmd.getExitStatus() == 0)
-                            return result;
-                        else {
-                            return null;
-                        }
-                    }
-                });
-            }
-            else if (!file.isDirectory(context)) {
-                md5 = getMD5Checksum();
-                sha256 = getSHA256Checksum();
+                hashes = getRemoteChecksums();
+            } else if (!file.isDirectory(context)) {
+                InputStream inputStream = file.getInputStream(context);
+                try {
+                    hashes = digest(inputStream, ALGORITHMS, GenericCopyUtil.getBufferSize(
+                            file.getMode(), file.getMode()), file.getSize(), this);
+                } finally {
+                    inputStream.close();
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        return new String[] {md5, sha256};
+        if (hashes == null) return new String[] {error, error};
+
+        cache.put(cacheKey, hashes);
+        return hashes;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        String progress = context.getString(R.string.calculating).trim() + " " + values[0] + "%";
+        md5HashText.setText(progress);
+        sha256Text.setText(progress);
     }
 
     @Override
@@ -116,57 +125,80 @@ public class GenerateHashesTask extends AsyncTask<Void, String, String[]> {
         }
     }
 
-    // see this How-to for a faster way to convert a byte array to a HEX string
-
-    private String getMD5Checksum() throws Exception {
-        byte[] b = createChecksum();
-        String result = "";
+    /**
+     * Runs md5sum and sha256sum in a single remote command, instead of opening a session for each
+     */
+    @Nullable
+    private String[] getRemoteChecksums() {
+        return SshClientUtils.execute(new SshClientSessionTemplate(file.getPath()) {
+            @Override
+            public String[] execute(Session session) throws IOException {
+                String path = SshClientUtils.extractRemotePathFrom(file.getPath());
+                Session.Command cmd = session.exec(String.format(
+                        "md5sum -b \"%1$s\" | cut -c -32 && sha256sum -b \"%1$s\" | cut -c -64", path));
+                String result = new String(IOUtils.readFully(cmd.getInputStream()).toByteArray());
+                cmd.close();
+
+                String[] lines = result.trim().split("\n");
+                if (cmd.getExitStatus() == 0 && lines.length == ALGORITHMS.length) {
+                    return lines;
+                } else {
+                    return null;
+                }
+            }
+        });
+    }
 
-        for (byte aB : b) {
-            result += Integer.toString((aB & 0xff) + 0x100, 16).substring(1);
+    /**
+     * Reads the stream once, updating every digest with each buffer read
+     *
+     * @param totalSize used to report progress, pass 0 if unknown
+     * @param task reports progress to and stops when cancelled, may be null
+     * @return the hex encoded digests, in the same order as algorithms, or null if cancelled
+     */
+    @Nullable
+    static String[] digest(@NonNull InputStream inputStream, @NonNull String[] algorithms,
+                           int bufferSize, long totalSize, @Nullable GenerateHashesTask task)
+            throws NoSuchAlgorithmException, IOException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
         }
-        return result;
-    }
 
-    private String getSHA256Checksum() throws NoSuchAlgorithmException, IOException {
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        byte[] input = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+        byte[] buffer = new byte[bufferSize];
+        long read = 0;
+        int lastProgress = -1;
         int length;
-        InputStream inputStream = file.getInputStream(context);
-        while ((length = inputStream.read(input)) != -1) {
-            if (length > 0)
-                messageDigest.update(input, 0, length);
-        }
+        while ((length = inputStream.read(buffer)) != -1) {
+            if (task != null && task.isCancelled()) return null;
 
-        byte[] hash = messageDigest.digest();
+            for (MessageDigest digest : digests) {
+                digest.update(buffer, 0, length);
+            }
 
-        StringBuilder hexString = new StringBuilder();
+            read += length;
+            if (task != null && totalSize > 0) {
+                int progress = (int) (read * 100 / totalSize);
+                if (progress != lastProgress) {
+                    task.publishProgress(progress);
+                    lastProgress = progress;
+                }
+            }
+        }
 
-        for (byte aHash : hash) {
-            // convert hash to base 16
-            String hex = Integer.toHexString(0xff & aHash);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+        String[] hashes = new String[algorithms.length];
+        for (int i = 0; i < digests.length; i++) {
+            hashes[i] = toHex(digests[i].digest());
         }
-        inputStream.close();
-        return hexString.toString();
+        return hashes;
     }
 
-    private byte[] createChecksum() throws Exception {
-        InputStream fis = file.getInputStream(context);
-
-        byte[] buffer = new byte[8192];
-        MessageDigest complete = MessageDigest.getInstance("MD5");
-        int numRead;
-
-        do {
-            numRead = fis.read(buffer);
-            if (numRead > 0) {
-                complete.update(buffer, 0, numRead);
-            }
-        } while (numRead != -1);
-
-        fis.close();
-        return complete.digest();
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
     }
 }
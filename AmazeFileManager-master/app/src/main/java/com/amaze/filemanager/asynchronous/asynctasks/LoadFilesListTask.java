@@ -23,10 +23,14 @@ package com.amaze.filemanager.asynchronous.asynctasks;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.provider.MediaStore;
+import android.support.annotation.Nullable;
 import android.support.v4.util.Pair;
 import android.text.format.Formatter;
+import android.util.Log;
 
+import com.amaze.filemanager.BuildConfig;
 import com.amaze.filemanager.R;
 import com.amaze.filemanager.adapters.data.LayoutElementParcelable;
 import com.amaze.filemanager.database.SortHandler;
@@ -59,7 +63,23 @@ import jcifs.smb.SmbAuthException;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 
-public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, ArrayList<LayoutElementParcelable>>> {
+/**
+ * Lists a directory for {@link MainFragment}.
+ *
+ * For the mediums listed one file at a time (local, root, OTG, SFTP and cloud) the files found
+ * are also handed, sorted, to the page listener as they're found, so that big directories start
+ * showing before they're fully listed. Every page is sorted on its own and merged into the
+ * previous ones; pages double in size, so the total cost stays that of a single sort.
+ */
+public class LoadFilesListTask extends AsyncTask<Void, Pair<OpenMode, ArrayList<LayoutElementParcelable>>,
+        Pair<OpenMode, ArrayList<LayoutElementParcelable>>> {
+
+    private static final String TAG = "LoadFilesListTask";
+
+    /**
+     * Files to find before showing the first page, every page after it doubles the list
+     */
+    private static final int FIRST_PAGE_SIZE = 100;
 
     private String path;
     private MainFragment ma;
@@ -68,10 +88,35 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
     private boolean showHiddenFiles, showThumbs;
     private DataUtils dataUtils = DataUtils.getInstance();
     private OnAsyncTaskFinished<Pair<OpenMode, ArrayList<LayoutElementParcelable>>> listener;
+    private OnAsyncTaskFinished<Pair<OpenMode, ArrayList<LayoutElementParcelable>>> pageListener;
+
+    private FileListSorter sorter;
+    private boolean paging = false;
+    /**
+     * Sorted files already handed to {@link #pageListener}
+     */
+    private ArrayList<LayoutElementParcelable> shownFiles = new ArrayList<>();
+    /**
+     * Files found since the last page
+     */
+    private ArrayList<LayoutElementParcelable> pendingFiles = new ArrayList<>();
+    private int nextPageSize = FIRST_PAGE_SIZE;
+    private long firstPageTime = -1;
 
     public LoadFilesListTask(Context c, String path, MainFragment ma, OpenMode openmode,
                              boolean showThumbs, boolean showHiddenFiles,
                              OnAsyncTaskFinished<Pair<OpenMode, ArrayList<LayoutElementParcelable>>> l) {
+        this(c, path, ma, openmode, showThumbs, showHiddenFiles, l, null);
+    }
+
+    /**
+     * @param pageListener called on the main thread with every page, each one is the whole sorted
+     *                     list found until then; null to only get the complete list
+     */
+    public LoadFilesListTask(Context c, String path, MainFragment ma, OpenMode openmode,
+                             boolean showThumbs, boolean showHiddenFiles,
+                             OnAsyncTaskFinished<Pair<OpenMode, ArrayList<LayoutElementParcelable>>> l,
+                             @Nullable OnAsyncTaskFinished<Pair<OpenMode, ArrayList<LayoutElementParcelable>>> pageListener) {
         this.path = path;
         this.ma = ma;
         this.openmode = openmode;
@@ -79,10 +124,12 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
         this.showThumbs = showThumbs;
         this.showHiddenFiles = showHiddenFiles;
         this.listener = l;
+        this.pageListener = pageListener;
     }
 
     @Override
     protected Pair<OpenMode, ArrayList<LayoutElementParcelable>> doInBackground(Void... p) {
+        long startTime = SystemClock.elapsedRealtime();
         HybridFile hFile = null;
 
         if (openmode == OpenMode.UNKNOWN) {
@@ -99,7 +146,24 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
 
         ma.folder_count = 0;
         ma.file_count = 0;
-        final ArrayList<LayoutElementParcelable> list;
+        // null for the mediums listed one file at a time, see #onElementFound()
+        ArrayList<LayoutElementParcelable> list;
+
+        boolean sortable = !(openmode == OpenMode.CUSTOM && ((path).equals("5") || (path).equals("6")));
+        if (sortable) {
+            int t = SortHandler.getSortType(ma.getContext(), path);
+            int sortby;
+            int asc;
+            if (t <= 3) {
+                sortby = t;
+                asc = 1;
+            } else {
+                asc = -1;
+                sortby = t - 4;
+            }
+            sorter = new FileListSorter(ma.dsort, sortby, asc, true);
+        }
+        paging = pageListener != null && sortable && openmode != OpenMode.SMB && openmode != OpenMode.CUSTOM;
 
         switch (openmode) {
             case SMB:
@@ -124,11 +188,11 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
             case SFTP:
                 HybridFile sftpHFile = new HybridFile(OpenMode.SFTP, path);
 
-                list = new ArrayList<LayoutElementParcelable>();
+                list = null;
 
                 sftpHFile.forEachChildrenFile(c, false, file -> {
                     LayoutElementParcelable elem = createListParcelables(file);
-                    if(elem != null) list.add(elem);
+                    if(elem != null) onElementFound(elem);
                 });
                 break;
             case CUSTOM:
@@ -160,10 +224,10 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
 
                 break;
             case OTG:
-                list = new ArrayList<>();
+                list = null;
                 listOtg(path, file -> {
                     LayoutElementParcelable elem = createListParcelables(file);
-                    if(elem != null) list.add(elem);
+                    if(elem != null) onElementFound(elem);
                 });
                 openmode = OpenMode.OTG;
                 break;
@@ -172,53 +236,80 @@ public class LoadFilesListTask extends AsyncTask<Void, Void, Pair<OpenMode, Arra
             case GDRIVE:
             case ONEDRIVE:
                 CloudStorage cloudStorage = dataUtils.getAccount(openmode);
-                list = new ArrayList<>();
+                list = null;
 
                 try {
                     listCloud(path, cloudStorage, openmode, file -> {
                         LayoutElementParcelable elem = createListParcelables(file);
-                        if(elem != null) list.add(elem);
+                        if(elem != null) onElementFound(elem);
                     });
                 } catch (CloudPluginException e) {
                     e.printStackTrace();
                     AppConfig.toast(c, c.getResources().getString(R.string.failed_no_connection));
-                    return new Pair<>(openmode, list);
+                    return new Pair<>(openmode, pendingFiles);
                 }
                 break;
             default:
                 // we're neither in OTG not in SMB, load the list based on root/general filesystem
-                list = new ArrayList<>();
+                list = null;
                 RootHelper.getFiles(path, ma.getMainActivity().isRootExplorer(), showHiddenFiles,
                         mode -> openmode = mode, file -> {
                             LayoutElementParcelable elem = createListParcelables(file);
-                            if(elem != null) list.add(elem);
+                            if(elem != null) onElementFound(elem);
                         });
                 break;
         }
 
-        if (list != null && !(openmode == OpenMode.CUSTOM && ((path).equals("5") || (path).equals("6")))) {
-            int t = SortHandler.getSortType(ma.getContext(), path);
-            int sortby;
-            int asc;
-            if (t <= 3) {
-                sortby = t;
-                asc = 1;
-            } else {
-                asc = -1;
-                sortby = t - 4;
-            }
-            Collections.sort(list, new FileListSorter(ma.dsort, sortby, asc));
+        if (paging) {
+            // the files not yet shown are sorted and merged as a last page
+            FileListSorter.sort(pendingFiles, sorter);
+            list = FileListSorter.merge(shownFiles, pendingFiles, sorter);
+        } else if (list == null) {
+            list = pendingFiles;
+            if (sortable) FileListSorter.sort(list, sorter);
+        } else if (sortable) {
+            FileListSorter.sort(list, sorter);
+        }
+
+        if (BuildConfig.DEBUG) {
+            long totalTime = SystemClock.elapsedRealtime() - startTime;
+            long firstRowsTime = firstPageTime == -1 ? totalTime : firstPageTime - startTime;
+            Log.d(TAG, "Loaded " + list.size() + " files from " + path + ", first rows in "
+                    + firstRowsTime + "ms, all in " + totalTime + "ms");
         }
 
         return new Pair<>(openmode, list);
     }
 
+    @Override
+    protected void onProgressUpdate(Pair<OpenMode, ArrayList<LayoutElementParcelable>>... page) {
+        pageListener.onAsyncTaskFinished(page[0]);
+    }
+
     @Override
     protected void onPostExecute(Pair<OpenMode, ArrayList<LayoutElementParcelable>> list) {
         super.onPostExecute(list);
         listener.onAsyncTaskFinished(list);
     }
 
+    /**
+     * Keeps a file found by a medium listed one file at a time, handing a page to the
+     * {@link #pageListener} when enough files are pending
+     */
+    private void onElementFound(LayoutElementParcelable elem) {
+        pendingFiles.add(elem);
+        if (!paging || pendingFiles.size() < nextPageSize) return;
+
+        Collections.sort(pendingFiles, sorter);
+        shownFiles = FileListSorter.merge(shownFiles, pendingFiles, sorter);
+        pendingFiles = new ArrayList<>();
+        nextPageSize = shownFiles.size();
+
+        if (firstPageTime == -1) firstPageTime = SystemClock.elapsedRealtime();
+        // shownFiles is replaced, never modified, so the page can be shared with the UI
+        publishProgress(new Pair<>(openmode, shownFiles));
+    }
+
     private LayoutElementParcelable createListParcelables(HybridFileParcelable baseFile) {
         if (!dataUtils.isFileHidden(baseFile.getPath())) {
             String size = "";
@@ -30,6 +30,7 @@ import com.amaze.filemanager.activities.superclasses.ThemedActivity;
 import com.amaze.filemanager.database.CryptHandler;
 import com.amaze.filemanager.database.models.EncryptedEntry;
 import com.amaze.filemanager.exceptions.ShellNotRunningException;
+import com.amaze.filemanager.filesystem.FileIndex;
 import com.amaze.filemanager.filesystem.HybridFile;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.fragments.MainFragment;
@@ -39,6 +40,7 @@ import com.amaze.filemanager.utils.DataUtils;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.amaze.filemanager.utils.files.CryptUtil;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.RootUtils;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
@@ -171,10 +173,16 @@ public class MoveFiles extends AsyncTask<ArrayList<String>, String, Boolean> {
                 context.sendBroadcast(intent);
             }
 
+            FileIndex fileIndex = FileIndex.getInstance();
             for (int i = 0; i < paths.size(); i++) {
                 for (HybridFileParcelable f : files.get(i)) {
                     FileUtils.scanFile(f.getFile(), context);
                     FileUtils.scanFile(new File(paths.get(i) + "/" + f.getName()), context);
+
+                    fileIndex.onFileDeleted(f.getPath());
+                    fileIndex.onFileCreated(context, new HybridFile(mode, paths.get(i) + "/" + f.getName()));
+                    FolderSizeCalculator.getInstance().invalidate(f.getPath());
+                    FolderSizeCalculator.getInstance().invalidate(paths.get(i) + "/" + f.getName());
                 }
             }
 
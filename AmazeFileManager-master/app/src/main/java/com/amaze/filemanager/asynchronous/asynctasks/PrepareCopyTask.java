@@ -24,25 +24,23 @@ import com.amaze.filemanager.utils.OnFileFound;
 import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.Utils;
-import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.CopyPlanner;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
 
 /**
  * Created by arpitkh996 on 12-01-2016, modified by Emmanuel Messulam<emmanuelbendavid@gmail.com>
  *
- *  This AsyncTask works by creating a tree where each folder that can be fusioned together with
- *  another in the destination is a node (CopyNode). While the tree is being created an indeterminate
- *  ProgressDialog is shown. Each node is copied when the conflicts are dealt with
- *  (the dialog is shown, and the tree is walked via a BFS).
+ *  This AsyncTask works by planning the copy with a {@link CopyPlanner}: every folder that can be
+ *  fusioned together with another in the destination gets a FolderPlan, with the files conflicting
+ *  in it. While the plan is being made an indeterminate ProgressDialog is shown. Each folder is
+ *  copied when the conflicts are dealt with (the dialog is shown, and the folders are gone through
+ *  in the order of the plan, a BFS).
  *  If the process is cancelled (via the button in the dialog) the dialog closes without any more code
  *  to be executed, finishCopying() is never executed so no changes are made.
  */
-public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>, String, PrepareCopyTask.CopyNode> {
+public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>, String, CopyPlanner.Plan> {
 
     private enum DO_FOR_ALL_ELEMENTS {
         DO_NOT_REPLACE,
@@ -61,11 +59,9 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
     private DO_FOR_ALL_ELEMENTS dialogState = null;
     private boolean isRenameMoveSupport = false;
 
-    //causes folder containing filesToCopy to be deleted
-    private ArrayList<File> deleteCopiedFolder = null;
-    private CopyNode copyFolder;
-    private final ArrayList<String> paths = new ArrayList<>();
-    private final ArrayList<ArrayList<HybridFileParcelable>> filesToCopyPerFolder = new ArrayList<>();
+    private CopyPlanner.Plan plan;
+    private int folderIndex = 0;
+    private final ArrayList<CopyPlanner.FolderPlan> folders = new ArrayList<>();
     private ArrayList<HybridFileParcelable> filesToCopy;    // a copy of params sent to this
 
     public PrepareCopyTask(MainFragment ma, String path, Boolean move, MainActivity con, boolean rootMode) {
@@ -91,9 +87,8 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
     }
 
     @Override
-    protected CopyNode doInBackground(ArrayList<HybridFileParcelable>... params) {
+    protected CopyPlanner.Plan doInBackground(ArrayList<HybridFileParcelable>... params) {
         filesToCopy = params[0];
-        long totalBytes = 0;
 
         if (openMode == OpenMode.OTG ||
                 openMode == OpenMode.DROPBOX
@@ -115,33 +110,20 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
             isRenameMoveSupport = true;
         }
 
-        totalBytes = FileUtils.getTotalBytes(filesToCopy, context);
+        CopyPlanner.Plan plan = new CopyPlanner(context, openMode, rootMode, !isRenameMoveSupport)
+                .plan(filesToCopy, path);
 
-        if (destination.getUsableSpace() < totalBytes && !isRenameMoveSupport) {
+        if (!isRenameMoveSupport && destination.getUsableSpace() < plan.getTotalBytes()) {
             publishProgress(context.getResources().getString(R.string.in_safe));
             return null;
         }
 
-        copyFolder = new CopyNode(path, filesToCopy);
-
-        return copyFolder;
-    }
-
-    private ArrayList<HybridFileParcelable> checkConflicts(final ArrayList<HybridFileParcelable> filesToCopy, HybridFile destination) {
-        final ArrayList<HybridFileParcelable> conflictingFiles = new ArrayList<>();
-        destination.forEachChildrenFile(context, rootMode, file -> {
-            for (HybridFileParcelable j : filesToCopy) {
-                if (file.getName().equals((j).getName())) {
-                    conflictingFiles.add(j);
-                }
-            }
-        });
-        return conflictingFiles;
+        return plan;
     }
 
     @Override
-    protected void onPostExecute(CopyNode copyFolder) {
-        super.onPostExecute(copyFolder);
+    protected void onPostExecute(CopyPlanner.Plan plan) {
+        super.onPostExecute(plan);
         if (openMode == OpenMode.OTG
                 || openMode == OpenMode.GDRIVE
                 || openMode == OpenMode.DROPBOX
@@ -150,28 +132,35 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
                 || openMode == OpenMode.ROOT
                 ) {
 
-            startService(filesToCopy, path, openMode);
+            startService(filesToCopy, path, openMode, -1);
         } else {
 
-            if (copyFolder == null) {
+            if (plan == null) {
                 // not starting service as there's no sufficient space
                 dialog.dismiss();
                 return;
             }
 
+            this.plan = plan;
+
             onEndDialog(null, null, null);
         }
 
         dialog.dismiss();
     }
 
-    private void startService(ArrayList<HybridFileParcelable> sourceFiles, String target, OpenMode openmode) {
+    /**
+     * @param totalBytes size of the source files, -1 to let the service find it out
+     */
+    private void startService(ArrayList<HybridFileParcelable> sourceFiles, String target, OpenMode openmode,
+                              long totalBytes) {
         Intent intent = new Intent(context, CopyService.class);
         intent.putParcelableArrayListExtra(CopyService.TAG_COPY_SOURCES, sourceFiles);
         intent.putExtra(CopyService.TAG_COPY_TARGET, target);
         intent.putExtra(CopyService.TAG_COPY_OPEN_MODE, openmode.ordinal());
         intent.putExtra(CopyService.TAG_COPY_MOVE, move);
         intent.putExtra(CopyService.TAG_IS_ROOT_EXPLORER, rootMode);
+        if (totalBytes >= 0) intent.putExtra(CopyService.TAG_COPY_TOTAL_BYTES, totalBytes);
         ServiceWatcherUtil.runService(context, intent);
     }
 
@@ -228,22 +217,22 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
             else if (dialogState == DO_FOR_ALL_ELEMENTS.REPLACE)
                 replaceFiles(path, filesToCopy, conflictingFiles);
         } else {
-            CopyNode c = !copyFolder.hasStarted()? copyFolder.startCopy():copyFolder.goToNextNode();
+            CopyPlanner.FolderPlan c = folderIndex < plan.getFolders().size()
+                    ? plan.getFolders().get(folderIndex++) : null;
 
             if (c != null) {
                 counter = 0;
 
-                paths.add(c.getPath());
-                filesToCopyPerFolder.add(c.filesToCopy);
+                folders.add(c);
 
                 if (dialogState == null)
-                    onEndDialog(c.path, c.filesToCopy, c.conflictingFiles);
+                    onEndDialog(c.getPath(), c.getFilesToCopy(), c.getConflictingFiles());
                 else if (dialogState == DO_FOR_ALL_ELEMENTS.DO_NOT_REPLACE)
-                    doNotReplaceFiles(c.path, c.filesToCopy, c.conflictingFiles);
+                    doNotReplaceFiles(c.getPath(), c.getFilesToCopy(), c.getConflictingFiles());
                 else if (dialogState == DO_FOR_ALL_ELEMENTS.REPLACE)
-                    replaceFiles(c.path, c.filesToCopy, c.conflictingFiles);
+                    replaceFiles(c.getPath(), c.getFilesToCopy(), c.getConflictingFiles());
             } else {
-                finishCopying(paths, filesToCopyPerFolder);
+                finishCopying(folders);
             }
         }
     }
@@ -276,12 +265,16 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
         onEndDialog(path, filesToCopy, conflictingFiles);
     }
 
-    private void finishCopying(ArrayList<String> paths, ArrayList<ArrayList<HybridFileParcelable>> filesToCopyPerFolder) {
-        for (int i = 0; i < filesToCopyPerFolder.size(); i++) {
-            if (filesToCopyPerFolder.get(i) == null || filesToCopyPerFolder.get(i).size() == 0) {
-                filesToCopyPerFolder.remove(i);
-                paths.remove(i);
+    private void finishCopying(ArrayList<CopyPlanner.FolderPlan> folders) {
+        final ArrayList<String> paths = new ArrayList<>();
+        final ArrayList<ArrayList<HybridFileParcelable>> filesToCopyPerFolder = new ArrayList<>();
+        for (int i = 0; i < folders.size(); i++) {
+            if (folders.get(i).getFilesToCopy().size() == 0) {
+                folders.remove(i);
                 i--;
+            } else {
+                paths.add(folders.get(i).getPath());
+                filesToCopyPerFolder.add(folders.get(i).getFilesToCopy());
             }
         }
 
@@ -298,7 +291,8 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
                 if (!move) {
                     for (int i = 0; i < filesToCopyPerFolder.size(); i++) {
 
-                        startService(filesToCopyPerFolder.get(i), paths.get(i), openMode);
+                        startService(filesToCopyPerFolder.get(i), paths.get(i), openMode,
+                                folders.get(i).getBytes());
                     }
                 } else {
                     new MoveFiles(filesToCopyPerFolder, mainFrag, context, openMode)
@@ -310,96 +304,4 @@ public class PrepareCopyTask extends AsyncTask<ArrayList<HybridFileParcelable>,
         }
     }
 
-    class CopyNode {
-        private String path;
-        private ArrayList<HybridFileParcelable> filesToCopy, conflictingFiles;
-        private ArrayList<CopyNode> nextNodes = new ArrayList<>();
-
-        CopyNode(String p, ArrayList<HybridFileParcelable> filesToCopy) {
-            path = p;
-            this.filesToCopy = filesToCopy;
-
-            HybridFile destination = new HybridFile(openMode, path);
-            conflictingFiles = checkConflicts(filesToCopy, destination);
-
-            for (int i = 0; i < conflictingFiles.size(); i++) {
-                if (conflictingFiles.get(i).isDirectory()) {
-                    if (deleteCopiedFolder == null)
-                        deleteCopiedFolder = new ArrayList<>();
-
-                    deleteCopiedFolder.add(new File(conflictingFiles.get(i).getPath()));
-
-                    nextNodes.add(new CopyNode(path + "/"
-                            + conflictingFiles.get(i).getName(),
-                            conflictingFiles.get(i).listFiles(context, rootMode)));
-
-                    filesToCopy.remove(filesToCopy.indexOf(conflictingFiles.get(i)));
-                    conflictingFiles.remove(i);
-                    i--;
-                }
-            }
-        }
-
-        /**
-         * The next 2 methods are a BFS that runs through one node at a time.
-         */
-        private LinkedList<CopyNode> queue = null;
-        private Set<CopyNode> visited = null;
-
-        CopyNode startCopy() {
-            queue = new LinkedList<>();
-            visited = new HashSet<>();
-
-            queue.add(this);
-            visited.add(this);
-            return this;
-        }
-
-        /**
-         * @return true if there are no more nodes
-         */
-        CopyNode goToNextNode() {
-            if (queue.isEmpty())
-                return null;
-            else {
-                CopyNode node = queue.element();
-                CopyNode child;
-                if ((child = getUnvisitedChildNode(visited, node)) != null) {
-                    visited.add(child);
-                    queue.add(child);
-                    return child;
-                } else {
-                    queue.remove();
-                    return goToNextNode();
-                }
-            }
-        }
-
-        boolean hasStarted() {
-            return queue != null;
-        }
-
-        String getPath() {
-            return path;
-        }
-
-        ArrayList<HybridFileParcelable> getFilesToCopy() {
-            return filesToCopy;
-        }
-
-        ArrayList<HybridFileParcelable> getConflictingFiles() {
-            return conflictingFiles;
-        }
-
-        private CopyNode getUnvisitedChildNode(Set<CopyNode> visited, CopyNode node) {
-            for (CopyNode n : node.nextNodes) {
-                if (!visited.contains(n)) {
-                    return n;
-                }
-            }
-
-            return null;
-        }
-    }
-
-}
\ No newline at end of file
+}
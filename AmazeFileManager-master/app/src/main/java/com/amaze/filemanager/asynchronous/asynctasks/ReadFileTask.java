@@ -10,14 +10,15 @@ import com.amaze.filemanager.filesystem.EditableFileAbstraction;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 import com.amaze.filemanager.utils.RootUtils;
+import com.amaze.filemanager.utils.files.GenericCopyUtil;
+import com.amaze.filemanager.utils.texteditor.PagedTextDocument;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 
 /**
  * @author Emmanuel Messulam <emmanuelbendavid@gmail.com>
@@ -50,16 +51,25 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
 
     @Override
     protected ReturnedValues doInBackground(Void... params) {
-        StringBuilder stringBuilder = new StringBuilder();
-
         try {
-            InputStream inputStream = null;
+            PagedTextDocument document = null;
 
             switch (fileAbstraction.scheme) {
                 case EditableFileAbstraction.SCHEME_CONTENT:
                     if(fileAbstraction.uri == null) throw new NullPointerException("Something went really wrong!");
 
-                    inputStream = contentResolver.openInputStream(fileAbstraction.uri);
+                    InputStream inputStream = contentResolver.openInputStream(fileAbstraction.uri);
+                    if(inputStream == null) throw new StreamNotFoundException();
+
+                    // the document pages through a local copy
+                    File copy = File.createTempFile("editor", null, externalCacheDir);
+                    try {
+                        copy(inputStream, copy);
+                        document = PagedTextDocument.open(copy, true);
+                    } catch (IOException e) {
+                        copy.delete();
+                        throw e;
+                    }
                     break;
                 case EditableFileAbstraction.SCHEME_FILE:
                     final HybridFileParcelable hybridFileParcelable = fileAbstraction.hybridFileParcelable;
@@ -74,20 +84,20 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
                             // creating a cache file
                             RootUtils.copy(hybridFileParcelable.getPath(), cachedFile.getPath());
 
-                            inputStream = new FileInputStream(cachedFile);
+                            document = PagedTextDocument.open(cachedFile, false);
                         } catch (ShellNotRunningException e) {
                             e.printStackTrace();
-                            inputStream = null;
+                            document = null;
                         } catch (FileNotFoundException e) {
                             e.printStackTrace();
-                            inputStream = null;
+                            document = null;
                         }
                     } else if (file.canRead()) {
                         // readable file in filesystem
                         try {
-                            inputStream = new FileInputStream(hybridFileParcelable.getPath());
+                            document = PagedTextDocument.open(file, false);
                         } catch (FileNotFoundException e) {
-                            inputStream = null;
+                            document = null;
                         }
                     }
                     break;
@@ -96,17 +106,9 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
             }
 
 
-            if(inputStream == null) throw new StreamNotFoundException();
-
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            if(document == null) throw new StreamNotFoundException();
 
-            String buffer;
-            while ((buffer = bufferedReader.readLine()) != null) {
-                stringBuilder.append(buffer).append("\n");
-            }
-
-            inputStream.close();
-            bufferedReader.close();
+            return new ReturnedValues(document, cachedFile);
         } catch (StreamNotFoundException e) {
             e.printStackTrace();
             return new ReturnedValues(EXCEPTION_STREAM_NOT_FOUND);
@@ -114,8 +116,20 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
             e.printStackTrace();
             return new ReturnedValues(EXCEPTION_IO);
         }
+    }
 
-        return new ReturnedValues(stringBuilder.toString(), cachedFile);
+    private static void copy(InputStream inputStream, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+            outputStream.close();
+        }
     }
 
     @Override
@@ -126,12 +140,12 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
     }
 
     public static class ReturnedValues {
-        public final String fileContents;
+        public final PagedTextDocument document;
         public final int error;
         public final File cachedFile;
 
-        private ReturnedValues(String fileContents, File cachedFile) {
-            this.fileContents = fileContents;
+        private ReturnedValues(PagedTextDocument document, File cachedFile) {
+            this.document = document;
             this.cachedFile = cachedFile;
 
             this.error = NORMAL;
@@ -140,7 +154,7 @@ public class ReadFileTask extends AsyncTask<Void, Void, ReadFileTask.ReturnedVal
         private ReturnedValues(int error) {
             this.error = error;
 
-            this.fileContents = null;
+            this.document = null;
             this.cachedFile = null;
         }
     }
@@ -2,15 +2,19 @@ package com.amaze.filemanager.asynchronous.asynctasks;
 
 import android.app.Activity;
 import android.os.AsyncTask;
+import android.os.Handler;
 import android.util.Log;
 
+import com.amaze.filemanager.filesystem.FileIndex;
 import com.amaze.filemanager.filesystem.HybridFile;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.fragments.SearchWorkerFragment;
-import com.amaze.filemanager.utils.OnFileFound;
 import com.amaze.filemanager.utils.OpenMode;
+import com.amaze.filemanager.utils.files.ParallelFileWalker;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 /**
@@ -22,11 +26,24 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
 
     private static final String TAG = "SearchAsyncTask";
 
+    /**
+     * Results are handed to the callbacks when this many have been found, and every
+     * {@link #BATCH_INTERVAL} milliseconds, so the last ones show up even while nothing else matches
+     */
+    private static final int BATCH_SIZE = 64;
+    private static final long BATCH_INTERVAL = 250;
+
     private WeakReference<Activity> activity;
     private SearchWorkerFragment.HelperCallbacks mCallbacks;
     private String mInput;
     private OpenMode mOpenMode;
     private boolean mRootMode, isRegexEnabled, isMatchesEnabled;
+    private volatile ParallelFileWalker walker;
+
+    // results not yet handed to the callbacks, see #addResult()
+    private final ArrayList<HybridFileParcelable> results = new ArrayList<>(BATCH_SIZE);
+    private final Handler handler = new Handler();
+    private final Runnable flushRunnable = this::flushPeriodically;
 
     public SearchAsyncTask(Activity a, SearchWorkerFragment.HelperCallbacks l,
                            String input, OpenMode openMode, boolean root, boolean regex,
@@ -50,6 +67,7 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
         if (mCallbacks != null) {
             mCallbacks.onPreExecute(mInput);
         }
+        handler.postDelayed(flushRunnable, BATCH_INTERVAL);
     }
 
     // mCallbacks not checked for null because of possibility of
@@ -62,22 +80,21 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
         file.generateMode(activity.get());
         if (file.isSmb()) return null;
 
-        // level 1
-        // if regex or not
-        if (!isRegexEnabled) {
-            search(file, mInput);
+        SearchFilter filter = createFilter();
+        boolean indexable = !mRootMode && FileIndex.isIndexable(file);
+        if (indexable && FileIndex.getInstance().isIndexed(file.getPath())) {
+            // no need to touch the filesystem
+            FileIndex.getInstance().search(file.getPath(), filter, this::addResult);
+            flushResults();
         } else {
-            // compile the regular expression in the input
-            Pattern pattern = Pattern.compile(bashRegexToJava(mInput));
-            // level 2
-            if (!isMatchesEnabled) searchRegExFind(file, pattern);
-            else searchRegExMatch(file, pattern);
+            search(file, filter, indexable);
         }
         return null;
     }
 
     @Override
     public void onPostExecute(Void c) {
+        handler.removeCallbacks(flushRunnable);
         if (mCallbacks != null) {
             mCallbacks.onPostExecute(mInput);
         }
@@ -85,67 +102,100 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
 
     @Override
     protected void onCancelled() {
+        handler.removeCallbacks(flushRunnable);
+        if (walker != null) walker.cancel();
         if (mCallbacks != null) mCallbacks.onCancelled();
     }
 
     @Override
     public void onProgressUpdate(HybridFileParcelable... val) {
         if (!isCancelled() && mCallbacks != null) {
-            mCallbacks.onProgressUpdate(val[0], mInput);
+            mCallbacks.onProgressUpdate(Arrays.asList(val), mInput);
         }
     }
 
     /**
-     * Recursively search for occurrences of a given text in file names and publish the result
-     *
-     * @param directory the current path
+     * Builds the filter once for the whole search
      */
-    private void search(HybridFile directory, final SearchFilter filter) {
-        if (directory.isDirectory(activity.get())) {// do you have permission to read this directory?
-            directory.forEachChildrenFile(activity.get(), mRootMode, file -> {
-                if (!isCancelled()) {
-                    if (filter.searchFilter(file.getName())) {
-                        publishProgress(file);
-                    }
-                    if (file.isDirectory() && !isCancelled()) {
-                        search(file, filter);
-                    }
-                }
-            });
+    private SearchFilter createFilter() {
+        // level 1
+        // if regex or not
+        if (!isRegexEnabled) {
+            return createSubstringFilter(mInput);
         } else {
-            Log.d(TAG, "Cannot search " + directory.getPath() + ": Permission Denied");
+            // compile the regular expression in the input
+            final Pattern pattern = Pattern.compile(bashRegexToJava(mInput));
+            // level 2
+            if (!isMatchesEnabled) return fileName -> pattern.matcher(fileName).find();
+            else return fileName -> pattern.matcher(fileName).matches();
         }
     }
 
-
     /**
-     * Recursively search for occurrences of a given text in file names and publish the result
-     *
-     * @param file  the current path
-     * @param query the searched text
+     * Case insensitive substring filter, matching without allocating anything per file name
      */
-    private void search(HybridFile file, final String query) {
-        search(file, fileName -> fileName.toLowerCase().contains(query.toLowerCase()));
+    public static SearchFilter createSubstringFilter(String query) {
+        final String foldedQuery = query.toLowerCase();
+        final int length = foldedQuery.length();
+        return fileName -> {
+            for (int i = 0, last = fileName.length() - length; i <= last; i++) {
+                if (fileName.regionMatches(true, i, foldedQuery, 0, length)) return true;
+            }
+            return false;
+        };
     }
 
     /**
-     * Recursively find a java regex pattern {@link Pattern} in the file names and publish the result
+     * Search for occurrences of a given filter in file names, walking subdirectories in parallel,
+     * and publish the results in batches
      *
-     * @param file    the current file
-     * @param pattern the compiled java regex
+     * @param directory the current path
+     * @param updateIndex whether to record everything found into the {@link FileIndex}
      */
-    private void searchRegExFind(HybridFile file, final Pattern pattern) {
-        search(file, fileName -> pattern.matcher(fileName).find());
+    private void search(HybridFile directory, final SearchFilter filter, boolean updateIndex) {
+        final FileIndex index = FileIndex.getInstance();
+        if (updateIndex) index.startIndexing(directory.getPath());
+
+        walker = new ParallelFileWalker(activity.get(), mRootMode,
+                ParallelFileWalker.getParallelism(directory, mRootMode));
+        walker.walk(directory, file -> {
+            if (isCancelled()) {
+                walker.cancel();
+                return false;
+            }
+
+            if (updateIndex) index.add(file);
+            if (filter.searchFilter(file.getName())) addResult(file);
+            return true;
+        });
+
+        // only a complete walk can answer the next searches
+        if (updateIndex && !walker.isCancelled() && !isCancelled()) {
+            index.finishIndexing(directory.getPath());
+        }
+
+        flushResults();
     }
 
-    /**
-     * Recursively match a java regex pattern {@link Pattern} with the file names and publish the result
-     *
-     * @param file    the current file
-     * @param pattern the compiled java regex
-     */
-    private void searchRegExMatch(HybridFile file, final Pattern pattern) {
-        search(file, fileName -> pattern.matcher(fileName).matches());
+    private void addResult(HybridFileParcelable file) {
+        synchronized (results) {
+            results.add(file);
+            if (results.size() >= BATCH_SIZE) flushResults();
+        }
+    }
+
+    private void flushPeriodically() {
+        flushResults();
+        handler.postDelayed(flushRunnable, BATCH_INTERVAL);
+    }
+
+    private void flushResults() {
+        synchronized (results) {
+            if (results.isEmpty() || isCancelled()) return;
+
+            publishProgress(results.toArray(new HybridFileParcelable[results.size()]));
+            results.clear();
+        }
     }
 
     /**
@@ -153,7 +203,7 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
      *
      * @return converted string
      */
-    private String bashRegexToJava(String originalString) {
+    static String bashRegexToJava(String originalString) {
         StringBuilder stringBuilder = new StringBuilder();
 
         for (int i = 0; i < originalString.length(); i++) {
@@ -170,7 +220,7 @@ public class SearchAsyncTask extends AsyncTask<String, HybridFileParcelable, Voi
             }
         }
 
-        Log.d(getClass().getSimpleName(), stringBuilder.toString());
+        Log.d(TAG, stringBuilder.toString());
         return stringBuilder.toString();
     }
 
@@ -1,112 +1,99 @@
 package com.amaze.filemanager.asynchronous.asynctasks;
 
-import android.graphics.Color;
 import android.os.AsyncTask;
 import android.text.Editable;
-import android.text.Spanned;
-import android.text.style.BackgroundColorSpan;
-import android.widget.EditText;
 import android.widget.ImageButton;
 
 import com.amaze.filemanager.activities.TextEditorActivity;
 import com.amaze.filemanager.utils.ImmutableEntry;
 import com.amaze.filemanager.utils.MapEntry;
-import com.amaze.filemanager.utils.theme.AppTheme;
+import com.amaze.filemanager.utils.texteditor.PagedTextDocument;
+import com.amaze.filemanager.utils.texteditor.TextSearch;
 
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Created by Vishal on 2/1/16.
+ *
+ * Searches the whole document a window at a time, results are highlighted as each window is done
  */
-public class SearchTextTask extends AsyncTask<Editable, Void, ArrayList<MapEntry>> {
+public class SearchTextTask extends AsyncTask<Editable, MapEntry, Void> {
+
+    /**
+     * Past this, results are too many to be of any use
+     */
+    private static final int MAX_RESULTS = 10000;
 
-    private EditText searchEditText, mInput;
-    private ArrayList<MapEntry> nodes;
-    private int searchTextLength;
     private ImageButton upButton, downButton;
     private TextEditorActivity textEditorActivity;
-    private Editable editText;
-    private String searchSubString;
-    private StringReader stringReader;
-    private LineNumberReader lineNumberReader;
-
-    public SearchTextTask(TextEditorActivity textEditorActivity) {
+    private PagedTextDocument document;
+    private boolean regex;
+    private String query;
+    private int results = 0;
+
+    /**
+     * @param regex whether the searched text is a regular expression
+     */
+    public SearchTextTask(TextEditorActivity textEditorActivity, boolean regex) {
         this.textEditorActivity = textEditorActivity;
+        this.regex = regex;
     }
 
     @Override
     protected void onPreExecute() {
         super.onPreExecute();
 
-        this.searchEditText = textEditorActivity.searchEditText;
-        this.nodes = textEditorActivity.nodes;
         this.upButton = textEditorActivity.upButton;
         this.downButton = textEditorActivity.downButton;
-        this.mInput = textEditorActivity.mInput;
-        searchTextLength = searchEditText.length();
-        editText = mInput.getText();
-        stringReader = new StringReader(editText.toString());
-        lineNumberReader = new LineNumberReader(stringReader);
+        this.document = textEditorActivity.getDocument();
+        this.query = textEditorActivity.searchEditText.getText().toString();
+
+        upButton.setEnabled(false);
+        downButton.setEnabled(false);
     }
 
     @Override
-    protected ArrayList<MapEntry> doInBackground(Editable... params) {
-        for (int i = 0; i < (editText.length() - params[0].length()); i++) {
-            if (searchTextLength == 0 || isCancelled())
-                break;
-
-            searchSubString = editText.subSequence(i, i + params[0].length()).toString();
-
-            // comparing and adding searched phrase to a list
-            if (searchSubString.equalsIgnoreCase(params[0].toString())) {
-
-                nodes.add(new MapEntry(new ImmutableEntry<>(i, i + params[0].length()),
-                        lineNumberReader.getLineNumber()));
-            }
-
-            // comparing and incrementing line number
-            // ended up using LineNumberReader api instead
-            try {
-                lineNumberReader.skip(params[0].length());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    protected Void doInBackground(Editable... params) {
+        if (document == null || query.isEmpty()) return null;
+
+        TextSearch search;
+        try {
+            search = regex ? TextSearch.regex(query) : TextSearch.literal(query);
+        } catch (PatternSyntaxException e) {
+            // not finished typing it
+            return null;
         }
-        return nodes;
-    }
 
-    @Override
-    protected void onPostExecute(final ArrayList<MapEntry> mapEntries) {
-        super.onPostExecute(mapEntries);
-
-        for (Map.Entry mapEntry : mapEntries) {
-
-            Map.Entry keyMapEntry = (Map.Entry) mapEntry.getKey();
-            if (textEditorActivity.getAppTheme().equals(AppTheme.LIGHT)) {
-                mInput.getText().setSpan(new BackgroundColorSpan(Color.YELLOW),
-                        (Integer) keyMapEntry.getKey(), (Integer) keyMapEntry.getValue(),
-                        Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-            } else {
-                mInput.getText().setSpan(new BackgroundColorSpan(Color.LTGRAY),
-                        (Integer) keyMapEntry.getKey(), (Integer) keyMapEntry.getValue(),
-                        Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-            }
+        try {
+            search.find(document, matches -> {
+                if (isCancelled()) return false;
+                if (matches.isEmpty()) return true;
+
+                MapEntry[] entries = new MapEntry[Math.min(matches.size(), MAX_RESULTS - results)];
+                for (int i = 0; i < entries.length; i++) {
+                    TextSearch.Match match = matches.get(i);
+                    entries[i] = new MapEntry(new ImmutableEntry<>(match.start, match.end), match.line);
+                }
+                results += entries.length;
+                publishProgress(entries);
+                return results < MAX_RESULTS;
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IndexOutOfBoundsException e) {
+            // the document was edited while searched, what was found is kept
+            e.printStackTrace();
         }
+        return null;
+    }
 
-        if (mapEntries.size()!=0) {
-            upButton.setEnabled(true);
-            downButton.setEnabled(true);
+    @Override
+    protected void onProgressUpdate(MapEntry... entries) {
+        if (isCancelled()) return;
 
-            // downButton
-            textEditorActivity.onClick(downButton);
-        } else {
-            upButton.setEnabled(false);
-            downButton.setEnabled(false);
-        }
+        textEditorActivity.addSearchResults(Arrays.asList(entries));
     }
 
 }
@@ -12,11 +12,15 @@ import com.amaze.filemanager.filesystem.FileUtil;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 import com.amaze.filemanager.utils.RootUtils;
+import com.amaze.filemanager.utils.files.GenericCopyUtil;
+import com.amaze.filemanager.utils.texteditor.PagedTextDocument;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 
@@ -39,17 +43,23 @@ public class WriteFileAbstraction extends AsyncTask<Void, String, Integer> {
     private boolean isRootExplorer;
     private OnAsyncTaskFinished<Integer> onAsyncTaskFinished;
 
-    private String dataToSave;
+    private PagedTextDocument document;
+    private PagedTextDocument.Snapshot snapshot;
 
+    /**
+     * Saves what document contains now; it must not be edited until this finishes, as it may be
+     * written over the file it reads from
+     */
     public WriteFileAbstraction(Context context, ContentResolver contentResolver,
-                                EditableFileAbstraction file, String dataToSave, File cachedFile,
-                                boolean isRootExplorer,
+                                EditableFileAbstraction file, PagedTextDocument document,
+                                File cachedFile, boolean isRootExplorer,
                                 OnAsyncTaskFinished<Integer> onAsyncTaskFinished) {
         this.context = new WeakReference<>(context);
         this.contentResolver = contentResolver;
         this.fileAbstraction = file;
         this.cachedFile = cachedFile;
-        this.dataToSave = dataToSave;
+        this.document = document;
+        this.snapshot = document.snapshot();
         this.isRootExplorer = isRootExplorer;
         this.onAsyncTaskFinished = onAsyncTaskFinished;
     }
@@ -57,18 +67,21 @@ public class WriteFileAbstraction extends AsyncTask<Void, String, Integer> {
     @Override
     protected Integer doInBackground(Void... voids) {
         try {
-            OutputStream outputStream;
-
             switch (fileAbstraction.scheme) {
                 case EditableFileAbstraction.SCHEME_CONTENT:
                     if(fileAbstraction.uri == null) throw new NullPointerException("Something went really wrong!");
 
+                    OutputStream outputStream;
                     try {
                         outputStream = contentResolver.openOutputStream(fileAbstraction.uri);
                     } catch (RuntimeException e) {
                         throw new StreamNotFoundException(e);
                     }
+                    if(outputStream == null) throw new StreamNotFoundException();
 
+                    // the document reads a copy of the content
+                    write(snapshot, outputStream);
+                    document.onSaved(snapshot);
                     break;
                 case EditableFileAbstraction.SCHEME_FILE:
                     final HybridFileParcelable hybridFileParcelable = fileAbstraction.hybridFileParcelable;
@@ -76,36 +89,38 @@ public class WriteFileAbstraction extends AsyncTask<Void, String, Integer> {
 
                     Context context = this.context.get();
                     if(context == null) { cancel(true); return null; }
-                    outputStream = FileUtil.getOutputStream(hybridFileParcelable.getFile(), context);
 
-                    if (isRootExplorer && outputStream == null) {
-                        // try loading stream associated using root
+                    File file = hybridFileParcelable.getFile();
+                    if (file.equals(document.getFile()) && file.canWrite()) {
+                        // only the changes are written
+                        snapshot.writeInPlace(context.getCacheDir());
+                    } else if (isRootExplorer && cachedFile != null && cachedFile.exists()) {
+                        // the document reads the cache file, cat its content to the original file
+                        snapshot.writeInPlace(context.getCacheDir());
+                        RootUtils.cat(cachedFile.getPath(), hybridFileParcelable.getPath());
+                    } else {
+                        // the document reads the file being written, the whole snapshot is
+                        // written to a copy before opening (and so truncating) the file
+                        File copy = File.createTempFile("editor", null, context.getCacheDir());
                         try {
-                            if (cachedFile != null && cachedFile.exists()){
-                                outputStream = new FileOutputStream(cachedFile);
+                            write(snapshot, new FileOutputStream(copy));
+
+                            outputStream = FileUtil.getOutputStream(file, context);
+                            if(outputStream == null) throw new StreamNotFoundException();
+                            try {
+                                copy(copy, outputStream);
+                            } finally {
+                                outputStream.close();
                             }
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                            outputStream = null;
+                        } finally {
+                            copy.delete();
                         }
+                        document.reload(snapshot);
                     }
                     break;
                 default:
                     throw new IllegalArgumentException("The scheme for '" + fileAbstraction.scheme + "' cannot be processed!");
             }
-
-            if(outputStream == null) throw new StreamNotFoundException();
-
-            outputStream.write(dataToSave.getBytes());
-            outputStream.close();
-
-            if (cachedFile != null && cachedFile.exists()) {
-                // cat cache content to original file and delete cache file
-                RootUtils.cat(cachedFile.getPath(), fileAbstraction.hybridFileParcelable.getPath());
-
-                cachedFile.delete();
-            }
-
         } catch (IOException e) {
             e.printStackTrace();
             return EXCEPTION_IO;
@@ -120,6 +135,30 @@ public class WriteFileAbstraction extends AsyncTask<Void, String, Integer> {
         return NORMAL;
     }
 
+    private static void write(PagedTextDocument.Snapshot snapshot, OutputStream outputStream)
+            throws IOException {
+        OutputStream bufferedOutputStream = new BufferedOutputStream(outputStream,
+                GenericCopyUtil.DEFAULT_BUFFER_SIZE);
+        try {
+            snapshot.writeTo(bufferedOutputStream);
+        } finally {
+            bufferedOutputStream.close();
+        }
+    }
+
+    private static void copy(File file, OutputStream outputStream) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
     @Override
     protected void onPostExecute(Integer integer) {
         super.onPostExecute(integer);
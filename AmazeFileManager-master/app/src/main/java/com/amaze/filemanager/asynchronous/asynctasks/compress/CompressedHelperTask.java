@@ -25,8 +25,12 @@ package com.amaze.filemanager.asynchronous.asynctasks.compress;
 import android.os.AsyncTask;
 
 import com.amaze.filemanager.adapters.data.CompressedObjectParcelable;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndex;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndexCache;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -60,4 +64,30 @@ public abstract class CompressedHelperTask extends AsyncTask<Void, Void, ArrayLi
 
     abstract void addElements(ArrayList<CompressedObjectParcelable> elements);
 
+    /**
+     * Adds the entries in relativePath, reading the archive with indexer only if its index isn't
+     * cached
+     *
+     * @param persistable whether the archive can only be read from the start, see
+     *                    {@link ArchiveIndexCache#getIndex(File, boolean, ArchiveIndexCache.Indexer)}
+     */
+    static void addElements(ArrayList<CompressedObjectParcelable> elements, File archive,
+                            String relativePath, boolean persistable,
+                            ArchiveIndexCache.Indexer indexer) {
+        try {
+            ArchiveIndex index = ArchiveIndexCache.getInstance().getIndex(archive, persistable, indexer);
+            addChildren(elements, index, relativePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void addChildren(ArrayList<CompressedObjectParcelable> elements, ArchiveIndex index,
+                            String relativePath) {
+        for (ArchiveIndex.Entry entry : index.getChildren(relativePath != null ? relativePath : "")) {
+            elements.add(new CompressedObjectParcelable(entry.path, entry.date, entry.size,
+                    entry.directory));
+        }
+    }
+
 }
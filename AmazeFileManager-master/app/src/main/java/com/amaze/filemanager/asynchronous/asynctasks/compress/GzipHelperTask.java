@@ -27,6 +27,7 @@ import android.content.Context;
 import com.amaze.filemanager.R;
 import com.amaze.filemanager.adapters.data.CompressedObjectParcelable;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndex;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 import com.amaze.filemanager.utils.application.AppConfig;
 
@@ -34,13 +35,10 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.zip.GZIPInputStream;
-
-import static com.amaze.filemanager.filesystem.compressed.CompressedHelper.SEPARATOR;
 
 public class GzipHelperTask extends CompressedHelperTask {
 
@@ -57,33 +55,26 @@ public class GzipHelperTask extends CompressedHelperTask {
 
     @Override
     void addElements(ArrayList<CompressedObjectParcelable> elements) {
-        TarArchiveInputStream tarInputStream = null;
-        try {
-            tarInputStream = new TarArchiveInputStream(
+        // the whole archive has to be decompressed to list it, so its index is worth keeping
+        addElements(elements, new File(filePath), relativePath, true, index -> {
+            TarArchiveInputStream tarInputStream = new TarArchiveInputStream(
                     new GzipCompressorInputStream(new FileInputStream(filePath)));
+            try {
+                TarArchiveEntry entry;
+                while ((entry = tarInputStream.getNextTarEntry()) != null) {
+                    String name = entry.getName();
+                    if (!CompressedHelper.isEntryPathValid(name)) {
+                        AppConfig.toast(context.get(), context.get().getString(R.string.multiple_invalid_archive_entries));
+                        continue;
+                    }
 
-            TarArchiveEntry entry;
-            while ((entry = tarInputStream.getNextTarEntry()) != null) {
-                String name = entry.getName();
-                if (!CompressedHelper.isEntryPathValid(name)) {
-                    AppConfig.toast(context.get(), context.get().getString(R.string.multiple_invalid_archive_entries));
-                    continue;
-                }
-                if (name.endsWith(SEPARATOR)) name = name.substring(0, name.length() - 1);
-
-                boolean isInBaseDir = relativePath.equals("") && !name.contains(SEPARATOR);
-                boolean isInRelativeDir = name.contains(SEPARATOR)
-                        && name.substring(0, name.lastIndexOf(SEPARATOR)).equals(relativePath);
-
-                if (isInBaseDir || isInRelativeDir) {
-                    elements.add(new CompressedObjectParcelable(entry.getName(),
+                    index.add(ArchiveIndex.getParent(name), new ArchiveIndex.Entry(name,
                             entry.getLastModifiedDate().getTime(), entry.getSize(), entry.isDirectory()));
                 }
+            } finally {
+                tarInputStream.close();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
+        });
     }
 
 }
@@ -22,10 +22,9 @@
 
 package com.amaze.filemanager.asynchronous.asynctasks.compress;
 
-import android.content.Context;
-
 import com.amaze.filemanager.adapters.data.CompressedObjectParcelable;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndex;
 import com.amaze.filemanager.filesystem.compressed.showcontents.helpers.RarDecompressor;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 import com.github.junrar.Archive;
@@ -34,7 +33,6 @@ import com.github.junrar.rarfile.FileHeader;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 
 public class RarHelperTask extends CompressedHelperTask {
@@ -56,27 +54,27 @@ public class RarHelperTask extends CompressedHelperTask {
 
     @Override
     void addElements(ArrayList<CompressedObjectParcelable> elements) {
-        try {
-            Archive zipfile = new Archive(new File(fileLocation));
-            String relativeDirDiffSeparator = relativeDirectory.replace(CompressedHelper.SEPARATOR, "\\");
-
-            for (FileHeader rarArchive : zipfile.getFileHeaders()) {
-                String name = rarArchive.getFileNameString();//This uses \ as separator, not /
-                if (!CompressedHelper.isEntryPathValid(name)) {
-                    continue;
-                }
-                boolean isInBaseDir = (relativeDirDiffSeparator == null || relativeDirDiffSeparator.equals("")) && !name.contains("\\");
-                boolean isInRelativeDir = relativeDirDiffSeparator != null && name.contains("\\")
-                        && name.substring(0, name.lastIndexOf("\\")).equals(relativeDirDiffSeparator);
+        addElements(elements, new File(fileLocation), relativeDirectory, false, index -> {
+            try {
+                Archive zipfile = new Archive(new File(fileLocation));
+                try {
+                    for (FileHeader rarArchive : zipfile.getFileHeaders()) {
+                        String name = rarArchive.getFileNameString();//This uses \ as separator, not /
+                        if (!CompressedHelper.isEntryPathValid(name)) {
+                            continue;
+                        }
 
-                if (isInBaseDir || isInRelativeDir) {
-                    elements.add(new CompressedObjectParcelable(RarDecompressor.convertName(rarArchive), 0, rarArchive.getDataSize(), rarArchive.isDirectory()));
+                        String path = RarDecompressor.convertName(rarArchive);
+                        index.add(ArchiveIndex.getParent(path), new ArchiveIndex.Entry(path, 0,
+                                rarArchive.getDataSize(), rarArchive.isDirectory()));
+                    }
+                } finally {
+                    zipfile.close();
                 }
+            } catch (RarException e) {
+                throw new IOException(e);
             }
-        } catch (RarException | IOException e) {
-            e.printStackTrace();
-        }
+        });
     }
 
 }
-
@@ -22,23 +22,19 @@
 
 package com.amaze.filemanager.asynchronous.asynctasks.compress;
 
-import android.content.Context;
-
 import com.amaze.filemanager.adapters.data.CompressedObjectParcelable;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndex;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 
-import static com.amaze.filemanager.filesystem.compressed.CompressedHelper.SEPARATOR;
-
 public class TarHelperTask extends CompressedHelperTask {
 
     private String filePath, relativePath;
@@ -52,31 +48,24 @@ public class TarHelperTask extends CompressedHelperTask {
 
     @Override
     void addElements(ArrayList<CompressedObjectParcelable> elements) {
-        TarArchiveInputStream tarInputStream = null;
-        try {
-            tarInputStream = new TarArchiveInputStream(new FileInputStream(filePath));
-
-            TarArchiveEntry entry;
-            while ((entry = tarInputStream.getNextTarEntry()) != null) {
-                String name = entry.getName();
-                if (!CompressedHelper.isEntryPathValid(name)) {
-                    continue;
-                }
-                if (name.endsWith(SEPARATOR)) name = name.substring(0, name.length() - 1);
-
-                boolean isInBaseDir = relativePath.equals("") && !name.contains(SEPARATOR);
-                boolean isInRelativeDir = name.contains(SEPARATOR)
-                        && name.substring(0, name.lastIndexOf(SEPARATOR)).equals(relativePath);
-
-                if (isInBaseDir || isInRelativeDir) {
-                    elements.add(new CompressedObjectParcelable(entry.getName(),
+        // the whole archive has to be read to list it, so its index is worth keeping
+        addElements(elements, new File(filePath), relativePath, true, index -> {
+            TarArchiveInputStream tarInputStream = new TarArchiveInputStream(new FileInputStream(filePath));
+            try {
+                TarArchiveEntry entry;
+                while ((entry = tarInputStream.getNextTarEntry()) != null) {
+                    String name = entry.getName();
+                    if (!CompressedHelper.isEntryPathValid(name)) {
+                        continue;
+                    }
+
+                    index.add(ArchiveIndex.getParent(name), new ArchiveIndex.Entry(name,
                             entry.getLastModifiedDate().getTime(), entry.getSize(), entry.isDirectory()));
                 }
+            } finally {
+                tarInputStream.close();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
+        });
     }
 
 }
@@ -28,6 +28,7 @@ import android.net.Uri;
 import com.amaze.filemanager.R;
 import com.amaze.filemanager.adapters.data.CompressedObjectParcelable;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
+import com.amaze.filemanager.filesystem.compressed.showcontents.ArchiveIndex;
 import com.amaze.filemanager.utils.OnAsyncTaskFinished;
 import com.amaze.filemanager.utils.application.AppConfig;
 
@@ -36,6 +37,8 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -61,78 +64,64 @@ public class ZipHelperTask extends CompressedHelperTask {
 
     @Override
     void addElements(ArrayList<CompressedObjectParcelable> elements) {
-        try {
-            ArrayList<CompressedObjectParcelable> wholelist = new ArrayList<>();
-            if (new File(fileLocation.getPath()).canRead()) {
+        File file = new File(fileLocation.getPath());
+        if (file.canRead()) {
+            addElements(elements, file, relativeDirectory, false, index -> {
                 ZipFile zipfile = new ZipFile(fileLocation.getPath());
-                for (Enumeration e = zipfile.entries(); e.hasMoreElements(); ) {
-                    ZipEntry entry = (ZipEntry) e.nextElement();
-                    if (!CompressedHelper.isEntryPathValid(entry.getName())) {
-                        AppConfig.toast(context.get(), context.get().getString(R.string.multiple_invalid_archive_entries));
-                        continue;
+                try {
+                    Set<String> added = new HashSet<>();
+                    for (Enumeration e = zipfile.entries(); e.hasMoreElements(); ) {
+                        addEntry(index, added, (ZipEntry) e.nextElement());
                     }
-                    wholelist.add(new CompressedObjectParcelable(entry.getName(), entry.getTime(), entry.getSize(), entry.isDirectory()));
+                } finally {
+                    zipfile.close();
                 }
-            } else {
+            });
+        } else {
+            // only readable as a stream, which can change under the same path, so not cached
+            try {
+                ArchiveIndex index = new ArchiveIndex();
+                Set<String> added = new HashSet<>();
                 ZipInputStream zipfile1 = new ZipInputStream(context.get().getContentResolver().openInputStream(fileLocation));
-                for (ZipEntry entry = zipfile1.getNextEntry(); entry != null; entry = zipfile1.getNextEntry()) {
-                    if (!CompressedHelper.isEntryPathValid(entry.getName())){
-                        AppConfig.toast(context.get(), context.get().getString(R.string.multiple_invalid_archive_entries));
-                        continue;
+                try {
+                    for (ZipEntry entry = zipfile1.getNextEntry(); entry != null; entry = zipfile1.getNextEntry()) {
+                        addEntry(index, added, entry);
                     }
-                    wholelist.add(new CompressedObjectParcelable(entry.getName(), entry.getTime(), entry.getSize(), entry.isDirectory()));
+                } finally {
+                    zipfile1.close();
                 }
+                addChildren(elements, index, relativeDirectory);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
+    }
 
-            ArrayList<String> strings = new ArrayList<>();
-
-            for (CompressedObjectParcelable entry : wholelist) {
-                File file = new File(entry.path);
-                if (relativeDirectory == null || relativeDirectory.trim().length() == 0) {
-                    String y = entry.path;
-                    if (y.startsWith("/"))
-                        y = y.substring(1, y.length());
-                    if (file.getParent() == null || file.getParent().length() == 0 || file.getParent().equals("/")) {
-                        if (!strings.contains(y)) {
-                            elements.add(new CompressedObjectParcelable(y, entry.date, entry.size, entry.directory));
-                            strings.add(y);
-                        }
-                    } else {
-                        String path = y.substring(0, y.indexOf("/") + 1);
-                        if (!strings.contains(path)) {
-                            CompressedObjectParcelable zipObj = new CompressedObjectParcelable(path, entry.date, entry.size, true);
-                            strings.add(path);
-                            elements.add(zipObj);
-                        }
-                    }
-                } else {
-                    String y = entry.path;
-                    if (entry.path.startsWith("/"))
-                        y = y.substring(1, y.length());
-
-                    if (file.getParent() != null && (file.getParent().equals(relativeDirectory) || file.getParent().equals("/" + relativeDirectory))) {
-                        if (!strings.contains(y)) {
-                            elements.add(new CompressedObjectParcelable(y, entry.date, entry.size, entry.directory));
-                            strings.add(y);
-                        }
-                    } else {
-                        if (y.startsWith(relativeDirectory + "/") && y.length() > relativeDirectory.length() + 1) {
-                            String path1 = y.substring(relativeDirectory.length() + 1, y.length());
+    /**
+     * Adds entry and every directory above it, which may not have an entry of their own; the
+     * leading "/" of the path is dropped
+     *
+     * @param added paths already in index, an entry is listed only once
+     */
+    private void addEntry(ArchiveIndex index, Set<String> added, ZipEntry entry) {
+        if (!CompressedHelper.isEntryPathValid(entry.getName())) {
+            AppConfig.toast(context.get(), context.get().getString(R.string.multiple_invalid_archive_entries));
+            return;
+        }
 
-                            int index = relativeDirectory.length() + 1 + path1.indexOf("/");
-                            String path = y.substring(0, index + 1);
-                            if (!strings.contains(path)) {
-                                CompressedObjectParcelable zipObj = new CompressedObjectParcelable(y.substring(0, index + 1), entry.date, entry.size, true);
-                                strings.add(path);
-                                elements.add(zipObj);
-                            }
-                        }
-                    }
+        String path = entry.getName();
+        if (path.startsWith("/")) path = path.substring(1);
 
-                }
+        for (int i = path.indexOf('/'); i != -1 && i < path.length() - 1; i = path.indexOf('/', i + 1)) {
+            String directory = path.substring(0, i + 1);
+            if (added.add(directory)) {
+                index.add(ArchiveIndex.getParent(directory), new ArchiveIndex.Entry(directory,
+                        entry.getTime(), entry.getSize(), true));
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        if (added.add(path)) {
+            index.add(ArchiveIndex.getParent(path), new ArchiveIndex.Entry(path, entry.getTime(),
+                    entry.getSize(), entry.isDirectory()));
         }
     }
 
@@ -47,6 +47,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 
 import static com.amaze.filemanager.filesystem.ssh.SshConnectionPool.SSH_CONNECT_TIMEOUT;
+import static com.amaze.filemanager.filesystem.ssh.SshConnectionPool.SSH_KEEP_ALIVE_INTERVAL;
 
 /**
  * {@link AsyncTask} for authenticating with SSH server to verify if parameters are correct.
@@ -57,7 +58,7 @@ import static com.amaze.filemanager.filesystem.ssh.SshConnectionPool.SSH_CONNECT
  * @see SSHClient#authPassword(String, String)
  * @see SSHClient#authPublickey(String, KeyProvider...)
  * @see com.amaze.filemanager.ui.dialogs.SftpConnectDialog#authenticateAndSaveSetup(String, String, int, String, String, String, String, KeyPair, boolean)
- * @see com.amaze.filemanager.filesystem.ssh.SshConnectionPool#create(Uri)
+ * @see com.amaze.filemanager.filesystem.ssh.SshConnectionPool#create(String)
  */
 public class SshAuthenticationTask extends AsyncTask<Void, Void, AsyncTaskResult<SSHClient>>
 {
@@ -96,10 +97,21 @@ public class SshAuthenticationTask extends AsyncTask<Void, Void, AsyncTaskResult
 
     @Override
     protected AsyncTaskResult<SSHClient> doInBackground(Void... voids) {
+        return authenticate();
+    }
+
+    /**
+     * Connects and authenticates on the calling thread, which must not be the main thread.
+     *
+     * Used by {@link com.amaze.filemanager.filesystem.ssh.SshConnectionPool} directly, so that
+     * creating pooled connections doesn't queue up behind every other {@link AsyncTask}.
+     */
+    public AsyncTaskResult<SSHClient> authenticate() {
 
         final SSHClient sshClient = new SSHClient(new CustomSshJConfig());
         sshClient.addHostKeyVerifier(hostKey);
         sshClient.setConnectTimeout(SSH_CONNECT_TIMEOUT);
+        sshClient.getConnection().getKeepAlive().setKeepAliveInterval(SSH_KEEP_ALIVE_INTERVAL);
 
         try {
             sshClient.connect(hostname, port);
@@ -140,9 +152,13 @@ public class SshAuthenticationTask extends AsyncTask<Void, Void, AsyncTaskResult
         }
     }
 
-    //If authentication failed, use Toast to notify user.
     @Override
     protected void onPostExecute(AsyncTaskResult<SSHClient> result) {
+        notifyFailure(result);
+    }
+
+    //If authentication failed, use Toast to notify user. Must be called on the main thread.
+    public void notifyFailure(AsyncTaskResult<SSHClient> result) {
 
         if(result.exception != null) {
             if(SocketException.class.isAssignableFrom(result.exception.getClass())
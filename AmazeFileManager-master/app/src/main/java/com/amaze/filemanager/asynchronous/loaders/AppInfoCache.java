@@ -0,0 +1,193 @@
+package com.amaze.filemanager.asynchronous.loaders;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.amaze.filemanager.utils.application.AppConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers what {@link AppListLoader} finds out slowly about each installed package: its label
+ * and the size and date of its APK.
+ *
+ * Entries are kept by package name and valid while the package isn't updated, that is, while
+ * its lastUpdateTime doesn't change. Labels depend on the language, so everything is forgotten
+ * when it changes. The cache is written to the app's files dir, so the next time the app list
+ * is opened only new and updated packages have to be looked at.
+ */
+public class AppInfoCache {
+
+    private static final String TAG = "AppInfoCache";
+
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_NAME = "app-info-cache";
+
+    public static final class Entry {
+        public final String label;
+        public final long size, lastModified, lastUpdateTime;
+
+        public Entry(@NonNull String label, long size, long lastModified, long lastUpdateTime) {
+            this.label = label;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+    }
+
+    @Nullable
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private String locale = null;
+    private boolean loaded = false;
+    private boolean changed = false;
+
+    AppInfoCache(@Nullable File file) {
+        this.file = file;
+    }
+
+    private static class AppInfoCacheHolder {
+        private static final AppInfoCache INSTANCE = new AppInfoCache(
+                AppConfig.getInstance() != null
+                        ? new File(AppConfig.getInstance().getFilesDir(), FILE_NAME) : null);
+    }
+
+    public static AppInfoCache getInstance() {
+        return AppInfoCacheHolder.INSTANCE;
+    }
+
+    /**
+     * Forgets every entry if the labels were loaded in another language
+     */
+    public synchronized void setLocale(@NonNull String locale) {
+        ensureLoaded();
+        if (!locale.equals(this.locale)) {
+            if (!entries.isEmpty()) changed = true;
+            entries.clear();
+            this.locale = locale;
+        }
+    }
+
+    /**
+     * @return the entry of the package, null if there's none or the package was updated since
+     */
+    @Nullable
+    public synchronized Entry get(@NonNull String packageName, long lastUpdateTime) {
+        ensureLoaded();
+        Entry entry = entries.get(packageName);
+        return entry != null && entry.lastUpdateTime == lastUpdateTime ? entry : null;
+    }
+
+    public synchronized void put(@NonNull String packageName, @NonNull Entry entry) {
+        ensureLoaded();
+        entries.put(packageName, entry);
+        changed = true;
+    }
+
+    /**
+     * Forgets a package, when it's removed or changed
+     */
+    public synchronized void remove(@NonNull String packageName) {
+        ensureLoaded();
+        if (entries.remove(packageName) != null) changed = true;
+    }
+
+    /**
+     * Forgets the packages that aren't installed anymore
+     */
+    public synchronized void retain(@NonNull Set<String> packageNames) {
+        ensureLoaded();
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (!packageNames.contains(iterator.next())) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the cache to its file, if anything changed since it was read or written
+     */
+    public synchronized void save() {
+        if (!changed || file == null) return;
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            output.writeInt(FILE_VERSION);
+            output.writeUTF(locale != null ? locale : "");
+            output.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue().label);
+                output.writeLong(entry.getValue().size);
+                output.writeLong(entry.getValue().lastModified);
+                output.writeLong(entry.getValue().lastUpdateTime);
+            }
+            output.close();
+            output = null;
+
+            if (temporaryFile.renameTo(file)) {
+                changed = false;
+            } else {
+                Log.w(TAG, "Couldn't replace cache file");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save cache", e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        if (file == null || !file.exists()) return;
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FILE_VERSION) return;
+
+            locale = input.readUTF();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String packageName = input.readUTF();
+                entries.put(packageName, new Entry(input.readUTF(), input.readLong(),
+                        input.readLong(), input.readLong()));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable cache", e);
+            entries.clear();
+            locale = null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.content.pm.PackageManager;
 import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.util.Pair;
 import android.text.format.Formatter;
+import android.util.Log;
 
 import com.amaze.filemanager.adapters.data.AppDataParcelable;
 import com.amaze.filemanager.utils.InterestingConfigChange;
@@ -15,16 +16,27 @@ import com.amaze.filemanager.utils.broadcast_receiver.PackageReceiver;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by vishal on 23/2/17.
  *
  * Class loads all the packages installed
+ *
+ * The label and APK size and date of each package are taken from {@link AppInfoCache}, only the
+ * packages that aren't there are looked at, on several threads.
  */
 
 public class AppListLoader extends AsyncTaskLoader<AppListLoader.AppsDataPair> {
 
+    private static final String TAG = "AppListLoader";
+
     private PackageManager packageManager;
     private PackageReceiver packageReceiver;
     private AppsDataPair mApps;
@@ -45,47 +57,81 @@ public class AppListLoader extends AsyncTaskLoader<AppListLoader.AppsDataPair> {
 
     @Override
     public AppsDataPair loadInBackground() {
-        List<ApplicationInfo> apps = packageManager.getInstalledApplications(
+        // unlike getInstalledApplications() this also has the version and update time
+        List<PackageInfo> packages = packageManager.getInstalledPackages(
                 PackageManager.MATCH_UNINSTALLED_PACKAGES |
                         PackageManager.MATCH_DISABLED_UNTIL_USED_COMPONENTS);
 
-        if (apps == null)
+        if (packages == null)
             return new AppsDataPair(Collections.emptyList(), Collections.emptyList());
 
-        mApps = new AppsDataPair(new ArrayList<>(apps.size()), new ArrayList<>(apps.size()));
-
-        for (ApplicationInfo object : apps) {
-            File sourceDir = new File(object.sourceDir);
-
-            String label = object.loadLabel(packageManager).toString();
-            PackageInfo info;
+        AppInfoCache cache = AppInfoCache.getInstance();
+        cache.setLocale(Locale.getDefault().toString());
+
+        final AppDataParcelable[] apps = new AppDataParcelable[packages.size()];
+        List<Callable<Void>> missing = new ArrayList<>();
+        Set<String> packageNames = new HashSet<>();
+        for (int i = 0; i < packages.size(); i++) {
+            final int index = i;
+            final PackageInfo info = packages.get(i);
+            packageNames.add(info.packageName);
+
+            AppInfoCache.Entry entry = cache.get(info.packageName, info.lastUpdateTime);
+            if (entry != null) {
+                apps[index] = createAppData(info, entry);
+            } else {
+                missing.add(() -> {
+                    ApplicationInfo object = info.applicationInfo;
+                    File sourceDir = new File(object.sourceDir);
+                    AppInfoCache.Entry loaded = new AppInfoCache.Entry(
+                            object.loadLabel(packageManager).toString(),
+                            sourceDir.length(), sourceDir.lastModified(), info.lastUpdateTime);
+                    cache.put(info.packageName, loaded);
+                    apps[index] = createAppData(info, loaded);
+                    return null;
+                });
+            }
+        }
 
+        if (!missing.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(missing.size(), Runtime.getRuntime().availableProcessors()));
             try {
-                info = packageManager.getPackageInfo(object.packageName, 0);
-            } catch (PackageManager.NameNotFoundException e) {
-                e.printStackTrace();
-                info = null;
+                executor.invokeAll(missing);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted loading apps", e);
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
             }
+        }
 
-            AppDataParcelable elem = new AppDataParcelable(
-                    label == null ? object.packageName : label,
-                    object.sourceDir, object.packageName,
-                    object.flags + "_" + (info!=null ? info.versionName:""),
-                    Formatter.formatFileSize(getContext(), sourceDir.length()),
-                    sourceDir.length(), sourceDir.lastModified());
+        cache.retain(packageNames);
+        cache.save();
 
-            mApps.first.add(elem);
+        mApps = new AppsDataPair(new ArrayList<>(apps.length), new ArrayList<>(apps.length));
+        for (AppDataParcelable app : apps) {
+            // null if loading it failed
+            if (app != null) mApps.first.add(app);
+        }
 
-            Collections.sort(mApps.first, new AppDataParcelable.AppDataSorter(sortBy, asc));
+        Collections.sort(mApps.first, new AppDataParcelable.AppDataSorter(sortBy, asc));
 
-            for (AppDataParcelable p : mApps.first) {
-                mApps.second.add(p.path);
-            }
+        for (AppDataParcelable p : mApps.first) {
+            mApps.second.add(p.path);
         }
 
         return mApps;
     }
 
+    private AppDataParcelable createAppData(PackageInfo info, AppInfoCache.Entry entry) {
+        ApplicationInfo object = info.applicationInfo;
+        return new AppDataParcelable(entry.label, object.sourceDir, object.packageName,
+                object.flags + "_" + (info.versionName != null ? info.versionName : ""),
+                Formatter.formatFileSize(getContext(), entry.size),
+                entry.size, entry.lastModified);
+    }
+
     @Override
     public void deliverResult(AppsDataPair data) {
         if (isReset()) {
@@ -116,7 +162,7 @@ public class AppListLoader extends AsyncTaskLoader<AppListLoader.AppsDataPair> {
             deliverResult(mApps);
         }
 
-        if (packageReceiver != null) {
+        if (packageReceiver == null) {
             packageReceiver = new PackageReceiver(this);
         }
 
@@ -18,6 +18,7 @@ import com.amaze.filemanager.ui.notifications.NotificationConstants;
 import com.amaze.filemanager.utils.DatapointParcelable;
 import com.amaze.filemanager.utils.ProgressHandler;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
+import com.amaze.filemanager.utils.ThroughputMeter;
 import com.amaze.filemanager.utils.Utils;
 
 import java.util.ArrayList;
@@ -90,7 +91,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
     /**
      * Publish the results of the progress to notification and {@link DatapointParcelable}
      * and eventually to {@link ProcessViewerFragment}
-     * @param speed          number of bytes being copied per sec
+     * @param speed          number of bytes being copied per sec, over the last seconds
      * @param isComplete     whether operation completed or ongoing (not supported at the moment)
      * @param move           if the files are to be moved
      */
@@ -99,6 +100,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
             String fileName = getProgressHandler().getFileName();
             long totalSize = getProgressHandler().getTotalSize();
             long writtenSize = getProgressHandler().getWrittenSize();
+            long secondsRemaining = getProgressHandler().getSecondsRemaining();
 
             //notification
             setPercentProgress(((float) writtenSize / totalSize) * 100);
@@ -108,7 +110,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
                 isNotificationTitleSet = true;
             }
 
-            if (ServiceWatcherUtil.state != ServiceWatcherUtil.ServiceWatcherInteractionInterface.STATE_HALTED) {
+            if (!getProgressHandler().isHalted()) {
 
                 String written = Formatter.formatFileSize(this, writtenSize) + "/" +
                         Formatter.formatFileSize(this, totalSize);
@@ -120,8 +122,8 @@ public abstract class AbstractProgressiveService extends Service implements Serv
                         Formatter.formatFileSize(this, speed) + "/s");
 
                 String remainingTime;
-                if (speed != 0) {
-                    remainingTime = Utils.formatTimer(Math.round((totalSize-writtenSize)/speed));
+                if (secondsRemaining != ThroughputMeter.UNKNOWN_TIME) {
+                    remainingTime = Utils.formatTimer(secondsRemaining);
                 } else {
                     remainingTime = getString(R.string.unknown);
                 }
@@ -164,7 +166,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
             //for processviewer
             DatapointParcelable intent = new DatapointParcelable(fileName,
                     getProgressHandler().getSourceSize(), getProgressHandler().getSourceFilesProcessed(),
-                    totalSize, writtenSize, speed, move, isComplete);
+                    totalSize, writtenSize, speed, secondsRemaining, move, isComplete);
             //putDataPackage(intent);
             addDatapoint(intent);
         } else publishCompletedResult(getNotificationId());
@@ -203,7 +205,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
      * Returns the {@link #getDataPackages()} list which contains
      * data to be transferred to {@link ProcessViewerFragment}
      * Method call is synchronized so as to avoid modifying the list
-     * by {@link ServiceWatcherUtil#handlerThread} while {@link MainActivity#runOnUiThread(Runnable)}
+     * by the {@link ServiceWatcherUtil} thread while {@link MainActivity#runOnUiThread(Runnable)}
      * is executing the callbacks in {@link ProcessViewerFragment}
      */
     public final synchronized DatapointParcelable getDataPackage(int index) {
@@ -217,7 +219,7 @@ public abstract class AbstractProgressiveService extends Service implements Serv
     /**
      * Puts a {@link DatapointParcelable} into a list
      * Method call is synchronized so as to avoid modifying the list
-     * by {@link ServiceWatcherUtil#handlerThread} while {@link MainActivity#runOnUiThread(Runnable)}
+     * by the {@link ServiceWatcherUtil} thread while {@link MainActivity#runOnUiThread(Runnable)}
      * is executing the callbacks in {@link ProcessViewerFragment}
      */
     private synchronized void putDataPackage(DatapointParcelable dataPackage) {
@@ -43,6 +43,7 @@ import com.amaze.filemanager.asynchronous.asynctasks.DeleteTask;
 import com.amaze.filemanager.database.CryptHandler;
 import com.amaze.filemanager.database.models.EncryptedEntry;
 import com.amaze.filemanager.exceptions.ShellNotRunningException;
+import com.amaze.filemanager.filesystem.FileIndex;
 import com.amaze.filemanager.filesystem.FileUtil;
 import com.amaze.filemanager.filesystem.HybridFile;
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
@@ -58,10 +59,14 @@ import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.application.AppConfig;
 import com.amaze.filemanager.utils.files.CryptUtil;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.amaze.filemanager.utils.files.GenericCopyUtil;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CopyService extends AbstractProgressiveService {
 
@@ -70,6 +75,7 @@ public class CopyService extends AbstractProgressiveService {
     public static final String TAG_COPY_SOURCES = "FILE_PATHS";
     public static final String TAG_COPY_OPEN_MODE = "MODE"; // target open mode
     public static final String TAG_COPY_MOVE = "move";
+    public static final String TAG_COPY_TOTAL_BYTES = "total_bytes"; // optional, computed if missing
     private static final String TAG_COPY_START_ID = "id";
 
     public static final String TAG_BROADCAST_COPY_CANCEL = "copycancel";
@@ -154,6 +160,7 @@ public class CopyService extends AbstractProgressiveService {
         b.putString(TAG_COPY_TARGET, targetPath);
         b.putInt(TAG_COPY_OPEN_MODE, mode);
         b.putParcelableArrayList(TAG_COPY_SOURCES, files);
+        b.putLong(TAG_COPY_TOTAL_BYTES, intent.getLongExtra(TAG_COPY_TOTAL_BYTES, -1));
 
         super.onStartCommand(intent, flags, startId);
         super.progressHalted();
@@ -246,7 +253,9 @@ public class CopyService extends AbstractProgressiveService {
 
             // setting up service watchers and initial data packages
             // finding total size on background thread (this is necessary condition for SMB!)
-            totalSize = FileUtils.getTotalBytes(sourceFiles, c);
+            // unless it was planned already
+            totalSize = p1[0].getLong(TAG_COPY_TOTAL_BYTES, -1);
+            if (totalSize < 0) totalSize = FileUtils.getTotalBytes(sourceFiles, c);
             totalSourceFiles = sourceFiles.size();
 
             progressHandler.setSourceSize(totalSourceFiles);
@@ -289,6 +298,14 @@ public class CopyService extends AbstractProgressiveService {
             watcherUtil.stopWatch();
             finalizeNotification(copy.failedFOps, move);
 
+            for (HybridFileParcelable sourceFile : sourceFiles) {
+                if (!copy.failedFOps.contains(sourceFile)) {
+                    FileIndex.getInstance().onFileCreated(c,
+                            new HybridFile(openMode, targetPath + "/" + sourceFile.getName()));
+                }
+            }
+            FolderSizeCalculator.getInstance().invalidate(targetPath);
+
             Intent intent = new Intent(MainActivity.KEY_INTENT_LOAD_LIST);
             intent.putExtra(MainActivity.KEY_INTENT_LOAD_LIST_FILE, targetPath);
             sendBroadcast(intent);
@@ -343,6 +360,22 @@ public class CopyService extends AbstractProgressiveService {
             ArrayList<HybridFile> failedFOps;
             ArrayList<HybridFileParcelable> toDelete;
 
+            private ExecutorService executor;
+
+            /**
+             * Number of copies handed to {@link #executor} and not yet finished, the calling thread
+             * waits on it until all of them (and the ones they spawned) are done
+             */
+            private final AtomicInteger pendingCopies = new AtomicInteger(0);
+
+            /**
+             * Set after the first failure, source files not yet started are then marked as failed
+             * instead of being copied, as was the case when copying one at a time
+             */
+            private volatile boolean aborted = false;
+
+            private final AtomicInteger processedSourceFiles = new AtomicInteger(0);
+
             Copy() {
                 failedFOps = new ArrayList<>();
                 toDelete = new ArrayList<>();
@@ -360,51 +393,63 @@ public class CopyService extends AbstractProgressiveService {
                 watcherUtil.watch(CopyService.this);
 
                 if (FileUtil.checkFolder((targetPath), c) == 1) {
+                    int parallelism = getMaxParallelCopies(mode);
+                    for (HybridFileParcelable sourceFile : sourceFiles) {
+                        parallelism = Math.min(parallelism, getMaxParallelCopies(sourceFile.getMode()));
+                    }
+
+                    executor = Executors.newFixedThreadPool(parallelism);
+                    // held by this thread until every source file has been submitted
+                    pendingCopies.set(1);
+
                     for (int i = 0; i < sourceFiles.size(); i++) {
-                        sourceProgress = i;
                         HybridFileParcelable f1 = (sourceFiles.get(i));
 
-                        try {
+                        HybridFile hFile;
+                        if (targetPath.contains(getExternalCacheDir().getPath())) {
+                            // the target open mode is not the one we're currently in!
+                            // we're processing the file for cache
+                            hFile = new HybridFile(OpenMode.FILE, targetPath, sourceFiles.get(i).getName(),
+                                    f1.isDirectory());
+                        } else {
 
-                            HybridFile hFile;
-                            if (targetPath.contains(getExternalCacheDir().getPath())) {
-                                // the target open mode is not the one we're currently in!
-                                // we're processing the file for cache
-                                hFile = new HybridFile(OpenMode.FILE, targetPath, sourceFiles.get(i).getName(),
-                                        f1.isDirectory());
-                            } else {
-
-                                // the target open mode is where we're currently at
-                                hFile = new HybridFile(mode, targetPath, sourceFiles.get(i).getName(),
-                                        f1.isDirectory());
-                            }
+                            // the target open mode is where we're currently at
+                            hFile = new HybridFile(mode, targetPath, sourceFiles.get(i).getName(),
+                                    f1.isDirectory());
+                        }
 
-                            if (!progressHandler.getCancelled()) {
-
-                                if ((f1.getMode() == OpenMode.ROOT || mode == OpenMode.ROOT)
-                                        && isRootExplorer) {
-                                    // either source or target are in root
-                                    Log.d(getClass().getSimpleName(), "either source or target are in root");
-                                    progressHandler.setSourceFilesProcessed(++sourceProgress);
-                                    copyRoot(f1, hFile, move);
-                                    continue;
-                                }
-                                progressHandler.setSourceFilesProcessed(++sourceProgress);
-                                copyFiles((f1), hFile, progressHandler);
-                            } else {
-                                break;
+                        if (progressHandler.getCancelled()) break;
+
+                        if ((f1.getMode() == OpenMode.ROOT || mode == OpenMode.ROOT)
+                                && isRootExplorer) {
+                            // either source or target are in root
+                            Log.d(getClass().getSimpleName(), "either source or target are in root");
+                            progressHandler.setSourceFilesProcessed(processedSourceFiles.incrementAndGet());
+                            try {
+                                copyRoot(f1, hFile, move);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                Log.e("CopyService", "Got exception checkout: " + f1.getPath());
+                                addFailedOp(f1);
                             }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            Log.e("CopyService", "Got exception checkout: " + f1.getPath());
-
-                            failedFOps.add(sourceFiles.get(i));
-                            for (int j = i + 1; j < sourceFiles.size(); j++)
-                                failedFOps.add(sourceFiles.get(j));
-                            break;
+                            continue;
                         }
+
+                        submit(f1, () -> {
+                            if (aborted) {
+                                addFailedOp(f1);
+                                return;
+                            }
+
+                            progressHandler.setSourceFilesProcessed(processedSourceFiles.incrementAndGet());
+                            copyFiles(f1, f1, hFile, progressHandler);
+                        });
                     }
 
+                    // wait for every copy (including the children of directories) to finish
+                    finishCopy();
+                    awaitCopies();
+                    executor.shutdown();
                 } else if (isRootExplorer) {
                     for (int i = 0; i < sourceFiles.size(); i++) {
                         if (!progressHandler.getCancelled()) {
@@ -436,20 +481,76 @@ public class CopyService extends AbstractProgressiveService {
                 }
             }
 
+            /**
+             * Hands a copy to the {@link #executor}, failures are attributed to the source file
+             * selected by the user which contains the file being copied
+             *
+             * @param rootSourceFile the source file selected by the user
+             */
+            private void submit(HybridFileParcelable rootSourceFile, CopyJob job) {
+                pendingCopies.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        if (!progressHandler.getCancelled()) job.run();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        Log.e("CopyService", "Got exception checkout: " + rootSourceFile.getPath());
+
+                        aborted = true;
+                        addFailedOp(rootSourceFile);
+                    } finally {
+                        finishCopy();
+                    }
+                });
+            }
+
+            private void finishCopy() {
+                if (pendingCopies.decrementAndGet() == 0) {
+                    synchronized (pendingCopies) {
+                        pendingCopies.notifyAll();
+                    }
+                }
+            }
+
+            private void awaitCopies() {
+                synchronized (pendingCopies) {
+                    while (pendingCopies.get() > 0) {
+                        try {
+                            pendingCopies.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            progressHandler.setCancelled(true);
+                            return;
+                        }
+                    }
+                }
+            }
+
+            private void addFailedOp(HybridFile file) {
+                synchronized (failedFOps) {
+                    if (!failedFOps.contains(file)) failedFOps.add(file);
+                }
+            }
+
             void copyRoot(HybridFileParcelable sourceFile, HybridFile targetFile, boolean move) {
 
                 try {
                     if (!move) RootUtils.copy(sourceFile.getPath(), targetFile.getPath());
                     else if (move) RootUtils.move(sourceFile.getPath(), targetFile.getPath());
-                    ServiceWatcherUtil.position += sourceFile.getSize();
+                    progressHandler.addProcessedBytes(sourceFile.getSize());
                 } catch (ShellNotRunningException e) {
                     e.printStackTrace();
-                    failedFOps.add(sourceFile);
+                    addFailedOp(sourceFile);
                 }
                 FileUtils.scanFile(targetFile.getFile(), c);
             }
 
-            private void copyFiles(final HybridFileParcelable sourceFile, final HybridFile targetFile,
+            /**
+             * Copies a file, or creates a directory and submits each one of its children as a
+             * separate copy, so that files of different directories are copied concurrently
+             */
+            private void copyFiles(final HybridFileParcelable rootSourceFile,
+                                   final HybridFileParcelable sourceFile, final HybridFile targetFile,
                                    final ProgressHandler progressHandler) throws IOException {
 
                 if (progressHandler.getCancelled()) return;
@@ -462,7 +563,7 @@ public class CopyService extends AbstractProgressiveService {
                     // 2. source file has a valid name or not
                     if (!Operations.isFileNameValid(sourceFile.getName())
                             || Operations.isCopyLoopPossible(sourceFile, targetFile)) {
-                        failedFOps.add(sourceFile);
+                        addFailedOp(sourceFile);
                         return;
                     }
                     targetFile.setLastModified(sourceFile.lastModified());
@@ -471,15 +572,12 @@ public class CopyService extends AbstractProgressiveService {
                     sourceFile.forEachChildrenFile(c, false, file -> {
                         HybridFile destFile = new HybridFile(targetFile.getMode(), targetFile.getPath(),
                                 file.getName(), file.isDirectory());
-                        try {
-                            copyFiles(file, destFile, progressHandler);
-                        } catch (IOException e) {
-                            throw new IllegalStateException(e);//throw unchecked exception, no throws needed
-                        }
+                        submit(rootSourceFile, () ->
+                                copyFiles(rootSourceFile, file, destFile, progressHandler));
                     });
                 } else {
                     if (!Operations.isFileNameValid(sourceFile.getName())) {
-                        failedFOps.add(sourceFile);
+                        addFailedOp(sourceFile);
                         return;
                     }
 
@@ -492,6 +590,34 @@ public class CopyService extends AbstractProgressiveService {
         }
     }
 
+    /**
+     * A single unit of work for {@link DoInBackground.Copy}
+     */
+    private interface CopyJob {
+        void run() throws IOException;
+    }
+
+    /**
+     * Maximum number of files copied at the same time from or to a given medium.
+     * OTG drives don't cope with concurrent access, network shares mostly wait on latency.
+     */
+    public static int getMaxParallelCopies(OpenMode mode) {
+        switch (mode) {
+            case OTG:
+                return 1;
+            case SMB:
+            case SFTP:
+                return 8;
+            case GDRIVE:
+            case DROPBOX:
+            case BOX:
+            case ONEDRIVE:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
     //check if copy is successful
     // avoid using the method as there is no way to know when we would be returning from command callbacks
     // rather confirm from the command result itself, inside it's callback
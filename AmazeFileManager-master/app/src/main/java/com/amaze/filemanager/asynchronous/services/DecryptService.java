@@ -28,6 +28,7 @@ import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.application.AppConfig;
 import com.amaze.filemanager.utils.files.CryptUtil;
 import com.amaze.filemanager.utils.files.EncryptDecryptUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 
 import java.util.ArrayList;
 
@@ -163,6 +164,7 @@ public class DecryptService extends AbstractProgressiveService {
 
             serviceWatcherUtil.stopWatch();
             finalizeNotification(failedOps, false);
+            FolderSizeCalculator.getInstance().invalidate(decryptPath);
 
             Intent intent = new Intent(EncryptDecryptUtils.DECRYPT_BROADCAST);
             intent.putExtra(MainActivity.KEY_INTENT_LOAD_LIST_FILE, "");
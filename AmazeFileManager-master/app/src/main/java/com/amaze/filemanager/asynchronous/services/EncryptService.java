@@ -22,6 +22,7 @@ import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.ui.notifications.NotificationConstants;
 import com.amaze.filemanager.utils.application.AppConfig;
 import com.amaze.filemanager.utils.files.CryptUtil;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.amaze.filemanager.utils.DatapointParcelable;
 import com.amaze.filemanager.utils.ObtainableServiceBinder;
 import com.amaze.filemanager.utils.OpenMode;
@@ -215,6 +216,8 @@ public class EncryptService extends AbstractProgressiveService {
 
             serviceWatcherUtil.stopWatch();
             finalizeNotification(failedOps, false);
+            // the encrypted file is written next to the source
+            FolderSizeCalculator.getInstance().invalidate(baseFile.getParent(context));
 
             Intent intent = new Intent(MainActivity.KEY_INTENT_LOAD_LIST);
             intent.putExtra(MainActivity.KEY_INTENT_LOAD_LIST_FILE, "");
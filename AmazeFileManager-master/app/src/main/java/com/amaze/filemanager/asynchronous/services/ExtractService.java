@@ -47,6 +47,7 @@ import com.amaze.filemanager.utils.ObtainableServiceBinder;
 import com.amaze.filemanager.utils.ProgressHandler;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.application.AppConfig;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 
 import java.io.File;
 import java.io.IOException;
@@ -222,6 +223,8 @@ public class ExtractService extends AbstractProgressiveService {
                        String[] entries) {
             this.extractService = new WeakReference<>(extractService);
             this.progressHandler = progressHandler;
+            // created before anything can fail, stopping it lets the next queued service start
+            watcherUtil = new ServiceWatcherUtil(progressHandler);
             compressedPath = cpath;
             extractionPath = epath;
             entriesToExtract = entries;
@@ -262,7 +265,6 @@ public class ExtractService extends AbstractProgressiveService {
                                 extractService.addFirstDatapoint(firstEntryName,
                                         1, totalBytes, false);
 
-                                watcherUtil = new ServiceWatcherUtil(progressHandler);
                                 watcherUtil.watch(ExtractService.this);
                             }
 
@@ -274,6 +276,11 @@ public class ExtractService extends AbstractProgressiveService {
                                 }
                             }
 
+                            @Override
+                            public void onProgress(long bytes) {
+                                progressHandler.addProcessedBytes(bytes);
+                            }
+
                             @Override
                             public void onFinish() {
                                 if (entriesToExtract == null){
@@ -302,12 +309,12 @@ public class ExtractService extends AbstractProgressiveService {
 
         @Override
         public void onPostExecute(Boolean hasInvalidEntries) {
+            watcherUtil.stopWatch();
+            FolderSizeCalculator.getInstance().invalidate(extractionPath);
+
             final ExtractService extractService = this.extractService.get();
             if(extractService == null) return;
 
-            // check whether watcherutil was initialized. It was not initialized when we got exception
-            // in extracting the file
-            if (watcherUtil != null) watcherUtil.stopWatch();
             Intent intent = new Intent(MainActivity.KEY_INTENT_LOAD_LIST);
             intent.putExtra(MainActivity.KEY_INTENT_LOAD_LIST_FILE, extractionPath);
             extractService.sendBroadcast(intent);
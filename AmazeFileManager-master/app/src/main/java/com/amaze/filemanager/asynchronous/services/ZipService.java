@@ -47,17 +47,13 @@ import com.amaze.filemanager.utils.ProgressHandler;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.application.AppConfig;
 import com.amaze.filemanager.utils.files.FileUtils;
-import com.amaze.filemanager.utils.files.GenericCopyUtil;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
+import com.amaze.filemanager.utils.files.ParallelZipCompressor;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class ZipService extends AbstractProgressiveService {
 
@@ -209,7 +205,6 @@ public class ZipService extends AbstractProgressiveService {
 
         @SuppressLint("StaticFieldLeak")
         private ZipService zipService;
-        private ZipOutputStream zos;
         private String zipPath;
         private ServiceWatcherUtil watcherUtil;
         private long totalBytes = 0L;
@@ -249,6 +244,7 @@ public class ZipService extends AbstractProgressiveService {
         @Override
         public void onPostExecute(Void a) {
             watcherUtil.stopWatch();
+            FolderSizeCalculator.getInstance().invalidate(zipPath);
             Intent intent = new Intent(MainActivity.KEY_INTENT_LOAD_LIST);
             intent.putExtra(MainActivity.KEY_INTENT_LOAD_LIST_FILE, zipPath);
             zipService.sendBroadcast(intent);
@@ -256,60 +252,21 @@ public class ZipService extends AbstractProgressiveService {
         }
 
         public void execute(final @NonNull Context context, ArrayList<File> baseFiles, String zipPath) {
-            OutputStream out;
             File zipDirectory = new File(zipPath);
             watcherUtil = new ServiceWatcherUtil(progressHandler);
             watcherUtil.watch(ZipService.this);
 
+            boolean compressed = false;
             try {
-                out = FileUtil.getOutputStream(zipDirectory, context);
-                zos = new ZipOutputStream(new BufferedOutputStream(out));
-
-                int fileProgress = 0;
-                for (File file : baseFiles) {
-                    if (isCancelled()) return;
-
-                    progressHandler.setFileName(file.getName());
-                    progressHandler.setSourceFilesProcessed(++fileProgress);
-                    compressFile(file, "");
-                }
+                OutputStream out = FileUtil.getOutputStream(zipDirectory, context);
+                if (out == null) return;
+                compressed = new ParallelZipCompressor(Runtime.getRuntime().availableProcessors(),
+                        progressHandler).compress(baseFiles, out);
             } catch (IOException e) {
                 e.printStackTrace();
             } finally {
-                try {
-                    zos.flush();
-                    zos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        private void compressFile(File file, String path) throws IOException, NullPointerException {
-            if (progressHandler.getCancelled()) return;
-
-            if (!file.isDirectory()) {
-                byte[] buf = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-                int len;
-                BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
-                zos.putNextEntry(new ZipEntry(path + "/" + file.getName()));
-                try {
-                    while ((len = in.read(buf)) > 0) {
-                        if (!progressHandler.getCancelled()) {
-                            zos.write(buf, 0, len);
-                            ServiceWatcherUtil.position += len;
-                        } else break;
-                    }
-                } finally {
-                    in.close();
-                }
-                return;
-            }
-
-            if (file.list() == null) return;
-
-            for (File currentFile : file.listFiles()) {
-                compressFile(currentFile, path + File.separator + file.getName());
+                // cancelled or failed, what was written isn't a valid archive
+                if (!compressed && zipDirectory.exists()) FileUtil.deleteFile(zipDirectory, context);
             }
         }
     }
@@ -47,6 +47,7 @@ import com.amaze.filemanager.R;
 import com.amaze.filemanager.utils.files.CryptUtil;
 
 import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServer;
 import org.apache.ftpserver.FtpServerFactory;
 import org.apache.ftpserver.ftplet.Authority;
@@ -80,12 +81,16 @@ public class FtpService extends Service implements Runnable {
     public static final String DEFAULT_USERNAME = "";
     public static final int DEFAULT_TIMEOUT = 600;   // default timeout, in sec
     public static final boolean DEFAULT_SECURE = false;
+    public static final String DEFAULT_PASSIVE_PORTS = "";  // any free port
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
     public static final String PORT_PREFERENCE_KEY = "ftpPort";
     public static final String KEY_PREFERENCE_PATH = "ftp_path";
     public static final String KEY_PREFERENCE_USERNAME = "ftp_username";
     public static final String KEY_PREFERENCE_PASSWORD = "ftp_password_encrypted";
     public static final String KEY_PREFERENCE_TIMEOUT = "ftp_timeout";
     public static final String KEY_PREFERENCE_SECURE = "ftp_secure";
+    public static final String KEY_PREFERENCE_PASSIVE_PORTS = "ftp_passive_ports";
+    public static final String KEY_PREFERENCE_MAX_CONNECTIONS = "ftp_max_connections";
     public static final String DEFAULT_PATH = Environment.getExternalStorageDirectory().getAbsolutePath();
     public static final String INITIALS_HOST_FTP = "ftp://";
     public static final String INITIALS_HOST_SFTP = "ftps://";
@@ -109,6 +114,7 @@ public class FtpService extends Service implements Runnable {
 
     private FtpServer server;
     protected static Thread serverThread = null;
+    private static volatile FtpTransferMonitor transferMonitor = null;
 
     private boolean isStartedByTile = false;
 
@@ -147,6 +153,12 @@ public class FtpService extends Service implements Runnable {
         ConnectionConfigFactory connectionConfigFactory = new ConnectionConfigFactory();
         connectionConfigFactory.setAnonymousLoginEnabled(true);
 
+        // clients transfer in parallel by opening more sessions, each transfer blocks a thread
+        int maxConnections = preferences.getInt(KEY_PREFERENCE_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        connectionConfigFactory.setMaxLogins(maxConnections);
+        connectionConfigFactory.setMaxAnonymousLogins(maxConnections);
+        connectionConfigFactory.setMaxThreads(maxConnections);
+
         serverFactory.setConnectionConfig(connectionConfigFactory.createConnectionConfig());
 
         String usernamePreference = preferences.getString(KEY_PREFERENCE_USERNAME, DEFAULT_USERNAME);
@@ -183,6 +195,11 @@ public class FtpService extends Service implements Runnable {
         } catch (FtpException e) {
             e.printStackTrace();
         }
+
+        FtpTransferMonitor monitor = new FtpTransferMonitor();
+        serverFactory.setFtplets(Collections.singletonMap("transfers", monitor));
+        serverFactory.setFileSystem(new MeteredFileSystemFactory(monitor));
+
         ListenerFactory fac = new ListenerFactory();
 
         if (preferences.getBoolean(KEY_PREFERENCE_SECURE, DEFAULT_SECURE)) {
@@ -209,10 +226,18 @@ public class FtpService extends Service implements Runnable {
         fac.setPort(getPort(preferences));
         fac.setIdleTimeout(preferences.getInt(KEY_PREFERENCE_TIMEOUT, DEFAULT_TIMEOUT));
 
+        DataConnectionConfigurationFactory dataConnectionConfigurationFactory = new DataConnectionConfigurationFactory();
+        String passivePorts = preferences.getString(KEY_PREFERENCE_PASSIVE_PORTS, DEFAULT_PASSIVE_PORTS);
+        if (isValidPassivePorts(passivePorts) && !passivePorts.equals(DEFAULT_PASSIVE_PORTS)) {
+            dataConnectionConfigurationFactory.setPassivePorts(passivePorts);
+        }
+        fac.setDataConnectionConfiguration(dataConnectionConfigurationFactory.createDataConnectionConfiguration());
+
         serverFactory.addListener("default", fac.createListener());
         try {
             server = serverFactory.createServer();
             server.start();
+            transferMonitor = monitor;
             sendBroadcast(new Intent(FtpService.ACTION_STARTED).setPackage(getPackageName()).putExtra(TAG_STARTED_BY_TILE, isStartedByTile));
         } catch (Exception e) {
             sendBroadcast(new Intent(FtpService.ACTION_FAILEDTOSTART).setPackage(getPackageName()));
@@ -232,6 +257,7 @@ public class FtpService extends Service implements Runnable {
         if (!serverThread.isAlive()) {
             serverThread = null;
         }
+        transferMonitor = null;
         if (server != null) {
             server.stop();
             sendBroadcast(new Intent(FtpService.ACTION_STOPPED).setPackage(getPackageName()));
@@ -257,6 +283,34 @@ public class FtpService extends Service implements Runnable {
         return serverThread != null;
     }
 
+    /**
+     * @return the clients connected, with what they are transferring
+     */
+    public static List<FtpSessionMetrics> getSessions() {
+        FtpTransferMonitor monitor = transferMonitor;
+        return monitor == null ? Collections.emptyList() : monitor.getSessions();
+    }
+
+    /**
+     * @param passivePorts comma separated ports and ranges, like "2300-2399,2500", or empty for any
+     */
+    public static boolean isValidPassivePorts(String passivePorts) {
+        if (passivePorts.trim().isEmpty()) return true;
+
+        for (String part : passivePorts.split(",")) {
+            String[] range = part.trim().split("-", -1);
+            if (range.length > 2) return false;
+            try {
+                int start = Integer.parseInt(range[0].trim());
+                int end = range.length == 2 ? Integer.parseInt(range[1].trim()) : start;
+                if (start < 1024 || end > 65535 || start > end) return false;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static boolean isConnectedToLocalNetwork(Context context) {
         ConnectivityManager cm = (ConnectivityManager) context
                 .getSystemService(Context.CONNECTIVITY_SERVICE);
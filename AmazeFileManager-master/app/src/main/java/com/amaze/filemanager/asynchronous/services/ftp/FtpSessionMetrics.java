@@ -0,0 +1,93 @@
+package com.amaze.filemanager.asynchronous.services.ftp;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a client connected to {@link FtpService} transferred, updated live while it transfers.
+ * See {@link FtpTransferMonitor}.
+ */
+public class FtpSessionMetrics {
+
+    private final InetSocketAddress clientAddress;
+    private final long connectedAt = SystemClock.elapsedRealtime();
+    private final AtomicLong bytesSent = new AtomicLong(), bytesReceived = new AtomicLong();
+
+    private volatile String currentFile;
+    private volatile boolean uploading;
+    private volatile long transferStartedAt, transferEndedAt;
+    private final AtomicLong transferBytes = new AtomicLong();
+
+    FtpSessionMetrics(InetSocketAddress clientAddress) {
+        this.clientAddress = clientAddress;
+    }
+
+    void onTransferStart(String file, boolean upload) {
+        currentFile = file;
+        uploading = upload;
+        transferBytes.set(0);
+        transferStartedAt = SystemClock.elapsedRealtime();
+        transferEndedAt = 0;
+    }
+
+    void onTransferEnd() {
+        transferEndedAt = SystemClock.elapsedRealtime();
+        currentFile = null;
+    }
+
+    void onSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+        transferBytes.addAndGet(bytes);
+    }
+
+    void onReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+        transferBytes.addAndGet(bytes);
+    }
+
+    public InetSocketAddress getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * @return milliseconds since the client connected
+     */
+    public long getConnectedTime() {
+        return SystemClock.elapsedRealtime() - connectedAt;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the argument of the transfer going on, null if the client isn't transferring
+     */
+    @Nullable
+    public String getCurrentFile() {
+        return currentFile;
+    }
+
+    public boolean isUploading() {
+        return uploading;
+    }
+
+    /**
+     * @return bytes per second of the transfer going on, or of the last one
+     */
+    public long getThroughput() {
+        long startedAt = transferStartedAt;
+        if (startedAt == 0) return 0;
+
+        long endedAt = transferEndedAt;
+        long elapsed = (endedAt == 0 ? SystemClock.elapsedRealtime() : endedAt) - startedAt;
+        return transferBytes.get() * 1000 / Math.max(1, elapsed);
+    }
+}
@@ -0,0 +1,89 @@
+package com.amaze.filemanager.asynchronous.services.ftp;
+
+import android.support.annotation.Nullable;
+
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps {@link FtpSessionMetrics} for every client connected.
+ *
+ * The server runs each command, transfers included, in a single thread between
+ * {@link #beforeCommand(FtpSession, FtpRequest)} and
+ * {@link #afterCommand(FtpSession, FtpRequest, FtpReply)}, so the streams opened by
+ * {@link MeteredFileSystemFactory} find the session they transfer for in a {@link ThreadLocal}.
+ */
+public class FtpTransferMonitor extends DefaultFtplet {
+
+    private final Map<UUID, FtpSessionMetrics> sessions = new ConcurrentHashMap<>();
+    private final ThreadLocal<FtpSessionMetrics> transferring = new ThreadLocal<>();
+
+    @Override
+    public FtpletResult onConnect(FtpSession session) throws FtpException, IOException {
+        sessions.put(session.getSessionId(), new FtpSessionMetrics(session.getClientAddress()));
+        return super.onConnect(session);
+    }
+
+    @Override
+    public FtpletResult onDisconnect(FtpSession session) throws FtpException, IOException {
+        sessions.remove(session.getSessionId());
+        return super.onDisconnect(session);
+    }
+
+    @Override
+    public FtpletResult beforeCommand(FtpSession session, FtpRequest request)
+            throws FtpException, IOException {
+        // afterCommand() isn't called when a command fails, this thread may still hold
+        // the transfer of whatever session it ran a command for last
+        endTransfer();
+
+        String command = request.getCommand().toUpperCase();
+        boolean download = command.equals("RETR");
+        boolean upload = command.equals("STOR") || command.equals("APPE") || command.equals("STOU");
+
+        FtpSessionMetrics metrics = sessions.get(session.getSessionId());
+        if (metrics != null && (download || upload)) {
+            metrics.onTransferStart(request.getArgument(), upload);
+            transferring.set(metrics);
+        }
+        return super.beforeCommand(session, request);
+    }
+
+    @Override
+    public FtpletResult afterCommand(FtpSession session, FtpRequest request, FtpReply reply)
+            throws FtpException, IOException {
+        endTransfer();
+        return super.afterCommand(session, request, reply);
+    }
+
+    private void endTransfer() {
+        FtpSessionMetrics metrics = transferring.get();
+        if (metrics != null) {
+            metrics.onTransferEnd();
+            transferring.remove();
+        }
+    }
+
+    /**
+     * @return the session transferring in this thread, if any
+     */
+    @Nullable
+    FtpSessionMetrics getCurrentTransfer() {
+        return transferring.get();
+    }
+
+    public List<FtpSessionMetrics> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+}
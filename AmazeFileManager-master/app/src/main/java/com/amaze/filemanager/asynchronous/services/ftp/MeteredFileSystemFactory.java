@@ -0,0 +1,251 @@
+package com.amaze.filemanager.asynchronous.services.ftp;
+
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The native file system, with files read and written through large buffers and the bytes
+ * transferred counted in the {@link FtpSessionMetrics} of the session.
+ *
+ * The server copies data connections in 4KB chunks, which over FUSE backed storage means a
+ * system call and a context switch for each of them; buffering here turns those into few large
+ * reads and writes.
+ */
+public class MeteredFileSystemFactory implements FileSystemFactory {
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private final NativeFileSystemFactory nativeFileSystemFactory = new NativeFileSystemFactory();
+    private final FtpTransferMonitor monitor;
+
+    public MeteredFileSystemFactory(FtpTransferMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public FileSystemView createFileSystemView(User user) throws FtpException {
+        return new MeteredFileSystemView(nativeFileSystemFactory.createFileSystemView(user));
+    }
+
+    private class MeteredFileSystemView implements FileSystemView {
+        private final FileSystemView view;
+
+        MeteredFileSystemView(FileSystemView view) {
+            this.view = view;
+        }
+
+        @Override
+        public FtpFile getHomeDirectory() throws FtpException {
+            return new MeteredFtpFile(view.getHomeDirectory());
+        }
+
+        @Override
+        public FtpFile getWorkingDirectory() throws FtpException {
+            return new MeteredFtpFile(view.getWorkingDirectory());
+        }
+
+        @Override
+        public boolean changeWorkingDirectory(String dir) throws FtpException {
+            return view.changeWorkingDirectory(dir);
+        }
+
+        @Override
+        public FtpFile getFile(String file) throws FtpException {
+            FtpFile ftpFile = view.getFile(file);
+            return ftpFile == null ? null : new MeteredFtpFile(ftpFile);
+        }
+
+        @Override
+        public boolean isRandomAccessible() throws FtpException {
+            return view.isRandomAccessible();
+        }
+
+        @Override
+        public void dispose() {
+            view.dispose();
+        }
+    }
+
+    private class MeteredFtpFile implements FtpFile {
+        private final FtpFile file;
+
+        MeteredFtpFile(FtpFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public InputStream createInputStream(long offset) throws IOException {
+            final FtpSessionMetrics metrics = monitor.getCurrentTransfer();
+            InputStream in = new BufferedInputStream(file.createInputStream(offset), BUFFER_SIZE);
+            if (metrics == null) return in;
+
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if (read != -1) metrics.onSent(1);
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) metrics.onSent(read);
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            final FtpSessionMetrics metrics = monitor.getCurrentTransfer();
+            OutputStream out = new BufferedOutputStream(file.createOutputStream(offset), BUFFER_SIZE);
+            if (metrics == null) return out;
+
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    metrics.onReceived(1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    // FilterOutputStream would write byte by byte
+                    out.write(b, off, len);
+                    metrics.onReceived(len);
+                }
+            };
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return file.getAbsolutePath();
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public boolean isHidden() {
+            return file.isHidden();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return file.isDirectory();
+        }
+
+        @Override
+        public boolean isFile() {
+            return file.isFile();
+        }
+
+        @Override
+        public boolean doesExist() {
+            return file.doesExist();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return file.isReadable();
+        }
+
+        @Override
+        public boolean isWritable() {
+            return file.isWritable();
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return file.isRemovable();
+        }
+
+        @Override
+        public String getOwnerName() {
+            return file.getOwnerName();
+        }
+
+        @Override
+        public String getGroupName() {
+            return file.getGroupName();
+        }
+
+        @Override
+        public int getLinkCount() {
+            return file.getLinkCount();
+        }
+
+        @Override
+        public long getLastModified() {
+            return file.getLastModified();
+        }
+
+        @Override
+        public boolean setLastModified(long time) {
+            return file.setLastModified(time);
+        }
+
+        @Override
+        public long getSize() {
+            return file.getSize();
+        }
+
+        @Override
+        public Object getPhysicalFile() {
+            return file.getPhysicalFile();
+        }
+
+        @Override
+        public boolean mkdir() {
+            return file.mkdir();
+        }
+
+        @Override
+        public boolean delete() {
+            return file.delete();
+        }
+
+        @Override
+        public boolean move(FtpFile destination) {
+            // the native file system only moves to its own files
+            return file.move(((MeteredFtpFile) destination).file);
+        }
+
+        @Override
+        public List<FtpFile> listFiles() {
+            List<? extends FtpFile> files = file.listFiles();
+            if (files == null) return null;
+
+            List<FtpFile> metered = new ArrayList<>(files.size());
+            for (FtpFile ftpFile : files) metered.add(new MeteredFtpFile(ftpFile));
+            return metered;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof MeteredFtpFile && file.equals(((MeteredFtpFile) obj).file);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode();
+        }
+    }
+}
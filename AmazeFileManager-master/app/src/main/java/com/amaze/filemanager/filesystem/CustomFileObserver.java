@@ -5,6 +5,10 @@ import android.os.FileObserver;
 import android.os.Handler;
 import android.support.annotation.RequiresApi;
 
+import com.amaze.filemanager.utils.OpenMode;
+import com.amaze.filemanager.utils.application.AppConfig;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -94,10 +98,15 @@ public class CustomFileObserver extends FileObserver {
             case CREATE:
             case MOVED_TO:
                 pathsAdded.add(path);
+                FileIndex.getInstance().onFileCreated(AppConfig.getInstance(),
+                        new HybridFile(OpenMode.FILE, this.path + "/" + path));
+                FolderSizeCalculator.getInstance().invalidate(this.path + "/" + path);
                 break;
             case DELETE:
             case MOVED_FROM:
                 pathsRemoved.add(path);
+                FileIndex.getInstance().onFileDeleted(this.path + "/" + path);
+                FolderSizeCalculator.getInstance().invalidate(this.path + "/" + path);
                 break;
             case DELETE_SELF:
             case MOVE_SELF:
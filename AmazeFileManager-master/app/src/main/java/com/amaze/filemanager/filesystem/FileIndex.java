@@ -0,0 +1,375 @@
+package com.amaze.filemanager.filesystem;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.amaze.filemanager.asynchronous.asynctasks.SearchAsyncTask;
+import com.amaze.filemanager.utils.OnFileFound;
+import com.amaze.filemanager.utils.OpenMode;
+import com.amaze.filemanager.utils.application.AppConfig;
+import com.amaze.filemanager.utils.files.ParallelFileWalker;
+import com.googlecode.concurrenttrees.common.KeyValuePair;
+import com.googlecode.concurrenttrees.radix.ConcurrentRadixTree;
+import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharArrayNodeFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Index of the file names in local and OTG storage, so that searches don't have to walk the
+ * filesystem every time.
+ *
+ * Paths are kept in a {@link ConcurrentRadixTree}, the same structure {@link com.amaze.filemanager.utils.DataUtils}
+ * uses for hidden files, which shares the storage of common path prefixes. A root is indexed the
+ * first time it's searched through a live walk (see {@link SearchAsyncTask}), and the index is
+ * then kept up to date by {@link CustomFileObserver} and by the file operations. Roots indexed
+ * more than {@link #MAX_AGE} ago are walked again, to pick up changes made while the app wasn't
+ * looking.
+ *
+ * The index is saved to the app's private storage a few seconds after it changes.
+ */
+public class FileIndex {
+
+    private static final String TAG = "FileIndex";
+
+    private static final String INDEX_FILE_NAME = "file_index";
+    private static final int INDEX_FILE_VERSION = 1;
+
+    public static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private static final long SAVE_DELAY_SECONDS = 10;
+
+    private final ConcurrentRadixTree<Entry> entries =
+            new ConcurrentRadixTree<>(new DefaultCharArrayNodeFactory());
+
+    /**
+     * Roots fully walked, with the time they were walked at
+     */
+    private final Map<String, Long> roots = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private volatile boolean loaded = false;
+    private volatile boolean saveScheduled = false;
+
+    private FileIndex() {
+    }
+
+    private static class FileIndexHolder {
+        private static final FileIndex INSTANCE = new FileIndex();
+    }
+
+    public static FileIndex getInstance() {
+        return FileIndexHolder.INSTANCE;
+    }
+
+    /**
+     * Whether the index can hold files of the given medium
+     */
+    public static boolean isIndexable(HybridFile file) {
+        return file.getMode() == OpenMode.FILE || file.getMode() == OpenMode.OTG;
+    }
+
+    /**
+     * @return whether the given path is inside a root fully indexed recently enough
+     */
+    public boolean isIndexed(@NonNull String path) {
+        ensureLoaded();
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> root : roots.entrySet()) {
+            if (isInside(path, root.getKey()) && now - root.getValue() < MAX_AGE) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds all indexed files under the given directory whose name passes the filter
+     */
+    public void search(@NonNull String path, @NonNull SearchAsyncTask.SearchFilter filter,
+                       @NonNull OnFileFound onFileFound) {
+        ensureLoaded();
+
+        String prefix = path.endsWith("/") ? path : path + "/";
+        for (KeyValuePair<Entry> pair : entries.getKeyValuePairsForKeysStartingWith(prefix)) {
+            String filePath = pair.getKey().toString();
+            String name = filePath.substring(filePath.lastIndexOf('/') + 1);
+            if (filter.searchFilter(name)) {
+                onFileFound.onFileFound(pair.getValue().toFile(filePath, name));
+            }
+        }
+    }
+
+    /**
+     * Forgets everything known about the given root, before walking it again
+     */
+    public void startIndexing(@NonNull String root) {
+        ensureLoaded();
+        // the roots nested in it lose their entries too
+        for (String indexed : roots.keySet()) {
+            if (isInside(indexed, root)) roots.remove(indexed);
+        }
+        removeTree(root);
+    }
+
+    /**
+     * Adds a file found while walking a root, see {@link #startIndexing(String)}
+     */
+    public void add(@NonNull HybridFileParcelable file) {
+        entries.put(file.getPath(), new Entry(file));
+    }
+
+    /**
+     * Marks a root as completely walked, searches below it will now use the index
+     */
+    public void finishIndexing(@NonNull String root) {
+        roots.put(root, System.currentTimeMillis());
+        scheduleSave();
+    }
+
+    /**
+     * Indexes a file (and its children, if it's a directory) created or moved in by a file
+     * operation. Does nothing if it's outside of the indexed roots.
+     * Runs in the background, updates are applied in the order they're reported.
+     */
+    public void onFileCreated(@NonNull Context context, @NonNull HybridFile file) {
+        if (!isIndexable(file)) return;
+
+        executor.execute(() -> {
+            if (!isInsideRoot(file.getPath())) return;
+
+            HybridFileParcelable generated = generate(context, file);
+            if (generated == null) return;
+
+            add(generated);
+            if (generated.isDirectory()) {
+                new ParallelFileWalker(context, false, ParallelFileWalker.getParallelism(file, false))
+                        .walk(generated, child -> {
+                            add(child);
+                            return true;
+                        });
+            }
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Removes a deleted or moved out file (and its children) from the index.
+     * Runs in the background, see {@link #onFileCreated(Context, HybridFile)}.
+     */
+    public void onFileDeleted(@NonNull String path) {
+        executor.execute(() -> {
+            if (!isInsideRoot(path)) return;
+
+            removeTree(path);
+            scheduleSave();
+        });
+    }
+
+    private void removeTree(String path) {
+        entries.remove(path);
+
+        ArrayList<String> children = new ArrayList<>();
+        for (CharSequence child : entries.getKeysStartingWith(path.endsWith("/") ? path : path + "/")) {
+            children.add(child.toString());
+        }
+        for (String child : children) {
+            entries.remove(child);
+        }
+    }
+
+    private boolean isInsideRoot(String path) {
+        ensureLoaded();
+
+        for (String root : roots.keySet()) {
+            if (isInside(path, root)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isInside(String path, String root) {
+        return path.equals(root)
+                || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    @Nullable
+    private static HybridFileParcelable generate(Context context, HybridFile file) {
+        if (file.getMode() == OpenMode.FILE) {
+            File javaFile = new File(file.getPath());
+            return javaFile.exists() ? RootHelper.generateBaseFile(javaFile, true) : null;
+        }
+
+        try {
+            if (!file.exists(context)) return null;
+            HybridFileParcelable generated = new HybridFileParcelable(file.getPath(), "",
+                    file.lastModified(), file.length(context), file.isDirectory(context));
+            generated.setMode(file.getMode());
+            return generated;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't index " + file.getPath(), e);
+            return null;
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        File indexFile = getIndexFile();
+        if (indexFile == null || !indexFile.exists()) return;
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                    new FileInputStream(indexFile))));
+            if (input.readInt() != INDEX_FILE_VERSION) return;
+
+            int rootCount = input.readInt();
+            for (int i = 0; i < rootCount; i++) {
+                String root = input.readUTF();
+                roots.put(root, input.readLong());
+            }
+
+            int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = input.readUTF();
+                entries.put(path, Entry.read(input));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable index", e);
+            roots.clear();
+            for (CharSequence key : entries.getKeysStartingWith("")) entries.remove(key);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+
+        executor.schedule(() -> {
+            saveScheduled = false;
+            save();
+        }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void save() {
+        File indexFile = getIndexFile();
+        if (indexFile == null) return;
+
+        File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            ArrayList<KeyValuePair<Entry>> snapshot = new ArrayList<>();
+            for (KeyValuePair<Entry> pair : entries.getKeyValuePairsForKeysStartingWith("")) {
+                snapshot.add(pair);
+            }
+
+            output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                    new FileOutputStream(temporaryFile))));
+            output.writeInt(INDEX_FILE_VERSION);
+
+            ArrayList<Map.Entry<String, Long>> rootsSnapshot = new ArrayList<>(roots.entrySet());
+            output.writeInt(rootsSnapshot.size());
+            for (Map.Entry<String, Long> root : rootsSnapshot) {
+                output.writeUTF(root.getKey());
+                output.writeLong(root.getValue());
+            }
+
+            output.writeInt(snapshot.size());
+            for (KeyValuePair<Entry> pair : snapshot) {
+                output.writeUTF(pair.getKey().toString());
+                pair.getValue().write(output);
+            }
+            output.close();
+            output = null;
+
+            if (!temporaryFile.renameTo(indexFile)) {
+                Log.w(TAG, "Couldn't replace index file");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save index", e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private File getIndexFile() {
+        AppConfig appConfig = AppConfig.getInstance();
+        return appConfig == null ? null : new File(appConfig.getFilesDir(), INDEX_FILE_NAME);
+    }
+
+    /**
+     * What's kept for each file, enough to show it in the results without touching the filesystem
+     */
+    private static final class Entry {
+        final OpenMode mode;
+        final boolean directory;
+        final long size;
+        final long date;
+        final String permission;
+
+        Entry(HybridFileParcelable file) {
+            this(file.getMode(), file.isDirectory(), file.getSize(), file.getDate(),
+                    file.getPermission() == null ? "" : file.getPermission());
+        }
+
+        Entry(OpenMode mode, boolean directory, long size, long date, String permission) {
+            this.mode = mode;
+            this.directory = directory;
+            this.size = size;
+            this.date = date;
+            this.permission = permission;
+        }
+
+        HybridFileParcelable toFile(String path, String name) {
+            HybridFileParcelable file = new HybridFileParcelable(path, permission, date, size, directory);
+            file.setMode(mode);
+            file.setName(name);
+            return file;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeByte(mode.ordinal());
+            output.writeBoolean(directory);
+            output.writeLong(size);
+            output.writeLong(date);
+            output.writeUTF(permission);
+        }
+
+        static Entry read(DataInputStream input) throws IOException {
+            return new Entry(OpenMode.getOpenMode(input.readByte()), input.readBoolean(),
+                    input.readLong(), input.readLong(), input.readUTF());
+        }
+    }
+}
@@ -372,7 +372,7 @@ public abstract class FileUtil {
      * @param file the file to be deleted.
      * @return True if successfully deleted.
      */
-    static boolean deleteFile(@NonNull final File file, Context context) {
+    public static boolean deleteFile(@NonNull final File file, Context context) {
         // First try the normal deletion.
         if (file == null) return true;
         boolean fileDelete = rmdir(file, context);
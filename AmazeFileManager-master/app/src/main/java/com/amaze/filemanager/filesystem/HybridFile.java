@@ -17,7 +17,6 @@ import com.amaze.filemanager.filesystem.ssh.Statvfs;
 import com.amaze.filemanager.fragments.preference_fragments.PreferencesConstants;
 
 import com.amaze.filemanager.filesystem.ssh.SFtpClientTemplate;
-import com.amaze.filemanager.filesystem.ssh.SshClientTemplate;
 import com.amaze.filemanager.filesystem.ssh.SshClientUtils;
 import com.amaze.filemanager.utils.application.AppConfig;
 
@@ -28,14 +27,13 @@ import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.RootUtils;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.cloudrail.si.interfaces.CloudStorage;
 import com.cloudrail.si.types.SpaceAllocation;
 
-import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.common.Buffer;
 import net.schmizz.sshj.sftp.FileAttributes;
 import net.schmizz.sshj.sftp.FileMode;
-import net.schmizz.sshj.sftp.RemoteFile;
 import net.schmizz.sshj.sftp.RemoteResourceInfo;
 import net.schmizz.sshj.sftp.SFTPClient;
 import net.schmizz.sshj.sftp.SFTPException;
@@ -49,7 +47,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.EnumSet;
 
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
@@ -551,18 +548,9 @@ public class HybridFile {
 
         switch (mode) {
             case SFTP:
-                return folderSize(AppConfig.getInstance());
             case SMB:
-                try {
-                    size = FileUtils.folderSize(new SmbFile(path));
-                } catch (MalformedURLException e) {
-                    size = 0L;
-                    e.printStackTrace();
-                }
-                break;
             case FILE:
-                size = FileUtils.folderSize(new File(path), null);
-                break;
+                return folderSize(AppConfig.getInstance());
             case ROOT:
                 HybridFileParcelable baseFile = generateBaseFileFromParent();
                 if (baseFile != null) size = baseFile.getSize();
@@ -589,29 +577,17 @@ public class HybridFile {
                     }
                 });
             case SMB:
-                try {
-                    size = FileUtils.folderSize(new SmbFile(path));
-                } catch (MalformedURLException e) {
-                    size = 0l;
-                    e.printStackTrace();
-                }
-                break;
             case FILE:
-                size = FileUtils.folderSize(new File(path), null);
-                break;
-            case ROOT:
-                HybridFileParcelable baseFile=generateBaseFileFromParent();
-                if(baseFile!=null) size = baseFile.getSize();
-                break;
             case OTG:
-                size = FileUtils.otgFolderSize(path, context);
-                break;
             case DROPBOX:
             case BOX:
             case GDRIVE:
             case ONEDRIVE:
-                size = FileUtils.folderSizeCloud(mode,
-                        dataUtils.getAccount(mode).getMetadata(CloudUtil.stripPath(mode, path)));
+                size = FolderSizeCalculator.getInstance().getSize(context, this, null);
+                break;
+            case ROOT:
+                HybridFileParcelable baseFile=generateBaseFileFromParent();
+                if(baseFile!=null) size = baseFile.getSize();
                 break;
             default:
                 return 0l;
@@ -903,25 +879,7 @@ public class HybridFile {
     public InputStream getInputStream() {
         InputStream inputStream;
         if (isSftp()) {
-            return SshClientUtils.execute(new SFtpClientTemplate(path) {
-                @Override
-                public InputStream execute(SFTPClient client) throws IOException {
-                    final RemoteFile rf = client.open(SshClientUtils.extractRemotePathFrom(path));
-                    return rf. new RemoteFileInputStream(){
-                        @Override
-                        public void close() throws IOException {
-                            try
-                            {
-                                super.close();
-                            }
-                            finally
-                            {
-                                rf.close();
-                            }
-                        }
-                    };
-                }
-            });
+            return SshClientUtils.openInputStream(path);
         }
         else if (isSmb()) {
             try {
@@ -946,26 +904,7 @@ public class HybridFile {
 
         switch (mode) {
             case SFTP:
-                inputStream = SshClientUtils.execute(new SFtpClientTemplate(path, false) {
-                    @Override
-                    public InputStream execute(final SFTPClient client) throws IOException {
-                        final RemoteFile rf = client.open(SshClientUtils.extractRemotePathFrom(path));
-                        return rf. new RemoteFileInputStream(){
-                            @Override
-                            public void close() throws IOException {
-                                try
-                                {
-                                    super.close();
-                                }
-                                finally
-                                {
-                                    rf.close();
-                                    client.close();
-                                }
-                            }
-                        };
-                    }
-                });
+                inputStream = SshClientUtils.openInputStream(path);
                 break;
             case SMB:
                 try {
@@ -1019,29 +958,7 @@ public class HybridFile {
         OutputStream outputStream;
         switch (mode) {
             case SFTP:
-                return SshClientUtils.execute(new SshClientTemplate(path, false) {
-                    @Override
-                    public OutputStream execute(final SSHClient ssh) throws IOException {
-                        final SFTPClient client = ssh.newSFTPClient();
-                        final RemoteFile rf = client.open(SshClientUtils.extractRemotePathFrom(path),
-                                EnumSet.of(net.schmizz.sshj.sftp.OpenMode.WRITE,
-                                        net.schmizz.sshj.sftp.OpenMode.CREAT));
-                        return rf.new RemoteFileOutputStream(){
-                            @Override
-                            public void close() throws IOException {
-                                try
-                                {
-                                    super.close();
-                                }
-                                finally
-                                {
-                                    rf.close();
-                                    client.close();
-                                }
-                            }
-                        };
-                    }
-                });
+                return SshClientUtils.openOutputStream(path);
             case SMB:
                 try {
                     outputStream = new SmbFile(path).getOutputStream();
@@ -1176,6 +1093,7 @@ public class HybridFile {
                 DocumentFile parentDirectory = OTGUtil.getDocumentFile(getParent(context), context, false);
                 if (parentDirectory.isDirectory()) {
                     parentDirectory.createDirectory(getName(context));
+                    OTGUtil.invalidate(path);
                 }
             }
         } else if (isDropBoxFile()) {
@@ -16,6 +16,7 @@ import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.RootUtils;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.amaze.filemanager.utils.files.FileUtils;
+import com.amaze.filemanager.utils.files.FolderSizeCalculator;
 import com.cloudrail.si.interfaces.CloudStorage;
 
 import net.schmizz.sshj.sftp.SFTPClient;
@@ -121,6 +122,7 @@ public class Operations {
                     DocumentFile parentDirectory = OTGUtil.getDocumentFile(file.getParent(), context, false);
                     if (parentDirectory.isDirectory()) {
                         parentDirectory.createDirectory(file.getName(context));
+                        OTGUtil.invalidate(file.getPath());
                         errorCallBack.done(file, true);
                     } else errorCallBack.done(file, false);
                     return null;
@@ -295,6 +297,7 @@ public class Operations {
                     if (parentDirectory.isDirectory()) {
                         parentDirectory.createFile(file.getName(context).substring(file.getName().lastIndexOf(".")),
                                 file.getName(context));
+                        OTGUtil.invalidate(file.getPath());
                         errorCallBack.done(file, true);
                     } else errorCallBack.done(file, false);
                     return null;
@@ -338,6 +341,15 @@ public class Operations {
 
             private DataUtils dataUtils = DataUtils.getInstance();
 
+            private void done(boolean renamed) {
+                if (renamed) {
+                    // before the callback reloads the list and asks for the sizes again
+                    FolderSizeCalculator.getInstance().invalidate(oldFile.getPath());
+                    FolderSizeCalculator.getInstance().invalidate(newFile.getPath());
+                }
+                errorCallBack.done(newFile, renamed);
+            }
+
             @Override
             protected Void doInBackground(Void... params) {
                 // check whether file names for new file are valid or recursion occurs
@@ -362,7 +374,7 @@ public class Operations {
                         }
                         smbFile.renameTo(smbFile1);
                         if (!smbFile.exists() && smbFile1.exists())
-                            errorCallBack.done(newFile, true);
+                            done(true);
                     } catch (MalformedURLException e) {
                         e.printStackTrace();
                     } catch (SmbException e) {
@@ -376,10 +388,10 @@ public class Operations {
                             try {
                                 client.rename(SshClientUtils.extractRemotePathFrom(oldFile.getPath()),
                                         SshClientUtils.extractRemotePathFrom(newFile.getPath()));
-                                errorCallBack.done(newFile, true);
+                                done(true);
                             } catch(IOException e) {
                                 e.printStackTrace();
-                                errorCallBack.done(newFile, false);
+                                done(false);
                             }
                             return null;
                         }
@@ -389,40 +401,40 @@ public class Operations {
                     try {
                         cloudStorageDropbox.move(CloudUtil.stripPath(OpenMode.DROPBOX, oldFile.getPath()),
                                 CloudUtil.stripPath(OpenMode.DROPBOX, newFile.getPath()));
-                        errorCallBack.done(newFile, true);
+                        done(true);
                     } catch (Exception e) {
                         e.printStackTrace();
-                        errorCallBack.done(newFile, false);
+                        done(false);
                     }
                 } else if (oldFile.isBoxFile()) {
                     CloudStorage cloudStorageBox = dataUtils.getAccount(OpenMode.BOX);
                     try {
                         cloudStorageBox.move(CloudUtil.stripPath(OpenMode.BOX, oldFile.getPath()),
                                 CloudUtil.stripPath(OpenMode.BOX, newFile.getPath()));
-                        errorCallBack.done(newFile, true);
+                        done(true);
                     } catch (Exception e) {
                         e.printStackTrace();
-                        errorCallBack.done(newFile, false);
+                        done(false);
                     }
                 } else if (oldFile.isOneDriveFile()) {
                     CloudStorage cloudStorageOneDrive = dataUtils.getAccount(OpenMode.ONEDRIVE);
                     try {
                         cloudStorageOneDrive.move(CloudUtil.stripPath(OpenMode.ONEDRIVE, oldFile.getPath()),
                                 CloudUtil.stripPath(OpenMode.ONEDRIVE, newFile.getPath()));
-                        errorCallBack.done(newFile, true);
+                        done(true);
                     } catch (Exception e) {
                         e.printStackTrace();
-                        errorCallBack.done(newFile, false);
+                        done(false);
                     }
                 } else if (oldFile.isGoogleDriveFile()) {
                     CloudStorage cloudStorageGdrive = dataUtils.getAccount(OpenMode.GDRIVE);
                     try {
                         cloudStorageGdrive.move(CloudUtil.stripPath(OpenMode.GDRIVE, oldFile.getPath()),
                                 CloudUtil.stripPath(OpenMode.GDRIVE, newFile.getPath()));
-                        errorCallBack.done(newFile, true);
+                        done(true);
                     } catch (Exception e) {
                         e.printStackTrace();
-                        errorCallBack.done(newFile, false);
+                        done(false);
                     }
                 } else if (oldFile.isOtgFile()) {
                     DocumentFile oldDocumentFile = OTGUtil.getDocumentFile(oldFile.getPath(), context, false);
@@ -431,7 +443,10 @@ public class Operations {
                         errorCallBack.exists(newFile);
                         return null;
                     }
-                    errorCallBack.done(newFile, oldDocumentFile.renameTo(newFile.getName(context)));
+                    boolean renamed = oldDocumentFile.renameTo(newFile.getName(context));
+                    OTGUtil.invalidate(oldFile.getPath());
+                    OTGUtil.invalidate(newFile.getPath());
+                    done(renamed);
                     return null;
                 } else {
 
@@ -459,7 +474,7 @@ public class Operations {
                                     newFile.setMode(OpenMode.ROOT);
                                     a = !file.exists() && file1.exists();
                                 }
-                                errorCallBack.done(newFile, a);
+                                done(a);
                                 return null;
                             }
                             break;
@@ -471,7 +486,7 @@ public class Operations {
                             }
 
                             newFile.setMode(OpenMode.ROOT);
-                            errorCallBack.done(newFile, true);
+                            done(true);
                             break;
 
                     }
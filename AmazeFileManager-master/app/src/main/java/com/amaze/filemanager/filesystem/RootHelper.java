@@ -19,6 +19,7 @@
 
 package com.amaze.filemanager.filesystem;
 
+import android.support.annotation.Nullable;
 import android.support.v4.provider.DocumentFile;
 
 import com.amaze.filemanager.activities.MainActivity;
@@ -29,6 +30,7 @@ import com.amaze.filemanager.utils.files.FileUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import eu.chainfire.libsuperuser.Shell;
@@ -199,45 +201,15 @@ public class RootHelper {
         return false;
     }
 
-    static boolean contains(String[] a, String name) {
-        for (String s : a) {
-            //Log.e("checking",s);
-            if (s.equals(name)) return true;
-        }
-        return false;
-    }
-
     /**
-     * Whether toTest file is directory or not
-     * TODO: Avoid parsing ls
+     * Whether toTest file is directory or not, symlinks are followed by the shell itself
+     *
+     * @param count unused, kept for callers which used to limit how many symlinks were followed
      */
     public static boolean isDirectory(String toTest, boolean root, int count)
             throws ShellNotRunningException {
-        File f = new File(toTest);
-        String name = f.getName();
-        String p = f.getParent();
-        if (p != null && p.length() > 0) {
-            ArrayList<String> ls = runShellCommand("ls -l " + p);
-            for (String s : ls) {
-                if (contains(s.split(" "), name)) {
-                    try {
-                        HybridFileParcelable path = FileUtils.parseName(s);
-                        if (path.getPermission().trim().startsWith("d")) return true;
-                        else if (path.getPermission().trim().startsWith("l")) {
-                            if (count > 5)
-                                return f.isDirectory();
-                            else
-                                return isDirectory(path.getLink().trim(), root, ++count);
-                        } else return f.isDirectory();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    break;
-                }
-            }
-
-        }
-        return f.isDirectory();
+        ArrayList<String> result = runShellCommand("[ -d " + quote(toTest) + " ] && echo d");
+        return (!result.isEmpty() && result.get(0).equals("d")) || new File(toTest).isDirectory();
     }
 
     private static boolean isDirectory(HybridFileParcelable path) {
@@ -269,7 +241,6 @@ public class RootHelper {
 
     /**
      * Get files using shell, supposing the path is not a SMB/OTG/Custom (*.apk/images)
-     * TODO: Avoid parsing ls
      *
      * @param root            whether root is available or not
      * @param showHidden      to show hidden files
@@ -282,29 +253,14 @@ public class RootHelper {
             try {
                 // we're rooted and we're trying to load file with superuser
                 // we're at the root directories, superuser is required!
-                List<String> ls;
-                String cpath = getCommandLineString(path);
-                //ls = Shell.SU.run("ls -l " + cpath);
-                ls = runShellCommand("ls -l " + (showHidden ? "-a " : "") + "\"" + cpath + "\"");
+                List<String> ls = runShellCommand(String.format(LIST_COMMAND,
+                        quote(path), showHidden ? "* .*" : "*"));
                 if (ls != null) {
-                    for (String file : ls) {
-                        if (!file.contains("Permission denied")) {
-                            HybridFileParcelable array = FileUtils.parseName(file);
-                            if (array != null) {
-                                array.setMode(OpenMode.ROOT);
-                                array.setName(array.getPath());
-                                if (!path.equals("/")) {
-                                    array.setPath(path + "/" + array.getPath());
-                                } else {
-                                    // root of filesystem, don't concat another '/'
-                                    array.setPath(path + array.getPath());
-                                }
-                                if (array.getLink().trim().length() > 0) {
-                                    boolean isdirectory = isDirectory(array.getLink(), root, 0);
-                                    array.setDirectory(isdirectory);
-                                } else array.setDirectory(isDirectory(array));
-                                fileCallback.onFileFound(array);
-                            }
+                    if (!ls.isEmpty() && ls.get(0).equals(NO_STAT)) {
+                        getFilesFromLs(path, showHidden, fileCallback);
+                    } else {
+                        for (HybridFileParcelable file : parseListing(path, ls)) {
+                            fileCallback.onFileFound(file);
                         }
                     }
                     mode = OpenMode.ROOT;
@@ -329,4 +285,130 @@ public class RootHelper {
         if (getModeCallBack != null) getModeCallBack.getMode(mode);
     }
 
+    /**
+     * Lists the directory with the shell in a single round trip, without parsing ls.
+     *
+     * One stat call prints a "permissions/size/mtime/name" record for every file (a name can't
+     * contain '/', so the fields can be split without quoting), and a loop of shell builtins
+     * prints a ">(d|-)name/target" record for every symlink, telling whether it points to a
+     * directory. readlink is only run for symlinks.
+     * If the device has no stat "!" is printed instead, see {@link #getFilesFromLs(String, boolean, OnFileFound)}.
+     */
+    private static final String LIST_COMMAND = "cd %1$s && { type stat >/dev/null 2>&1 || echo '!'; "
+            + "stat -c '%%A/%%s/%%Y/%%n' -- %2$s; "
+            + "for f in %2$s; do [ -L \"$f\" ] && { [ -d \"$f\" ] && t=d || t=-; echo \">$t$f/$(readlink \"$f\")\"; }; done; }";
+
+    private static final String NO_STAT = "!";
+
+    /**
+     * Quotes a path so that the shell takes it verbatim
+     */
+    static String quote(String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Parses the output of {@link #LIST_COMMAND}
+     *
+     * @param path the directory listed
+     */
+    static ArrayList<HybridFileParcelable> parseListing(String path, List<String> lines) {
+        String prefix = path.equals("/") ? path : path + "/";
+        ArrayList<HybridFileParcelable> files = new ArrayList<>(lines.size());
+        HashMap<String, HybridFileParcelable> links = new HashMap<>();
+
+        for (String line : lines) {
+            if (line.length() > 2 && line.charAt(0) == '>') {
+                int separator = line.indexOf('/', 2);
+                HybridFileParcelable link = separator == -1 ? null : links.get(line.substring(2, separator));
+                if (link != null) {
+                    link.setDirectory(line.charAt(1) == 'd');
+                    link.setLink(line.substring(separator + 1));
+                }
+                continue;
+            }
+
+            HybridFileParcelable file = parseStatRecord(line, prefix);
+            if (file == null) continue;
+
+            files.add(file);
+            if (file.getPermission().charAt(0) == 'l') links.put(file.getName(), file);
+        }
+        return files;
+    }
+
+    /**
+     * Parses a "permissions/size/mtime/name" record, only substrings for the permissions and name
+     * are created
+     *
+     * @return the file, or null for "." and ".." or a malformed record
+     */
+    @Nullable
+    private static HybridFileParcelable parseStatRecord(String line, String prefix) {
+        int sizeStart = line.indexOf('/') + 1;
+        if (sizeStart == 0) return null;
+        int dateStart = line.indexOf('/', sizeStart) + 1;
+        if (dateStart == 0) return null;
+        int nameStart = line.indexOf('/', dateStart) + 1;
+        if (nameStart == 0 || nameStart == line.length()) return null;
+
+        long size = parseLong(line, sizeStart, dateStart - 1);
+        long date = parseLong(line, dateStart, nameStart - 1);
+        if (size < 0 || date < 0) return null;
+
+        String name = line.substring(nameStart);
+        if (name.equals(".") || name.equals("..")) return null;
+
+        String permission = line.substring(0, sizeStart - 1);
+        HybridFileParcelable file = new HybridFileParcelable(prefix + name, permission,
+                date * 1000, size, permission.charAt(0) == 'd');
+        file.setName(name);
+        file.setMode(OpenMode.ROOT);
+        return file;
+    }
+
+    /**
+     * @return the number in line[start, end), or -1 if it isn't one
+     */
+    private static long parseLong(String line, int start, int end) {
+        if (start >= end) return -1;
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Lists the directory parsing ls, for devices without stat
+     */
+    private static void getFilesFromLs(String path, boolean showHidden, OnFileFound fileCallback)
+            throws ShellNotRunningException {
+        String cpath = getCommandLineString(path);
+        List<String> ls = runShellCommand("ls -l " + (showHidden ? "-a " : "") + "\"" + cpath + "\"");
+        for (String file : ls) {
+            if (!file.contains("Permission denied")) {
+                HybridFileParcelable array = FileUtils.parseName(file);
+                if (array != null) {
+                    array.setMode(OpenMode.ROOT);
+                    array.setName(array.getPath());
+                    if (!path.equals("/")) {
+                        array.setPath(path + "/" + array.getPath());
+                    } else {
+                        // root of filesystem, don't concat another '/'
+                        array.setPath(path + array.getPath());
+                    }
+                    if (array.getLink().trim().length() > 0) {
+                        boolean isdirectory = isDirectory(array.getLink(), true, 0);
+                        array.setDirectory(isdirectory);
+                    } else array.setDirectory(isDirectory(array));
+                    fileCallback.onFileFound(array);
+                }
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -25,17 +25,37 @@ package com.amaze.filemanager.filesystem.compressed.extractcontents;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import com.amaze.filemanager.filesystem.FileUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.amaze.filemanager.filesystem.compressed.CompressedHelper.SEPARATOR;
 import static com.amaze.filemanager.filesystem.compressed.CompressedHelper.SEPARATOR_CHAR;
 
 public abstract class Extractor {
 
+    /**
+     * Size of the buffer each thread copies entries with
+     */
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
     protected Context context;
     protected String filePath, outputPath;
     protected OnUpdate listener;
@@ -83,13 +103,161 @@ public abstract class Extractor {
         boolean shouldExtract(String relativePath, boolean isDirectory);
     }
 
+    /**
+     * Extracts entries on one thread, holding whatever it needs to read the archive
+     */
+    protected interface EntryWorker extends Closeable {
+        void extract(int index) throws IOException;
+    }
+
+    protected interface EntryWorkerFactory {
+        EntryWorker create() throws IOException;
+    }
+
     public interface OnUpdate {
         void onStart(long totalBytes, String firstEntryName);
         void onUpdate(String entryPath);
+
+        /**
+         * Bytes were written out, workers call this concurrently and without locking
+         */
+        void onProgress(long bytes);
         void onFinish();
         boolean isCancelled();
     }
 
+    /**
+     * Resolves the entry inside {@link #outputPath}, refusing to leave it
+     */
+    protected File getOutputFile(String entryName) throws IOException {
+        File outputFile = new File(outputPath, fixEntryName(entryName));
+        if (!outputFile.getCanonicalPath().startsWith(outputPath)) {
+            throw new IOException("Incorrect entry path: " + entryName);
+        }
+        return outputFile;
+    }
+
+    /**
+     * Creates every directory at once before extracting, instead of checking the parent of every
+     * file while extracting it
+     */
+    protected void createDirectories(@NonNull Collection<File> directories) {
+        for (File directory : directories) {
+            if (!directory.exists()) FileUtil.mkdir(directory, context);
+        }
+    }
+
+    /**
+     * Runs workers made by factory on up to threads threads, which take the entries from 0 to
+     * count - 1 in order until they run out, the extraction is cancelled or one fails
+     */
+    protected void extractConcurrently(final int count, int threads,
+                                       @NonNull final EntryWorkerFactory factory) throws IOException {
+        if (count == 0) return;
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        threads = Math.max(1, Math.min(threads, count));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                EntryWorker worker = null;
+                try {
+                    worker = factory.create();
+                    int index;
+                    while (!failed.get() && !listener.isCancelled()
+                            && (index = next.getAndIncrement()) < count) {
+                        worker.extract(index);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                } finally {
+                    if (worker != null) worker.close();
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a worker, rethrowing what it failed with unless it was stopped by a cancellation
+     */
+    protected void getResult(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while extracting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedIOException && listener.isCancelled()) return;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Copies in into outputFile with buffer and closes both
+     */
+    protected void copy(@NonNull InputStream in, @NonNull File outputFile, @NonNull byte[] buffer)
+            throws IOException {
+        try {
+            OutputStream out = openOutputStream(outputFile);
+            try {
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens outputFile counting what is written into the progress; writing throws
+     * {@link InterruptedIOException} once the extraction is cancelled
+     */
+    protected OutputStream openOutputStream(@NonNull File outputFile) throws IOException {
+        OutputStream outputStream = FileUtil.getOutputStream(outputFile, context);
+        if (outputStream == null) throw new IOException("Cannot write to " + outputFile.getPath());
+
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(@NonNull byte[] buffer, int offset, int length) throws IOException {
+                if (listener.isCancelled()) throw new InterruptedIOException("Extraction cancelled");
+                out.write(buffer, offset, length);
+                listener.onProgress(length);
+            }
+        };
+    }
+
+    /**
+     * Reports the start of an entry, workers may call this concurrently
+     */
+    protected void onEntryStarted(String entryName) {
+        synchronized (listener) {
+            listener.onUpdate(entryName);
+        }
+    }
+
     protected String fixEntryName(String entryName){
         if(entryName.indexOf('\\') >= 0) {
             return fixEntryName(entryName.replaceAll("\\\\", SEPARATOR));
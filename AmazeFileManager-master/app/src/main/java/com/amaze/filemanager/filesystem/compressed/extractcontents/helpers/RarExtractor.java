@@ -25,20 +25,19 @@ package com.amaze.filemanager.filesystem.compressed.extractcontents.helpers;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import com.amaze.filemanager.filesystem.FileUtil;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
 import com.amaze.filemanager.filesystem.compressed.extractcontents.Extractor;
-import com.amaze.filemanager.utils.ServiceWatcherUtil;
-import com.amaze.filemanager.utils.files.GenericCopyUtil;
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class RarExtractor extends Extractor {
 
@@ -48,72 +47,85 @@ public class RarExtractor extends Extractor {
 
     @Override
     protected void extractWithFilter(@NonNull Filter filter) throws IOException {
+        long totalBytes = 0;
+        boolean solid;
+        ArrayList<FileHeader> arrayList = new ArrayList<>();
+        // position of every header in the archive, to find it again in the archive of each worker
+        final List<Integer> headerIndices = new ArrayList<>();
+        Archive rarFile = openArchive();
+
         try {
-            long totalBytes = 0;
-            Archive rarFile = new Archive(new File(filePath));
-            ArrayList<FileHeader> arrayList = new ArrayList<>();
+            solid = rarFile.getMainHeader().isSolid();
+            List<FileHeader> headers = rarFile.getFileHeaders();
 
             // iterating archive elements to find file names that are to be extracted
-            for (FileHeader header : rarFile.getFileHeaders()) {
+            for (int i = 0; i < headers.size(); i++) {
+                FileHeader header = headers.get(i);
                 if(CompressedHelper.isEntryPathValid(header.getFileNameString())) {
                     if (filter.shouldExtract(header.getFileNameString(), header.isDirectory())) {
                         // header to be extracted is at least the entry path (may be more, when it is a directory)
                         arrayList.add(header);
+                        headerIndices.add(i);
                         totalBytes += header.getFullUnpackSize();
                     }
                 } else {
                     invalidArchiveEntries.add(header.getFileNameString());
                 }
             }
+        } finally {
+            rarFile.close();
+        }
 
-            listener.onStart(totalBytes, arrayList.get(0).getFileNameString());
+        listener.onStart(totalBytes, arrayList.get(0).getFileNameString());
 
-            for (FileHeader entry : arrayList) {
-                if (!listener.isCancelled()) {
-                    listener.onUpdate(entry.getFileNameString());
-                    extractEntry(context, rarFile, entry, outputPath);
-                }
+        final List<Integer> fileIndices = new ArrayList<>();
+        final List<File> outputFiles = new ArrayList<>();
+        Set<File> directories = new LinkedHashSet<>();
+        for (int i = 0; i < arrayList.size(); i++) {
+            FileHeader header = arrayList.get(i);
+            File outputFile = getOutputFile(header.getFileNameString());
+            if (header.isDirectory()) {
+                directories.add(outputFile);
+            } else {
+                directories.add(outputFile.getParentFile());
+                fileIndices.add(headerIndices.get(i));
+                outputFiles.add(outputFile);
             }
-            listener.onFinish();
-        } catch (RarException e) {
-            throw new IOException(e);
         }
-    }
+        createDirectories(directories);
 
-    private void extractEntry(@NonNull final Context context, Archive zipFile, FileHeader entry, String outputDir)
-            throws RarException, IOException {
-        String name = fixEntryName(entry.getFileNameString()).replaceAll("\\\\", CompressedHelper.SEPARATOR);
-        File outputFile = new File(outputDir, name);
+        // the files of a solid archive can only be unpacked in order, by a single worker
+        int threads = solid ? 1 : Runtime.getRuntime().availableProcessors();
+        extractConcurrently(fileIndices.size(), threads, () -> new EntryWorker() {
+            private final Archive archive = openArchive();
 
-        if (!outputFile.getCanonicalPath().startsWith(outputDir)){
-            throw new IOException("Incorrect RAR FileHeader path!");
-        }
+            @Override
+            public void extract(int index) throws IOException {
+                FileHeader header = archive.getFileHeaders().get(fileIndices.get(index));
+                onEntryStarted(header.getFileNameString());
+                OutputStream outputStream = openOutputStream(outputFiles.get(index));
+                try {
+                    archive.extractFile(header, outputStream);
+                } catch (RarException e) {
+                    if (!listener.isCancelled()) throw new IOException(e);
+                } finally {
+                    outputStream.close();
+                }
+            }
 
-        if (entry.isDirectory()) {
-            FileUtil.mkdir(outputFile, context);
-            return;
-        }
+            @Override
+            public void close() throws IOException {
+                archive.close();
+            }
+        });
+        listener.onFinish();
+    }
 
-        if (!outputFile.getParentFile().exists()) {
-            FileUtil.mkdir(outputFile.getParentFile(), context);
-        }
-        //	Log.i("Amaze", "Extracting: " + entry);
-        BufferedInputStream inputStream = new BufferedInputStream(
-                zipFile.getInputStream(entry));
-        BufferedOutputStream outputStream = new BufferedOutputStream(
-                FileUtil.getOutputStream(outputFile, context));
+    private Archive openArchive() throws IOException {
         try {
-            int len;
-            byte buf[] = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-            while ((len = inputStream.read(buf)) != -1) {
-                if (!listener.isCancelled()) {
-                    outputStream.write(buf, 0, len);
-                    ServiceWatcherUtil.position += len;
-                } else break;
-            }
-        } finally {
-            outputStream.close();
-            inputStream.close();
+            return new Archive(new File(filePath));
+        } catch (RarException e) {
+            throw new IOException(e);
         }
     }
 
@@ -25,24 +25,36 @@ package com.amaze.filemanager.filesystem.compressed.extractcontents.helpers;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import com.amaze.filemanager.filesystem.FileUtil;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
 import com.amaze.filemanager.filesystem.compressed.extractcontents.Extractor;
-import com.amaze.filemanager.utils.ServiceWatcherUtil;
-import com.amaze.filemanager.utils.files.GenericCopyUtil;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class TarExtractor extends Extractor {
 
+    /**
+     * Most chunks of {@link #BUFFER_SIZE} read from the archive and waiting to be written
+     */
+    private static final int MAX_PENDING_CHUNKS = 128;
+
     public TarExtractor(Context context, String filePath, String outputPath, Extractor.OnUpdate listener) {
         super(context, filePath, outputPath, listener);
     }
@@ -51,69 +63,194 @@ public class TarExtractor extends Extractor {
     protected void extractWithFilter(@NonNull Filter filter) throws IOException {
         long totalBytes = 0;
         List<TarArchiveEntry> archiveEntries = new ArrayList<>();
-        TarArchiveInputStream inputStream = new TarArchiveInputStream(new FileInputStream(filePath));
-
-        TarArchiveEntry tarArchiveEntry;
+        // position of every entry to be extracted among all the entries of the archive
+        List<Integer> entryIndices = new ArrayList<>();
+        TarArchiveInputStream inputStream = createTarInputStream();
 
-        while ((tarArchiveEntry = inputStream.getNextTarEntry()) != null) {
-            if(CompressedHelper.isEntryPathValid(tarArchiveEntry.getName())) {
-                if (filter.shouldExtract(tarArchiveEntry.getName(), tarArchiveEntry.isDirectory())) {
-                    archiveEntries.add(tarArchiveEntry);
-                    totalBytes += tarArchiveEntry.getSize();
+        try {
+            TarArchiveEntry tarArchiveEntry;
+            for (int i = 0; (tarArchiveEntry = inputStream.getNextTarEntry()) != null; i++) {
+                if(CompressedHelper.isEntryPathValid(tarArchiveEntry.getName())) {
+                    if (filter.shouldExtract(tarArchiveEntry.getName(), tarArchiveEntry.isDirectory())) {
+                        archiveEntries.add(tarArchiveEntry);
+                        entryIndices.add(i);
+                        totalBytes += tarArchiveEntry.getSize();
+                    }
+                } else {
+                    invalidArchiveEntries.add(tarArchiveEntry.getName());
                 }
-            } else {
-                invalidArchiveEntries.add(tarArchiveEntry.getName());
             }
+        } finally {
+            inputStream.close();
         }
 
         listener.onStart(totalBytes, archiveEntries.get(0).getName());
 
-        inputStream.close();
-        inputStream = new TarArchiveInputStream(new FileInputStream(filePath));
-
+        List<File> outputFiles = new ArrayList<>(archiveEntries.size());
+        Set<File> directories = new LinkedHashSet<>();
         for (TarArchiveEntry entry : archiveEntries) {
-            if (!listener.isCancelled()) {
-                listener.onUpdate(entry.getName());
-                //TAR is sequential, you need to walk all the way to the file you want
-                while (entry.hashCode() != inputStream.getNextTarEntry().hashCode());
-                extractEntry(context, inputStream, entry, outputPath);
+            File outputFile = getOutputFile(entry.getName());
+            outputFiles.add(outputFile);
+            directories.add(entry.isDirectory() ? outputFile : outputFile.getParentFile());
+        }
+        createDirectories(directories);
+
+        WriterPipeline pipeline = new WriterPipeline(Runtime.getRuntime().availableProcessors());
+        inputStream = createTarInputStream();
+        try {
+            //TAR is sequential, this thread walks and decompresses it while the pool writes the files
+            TarArchiveEntry entry;
+            int next = 0;
+            for (int i = 0; next < archiveEntries.size() && !listener.isCancelled() && !pipeline.failed
+                    && (entry = inputStream.getNextTarEntry()) != null; i++) {
+                if (i != entryIndices.get(next)) continue;
+
+                if (!entry.isDirectory()) {
+                    listener.onUpdate(entry.getName());
+                    pipeline.write(inputStream, outputFiles.get(next));
+                }
+                next++;
             }
+            pipeline.finish();
+        } finally {
+            pipeline.close();
+            inputStream.close();
         }
-        inputStream.close();
 
         listener.onFinish();
     }
 
-    private void extractEntry(@NonNull final Context context, TarArchiveInputStream inputStream,
-                              TarArchiveEntry entry, String outputDir) throws IOException {
-        File outputFile = new File(outputDir, fixEntryName(entry.getName()));
+    protected TarArchiveInputStream createTarInputStream() throws IOException {
+        return new TarArchiveInputStream(new FileInputStream(filePath));
+    }
+
+    /**
+     * Hands what the reading thread gets out of the archive to a pool writing the files, each file
+     * in order by a single writer
+     */
+    private class WriterPipeline implements Closeable {
+        private final Chunk end = new Chunk(null, 0);
+        private final ExecutorService executor;
+        private final List<Future<?>> writes = new ArrayList<>();
+        private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<>();
+        private int allocatedBuffers = 0;
+        private volatile boolean failed = false;
+
+        WriterPipeline(int threads) {
+            executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        }
+
+        /**
+         * Reads the current entry of in and queues it to be written to outputFile, blocks while
+         * too much is waiting to be written
+         */
+        void write(InputStream in, File outputFile) throws IOException {
+            // finish() throws the failure, no more files are created meanwhile
+            if (failed) return;
 
-        if (!outputFile.getCanonicalPath().startsWith(outputDir)){
-            throw new IOException("Incorrect TarArchiveEntry path!");
+            final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+            writes.add(executor.submit(() -> {
+                writeFile(chunks, outputFile);
+                return null;
+            }));
+
+            try {
+                while (!failed && !listener.isCancelled()) {
+                    byte[] buffer = takeBuffer();
+                    int length = fill(in, buffer);
+                    if (length > 0) chunks.add(new Chunk(buffer, length));
+                    else freeBuffers.add(buffer);
+                    if (length < buffer.length) break;
+                }
+            } finally {
+                chunks.add(end);
+            }
         }
 
-        if (entry.isDirectory()) {
-            FileUtil.mkdir(outputFile, context);
-            return;
+        /**
+         * Waits for every file to be written
+         */
+        void finish() throws IOException {
+            for (Future<?> write : writes) {
+                getResult(write);
+            }
         }
 
-        if (!outputFile.getParentFile().exists()) {
-            FileUtil.mkdir(outputFile.getParentFile(), context);
+        @Override
+        public void close() {
+            executor.shutdownNow();
         }
 
-        BufferedOutputStream outputStream = new BufferedOutputStream(
-                FileUtil.getOutputStream(outputFile, context));
-        try {
-            int len;
-            byte buf[] = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-            while ((len = inputStream.read(buf)) != -1) {
-                if (!listener.isCancelled()) {
-                    outputStream.write(buf, 0, len);
-                    ServiceWatcherUtil.position += len;
-                } else break;
+        private void writeFile(BlockingQueue<Chunk> chunks, File outputFile)
+                throws IOException, InterruptedException {
+            IOException failure = null;
+            OutputStream outputStream = null;
+            if (!failed) {
+                try {
+                    outputStream = openOutputStream(outputFile);
+                } catch (IOException e) {
+                    failure = e;
+                }
             }
-        } finally {
-            outputStream.close();
+
+            // keeps taking the chunks after a failure, the reader is waiting for their buffers
+            Chunk chunk;
+            while ((chunk = chunks.take()) != end) {
+                if (outputStream != null && failure == null) {
+                    try {
+                        outputStream.write(chunk.buffer, 0, chunk.length);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                freeBuffers.add(chunk.buffer);
+            }
+
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) {
+                failed = true;
+                throw failure;
+            }
+        }
+
+        private byte[] takeBuffer() throws InterruptedIOException {
+            byte[] buffer = freeBuffers.poll();
+            if (buffer != null) return buffer;
+            if (allocatedBuffers < MAX_PENDING_CHUNKS) {
+                allocatedBuffers++;
+                return new byte[BUFFER_SIZE];
+            }
+
+            try {
+                return freeBuffers.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while extracting");
+            }
+        }
+
+        private int fill(InputStream in, byte[] buffer) throws IOException {
+            int length = 0, read;
+            while (length < buffer.length
+                    && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            return length;
+        }
+    }
+
+    private static class Chunk {
+        final byte[] buffer;
+        final int length;
+
+        Chunk(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
         }
     }
 
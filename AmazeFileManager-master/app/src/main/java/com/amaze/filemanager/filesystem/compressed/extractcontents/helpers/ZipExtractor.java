@@ -25,19 +25,16 @@ package com.amaze.filemanager.filesystem.compressed.extractcontents.helpers;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import com.amaze.filemanager.filesystem.FileUtil;
 import com.amaze.filemanager.filesystem.compressed.CompressedHelper;
 import com.amaze.filemanager.filesystem.compressed.extractcontents.Extractor;
-import com.amaze.filemanager.utils.ServiceWatcherUtil;
-import com.amaze.filemanager.utils.files.GenericCopyUtil;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -53,73 +50,60 @@ public class ZipExtractor extends Extractor {
         List<ZipEntry> entriesToExtract = new ArrayList<>();
         ZipFile zipfile = new ZipFile(filePath);
 
-        // iterating archive elements to find file names that are to be extracted
-        for (Enumeration<? extends ZipEntry> e = zipfile.entries(); e.hasMoreElements(); ) {
-            ZipEntry zipEntry = e.nextElement();
-
-            if(CompressedHelper.isEntryPathValid(zipEntry.getName())) {
-                if (filter.shouldExtract(zipEntry.getName(), zipEntry.isDirectory())) {
-                    entriesToExtract.add(zipEntry);
-                    totalBytes += zipEntry.getSize();
+        try {
+            // iterating archive elements to find file names that are to be extracted
+            for (Enumeration<? extends ZipEntry> e = zipfile.entries(); e.hasMoreElements(); ) {
+                ZipEntry zipEntry = e.nextElement();
+
+                if (CompressedHelper.isEntryPathValid(zipEntry.getName())) {
+                    if (filter.shouldExtract(zipEntry.getName(), zipEntry.isDirectory())) {
+                        entriesToExtract.add(zipEntry);
+                        totalBytes += zipEntry.getSize();
+                    }
+                } else {
+                    invalidArchiveEntries.add(zipEntry.getName());
                 }
-            } else {
-                invalidArchiveEntries.add(zipEntry.getName());
             }
+        } finally {
+            zipfile.close();
         }
 
         listener.onStart(totalBytes, entriesToExtract.get(0).getName());
 
+        final List<ZipEntry> files = new ArrayList<>();
+        final List<File> outputFiles = new ArrayList<>();
+        Set<File> directories = new LinkedHashSet<>();
         for (ZipEntry entry : entriesToExtract) {
-            if (!listener.isCancelled()) {
-                listener.onUpdate(entry.getName());
-                extractEntry(context, zipfile, entry, outputPath);
+            File outputFile = getOutputFile(entry.getName());
+            if (entry.isDirectory()) {
+                directories.add(outputFile);
+            } else {
+                directories.add(outputFile.getParentFile());
+                files.add(entry);
+                outputFiles.add(outputFile);
             }
         }
+        createDirectories(directories);
+
+        // every worker reads through its own ZipFile, inflating on its own thread
+        extractConcurrently(files.size(), Runtime.getRuntime().availableProcessors(),
+                () -> new EntryWorker() {
+                    private final ZipFile zipFile = new ZipFile(filePath);
+                    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+                    @Override
+                    public void extract(int index) throws IOException {
+                        ZipEntry entry = files.get(index);
+                        onEntryStarted(entry.getName());
+                        copy(zipFile.getInputStream(entry), outputFiles.get(index), buffer);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        zipFile.close();
+                    }
+                });
         listener.onFinish();
     }
-    
-    /**
-     * Method extracts {@link ZipEntry} from {@link ZipFile}
-     *
-     * @param zipFile   zip file from which entriesToExtract are to be extracted
-     * @param entry     zip entry that is to be extracted
-     * @param outputDir output directory
-     */
-    private void extractEntry(@NonNull final Context context, ZipFile zipFile, ZipEntry entry,
-                              String outputDir) throws IOException {
-        final File outputFile = new File(outputDir, fixEntryName(entry.getName()));
-
-        if (!outputFile.getCanonicalPath().startsWith(outputDir)){
-            throw new IOException("Incorrect ZipEntry path!");
-        }
-
-        if (entry.isDirectory()) {
-            // zip entry is a directory, return after creating new directory
-            FileUtil.mkdir(outputFile, context);
-            return;
-        }
-
-        if (!outputFile.getParentFile().exists()) {
-            // creating directory if not already exists
-            FileUtil.mkdir(outputFile.getParentFile(), context);
-        }
-
-        BufferedInputStream inputStream = new BufferedInputStream(zipFile.getInputStream(entry));
-        BufferedOutputStream outputStream = new BufferedOutputStream(FileUtil.getOutputStream(outputFile, context));
-
-        try {
-            int len;
-            byte buf[] = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-            while ((len = inputStream.read(buf)) != -1) {
-                if (!listener.isCancelled()) {
-                    outputStream.write(buf, 0, len);
-                    ServiceWatcherUtil.position += len;
-                } else break;
-            }
-        } finally {
-            outputStream.close();
-            inputStream.close();
-        }
-    }
 
 }
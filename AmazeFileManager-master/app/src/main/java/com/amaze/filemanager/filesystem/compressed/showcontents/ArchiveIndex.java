@@ -0,0 +1,110 @@
+package com.amaze.filemanager.filesystem.compressed.showcontents;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.amaze.filemanager.filesystem.compressed.CompressedHelper.SEPARATOR;
+
+/**
+ * Every entry of an archive, grouped by the directory that contains it, so listing a directory
+ * inside the archive doesn't need to go over the whole archive again.
+ *
+ * Directories are relative to the root of the archive, use "/" and have no trailing separator;
+ * the root is "".
+ */
+public class ArchiveIndex {
+
+    private static final int VERSION = 1;
+
+    public static final class Entry {
+        /**
+         * The path shown for the entry, directories end with "/"
+         */
+        public final String path;
+        public final long date, size;
+        public final boolean directory;
+
+        public Entry(@NonNull String path, long date, long size, boolean directory) {
+            this.path = path;
+            this.date = date;
+            this.size = size;
+            this.directory = directory;
+        }
+    }
+
+    private final Map<String, List<Entry>> children = new HashMap<>();
+    private int entryCount = 0;
+
+    public void add(@NonNull String directory, @NonNull Entry entry) {
+        List<Entry> list = children.get(directory);
+        if (list == null) {
+            list = new ArrayList<>();
+            children.put(directory, list);
+        }
+        list.add(entry);
+        entryCount++;
+    }
+
+    /**
+     * @return the entries directly inside directory, in the order they were added
+     */
+    @NonNull
+    public List<Entry> getChildren(@NonNull String directory) {
+        List<Entry> list = children.get(directory);
+        return list != null ? Collections.unmodifiableList(list) : Collections.emptyList();
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the directory containing path, ignoring a trailing separator
+     */
+    @NonNull
+    public static String getParent(@NonNull String path) {
+        if (path.endsWith(SEPARATOR)) path = path.substring(0, path.length() - 1);
+        int separator = path.lastIndexOf(SEPARATOR);
+        return separator != -1 ? path.substring(0, separator) : "";
+    }
+
+    void writeTo(@NonNull DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeInt(children.size());
+        for (Map.Entry<String, List<Entry>> directory : children.entrySet()) {
+            out.writeUTF(directory.getKey());
+            out.writeInt(directory.getValue().size());
+            for (Entry entry : directory.getValue()) {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.date);
+                out.writeLong(entry.size);
+                out.writeBoolean(entry.directory);
+            }
+        }
+    }
+
+    @NonNull
+    static ArchiveIndex readFrom(@NonNull DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) throw new IOException("Unknown archive index version");
+
+        ArchiveIndex index = new ArchiveIndex();
+        int directories = in.readInt();
+        for (int i = 0; i < directories; i++) {
+            String directory = in.readUTF();
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                index.add(directory, new Entry(in.readUTF(), in.readLong(), in.readLong(),
+                        in.readBoolean()));
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,185 @@
+package com.amaze.filemanager.filesystem.compressed.showcontents;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.amaze.filemanager.utils.application.AppConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link ArchiveIndex} of the last archives opened, so moving between the directories
+ * of an archive only reads it once.
+ *
+ * Indexes are found by the path, size and modification date of the archive, so a changed archive
+ * is read again. Indexes of archives that can only be read from the start (tar, tar.gz) bigger
+ * than {@link #PERSIST_MIN_SIZE} are also written to the app's cache dir, for the next time the
+ * archive is opened.
+ */
+public class ArchiveIndexCache {
+
+    private static final String TAG = "ArchiveIndexCache";
+
+    public static final int MAX_INDEXES = 4;
+    public static final int MAX_PERSISTED_INDEXES = 16;
+    public static final long PERSIST_MIN_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Reads an archive that isn't indexed yet
+     */
+    public interface Indexer {
+        void index(@NonNull ArchiveIndex index) throws IOException;
+    }
+
+    @Nullable
+    private final File directory;
+    private final long persistMinSize;
+
+    private final Map<String, ArchiveIndex> indexes =
+            new LinkedHashMap<String, ArchiveIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ArchiveIndex> eldest) {
+                    return size() > MAX_INDEXES;
+                }
+            };
+
+    ArchiveIndexCache(@Nullable File directory, long persistMinSize) {
+        this.directory = directory;
+        this.persistMinSize = persistMinSize;
+    }
+
+    private static class ArchiveIndexCacheHolder {
+        private static final ArchiveIndexCache INSTANCE = new ArchiveIndexCache(
+                AppConfig.getInstance() != null
+                        ? new File(AppConfig.getInstance().getCacheDir(), "archive-index") : null,
+                PERSIST_MIN_SIZE);
+    }
+
+    public static ArchiveIndexCache getInstance() {
+        return ArchiveIndexCacheHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the index of archive, reading it with indexer if it changed or wasn't indexed before
+     *
+     * @param persistable whether the archive is slow enough to read to keep its index on disk
+     */
+    @NonNull
+    public ArchiveIndex getIndex(@NonNull File archive, boolean persistable,
+                                 @NonNull Indexer indexer) throws IOException {
+        String key = getKey(archive);
+        synchronized (indexes) {
+            ArchiveIndex index = indexes.get(key);
+            if (index != null) return index;
+        }
+
+        boolean persist = persistable && directory != null && archive.length() >= persistMinSize;
+        File persisted = persist ? getPersistedFile(key) : null;
+        ArchiveIndex index = persisted != null ? read(persisted, key) : null;
+        if (index == null) {
+            index = new ArchiveIndex();
+            indexer.index(index);
+            if (persisted != null) write(persisted, key, index);
+        }
+
+        synchronized (indexes) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Forgets every index kept in memory
+     */
+    public void clear() {
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    private static String getKey(File archive) {
+        return archive.getAbsolutePath() + ":" + archive.length() + ":" + archive.lastModified();
+    }
+
+    private File getPersistedFile(String key) {
+        return new File(directory, Integer.toHexString(key.hashCode()) + ".idx");
+    }
+
+    @Nullable
+    private static ArchiveIndex read(File file, String key) {
+        if (!file.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            // a different archive may have the same hash
+            if (!in.readUTF().equals(key)) return null;
+            ArchiveIndex index = ArchiveIndex.readFrom(in);
+            file.setLastModified(System.currentTimeMillis());
+            return index;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read index " + file.getName(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void write(File file, String key, ArchiveIndex index) {
+        directory.mkdirs();
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeUTF(key);
+            index.writeTo(out);
+            out.close();
+            written = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write index " + file.getName(), e);
+        } finally {
+            if (!written) {
+                closeQuietly(out);
+                file.delete();
+            }
+        }
+
+        if (written) trimPersisted();
+    }
+
+    /**
+     * Deletes the least recently used indexes over {@link #MAX_PERSISTED_INDEXES}
+     */
+    private void trimPersisted() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_PERSISTED_INDEXES) return;
+
+        Arrays.sort(files, (file1, file2) -> {
+            long date1 = file1.lastModified(), date2 = file2.lastModified();
+            return date1 < date2 ? -1 : (date1 == date2 ? 0 : 1);
+        });
+        for (int i = 0; i < files.length - MAX_PERSISTED_INDEXES; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
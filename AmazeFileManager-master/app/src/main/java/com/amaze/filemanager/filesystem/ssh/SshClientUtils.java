@@ -28,6 +28,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -41,13 +42,19 @@ import com.amaze.filemanager.utils.cloud.CloudStreamer;
 
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
 import net.schmizz.sshj.sftp.SFTPClient;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.amaze.filemanager.filesystem.ssh.SshConnectionPool.SSH_URI_PREFIX;
 
@@ -66,10 +73,11 @@ public abstract class SshClientUtils
      * @return Template execution results
      */
     public static final <T> T execute(@NonNull SshClientTemplate template) {
+        SshConnectionPool pool = SshConnectionPool.getInstance();
         SSHClient client = null;
         T retval = null;
         try {
-            client = SshConnectionPool.getInstance().getConnection(template.url);
+            client = pool.borrowConnection(template.url);
             if(client != null)
                 retval = template.execute(client);
             else
@@ -77,8 +85,12 @@ public abstract class SshClientUtils
         } catch(Exception e) {
             Log.e(TAG, "Error executing template method", e);
         } finally {
-            if(client != null && template.closeClientOnFinish) {
-                tryDisconnect(client);
+            if(client != null) {
+                if(template.closeClientOnFinish)
+                    tryDisconnect(client);
+
+                // a disconnected client is dropped by the pool instead of being reused
+                pool.returnConnection(client);
             }
         }
         return retval;
@@ -130,24 +142,117 @@ public abstract class SshClientUtils
                 SFTPClient sftpClient = null;
                 T retval = null;
                 try {
-                    sftpClient = client.newSFTPClient();
+                    // templates closing the SFTP client after execution don't hold onto it, so
+                    // they can share the channel kept open by the pool; the others get their own
+                    sftpClient = template.closeClientOnFinish ?
+                            SshConnectionPool.getInstance().getSftpChannel(client) :
+                            client.newSFTPClient();
                     retval = template.execute(sftpClient);
                 } catch(IOException e) {
                     Log.e(TAG, "Error executing template method", e);
-                } finally {
-                    if(sftpClient != null && template.closeClientOnFinish) {
-                        try {
-                            sftpClient.close();
-                        } catch(IOException e) {
-                            Log.w(TAG, "Error closing SFTP client", e);
-                        }
-                    }
                 }
                 return retval;
             }
         });
     }
 
+    /**
+     * Open a file on the SSH server for reading.
+     *
+     * Unlike the templates, the connection is kept borrowed from the pool for as long as the
+     * stream is open, so that it isn't handed to anyone else in the middle of the transfer. Closing
+     * the stream returns it.
+     *
+     * @param url full SSH URL of the file
+     * @return the stream, or null if the file could not be opened
+     */
+    @Nullable
+    public static InputStream openInputStream(@NonNull String url) {
+        SshConnectionPool pool = SshConnectionPool.getInstance();
+        SSHClient client = pool.borrowConnection(url);
+        if(client == null) {
+            Log.e(TAG, "Unable to obtain a connection");
+            return null;
+        }
+
+        RemoteFile rf = null;
+        try {
+            rf = pool.getSftpChannel(client).open(extractRemotePathFrom(url));
+            final RemoteFile remoteFile = rf;
+            final AtomicBoolean closed = new AtomicBoolean(false);
+            return rf.new RemoteFileInputStream() {
+                @Override
+                public void close() throws IOException {
+                    if(closed.getAndSet(true))
+                        return;
+
+                    try {
+                        super.close();
+                    } finally {
+                        release(client, remoteFile);
+                    }
+                }
+            };
+        } catch(IOException e) {
+            Log.e(TAG, "Error opening remote file", e);
+            release(client, rf);
+            return null;
+        }
+    }
+
+    /**
+     * Open a file on the SSH server for writing, creating it if needed. The connection is kept
+     * borrowed until the stream is closed, see {@link #openInputStream(String)}.
+     *
+     * @param url full SSH URL of the file
+     * @return the stream, or null if the file could not be opened
+     */
+    @Nullable
+    public static OutputStream openOutputStream(@NonNull String url) {
+        SshConnectionPool pool = SshConnectionPool.getInstance();
+        SSHClient client = pool.borrowConnection(url);
+        if(client == null) {
+            Log.e(TAG, "Unable to obtain a connection");
+            return null;
+        }
+
+        RemoteFile rf = null;
+        try {
+            rf = pool.getSftpChannel(client).open(extractRemotePathFrom(url),
+                    EnumSet.of(OpenMode.WRITE, OpenMode.CREAT));
+            final RemoteFile remoteFile = rf;
+            final AtomicBoolean closed = new AtomicBoolean(false);
+            return rf.new RemoteFileOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    if(closed.getAndSet(true))
+                        return;
+
+                    try {
+                        super.close();
+                    } finally {
+                        release(client, remoteFile);
+                    }
+                }
+            };
+        } catch(IOException e) {
+            Log.e(TAG, "Error opening remote file", e);
+            release(client, rf);
+            return null;
+        }
+    }
+
+    private static void release(@NonNull SSHClient client, @Nullable RemoteFile rf) {
+        if(rf != null) {
+            try {
+                rf.close();
+            } catch(IOException e) {
+                Log.w(TAG, "Error closing remote file", e);
+            }
+        }
+        SshConnectionPool.getInstance().returnConnection(client);
+    }
+
     /**
      * Convenience method to call {@link SmbUtil#getSmbEncryptedPath(Context, String)} if the given
      * SSH URL contains the password (assuming the password is encrypted).
@@ -239,7 +344,11 @@ public abstract class SshClientUtils
 
         new Thread(() -> {
             try {
-                streamer.setStreamSrc(baseFile.getInputStream(activity), baseFile.getName(), baseFile.length(activity));
+                streamer.setStreamSrc(position -> {
+                    InputStream inputStream = baseFile.getInputStream(activity);
+                    if (inputStream == null) throw new IOException("Can't open " + baseFile.getPath());
+                    return inputStream;
+                }, baseFile.getPath(), baseFile.getName(), baseFile.length(activity));
                 activity.runOnUiThread(() -> {
                     try {
                         File file = new File(SshClientUtils.extractRemotePathFrom(baseFile.getPath()));
@@ -22,6 +22,7 @@
 package com.amaze.filemanager.filesystem.ssh;
 
 import android.net.Uri;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -34,20 +35,38 @@ import com.amaze.filemanager.asynchronous.asynctasks.ssh.SshAuthenticationTask;
 import com.amaze.filemanager.utils.application.AppConfig;
 
 import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.SFTPClient;
 
 import java.io.IOException;
 import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Poor man's implementation of SSH connection pool.
+ * SSH connection pool.
  *
- * It uses a {@link ConcurrentHashMap} to hold the opened SSH connections; all code that uses
- * {@link SSHClient} can ask for connection here with <code>getConnection(url)</code>.
+ * Holds up to {@link #MAX_CONNECTIONS_PER_HOST} authenticated {@link SSHClient}s per SSH URL. Code
+ * that needs a connection for a while borrows one with {@link #borrowConnection(String)} and hands
+ * it back with {@link #returnConnection(SSHClient)}; when all of them are taken the caller waits for
+ * one to come back. Each pooled connection keeps its SFTP subsystem channel open between borrows,
+ * see {@link #getSftpChannel(SSHClient)}.
+ *
+ * Connections idle for more than {@link #IDLE_TIMEOUT} are evicted, and connections idle for more
+ * than {@link #VALIDATION_INTERVAL} are checked with a round trip before being handed out again.
  */
 public class SshConnectionPool
 {
@@ -57,15 +76,48 @@ public class SshConnectionPool
 
     public static final int SSH_CONNECT_TIMEOUT = 30000;
 
+    public static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    public static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    public static final long VALIDATION_INTERVAL = 30 * 1000;
+
+    /**
+     * Interval between SSH keep-alive packets, in seconds
+     */
+    public static final int SSH_KEEP_ALIVE_INTERVAL = 30;
+
     private static final String TAG = SshConnectionPool.class.getSimpleName();
 
     private static SshConnectionPool instance = null;
 
-    private final Map<String, SSHClient> connections;
+    private final Map<String, HostConnections> connections;
+
+    private final Map<SSHClient, PooledConnection> borrowed;
+
+    // connects on behalf of callers sitting on the main thread, as sshj can't do network there
+    private final ExecutorService connector;
+
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final AtomicLong evictions = new AtomicLong(0L);
+    private final AtomicLong waits = new AtomicLong(0L);
+    private final AtomicLong waitTimeMillis = new AtomicLong(0L);
 
     private SshConnectionPool()
     {
-        connections = new ConcurrentHashMap<String, SSHClient>();
+        connections = new ConcurrentHashMap<String, HostConnections>();
+        borrowed = new ConcurrentHashMap<SSHClient, PooledConnection>();
+        connector = Executors.newCachedThreadPool();
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ssh_connection_evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, IDLE_TIMEOUT, IDLE_TIMEOUT,
+                TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -73,7 +125,7 @@ public class SshConnectionPool
      *
      * @return {@link SshConnectionPool} instance
      */
-    public static final SshConnectionPool getInstance() {
+    public static final synchronized SshConnectionPool getInstance() {
         if(instance == null)
             instance = new SshConnectionPool();
 
@@ -83,39 +135,27 @@ public class SshConnectionPool
     /**
      * Obtain a {@link SSHClient} connection from the underlying connection pool.
      *
-     * Beneath it will return the connection if it exists; otherwise it will create a new one and
-     * put it into the connection pool.
+     * Beneath it will return a pooled connection if one is available; otherwise it will create a
+     * new one and put it into the connection pool. The connection is handed back to the pool
+     * straight away, so it is only good for checking that the server can be reached; use
+     * {@link #borrowConnection(String)} to transfer anything over it, or
+     * {@link SshClientUtils#openInputStream(String)} for a stream that keeps it until closed.
      *
      * @param url SSH connection URL, in the form of <code>ssh://&lt;username&gt;:&lt;password&gt;@&lt;host&gt;:&lt;port&gt;</code> or <code>ssh://&lt;username&gt;@&lt;host&gt;:&lt;port&gt;</code>
      * @return {@link SSHClient} connection, already opened and authenticated
-     * @throws IOException IOExceptions that occur during connection setup
      */
     public SSHClient getConnection(@NonNull String url)  {
-        url = SshClientUtils.extractBaseUriFrom(url);
-
-        SSHClient client = connections.get(url);
-        if(client == null) {
-            client = create(url);
-            if(client != null)
-                connections.put(url, client);
-        } else {
-            if(!validate(client)) {
-                Log.d(TAG, "Connection no longer usable. Reconnecting...");
-                expire(client);
-                connections.remove(url);
-                client = create(url);
-                if(client != null)
-                    connections.put(url, client);
-            }
-        }
+        SSHClient client = borrowConnection(url);
+        if(client != null)
+            returnConnection(client);
         return client;
     }
 
     /**
      * Obtain a {@link SSHClient} connection from the underlying connection pool.
      *
-     * Beneath it will return the connection if it exists; otherwise it will create a new one and
-     * put it into the connection pool.
+     * Beneath it will return a pooled connection if one is available; otherwise it will create a
+     * new one and put it into the connection pool.
      *
      * Different from {@link #getConnection(String)} above, this accepts broken down parameters as
      * convenience method during setting up SCP/SFTP connection.
@@ -134,22 +174,66 @@ public class SshConnectionPool
 
         String url = SshClientUtils.deriveSftpPathFrom(host, port, username, password, keyPair);
 
-        SSHClient client = connections.get(url);
-        if(client == null) {
-            client = create(host, port, hostFingerprint, username, password, keyPair);
-            if(client != null)
-                connections.put(url, client);
-        } else {
-            if(!validate(client)) {
-                Log.d(TAG, "Connection no longer usable. Reconnecting...");
-                expire(client);
-                connections.remove(url);
-                client = create(host, port, hostFingerprint, username, password, keyPair);
-                if(client != null)
-                    connections.put(url, client);
+        SSHClient client = borrow(url, () -> create(host, port, hostFingerprint, username,
+                password, keyPair));
+        if(client != null)
+            returnConnection(client);
+        return client;
+    }
+
+    /**
+     * Take a {@link SSHClient} connection out of the pool, creating one if there is room for it,
+     * or waiting for one to be returned otherwise.
+     *
+     * Every borrowed connection must be given back with {@link #returnConnection(SSHClient)}.
+     *
+     * @param url SSH connection URL, see {@link #getConnection(String)}
+     * @return {@link SSHClient} connection, or null if it could not be created
+     */
+    @Nullable
+    public SSHClient borrowConnection(@NonNull String url) {
+        String baseUrl = SshClientUtils.extractBaseUriFrom(url);
+        return borrow(baseUrl, () -> create(baseUrl));
+    }
+
+    /**
+     * Give back a connection obtained from {@link #borrowConnection(String)}.
+     *
+     * Connections no longer usable are dropped instead of being put back into the pool.
+     */
+    public void returnConnection(@NonNull SSHClient client) {
+        PooledConnection pooled = borrowed.remove(client);
+        if(pooled == null)
+            return;
+
+        HostConnections host = pooled.host;
+        synchronized(host) {
+            if(validate(client)) {
+                pooled.lastUsed = System.currentTimeMillis();
+                host.idle.addFirst(pooled);
+            } else {
+                expire(pooled);
+                host.total--;
             }
+            host.notifyAll();
         }
-        return client;
+    }
+
+    /**
+     * Obtain the SFTP subsystem channel of a borrowed connection, opening it on first use.
+     *
+     * The channel belongs to the pool and must not be closed by the caller.
+     */
+    @NonNull
+    public SFTPClient getSftpChannel(@NonNull SSHClient client) throws IOException {
+        PooledConnection pooled = borrowed.get(client);
+        if(pooled == null)
+            return client.newSFTPClient();
+
+        if(pooled.sftpClient == null)
+            pooled.sftpClient = client.newSFTPClient();
+
+        return pooled.sftpClient;
     }
 
     /**
@@ -160,15 +244,155 @@ public class SshConnectionPool
      */
     public void expungeAllConnections() {
         AppConfig.runInBackground(() -> {
-            if(!connections.isEmpty()) {
-                for (SSHClient connection : connections.values()) {
-                    SshClientUtils.tryDisconnect(connection);
+            for(HostConnections host : connections.values()) {
+                synchronized(host) {
+                    for(PooledConnection pooled : host.idle) {
+                        expire(pooled);
+                        host.total--;
+                    }
+                    host.idle.clear();
                 }
-                connections.clear();
+            }
+            for(SSHClient client : borrowed.keySet()) {
+                SshClientUtils.tryDisconnect(client);
             }
         });
     }
 
+    /**
+     * @return snapshot of the pool usage counters, for tuning the pool sizes
+     */
+    public Stats getStats() {
+        int idle = 0, total = 0;
+        for(HostConnections host : connections.values()) {
+            synchronized(host) {
+                idle += host.idle.size();
+                total += host.total;
+            }
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), waits.get(),
+                waitTimeMillis.get(), idle, total);
+    }
+
+    private SSHClient borrow(@NonNull String url, @NonNull ConnectionFactory factory) {
+        HostConnections host = connections.get(url);
+        if(host == null) {
+            connections.putIfAbsent(url, new HostConnections());
+            host = connections.get(url);
+        }
+
+        long waitStart = 0L;
+        synchronized(host) {
+            while(true) {
+                PooledConnection pooled = host.idle.pollFirst();
+                if(pooled != null) {
+                    if(isAlive(pooled)) {
+                        hits.incrementAndGet();
+                        recordWait(waitStart);
+                        borrowed.put(pooled.client, pooled);
+                        return pooled.client;
+                    }
+
+                    Log.d(TAG, "Connection no longer usable. Reconnecting...");
+                    expire(pooled);
+                    host.total--;
+                    continue;
+                }
+
+                if(host.total < MAX_CONNECTIONS_PER_HOST) {
+                    // reserve the slot, the connection itself is made outside of the lock
+                    host.total++;
+                    break;
+                }
+
+                if(waitStart == 0L) {
+                    waitStart = System.currentTimeMillis();
+                    waits.incrementAndGet();
+                }
+
+                try {
+                    host.wait(SSH_CONNECT_TIMEOUT);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    recordWait(waitStart);
+                    return null;
+                }
+
+                if(System.currentTimeMillis() - waitStart >= SSH_CONNECT_TIMEOUT) {
+                    Log.w(TAG, "Timed out waiting for a pooled connection");
+                    recordWait(waitStart);
+                    return null;
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        recordWait(waitStart);
+
+        SSHClient client = connect(factory);
+        if(client == null) {
+            synchronized(host) {
+                host.total--;
+                host.notifyAll();
+            }
+            return null;
+        }
+
+        borrowed.put(client, new PooledConnection(host, client));
+        return client;
+    }
+
+    private void recordWait(long waitStart) {
+        if(waitStart != 0L)
+            waitTimeMillis.addAndGet(System.currentTimeMillis() - waitStart);
+    }
+
+    /**
+     * Runs the connection factory on the calling thread, unless it is the main thread where network
+     * access is not allowed
+     */
+    private SSHClient connect(@NonNull ConnectionFactory factory) {
+        if(Looper.myLooper() != Looper.getMainLooper())
+            return factory.create();
+
+        Future<SSHClient> future = connector.submit(factory::create);
+        try {
+            return future.get(SSH_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return null;
+        } catch(ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Error creating connection", e);
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for(HostConnections host : connections.values()) {
+            List<PooledConnection> expired = new ArrayList<>();
+            synchronized(host) {
+                Iterator<PooledConnection> iterator = host.idle.iterator();
+                while(iterator.hasNext()) {
+                    PooledConnection pooled = iterator.next();
+                    if(now - pooled.lastUsed > IDLE_TIMEOUT) {
+                        iterator.remove();
+                        host.total--;
+                        expired.add(pooled);
+                    }
+                }
+                if(!expired.isEmpty())
+                    host.notifyAll();
+            }
+            for(PooledConnection pooled : expired) {
+                evictions.incrementAndGet();
+                expire(pooled);
+            }
+        }
+    }
+
     // Logic for creating SSH connection. Depends on password existence in given Uri password or
     // key-based authentication
     private SSHClient create(@NonNull String url) {
@@ -203,27 +427,122 @@ public class SshConnectionPool
                              @NonNull String username, @Nullable String password,
                              @Nullable KeyPair keyPair) {
 
-        try {
-            AsyncTaskResult<SSHClient> taskResult = new SshAuthenticationTask(host, port,
-                    hostKey, username, password, keyPair).execute().get();
+        SshAuthenticationTask task = new SshAuthenticationTask(host, port, hostKey, username,
+                password, keyPair);
+        AsyncTaskResult<SSHClient> taskResult = task.authenticate();
+        if(taskResult.exception != null)
+            AppConfig.getInstance().runInApplicationThread(() -> task.notifyFailure(taskResult));
 
-            SSHClient client = taskResult.result;
-            return client;
-        } catch(InterruptedException e) {
-            //FIXME: proper handling
-            throw new RuntimeException(e);
-        } catch(ExecutionException e) {
-            //FIXME: proper handling
-            throw new RuntimeException(e);
-        }
+        return taskResult.result;
     }
 
     private boolean validate(@NonNull SSHClient client) {
         return client.isConnected() && client.isAuthenticated();
     }
 
-    private void expire(@NonNull SSHClient client) {
-        SshClientUtils.tryDisconnect(client);
+    /**
+     * {@link #validate(SSHClient)}, plus a round trip over the SFTP channel for connections idle
+     * long enough for the server or a NAT in between to have dropped them silently
+     */
+    private boolean isAlive(@NonNull PooledConnection pooled) {
+        if(!validate(pooled.client))
+            return false;
+
+        if(pooled.sftpClient != null
+                && System.currentTimeMillis() - pooled.lastUsed > VALIDATION_INTERVAL) {
+            try {
+                pooled.sftpClient.canonicalize(".");
+            } catch(IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expire(@NonNull PooledConnection pooled) {
+        if(pooled.sftpClient != null) {
+            try {
+                pooled.sftpClient.close();
+            } catch(IOException e) {
+                Log.w(TAG, "Error closing SFTP client", e);
+            }
+        }
+        SshClientUtils.tryDisconnect(pooled.client);
+    }
+
+    private interface ConnectionFactory {
+        @Nullable SSHClient create();
+    }
+
+    /**
+     * Connections of a single SSH URL. Guarded by its own monitor, which borrowers also wait on.
+     */
+    private static final class HostConnections {
+        final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+
+        // idle + borrowed + being created
+        int total = 0;
+    }
+
+    private static final class PooledConnection {
+        final HostConnections host;
+        final SSHClient client;
+        SFTPClient sftpClient;
+        long lastUsed;
+
+        PooledConnection(@NonNull HostConnections host, @NonNull SSHClient client) {
+            this.host = host;
+            this.client = client;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Usage counters of the pool, see {@link #getStats()}.
+     */
+    public static final class Stats {
+
+        /**
+         * Borrows served by an idle pooled connection
+         */
+        public final long hits;
+
+        /**
+         * Borrows which had to create a new connection
+         */
+        public final long misses;
+
+        /**
+         * Connections closed for being idle too long
+         */
+        public final long evictions;
+
+        /**
+         * Borrows which had to wait for a connection to be returned, and their total wait time
+         */
+        public final long waits;
+        public final long waitTimeMillis;
+
+        public final int idleConnections;
+        public final int totalConnections;
+
+        Stats(long hits, long misses, long evictions, long waits, long waitTimeMillis,
+              int idleConnections, int totalConnections) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.waits = waits;
+            this.waitTimeMillis = waitTimeMillis;
+            this.idleConnections = idleConnections;
+            this.totalConnections = totalConnections;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                    + ", waits=" + waits + ", waitTimeMillis=" + waitTimeMillis
+                    + ", idle=" + idleConnections + "/" + totalConnections;
+        }
     }
 
     /**
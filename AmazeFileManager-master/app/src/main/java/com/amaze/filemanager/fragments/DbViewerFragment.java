@@ -1,50 +1,78 @@
 package com.amaze.filemanager.fragments;
 
-import android.database.Cursor;
 import android.graphics.Color;
+import android.graphics.Typeface;
 import android.os.Bundle;
+import android.support.annotation.ColorInt;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.webkit.WebView;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import com.afollestad.materialdialogs.MaterialDialog;
 import com.amaze.filemanager.R;
 import com.amaze.filemanager.activities.DatabaseViewerActivity;
+import com.amaze.filemanager.adapters.DbTableAdapter;
 import com.amaze.filemanager.asynchronous.asynctasks.DbViewerTask;
+import com.amaze.filemanager.utils.DbTablePager;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.theme.AppTheme;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Created by Vishal on 06-02-2015.
+ *
+ * Shows a table a page at a time. Tapping a column header sorts by it, ascending, descending
+ * and then in the order of the table; long pressing it filters the rows by it.
  */
-public class DbViewerFragment extends Fragment {
+public class DbViewerFragment extends Fragment implements DbTableAdapter.OnPageMissingListener {
     public DatabaseViewerActivity databaseViewerActivity;
     private String tableName;
     private View rootView;
-    private Cursor schemaCursor, contentCursor;
     private RelativeLayout relativeLayout;
     public TextView loadingText;
-    private WebView webView;
+    private HorizontalScrollView tableScroll;
+    private LinearLayout tableHeader;
+    private RecyclerView tableRows;
+
+    private DbTablePager pager;
+    private DbTableAdapter adapter;
+    private TextView[] headerCells;
+    /**
+     * Increased whenever sorting or filtering change, pages read before are ignored
+     */
+    private int generation = 0;
+    private final Set<Integer> loadingPages = new HashSet<>();
 
     @Override
     public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         databaseViewerActivity = (DatabaseViewerActivity) getActivity();
 
         rootView = inflater.inflate(R.layout.fragment_db_viewer, null);
-        webView = rootView.findViewById(R.id.webView1);
         loadingText = rootView.findViewById(R.id.loadingText);
         relativeLayout = rootView.findViewById(R.id.tableLayout);
+        tableScroll = rootView.findViewById(R.id.tableScroll);
+        tableHeader = rootView.findViewById(R.id.tableHeader);
+        tableRows = rootView.findViewById(R.id.tableRows);
         tableName = getArguments().getString("table");
         databaseViewerActivity.setTitle(tableName);
 
-        schemaCursor = databaseViewerActivity.sqLiteDatabase.rawQuery("PRAGMA table_info(" + tableName + ");", null);
-        contentCursor = databaseViewerActivity.sqLiteDatabase.rawQuery("SELECT * FROM " + tableName, null);
+        tableRows.setLayoutManager(new LinearLayoutManager(getContext()));
+        pager = new DbTablePager(databaseViewerActivity.sqLiteDatabase, tableName);
 
-        new DbViewerTask(schemaCursor, contentCursor, webView, this).execute();
+        loadingText.setText(R.string.loading);
+        loadingText.setVisibility(View.VISIBLE);
+        onPageMissing(0);
 
         return rootView;
     }
@@ -54,20 +82,139 @@ public class DbViewerFragment extends Fragment {
         super.onActivityCreated(savedInstanceState);
         if (databaseViewerActivity.getAppTheme().equals(AppTheme.DARK)) {
             relativeLayout.setBackgroundColor(Utils.getColor(getContext(), R.color.holo_dark_background));
-            webView.setBackgroundColor(Utils.getColor(getContext(), R.color.holo_dark_background));
         } else if (databaseViewerActivity.getAppTheme().equals(AppTheme.BLACK)) {
             relativeLayout.setBackgroundColor(Utils.getColor(getContext(), android.R.color.black));
-            webView.setBackgroundColor(Utils.getColor(getContext(), android.R.color.black));
         } else {
             relativeLayout.setBackgroundColor(Color.parseColor("#ffffff"));
-            webView.setBackgroundColor(Color.parseColor("#ffffff"));
+        }
+    }
+
+    @Override
+    public void onPageMissing(int page) {
+        if (loadingPages.add(page)) {
+            new DbViewerTask(pager, page, generation, this).execute();
+        }
+    }
+
+    /**
+     * @param count number of rows passing the filter
+     */
+    public void onPageLoaded(int page, int generation, int count) {
+        if (generation != this.generation) return;
+        loadingPages.remove(page);
+
+        if (adapter == null) {
+            List<String> columns = pager.getColumns();
+            adapter = new DbTableAdapter(getContext(), pager, columns.size(), getTextColor(), this);
+            createHeader(columns);
+            tableRows.setAdapter(adapter);
+            loadingText.setVisibility(View.GONE);
+            tableScroll.setVisibility(View.VISIBLE);
+        } else if (adapter.getItemCount() != count) {
+            adapter.notifyDataSetChanged();
+        } else {
+            adapter.notifyItemRangeChanged(page * DbTablePager.PAGE_SIZE, DbTablePager.PAGE_SIZE);
+        }
+
+        updateSubtitle(count);
+    }
+
+    private void createHeader(List<String> columns) {
+        headerCells = new TextView[columns.size()];
+        LinearLayout row = DbTableAdapter.createRow(getContext(), columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            final int column = i;
+            headerCells[i] = DbTableAdapter.createCell(getContext(), getTextColor());
+            headerCells[i].setTypeface(null, Typeface.BOLD);
+            headerCells[i].setOnClickListener(v -> sort(column));
+            headerCells[i].setOnLongClickListener(v -> {
+                showFilterDialog(column);
+                return true;
+            });
+            row.addView(headerCells[i]);
+        }
+        tableHeader.addView(row);
+        updateHeader();
+    }
+
+    private void updateHeader() {
+        List<String> columns = pager.getColumns();
+        for (int i = 0; i < headerCells.length; i++) {
+            String text = columns.get(i);
+            if (i == pager.getSortColumn()) text += pager.isSortAscending() ? " ▲" : " ▼";
+            headerCells[i].setText(text);
+        }
+    }
+
+    private void sort(int column) {
+        if (pager.getSortColumn() != column) {
+            pager.setSort(column, true);
+        } else if (pager.isSortAscending()) {
+            pager.setSort(column, false);
+        } else {
+            pager.setSort(-1, true);
+        }
+        reload();
+    }
+
+    private void showFilterDialog(int column) {
+        String current = pager.getFilterColumn() == column ? pager.getFilter() : null;
+        new MaterialDialog.Builder(getContext())
+                .title(getString(R.string.db_filter_column, pager.getColumns().get(column)))
+                .input(getString(R.string.db_filter_hint), current, true,
+                        (dialog, input) -> {
+                            pager.setFilter(column, input.toString());
+                            reload();
+                        })
+                .positiveText(R.string.search)
+                .negativeText(R.string.cancel)
+                .build()
+                .show();
+    }
+
+    /**
+     * Reads the rows in view again, after sorting or filtering changed
+     */
+    private void reload() {
+        generation++;
+        loadingPages.clear();
+        updateHeader();
+        updateSubtitle(pager.getCount());
+        adapter.notifyDataSetChanged();
+
+        int first = ((LinearLayoutManager) tableRows.getLayoutManager()).findFirstVisibleItemPosition();
+        onPageMissing(Math.max(0, first) / DbTablePager.PAGE_SIZE);
+    }
+
+    private void updateSubtitle(int count) {
+        if (databaseViewerActivity.getSupportActionBar() == null) return;
+
+        String subtitle;
+        if (count == DbTablePager.UNKNOWN_COUNT) {
+            subtitle = getString(R.string.loading);
+        } else if (pager.getFilter() != null) {
+            subtitle = getString(R.string.db_rows_filtered, count,
+                    pager.getColumns().get(pager.getFilterColumn()), pager.getFilter());
+        } else {
+            subtitle = getString(R.string.db_rows, count);
+        }
+        databaseViewerActivity.getSupportActionBar().setSubtitle(subtitle);
+    }
+
+    private @ColorInt int getTextColor() {
+        if (databaseViewerActivity.getAppTheme().equals(AppTheme.DARK)
+                || databaseViewerActivity.getAppTheme().equals(AppTheme.BLACK)) {
+            return Color.WHITE;
+        } else {
+            return Color.BLACK;
         }
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
-        schemaCursor.close();
-        contentCursor.close();
+        if (databaseViewerActivity.getSupportActionBar() != null) {
+            databaseViewerActivity.getSupportActionBar().setSubtitle(null);
+        }
     }
 }
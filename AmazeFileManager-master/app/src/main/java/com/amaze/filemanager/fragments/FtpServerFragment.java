@@ -31,6 +31,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.design.widget.TextInputLayout;
@@ -40,6 +41,7 @@ import android.support.v7.widget.AppCompatEditText;
 import android.text.Html;
 import android.text.InputType;
 import android.text.Spanned;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -56,6 +58,7 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.amaze.filemanager.R;
 import com.amaze.filemanager.activities.MainActivity;
 import com.amaze.filemanager.asynchronous.services.ftp.FtpService;
+import com.amaze.filemanager.asynchronous.services.ftp.FtpSessionMetrics;
 import com.amaze.filemanager.utils.OneCharacterCharSequence;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.files.CryptUtil;
@@ -64,6 +67,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.GeneralSecurityException;
+import java.util.List;
 
 /**
  * Created by yashwanthreddyg on 10-06-2016.
@@ -71,9 +75,11 @@ import java.security.GeneralSecurityException;
  */
 public class FtpServerFragment extends Fragment {
 
+    private static final long SESSIONS_UPDATE_INTERVAL_MILLIS = 1000;
+
     private MainActivity mainActivity;
 
-    private TextView statusText, url, username, password, port, sharedPath;
+    private TextView statusText, url, username, password, port, sharedPath, sessions;
     private AppCompatEditText usernameEditText, passwordEditText;
     private TextInputLayout usernameTextInput, passwordTextInput;
     private AppCompatCheckBox mAnonymousCheckBox, mSecureCheckBox;
@@ -83,6 +89,15 @@ public class FtpServerFragment extends Fragment {
     private Spanned spannedStatusSecure, spannedStatusNotRunning;
     private ImageButton ftpPasswordVisibleButton;
 
+    private final Handler handler = new Handler();
+    private final Runnable sessionsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateSessions();
+            handler.postDelayed(this, SESSIONS_UPDATE_INTERVAL_MILLIS);
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -100,6 +115,7 @@ public class FtpServerFragment extends Fragment {
         password = rootView.findViewById(R.id.text_view_ftp_password);
         port = rootView.findViewById(R.id.text_view_ftp_port);
         sharedPath = rootView.findViewById(R.id.text_view_ftp_path);
+        sessions = rootView.findViewById(R.id.text_view_ftp_sessions);
         ftpBtn = rootView.findViewById(R.id.startStopButton);
         View startDividerView = rootView.findViewById(R.id.divider_ftp_start);
         View statusDividerView = rootView.findViewById(R.id.divider_ftp_status);
@@ -300,6 +316,42 @@ public class FtpServerFragment extends Fragment {
                         .build()
                         .show();
                 return true;
+            case R.id.ftp_passive_ports:
+                new MaterialDialog.Builder(getContext())
+                        .title(R.string.ftp_passive_ports)
+                        .input(getString(R.string.ftp_passive_ports_hint), getPassivePorts(), true,
+                                (dialog, input) -> {
+                                    if (FtpService.isValidPassivePorts(input.toString())) {
+                                        setPassivePorts(input.toString().trim());
+                                    } else {
+                                        Toast.makeText(getActivity(), R.string.ftp_passive_ports_invalid,
+                                                Toast.LENGTH_SHORT).show();
+                                    }
+                                })
+                        .positiveText(getString(R.string.set).toUpperCase())
+                        .negativeText(R.string.cancel)
+                        .build()
+                        .show();
+                return true;
+            case R.id.ftp_max_connections:
+                new MaterialDialog.Builder(getContext())
+                        .title(R.string.ftp_max_connections)
+                        .input(String.valueOf(FtpService.DEFAULT_MAX_CONNECTIONS),
+                                String.valueOf(getMaxConnections()), true, (dialog, input) -> {
+                                    int maxConnections;
+                                    try {
+                                        maxConnections = Integer.parseInt(input.toString());
+                                    } catch (NumberFormatException e) {
+                                        maxConnections = FtpService.DEFAULT_MAX_CONNECTIONS;
+                                    }
+                                    setMaxConnections(Math.max(1, maxConnections));
+                                })
+                        .inputType(InputType.TYPE_CLASS_NUMBER)
+                        .positiveText(getString(R.string.set).toUpperCase())
+                        .negativeText(R.string.cancel)
+                        .build()
+                        .show();
+                return true;
         }
 
         return false;
@@ -389,6 +441,7 @@ public class FtpServerFragment extends Fragment {
         ftpFilter.addAction(FtpService.ACTION_STOPPED);
         ftpFilter.addAction(FtpService.ACTION_FAILEDTOSTART);
         getContext().registerReceiver(ftpReceiver, ftpFilter);
+        handler.post(sessionsUpdater);
     }
 
     @Override
@@ -396,6 +449,7 @@ public class FtpServerFragment extends Fragment {
         super.onPause();
         getContext().unregisterReceiver(mWifiReceiver);
         getContext().unregisterReceiver(ftpReceiver);
+        handler.removeCallbacks(sessionsUpdater);
     }
 
     /**
@@ -457,6 +511,30 @@ public class FtpServerFragment extends Fragment {
                 getDefaultPathFromPreferences());
     }
 
+    /**
+     * Shows the clients connected, and the speed of what they transfer
+     */
+    private void updateSessions() {
+        List<FtpSessionMetrics> metrics = FtpService.getSessions();
+        if (metrics.isEmpty()) {
+            sessions.setVisibility(View.GONE);
+            return;
+        }
+
+        StringBuilder text = new StringBuilder(getString(R.string.ftp_connections, metrics.size()));
+        for (FtpSessionMetrics session : metrics) {
+            String file = session.getCurrentFile();
+            if (file == null) continue;
+
+            text.append('\n').append(getString(R.string.ftp_session_transfer,
+                    session.getClientAddress().getAddress().getHostAddress(),
+                    (session.isUploading() ? "\u2191 " : "\u2193 ") + new File(file).getName(),
+                    Formatter.formatFileSize(getContext(), session.getThroughput())));
+        }
+        sessions.setText(text);
+        sessions.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Updates the status spans
      */
@@ -610,6 +688,22 @@ public class FtpServerFragment extends Fragment {
         mainActivity.getPrefs().edit().putInt(FtpService.KEY_PREFERENCE_TIMEOUT, seconds).apply();
     }
 
+    private String getPassivePorts() {
+        return mainActivity.getPrefs().getString(FtpService.KEY_PREFERENCE_PASSIVE_PORTS, FtpService.DEFAULT_PASSIVE_PORTS);
+    }
+
+    private void setPassivePorts(String passivePorts) {
+        mainActivity.getPrefs().edit().putString(FtpService.KEY_PREFERENCE_PASSIVE_PORTS, passivePorts).apply();
+    }
+
+    private int getMaxConnections() {
+        return mainActivity.getPrefs().getInt(FtpService.KEY_PREFERENCE_MAX_CONNECTIONS, FtpService.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    private void setMaxConnections(int maxConnections) {
+        mainActivity.getPrefs().edit().putInt(FtpService.KEY_PREFERENCE_MAX_CONNECTIONS, maxConnections).apply();
+    }
+
     private boolean getSecurePreference() {
         return mainActivity.getPrefs().getBoolean(FtpService.KEY_PREFERENCE_SECURE, FtpService.DEFAULT_SECURE);
     }
@@ -101,6 +101,7 @@ import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.SmbStreamer.Streamer;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
+import com.amaze.filemanager.utils.files.CryptStreamer;
 import com.amaze.filemanager.utils.files.CryptUtil;
 import com.amaze.filemanager.utils.files.EncryptDecryptUtils;
 import com.amaze.filemanager.utils.files.FileListSorter;
@@ -111,7 +112,6 @@ import com.amaze.filemanager.utils.theme.AppTheme;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -884,6 +884,11 @@ public class MainFragment extends android.support.v4.app.Fragment implements Bot
                 if (e.isDirectory) {
                     computeScroll();
                     loadlist(path, false, openMode);
+                } else if (e.desc.endsWith(CryptUtil.CRYPT_EXTENSION) && openMode == OpenMode.FILE
+                        && CryptStreamer.isStreamMedia(e.desc) && CryptUtil.isSeekable(new File(e.desc))) {
+                    // media is played while it's decrypted, without a copy in the cache
+                    EncryptDecryptUtils.streamFile(getContext(), getMainActivity(), ma,
+                            e.generateBaseFile(), utilsProvider);
                 } else if (e.desc.endsWith(CryptUtil.CRYPT_EXTENSION)) {
                     // decrypt the file
                     isEncryptOpen = true;
@@ -1013,13 +1018,28 @@ public class MainFragment extends android.support.v4.app.Fragment implements Bot
             loadFilesListTask.cancel(true);
         }
 
+        final boolean[] showingPages = {false};
         loadFilesListTask = new LoadFilesListTask(ma.getActivity(), path, ma, openMode,
                 getBoolean(PREFERENCE_SHOW_THUMB), getBoolean(PREFERENCE_SHOW_HIDDENFILES), (data) -> {
             if (data != null && data.second != null) {
-                boolean isPathLayoutGrid = dataUtils.getListOrGridForPath(path, DataUtils.LIST) == DataUtils.GRID;
-                setListElements(data.second, back, path, data.first, false, isPathLayoutGrid);
+                if (showingPages[0]) {
+                    // the list is already on screen, don't reset the scroll
+                    showLastPage(data.second, data.first);
+                } else {
+                    boolean isPathLayoutGrid = dataUtils.getListOrGridForPath(path, DataUtils.LIST) == DataUtils.GRID;
+                    setListElements(data.second, back, path, data.first, false, isPathLayoutGrid);
+                }
                 mSwipeRefreshLayout.setRefreshing(false);
             }
+        }, (page) -> {
+            if (!showingPages[0]) {
+                boolean isPathLayoutGrid = dataUtils.getListOrGridForPath(path, DataUtils.LIST) == DataUtils.GRID;
+                // copied, the task keeps reading the page while merging the next one
+                setListElements(new ArrayList<>(page.second), back, path, page.first, false, isPathLayoutGrid);
+                showingPages[0] = true;
+            } else {
+                showPage(page.second);
+            }
         });
         loadFilesListTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
@@ -1067,19 +1087,49 @@ public class MainFragment extends android.support.v4.app.Fragment implements Bot
         }
     }
 
+    /**
+     * Replaces the elements of the list being shown without resetting the view, used for the
+     * pages of a directory still being loaded
+     */
+    private void showPage(ArrayList<LayoutElementParcelable> elements) {
+        if (!isAdded() || adapter == null) return;
+
+        LIST_ELEMENTS = new ArrayList<>(elements);
+        addBackElementIfNeeded();
+        adapter.setItems(listView, new ArrayList<>(LIST_ELEMENTS));
+    }
+
+    /**
+     * Shows the complete list after its pages, keeping the scroll. The task may have settled on
+     * another mode than the one of the first page (e.g. {@link OpenMode#ROOT}), and only now
+     * knows how many folders and files there are.
+     */
+    private void showLastPage(ArrayList<LayoutElementParcelable> elements, OpenMode openMode) {
+        if (!isAdded() || adapter == null) return;
+
+        this.openMode = openMode;
+        showPage(elements);
+        getMainActivity().updatePaths(no);
+        startFileObserver();
+    }
+
+    private void addBackElementIfNeeded() {
+        boolean isOtg = CURRENT_PATH.equals(OTGUtil.PREFIX_OTG + "/"),
+                isOnTheCloud = CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_GOOGLE_DRIVE + "/")
+                        || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_ONE_DRIVE + "/")
+                        || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_BOX + "/")
+                        || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_DROPBOX + "/");
+
+        if (getBoolean(PREFERENCE_SHOW_GOBACK_BUTTON) && !CURRENT_PATH.equals("/")
+                && (openMode == OpenMode.FILE || openMode == OpenMode.ROOT) && !isOtg && !isOnTheCloud
+                && (LIST_ELEMENTS.size() == 0 || !LIST_ELEMENTS.get(0).size.equals(getString(R.string.goback)))) {
+            LIST_ELEMENTS.add(0, getBackElement());
+        }
+    }
+
     public void reloadListElements(boolean back, boolean results, boolean grid) {
         if (isAdded()) {
-            boolean isOtg = CURRENT_PATH.equals(OTGUtil.PREFIX_OTG + "/"),
-                    isOnTheCloud = CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_GOOGLE_DRIVE + "/")
-                            || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_ONE_DRIVE + "/")
-                            || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_BOX + "/")
-                            || CURRENT_PATH.equals(CloudHandler.CLOUD_PREFIX_DROPBOX + "/");
-
-            if (getBoolean(PREFERENCE_SHOW_GOBACK_BUTTON) && !CURRENT_PATH.equals("/")
-                    && (openMode == OpenMode.FILE || openMode == OpenMode.ROOT) && !isOtg && !isOnTheCloud
-                    && (LIST_ELEMENTS.size() == 0 || !LIST_ELEMENTS.get(0).size.equals(getString(R.string.goback)))) {
-                LIST_ELEMENTS.add(0, getBackElement());
-            }
+            addBackElementIfNeeded();
 
             if (LIST_ELEMENTS.size() == 0 && !results) {
                 nofilesview.setVisibility(View.VISIBLE);
@@ -1631,7 +1681,7 @@ public class MainFragment extends android.support.v4.app.Fragment implements Bot
         new AsyncTask<Void, Void, Void>() {
             @Override
             protected Void doInBackground(Void... params) {
-                Collections.sort(LIST_ELEMENTS, new FileListSorter(dsort, sortby, asc));
+                FileListSorter.sort(LIST_ELEMENTS, new FileListSorter(dsort, sortby, asc, true));
                 return null;
             }
 
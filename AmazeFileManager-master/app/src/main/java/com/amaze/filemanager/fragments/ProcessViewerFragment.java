@@ -52,6 +52,7 @@ import com.amaze.filemanager.asynchronous.services.AbstractProgressiveService;
 import com.amaze.filemanager.asynchronous.services.ZipService;
 import com.amaze.filemanager.utils.DatapointParcelable;
 import com.amaze.filemanager.utils.ObtainableServiceBinder;
+import com.amaze.filemanager.utils.ThroughputMeter;
 import com.amaze.filemanager.utils.Utils;
 import com.amaze.filemanager.utils.files.FileUtils;
 import com.amaze.filemanager.utils.theme.AppTheme;
@@ -84,9 +85,14 @@ public class ProcessViewerFragment extends Fragment {
     private LineChart mLineChart;
     private LineData mLineData = new LineData();
     /**
-     * Time in seconds just for showing to the user. No guarantees.
+     * The operation shown, the chart starts over when another one publishes
      */
-    private long looseTimeInSeconds = 0L;
+    private int shownServiceType = -1;
+    private long shownBytes = 0L;
+    /**
+     * {@link DatapointParcelable#time} of the first datapoint shown for the operation
+     */
+    private long startTime = 0L;
     private TextView mProgressTypeText, mProgressFileNameText,
             mProgressBytesText, mProgressFileText,  mProgressSpeedText, mProgressTimer;
 
@@ -187,6 +193,13 @@ public class ProcessViewerFragment extends Fragment {
             long doneBytes = dataPackage.byteProgress;
             boolean move = dataPackage.move;
 
+            if (isInitialized && (serviceType != shownServiceType || doneBytes < shownBytes)) {
+                // another operation started, the speeds of the last one would distort the chart
+                mLineData = new LineData();
+                mCancelButton.setVisibility(View.VISIBLE);
+                isInitialized = false;
+            }
+
             if (!isInitialized) {
 
                 // initializing views for the first time
@@ -194,8 +207,11 @@ public class ProcessViewerFragment extends Fragment {
 
                 // setting progress image
                 setupDrawables(serviceType, move);
+                shownServiceType = serviceType;
+                startTime = dataPackage.time;
                 isInitialized = true;
             }
+            shownBytes = doneBytes;
 
             addEntry(FileUtils.readableFileSizeFloat(doneBytes),
                     FileUtils.readableFileSizeFloat(dataPackage.speedRaw));
@@ -220,10 +236,17 @@ public class ProcessViewerFragment extends Fragment {
                     + "/s</font></i>");
             mProgressSpeedText.setText(speedSpan);
 
-            Spanned timerSpan = Html.fromHtml(getResources().getString(R.string.service_timer)
+            String timerText = getResources().getString(R.string.service_timer)
                     + ": <font color='" + accentColor + "'><i>"
-                    + Utils.formatTimer(++looseTimeInSeconds)
-                    + "</font></i>");
+                    + Utils.formatTimer((dataPackage.time - startTime) / 1000)
+                    + "</font></i>";
+            if (!dataPackage.completed && dataPackage.secondsRemaining != ThroughputMeter.UNKNOWN_TIME) {
+                timerText += "<br>" + getResources().getString(R.string.time_remaining)
+                        + ": <font color='" + accentColor + "'><i>"
+                        + Utils.formatTimer(dataPackage.secondsRemaining)
+                        + "</font></i>";
+            }
+            Spanned timerSpan = Html.fromHtml(timerText);
 
             mProgressTimer.setText(timerSpan);
 
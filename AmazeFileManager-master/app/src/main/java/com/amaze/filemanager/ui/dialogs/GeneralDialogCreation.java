@@ -534,7 +534,11 @@ public class GeneralDialogCreation {
         builder.customView(v, true);
         builder.positiveText(base.getString(R.string.ok));
         builder.positiveColor(accentColor);
-        builder.dismissListener(dialog -> executor.shutdown());
+        builder.dismissListener(dialog -> {
+            // no one is going to look at the hashes anymore
+            hashGen.cancel(false);
+            executor.shutdown();
+        });
 
         MaterialDialog materialDialog = builder.build();
         materialDialog.show();
@@ -2,6 +2,7 @@ package com.amaze.filemanager.utils;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 
 import com.amaze.filemanager.asynchronous.services.AbstractProgressiveService;
 import com.amaze.filemanager.fragments.ProcessViewerFragment;
@@ -33,9 +34,17 @@ public class DatapointParcelable implements Parcelable {
      */
     public final long totalSize;
     /**
-     * bytes being copied per sec
+     * bytes being copied per sec, over the last seconds
      */
     public final long speedRaw;
+    /**
+     * seconds left at that speed, {@link ThroughputMeter#UNKNOWN_TIME} if unknown
+     */
+    public final long secondsRemaining;
+    /**
+     * {@link SystemClock#elapsedRealtime()} when the datapoint was taken
+     */
+    public final long time;
 
     public final boolean completed, move;
 
@@ -60,9 +69,11 @@ public class DatapointParcelable implements Parcelable {
         this.move = move;
 
         speedRaw = 0;
+        secondsRemaining = ThroughputMeter.UNKNOWN_TIME;
         sourceProgress = 0;
         byteProgress = 0;
         completed = false;
+        time = SystemClock.elapsedRealtime();
     }
 
     /**
@@ -85,7 +96,9 @@ public class DatapointParcelable implements Parcelable {
         this.speedRaw = speedRaw;
         this.completed = completed;
 
+        secondsRemaining = ThroughputMeter.UNKNOWN_TIME;
         move = false;
+        time = SystemClock.elapsedRealtime();
     }
 
     /**
@@ -98,20 +111,23 @@ public class DatapointParcelable implements Parcelable {
      * @param totalSize total size of all source files combined
      * @param byteProgress current byte position in total bytes pool
      * @param speedRaw bytes being copied per sec
+     * @param secondsRemaining seconds left at that speed, {@link ThroughputMeter#UNKNOWN_TIME} if unknown
      * @param move allows changing the text from "Copying" to "Moving" in case of copy
      * @param completed if the operation has finished
      */
     public DatapointParcelable(String name, int amountOfSourceFiles, int sourceProgress,
-                              long totalSize, long byteProgress, long speedRaw, boolean move,
-                              boolean completed) {
+                              long totalSize, long byteProgress, long speedRaw, long secondsRemaining,
+                              boolean move, boolean completed) {
         this.name = name;
         sourceFiles = amountOfSourceFiles;
         this.sourceProgress = sourceProgress;
         this.totalSize = totalSize;
         this.byteProgress = byteProgress;
         this.speedRaw = speedRaw;
+        this.secondsRemaining = secondsRemaining;
         this.move = move;
         this.completed = completed;
+        time = SystemClock.elapsedRealtime();
     }
 
     protected DatapointParcelable(Parcel in) {
@@ -123,6 +139,8 @@ public class DatapointParcelable implements Parcelable {
         move = in.readByte() != 0;
         name = in.readString();
         speedRaw = in.readLong();
+        secondsRemaining = in.readLong();
+        time = in.readLong();
     }
 
     public static final Creator<DatapointParcelable> CREATOR = new Creator<DatapointParcelable>() {
@@ -152,5 +170,7 @@ public class DatapointParcelable implements Parcelable {
         dest.writeByte((byte) (move ? 1 : 0));
         dest.writeString(name);
         dest.writeLong(speedRaw);
+        dest.writeLong(secondsRemaining);
+        dest.writeLong(time);
     }
 }
@@ -0,0 +1,307 @@
+package com.amaze.filemanager.utils;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the rows of a table a page at a time, so that the table never has to fit in memory.
+ *
+ * Sorting and filtering are done by SQLite. Without sorting, pages following one already read
+ * are queried from its last rowid (keyset pagination), so scrolling down a big table doesn't make
+ * SQLite skip all the rows above every time like OFFSET does. Only the last {@link #MAX_PAGES}
+ * pages read are kept.
+ *
+ * Queries are blocking, {@link #getRow(int)} and {@link #getCount()} only return what was read.
+ */
+public class DbTablePager {
+
+    public static final int PAGE_SIZE = 100;
+    static final int MAX_PAGES = 8;
+
+    public static final int UNKNOWN_COUNT = -1;
+
+    private static class Page {
+        final String[][] rows;
+        /**
+         * rowid of the last row, null if it's unknown
+         */
+        final Long lastRowId;
+
+        Page(String[][] rows, Long lastRowId) {
+            this.rows = rows;
+            this.lastRowId = lastRowId;
+        }
+    }
+
+    private final SQLiteDatabase database;
+    private final String table;
+    private List<String> columns = null;
+    private Boolean hasRowId = null;
+
+    private int sortColumn = -1;
+    private boolean sortAscending = true;
+    private int filterColumn = -1;
+    private String filter = null;
+
+    /**
+     * Increased whenever sorting or filtering change, to drop the pages being read for the rows
+     * that were there before
+     */
+    private int generation = 0;
+    private int count = UNKNOWN_COUNT;
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    public DbTablePager(@NonNull SQLiteDatabase database, @NonNull String table) {
+        this.database = database;
+        this.table = table;
+    }
+
+    /**
+     * @return names of the columns of the table, read from its schema the first time
+     */
+    @WorkerThread
+    public synchronized List<String> loadColumns() {
+        if (columns != null) return columns;
+
+        columns = new ArrayList<>();
+        Cursor c = database.rawQuery("PRAGMA table_info(" + quote(table) + ")", null);
+        try {
+            for (c.moveToFirst(); !c.isAfterLast(); c.moveToNext()) {
+                columns.add(c.getString(1));
+            }
+        } finally {
+            c.close();
+        }
+        return columns;
+    }
+
+    /**
+     * @return names of the columns of the table, null if {@link #loadColumns()} wasn't called
+     */
+    @Nullable
+    public synchronized List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of rows passing the filter, counted by SQLite
+     */
+    @WorkerThread
+    public int loadCount() {
+        int generation;
+        String sql;
+        String[] args;
+        synchronized (this) {
+            if (count != UNKNOWN_COUNT) return count;
+            generation = this.generation;
+            sql = "SELECT COUNT(*) FROM " + quote(table) + getWhere();
+            args = getWhereArgs(null);
+        }
+
+        int count;
+        Cursor c = database.rawQuery(sql, args);
+        try {
+            count = c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
+        }
+
+        synchronized (this) {
+            if (generation == this.generation) this.count = count;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the page, unless it was read already
+     */
+    @WorkerThread
+    public void loadPage(int page) {
+        int generation;
+        String sql;
+        String[] args;
+        boolean useRowId;
+        synchronized (this) {
+            if (pages.containsKey(page)) return;
+            generation = this.generation;
+
+            Page previous = page > 0 ? pages.get(page - 1) : null;
+            useRowId = sortColumn == -1 && hasRowId();
+            boolean keyset = useRowId && previous != null && previous.lastRowId != null;
+
+            StringBuilder query = new StringBuilder("SELECT ");
+            if (useRowId) query.append("rowid, ");
+            query.append("* FROM ").append(quote(table));
+
+            String where = getWhere();
+            if (keyset) {
+                query.append(where.isEmpty() ? " WHERE " : where + " AND ").append("rowid > ?");
+            } else {
+                query.append(where);
+            }
+
+            if (useRowId) {
+                query.append(" ORDER BY rowid");
+            } else if (sortColumn != -1) {
+                query.append(" ORDER BY ").append(quote(columns.get(sortColumn)))
+                        .append(sortAscending ? " ASC" : " DESC");
+            }
+
+            query.append(" LIMIT ").append(PAGE_SIZE);
+            if (!keyset) query.append(" OFFSET ").append(page * PAGE_SIZE);
+
+            sql = query.toString();
+            args = getWhereArgs(keyset ? String.valueOf(previous.lastRowId) : null);
+        }
+
+        Page result = readPage(database.rawQuery(sql, args), useRowId);
+
+        synchronized (this) {
+            if (generation == this.generation) pages.put(page, result);
+        }
+    }
+
+    /**
+     * @return the row at position, null if its page wasn't read or was forgotten
+     */
+    @Nullable
+    public synchronized String[] getRow(int position) {
+        Page page = pages.get(position / PAGE_SIZE);
+        if (page == null || position % PAGE_SIZE >= page.rows.length) return null;
+        return page.rows[position % PAGE_SIZE];
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getSortColumn() {
+        return sortColumn;
+    }
+
+    public synchronized boolean isSortAscending() {
+        return sortAscending;
+    }
+
+    /**
+     * @param column index in {@link #loadColumns()}, -1 for the order of the table
+     */
+    public synchronized void setSort(int column, boolean ascending) {
+        sortColumn = column;
+        sortAscending = ascending;
+        reset(false);
+    }
+
+    public synchronized int getFilterColumn() {
+        return filterColumn;
+    }
+
+    @Nullable
+    public synchronized String getFilter() {
+        return filter;
+    }
+
+    /**
+     * Keeps only the rows whose value in column contains text, ignoring case for ASCII letters
+     *
+     * @param text null or empty to show every row
+     */
+    public synchronized void setFilter(int column, @Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            filterColumn = -1;
+            filter = null;
+        } else {
+            filterColumn = column;
+            filter = text;
+        }
+        reset(true);
+    }
+
+    private void reset(boolean countChanged) {
+        generation++;
+        pages.clear();
+        if (countChanged) count = UNKNOWN_COUNT;
+    }
+
+    private Page readPage(Cursor c, boolean withRowId) {
+        try {
+            int offset = withRowId ? 1 : 0;
+            String[][] rows = new String[c.getCount()][];
+            Long lastRowId = null;
+            int i = 0;
+            for (c.moveToFirst(); !c.isAfterLast(); c.moveToNext(), i++) {
+                String[] row = new String[c.getColumnCount() - offset];
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = getValue(c, j + offset);
+                }
+                rows[i] = row;
+                if (withRowId) lastRowId = c.getLong(0);
+            }
+            return new Page(rows, lastRowId);
+        } finally {
+            c.close();
+        }
+    }
+
+    private static String getValue(Cursor c, int column) {
+        switch (c.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return String.valueOf(c.getLong(column));
+            case Cursor.FIELD_TYPE_FLOAT:
+                return String.valueOf(c.getDouble(column));
+            case Cursor.FIELD_TYPE_BLOB:
+                return "(BLOB)";
+            default:
+                return c.getString(column);
+        }
+    }
+
+    private String getWhere() {
+        if (filter == null) return "";
+        return " WHERE CAST(" + quote(columns.get(filterColumn)) + " AS TEXT) LIKE ? ESCAPE '\\'";
+    }
+
+    private String[] getWhereArgs(@Nullable String lastRowId) {
+        ArrayList<String> args = new ArrayList<>(2);
+        if (filter != null) {
+            args.add("%" + filter.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        if (lastRowId != null) args.add(lastRowId);
+        return args.isEmpty() ? null : args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Tables created WITHOUT ROWID can only be paged with OFFSET
+     */
+    private boolean hasRowId() {
+        if (hasRowId == null) {
+            try {
+                database.rawQuery("SELECT rowid FROM " + quote(table) + " LIMIT 0", null).close();
+                hasRowId = true;
+            } catch (SQLiteException e) {
+                hasRowId = false;
+            }
+        }
+        return hasRowId;
+    }
+
+    static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
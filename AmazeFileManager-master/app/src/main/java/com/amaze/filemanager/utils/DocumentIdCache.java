@@ -0,0 +1,153 @@
+package com.amaze.filemanager.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the document ids of paths in a document tree, so that {@link OTGUtil} doesn't walk
+ * from the root of the tree to resolve each of them.
+ *
+ * Paths are relative to the root of the tree, like "DCIM/Camera", the root itself is "". The
+ * children of directories listed lately are also remembered, to know a path doesn't exist
+ * without listing its parent again.
+ */
+class DocumentIdCache {
+
+    static final int MAX_PATHS = 1024;
+    static final int MAX_LISTINGS = 64;
+    static final long LISTING_MAX_AGE_MILLIS = 30 * 1000;
+
+    private static class Listing {
+        final Set<String> names;
+        final long time;
+
+        Listing(Set<String> names, long time) {
+            this.names = names;
+            this.time = time;
+        }
+    }
+
+    private String root = null;
+    private final LinkedHashMap<String, String> documentIds = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_PATHS;
+        }
+    };
+    private final LinkedHashMap<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+            return size() > MAX_LISTINGS;
+        }
+    };
+
+    /**
+     * Everything remembered is forgotten when the tree changes
+     */
+    synchronized void setRoot(@NonNull String root) {
+        if (!root.equals(this.root)) {
+            clear();
+            this.root = root;
+        }
+    }
+
+    @Nullable
+    synchronized String get(@NonNull String path) {
+        return documentIds.get(path);
+    }
+
+    synchronized void put(@NonNull String path, @NonNull String documentId) {
+        documentIds.put(path, documentId);
+
+        Listing parent = listings.get(getParent(path));
+        if (parent != null) parent.names.add(getName(path));
+    }
+
+    /**
+     * @return true if the parent of path was listed lately without it
+     */
+    synchronized boolean isMissing(@NonNull String path, long now) {
+        if (path.isEmpty()) return false;
+
+        Listing parent = listings.get(getParent(path));
+        return parent != null && now - parent.time <= LISTING_MAX_AGE_MILLIS
+                && !parent.names.contains(getName(path));
+    }
+
+    /**
+     * Remembers the children of a directory, and forgets the paths that were in it before but
+     * aren't anymore
+     *
+     * @param children document ids by name
+     */
+    synchronized void onListed(@NonNull String directory, @NonNull Map<String, String> children, long now) {
+        removeUnder(directory, children.keySet());
+        for (Map.Entry<String, String> child : children.entrySet()) {
+            documentIds.put(getChild(directory, child.getKey()), child.getValue());
+        }
+        listings.put(directory, new Listing(new HashSet<>(children.keySet()), now));
+    }
+
+    /**
+     * Forgets path, everything under it and the listing of its parent, when it's created,
+     * deleted or renamed
+     */
+    synchronized void invalidate(@NonNull String path) {
+        if (path.isEmpty()) {
+            clear();
+            return;
+        }
+
+        documentIds.remove(path);
+        listings.remove(path);
+        removeUnder(path, null);
+        listings.remove(getParent(path));
+    }
+
+    synchronized void clear() {
+        documentIds.clear();
+        listings.clear();
+    }
+
+    /**
+     * Removes the paths under directory, but those under the children to keep
+     */
+    private void removeUnder(String directory, @Nullable Set<String> keep) {
+        String prefix = directory.isEmpty() ? "" : directory + "/";
+        removeUnder(documentIds.keySet().iterator(), prefix, keep);
+        removeUnder(listings.keySet().iterator(), prefix, keep);
+    }
+
+    private static void removeUnder(Iterator<String> paths, String prefix, @Nullable Set<String> keep) {
+        while (paths.hasNext()) {
+            String path = paths.next();
+            if (path.isEmpty() || !path.startsWith(prefix)) continue;
+
+            int end = path.indexOf('/', prefix.length());
+            String child = end == -1 ? path.substring(prefix.length()) : path.substring(prefix.length(), end);
+            if (keep == null || !keep.contains(child)) paths.remove();
+        }
+    }
+
+    @NonNull
+    static String getParent(@NonNull String path) {
+        int slash = path.lastIndexOf('/');
+        return slash == -1 ? "" : path.substring(0, slash);
+    }
+
+    @NonNull
+    static String getName(@NonNull String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @NonNull
+    static String getChild(@NonNull String directory, @NonNull String name) {
+        return directory.isEmpty() ? name : directory + "/" + name;
+    }
+}
@@ -4,16 +4,16 @@ package com.amaze.filemanager.utils;
  * Created by Vishal on 21/12/15 edited by Emmanuel Messulam <emmanuelbendavid@gmail.com>
  * A helper class which provides data structure of key/value pair
  *
- * typedef ImmutableEntry<ImmutableEntry<Integer, Integer>, Integer> MapEntry
+ * typedef ImmutableEntry<ImmutableEntry<Long, Long>, Long> MapEntry
  */
-public class MapEntry extends ImmutableEntry<ImmutableEntry<Integer, Integer>, Integer> {
+public class MapEntry extends ImmutableEntry<ImmutableEntry<Long, Long>, Long> {
 
     /**
      * Constructor to provide values to the pair
      * @param key object of {@link ImmutableEntry} which is another key/value pair
-     * @param value integer object in the pair
+     * @param value long object in the pair
      */
-    public MapEntry(ImmutableEntry<Integer, Integer> key, Integer value) {
+    public MapEntry(ImmutableEntry<Long, Long> key, Long value) {
         super(key, value);
     }
 }
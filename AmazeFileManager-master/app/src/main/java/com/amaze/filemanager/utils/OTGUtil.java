@@ -1,20 +1,28 @@
 package com.amaze.filemanager.utils;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.provider.DocumentFile;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.amaze.filemanager.filesystem.HybridFileParcelable;
 import com.amaze.filemanager.filesystem.RootHelper;
 import com.amaze.filemanager.filesystem.SingletonUsbOtg;
+import com.amaze.filemanager.ui.icons.MimeTypes;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 import static android.content.Context.USB_SERVICE;
 
@@ -26,6 +34,19 @@ public class OTGUtil {
 
     public static final String PREFIX_OTG = "otg:/";
 
+    private static final String TAG = "OTGUtil";
+
+    private static final String[] CHILDREN_PROJECTION = {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_FLAGS
+    };
+
+    private static final DocumentIdCache documentIds = new DocumentIdCache();
+
     /**
      * Returns an array of list of files at a specific path in OTG
      *
@@ -49,33 +70,29 @@ public class OTGUtil {
      * @param context context for loading
      */
     public static void getDocumentFiles(String path, Context context, OnFileFound fileFound) {
-        Uri rootUriString = SingletonUsbOtg.getInstance().getUsbOtgRoot();
-        if(rootUriString == null) throw new NullPointerException("USB OTG root not set!");
+        Uri root = getRoot();
+        String relativePath = toRelativePath(path);
 
-        DocumentFile rootUri = DocumentFile.fromTreeUri(context, rootUriString);
+        // the id may be of a document since deleted or renamed by someone else, try once more
+        for (int attempt = 0; attempt < 2; attempt++) {
+            String documentId = resolveDocumentId(context, root, relativePath, false);
+            if (documentId == null) return;
 
-        String[] parts = path.split("/");
-        for (String part : parts) {
-            // first omit 'otg:/' before iterating through DocumentFile
-            if (path.equals(OTGUtil.PREFIX_OTG + "/")) break;
-            if (part.equals("otg:") || part.equals("")) continue;
-
-            // iterating through the required path to find the end point
-            rootUri = rootUri.findFile(part);
-        }
+            boolean listed = listChildren(context, root, relativePath, documentId, cursor -> {
+                String name = cursor.getString(1);
+                String mimeType = cursor.getString(2);
+                boolean isDirectory = Document.MIME_TYPE_DIR.equals(mimeType);
+                long size = isDirectory || cursor.isNull(3) ? 0 : cursor.getLong(3);
 
-        // we have the end point DocumentFile, list the files inside it and return
-        for (DocumentFile file : rootUri.listFiles()) {
-            if (file.exists()) {
-                long size = 0;
-                if (!file.isDirectory()) size = file.length();
-                Log.d(context.getClass().getSimpleName(), "Found file: " + file.getName());
-                HybridFileParcelable baseFile = new HybridFileParcelable(path + "/" + file.getName(),
-                        RootHelper.parseDocumentFilePermission(file), file.lastModified(), size, file.isDirectory());
-                baseFile.setName(file.getName());
+                HybridFileParcelable baseFile = new HybridFileParcelable(path + "/" + name,
+                        parseDocumentPermission(mimeType, cursor.getInt(5)), cursor.getLong(4), size,
+                        isDirectory);
+                baseFile.setName(name);
                 baseFile.setMode(OpenMode.OTG);
                 fileFound.onFileFound(baseFile);
-            }
+            });
+            if (listed) return;
+            documentIds.invalidate(relativePath);
         }
     }
 
@@ -84,28 +101,153 @@ public class OTGUtil {
      *
      * @param createRecursive flag used to determine whether to create new file while traversing to path,
      *                        in case path is not present. Notably useful in opening an output stream.
+     * @return null if there's nothing at path and createRecursive is false
      */
+    @Nullable
     public static DocumentFile getDocumentFile(String path, Context context, boolean createRecursive) {
-        Uri rootUriString = SingletonUsbOtg.getInstance().getUsbOtgRoot();
-        if(rootUriString == null) throw new NullPointerException("USB OTG root not set!");
+        Uri root = getRoot();
+        String documentId = resolveDocumentId(context, root, toRelativePath(path), createRecursive);
+        if (documentId == null) return null;
+
+        return DocumentFile.fromTreeUri(context, DocumentsContract.buildDocumentUriUsingTree(root, documentId));
+    }
+
+    /**
+     * Forgets what is known of path, call it after deleting or renaming it
+     */
+    public static void invalidate(String path) {
+        documentIds.invalidate(toRelativePath(path));
+    }
+
+    @NonNull
+    private static Uri getRoot() {
+        Uri root = SingletonUsbOtg.getInstance().getUsbOtgRoot();
+        if(root == null) throw new NullPointerException("USB OTG root not set!");
 
-        // start with root of SD card and then parse through document tree.
-        DocumentFile rootUri = DocumentFile.fromTreeUri(context, rootUriString);
+        documentIds.setRoot(root.toString());
+        return root;
+    }
 
-        String[] parts = path.split("/");
-        for (String part : parts) {
-            if (path.equals("otg:/")) break;
+    /**
+     * @return path without 'otg:/' and without the empty parts, "" for the root
+     */
+    private static String toRelativePath(String path) {
+        StringBuilder relativePath = new StringBuilder();
+        for (String part : path.split("/")) {
             if (part.equals("otg:") || part.equals("")) continue;
 
-            // iterating through the required path to find the end point
-            DocumentFile nextDocument = rootUri.findFile(part);
-            if (createRecursive && (nextDocument == null || !nextDocument.exists())) {
-                nextDocument = rootUri.createFile(part.substring(part.lastIndexOf(".")), part);
+            if (relativePath.length() > 0) relativePath.append('/');
+            relativePath.append(part);
+        }
+        return relativePath.toString();
+    }
+
+    /**
+     * Starts from the deepest directory with a known id, and lists its way down from there
+     */
+    @Nullable
+    private static String resolveDocumentId(Context context, Uri root, String relativePath,
+                                            boolean createRecursive) {
+        if (relativePath.isEmpty()) return DocumentsContract.getTreeDocumentId(root);
+
+        String documentId = documentIds.get(relativePath);
+        if (documentId != null) return documentId;
+
+        String directory = DocumentIdCache.getParent(relativePath);
+        String directoryId = null;
+        while (!directory.isEmpty() && (directoryId = documentIds.get(directory)) == null) {
+            directory = DocumentIdCache.getParent(directory);
+        }
+        if (directoryId == null) directoryId = DocumentsContract.getTreeDocumentId(root);
+
+        while (!directory.equals(relativePath)) {
+            int end = relativePath.indexOf('/', directory.isEmpty() ? 0 : directory.length() + 1);
+            String child = end == -1 ? relativePath : relativePath.substring(0, end);
+
+            String childId = null;
+            if (!documentIds.isMissing(child, SystemClock.elapsedRealtime())) {
+                childId = documentIds.get(child);
+                if (childId == null && listChildren(context, root, directory, directoryId, null)) {
+                    childId = documentIds.get(child);
+                }
+            }
+            if (childId == null) {
+                if (!createRecursive) return null;
+
+                childId = createDocument(context, root, directoryId, DocumentIdCache.getName(child),
+                        !child.equals(relativePath));
+                if (childId == null) return null;
+                documentIds.put(child, childId);
+            }
+
+            directory = child;
+            directoryId = childId;
+        }
+        return directoryId;
+    }
+
+    private interface OnChildFound {
+        void onChildFound(Cursor cursor);
+    }
+
+    /**
+     * Lists the children of a directory with a single query, remembering their ids
+     *
+     * @return false if the directory couldn't be listed
+     */
+    private static boolean listChildren(Context context, Uri root, String directory, String directoryId,
+                                        @Nullable OnChildFound childFound) {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(root, directoryId);
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(childrenUri, CHILDREN_PROJECTION, null, null, null);
+            if (cursor == null) return false;
+
+            Map<String, String> children = new HashMap<>();
+            while (cursor.moveToNext()) {
+                children.put(cursor.getString(1), cursor.getString(0));
+                if (childFound != null) childFound.onChildFound(cursor);
             }
-            rootUri = nextDocument;
+            documentIds.onListed(directory, children, SystemClock.elapsedRealtime());
+            return true;
+        } catch (RuntimeException e) {
+            // the provider throws for documents that don't exist anymore
+            Log.w(TAG, "Can't list " + directory, e);
+            return false;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    @Nullable
+    private static String createDocument(Context context, Uri root, String directoryId, String name,
+                                         boolean isDirectory) {
+        DocumentFile directory = DocumentFile.fromTreeUri(context,
+                DocumentsContract.buildDocumentUriUsingTree(root, directoryId));
+        if (directory == null) return null;
+
+        DocumentFile created;
+        if (isDirectory) {
+            created = directory.createDirectory(name);
+        } else {
+            String mimeType = MimeTypes.getMimeType(name, false);
+            created = directory.createFile(MimeTypes.ALL_MIME_TYPES.equals(mimeType) ?
+                    "application/octet-stream" : mimeType, name);
         }
+        return created == null ? null : DocumentsContract.getDocumentId(created.getUri());
+    }
 
-        return rootUri;
+    /**
+     * Same as {@link RootHelper#parseDocumentFilePermission(DocumentFile)}, from the columns of the
+     * document
+     */
+    private static String parseDocumentPermission(String mimeType, int flags) {
+        boolean isDirectory = Document.MIME_TYPE_DIR.equals(mimeType);
+        boolean canRead = !TextUtils.isEmpty(mimeType);
+        boolean canWrite = (flags & Document.FLAG_SUPPORTS_DELETE) != 0
+                || (isDirectory && (flags & Document.FLAG_DIR_SUPPORTS_CREATE) != 0)
+                || (canRead && (flags & Document.FLAG_SUPPORTS_WRITE) != 0);
+        return (canRead ? "r" : "") + (canWrite ? "wx" : "");
     }
 
     /**
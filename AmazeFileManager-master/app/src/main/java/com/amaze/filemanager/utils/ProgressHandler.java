@@ -2,6 +2,8 @@ package com.amaze.filemanager.utils;
 
 import com.amaze.filemanager.fragments.ProcessViewerFragment;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by arpitkh96 on 18/8/16.
  *
@@ -24,6 +26,25 @@ public class ProgressHandler {
      * Volatile because non volatile long r/w are not atomic (see Java Language Specification 17.7)
      */
     private volatile long writtenSize = 0L;
+
+    /**
+     * total bytes reported by the worker itself so far, sampled by {@link ServiceWatcherUtil}
+     * Workers add to it without locking, it belongs to this operation alone
+     */
+    private final AtomicLong processedBytes = new AtomicLong(0L);
+
+    /**
+     * bytes per second over the last seconds, and seconds left at that speed
+     * ({@link ThroughputMeter#UNKNOWN_TIME} if unknown), as of the last publication
+     */
+    private volatile long speed = 0L;
+    private volatile long secondsRemaining = ThroughputMeter.UNKNOWN_TIME;
+
+    /**
+     * no byte has been processed for a while
+     */
+    private volatile boolean isHalted = false;
+
     /**
      * total number of source files to be processed
      */
@@ -48,6 +69,11 @@ public class ProgressHandler {
      */
     private volatile ProgressListener progressListener;
 
+    /**
+     * called on the worker's thread, for the watcher to decide whether to publish
+     */
+    private volatile ProcessedBytesListener processedBytesListener;
+
     /**
      * Constructor to start an instance
      * @param sourceFiles the total number of source files selected by the user for operation
@@ -65,15 +91,34 @@ public class ProgressHandler {
     }
 
     /**
-     * publish progress after calculating the write length
+     * publish progress measured by {@link ServiceWatcherUtil}
+     *
+     * @param writtenSize the position of byte in total bytes
+     * @param speed bytes per second, smoothed over the last seconds
+     * @param secondsRemaining time left at that speed, {@link ThroughputMeter#UNKNOWN_TIME} if unknown
+     */
+    public synchronized void publishProgress(long writtenSize, long speed, long secondsRemaining) {
+        this.writtenSize = writtenSize;
+        this.speed = speed;
+        this.secondsRemaining = secondsRemaining;
+
+        progressListener.onProgressed(speed);
+    }
+
+    /**
+     * Called by the worker every time a slice of data has been processed
      *
-     * @param newPosition the position of byte for file being processed
+     * @param bytes number of bytes in the slice
      */
-    public synchronized void addWrittenLength(long newPosition) {
-        long speedRaw = (newPosition - writtenSize);
-        this.writtenSize = newPosition;
+    public void addProcessedBytes(long bytes) {
+        long processed = processedBytes.addAndGet(bytes);
 
-        progressListener.onProgressed(speedRaw);
+        ProcessedBytesListener listener = processedBytesListener;
+        if (listener != null) listener.onProcessedBytes(processed);
+    }
+
+    public long getProcessedBytes() {
+        return processedBytes.get();
     }
 
     public void setFileName(String fileName) {
@@ -121,6 +166,26 @@ public class ProgressHandler {
         return writtenSize;
     }
 
+    public long getSpeed() {
+        return speed;
+    }
+
+    public long getSecondsRemaining() {
+        return secondsRemaining;
+    }
+
+    public void setHalted(boolean isHalted) {
+        this.isHalted = isHalted;
+    }
+
+    public boolean isHalted() {
+        return isHalted;
+    }
+
+    public void setProcessedBytesListener(ProcessedBytesListener processedBytesListener) {
+        this.processedBytesListener = processedBytesListener;
+    }
+
     public void setProgressListener(ProgressListener progressListener) {
         this.progressListener = progressListener;
     }
@@ -136,4 +201,13 @@ public class ProgressHandler {
          */
         void onProgressed(long speed);
     }
+
+    public interface ProcessedBytesListener {
+        /**
+         * Called by the workers without locking, must return quickly
+         *
+         * @param processedBytes total bytes processed so far
+         */
+        void onProcessedBytes(long processedBytes);
+    }
 }
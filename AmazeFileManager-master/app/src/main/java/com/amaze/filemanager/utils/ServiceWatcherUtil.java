@@ -4,8 +4,17 @@ package com.amaze.filemanager.utils;
  * Created by vishal on 4/1/17.
  *
  * Helper class providing helper methods to manage Service startup and it's progress
- * Be advised - this class can only handle progress with one object at a time. Hence, class also provides
- * convenience methods to serialize the service startup.
+ *
+ * Every operation has its own watcher, which publishes what the workers add to the operation's
+ * {@link ProgressHandler}; nothing is polled. Workers only add to a lock-free counter, the
+ * watcher is told to publish once {@link #PUBLISH_STEPS}th of the total went by (but not more
+ * often than every {@link #MIN_PUBLISH_INTERVAL}), or once {@link #MAX_PUBLISH_INTERVAL} went by
+ * with any progress at all. Speed and time remaining come from the watcher's
+ * {@link ThroughputMeter}. The only timer left notices an operation halting, that is, not
+ * progressing for {@link #HALT_MILLIS}.
+ *
+ * Publishing happens on one thread shared by every watcher. Services are still started one after
+ * the other, see {@link #runService(Context, Intent)}.
  */
 
 import android.app.NotificationManager;
@@ -13,214 +22,261 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.v4.app.NotificationCompat;
 import android.text.format.Formatter;
-import android.util.Log;
 
 import com.amaze.filemanager.R;
-import com.amaze.filemanager.asynchronous.services.AbstractProgressiveService;
 import com.amaze.filemanager.ui.notifications.NotificationConstants;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ServiceWatcherUtil implements ProgressHandler.ProcessedBytesListener {
 
-import static com.amaze.filemanager.utils.ServiceWatcherUtil.ServiceWatcherInteractionInterface.*;
-import static com.amaze.filemanager.utils.ServiceWatcherUtil.ServiceWatcherInteractionInterface.STATE_UNSET;
+    static final int PUBLISH_STEPS = 100;
+    static final long MIN_PUBLISH_BYTES = 64 * 1024;
+    static final long MIN_PUBLISH_INTERVAL = 250;
+    static final long MAX_PUBLISH_INTERVAL = 1000;
+    static final long HALT_MILLIS = 5000;
 
-public class ServiceWatcherUtil {
+    private static class HandlerHolder {
+        private static final Handler INSTANCE = createHandler();
 
-    public static int state = STATE_UNSET;
+        private static Handler createHandler() {
+            HandlerThread handlerThread = new HandlerThread("service_progress_watcher");
+            handlerThread.start();
+            return new Handler(handlerThread.getLooper());
+        }
+    }
+
+    private static Context applicationContext;
+    private static NotificationManager notificationManager;
+    private static NotificationCompat.Builder builder;
 
     /**
-     * Position of byte in total byte size to be copied.
-     * This variable CANNOT be updated from more than one thread simultaneously.
-     * This variable should only be updated from an {@link AbstractProgressiveService}'s background
-     * thread.
-     *
-     * @see #postWaiting(Context)
+     * Services waiting for the one running to finish, guarded by the class
      */
-    public static volatile long position = 0L;
+    private static final Queue<Intent> pendingIntents = new LinkedList<>();
+    private static boolean isServiceRunning = false;
 
-    private Handler handler;
-    private static HandlerThread handlerThread;
-    private ProgressHandler progressHandler;
-    private Runnable runnable;
+    private final ProgressHandler progressHandler;
+    private final Handler handler = HandlerHolder.INSTANCE;
 
-    private static Handler waitingHandler;
-    private static HandlerThread waitingHandlerThread;
-    private static NotificationManager notificationManager;
-    private static NotificationCompat.Builder builder;
+    /**
+     * Only used on {@link #handler}'s thread
+     */
+    private final ThroughputMeter meter = new ThroughputMeter();
+    private ServiceWatcherInteractionInterface interactionInterface;
+
+    /**
+     * Written on {@link #handler}'s thread, read by the workers to decide whether to publish
+     */
+    private volatile long nextPublishBytes = Long.MAX_VALUE;
+    private volatile long earliestPublishTime = Long.MAX_VALUE;
+    private volatile long latestPublishTime = Long.MAX_VALUE;
+
+    private final AtomicBoolean isPublishPosted = new AtomicBoolean(false);
+    private final AtomicBoolean isStopped = new AtomicBoolean(false);
 
-    private static ConcurrentLinkedQueue<Intent> pendingIntents = new ConcurrentLinkedQueue<>();
+    private final Runnable publishRunnable = () -> {
+        isPublishPosted.set(false);
+        if (!isStopped.get()) publish();
+    };
 
-    private static int haltCounter = -1;
+    private final Runnable haltRunnable = this::checkHalted;
 
     /**
-     * @param progressHandler to publish progress after certain delay
+     * @param progressHandler to publish progress when the workers report enough of it
      */
     public ServiceWatcherUtil(ProgressHandler progressHandler) {
         this.progressHandler = progressHandler;
-        position = 0L;
-        haltCounter = -1;
-
-        handlerThread = new HandlerThread("service_progress_watcher");
-        handlerThread.start();
-        handler = new Handler(handlerThread.getLooper());
     }
 
     /**
      * Watches over the service progress without interrupting the worker thread in respective services
-     * Method frees up all the resources and handlers after operation completes.
+     * Has to be followed by {@link #stopWatch()} once the operation is over.
      */
     public void watch(ServiceWatcherInteractionInterface interactionInterface) {
-        runnable = new Runnable() {
-            @Override
-            public void run() {
-
-                // we don't have a file name yet, wait for service to set
-                if (progressHandler.getFileName()==null) handler.postDelayed(this, 1000);
-
-                if (position == progressHandler.getWrittenSize() &&
-                        (state != STATE_HALTED
-                                && ++haltCounter >5)) {
-
-                    // new position is same as the last second position, and halt counter is past threshold
-
-                    String writtenSize = Formatter.formatShortFileSize(interactionInterface.getApplicationContext(),
-                            progressHandler.getWrittenSize());
-                    String totalSize = Formatter.formatShortFileSize(interactionInterface.getApplicationContext(),
-                            progressHandler.getTotalSize());
-
-                    if (interactionInterface.isDecryptService() && writtenSize.equals(totalSize)) {
-                        // workaround for decryption when we have a length retrieved by
-                        // CipherInputStream less than the original stream, and hence the total size
-                        // we passed at the beginning is never reached
-                        // we try to get a less precise size and make our decision based on that
-                        progressHandler.addWrittenLength(progressHandler.getTotalSize());
-                        pendingIntents.remove();
-                        handler.removeCallbacks(this);
-                        handlerThread.quit();
-                        return;
-                    }
-
-                    haltCounter = 0;
-                    state = STATE_HALTED;
-                    interactionInterface.progressHalted();
-                } else if (position != progressHandler.getWrittenSize()) {
-
-                    if (state == STATE_HALTED) {
-
-                        state = STATE_RESUMED;
-                        haltCounter = 0;
-                        interactionInterface.progressResumed();
-                    } else {
-
-                        // reset the halt counter everytime there is a progress
-                        // so that it increments only when
-                        // progress was halted for consecutive time period
-                        state = STATE_UNSET;
-                        haltCounter = 0;
-                    }
-                }
-
-                progressHandler.addWrittenLength(position);
-
-                if (position == progressHandler.getTotalSize() || progressHandler.getCancelled()) {
-                    // process complete, free up resources
-                    // we've finished the work or process cancelled
-                    pendingIntents.remove();
-                    handler.removeCallbacks(this);
-                    handlerThread.quit();
-                    return;
-                }
-
-                handler.postDelayed(this, 1000);
-            }
-        };
+        this.interactionInterface = interactionInterface;
+        progressHandler.setProcessedBytesListener(this);
+
+        handler.post(() -> {
+            if (isStopped.get()) return;
+
+            long now = SystemClock.elapsedRealtime();
+            long position = progressHandler.getProcessedBytes();
+            meter.addSample(now, position);
+            schedule(now, position);
+        });
+    }
+
+    /**
+     * Called by the workers for each slice they process, it only tells {@link #handler} to
+     * publish when one of the thresholds is crossed
+     */
+    @Override
+    public void onProcessedBytes(long processedBytes) {
+        if (processedBytes < nextPublishBytes) {
+            if (SystemClock.elapsedRealtime() < latestPublishTime) return;
+        } else if (processedBytes < progressHandler.getTotalSize()
+                && SystemClock.elapsedRealtime() < earliestPublishTime) {
+            return;
+        }
 
-        handler.postDelayed(runnable, 1000);
+        if (isPublishPosted.compareAndSet(false, true)) handler.post(publishRunnable);
     }
 
     /**
-     * Manually call runnable, before the delay. Fixes race condition which can arise when
-     * service has finished execution and stopping self, but the runnable is yet scheduled to be posted.
-     * Thus avoids posting any callback after service has stopped.
+     * Samples the progress into {@link #meter} and publishes it through the {@link ProgressHandler}
+     */
+    private void publish() {
+        long now = SystemClock.elapsedRealtime();
+        long position = progressHandler.getProcessedBytes();
+
+        if (progressHandler.isHalted()) {
+            // the rate while halted would drag the speed down for seconds
+            meter.reset();
+            progressHandler.setHalted(false);
+            interactionInterface.progressResumed();
+        }
+
+        meter.addSample(now, position);
+        if (!isStopped.get()) schedule(now, position);
+
+        progressHandler.publishProgress(position, meter.getSmoothedRate(),
+                meter.getSecondsRemaining(progressHandler.getTotalSize()));
+    }
+
+    /**
+     * Sets the thresholds for the next publication, and rearms the halt timer
+     */
+    private void schedule(long now, long position) {
+        nextPublishBytes = position + Math.max(MIN_PUBLISH_BYTES,
+                progressHandler.getTotalSize() / PUBLISH_STEPS);
+        earliestPublishTime = now + MIN_PUBLISH_INTERVAL;
+        latestPublishTime = now + MAX_PUBLISH_INTERVAL;
+
+        handler.removeCallbacks(haltRunnable);
+        if (!progressHandler.getCancelled()) handler.postDelayed(haltRunnable, HALT_MILLIS);
+    }
+
+    /**
+     * Nothing was published for {@link #HALT_MILLIS}
+     */
+    private void checkHalted() {
+        if (isStopped.get() || progressHandler.getCancelled()) return;
+
+        if (progressHandler.getProcessedBytes() != meter.getPosition()) {
+            // some progress, but too little to be published
+            publish();
+            return;
+        }
+
+        String writtenSize = Formatter.formatShortFileSize(interactionInterface.getApplicationContext(),
+                progressHandler.getWrittenSize());
+        String totalSize = Formatter.formatShortFileSize(interactionInterface.getApplicationContext(),
+                progressHandler.getTotalSize());
+
+        if (interactionInterface.isDecryptService() && writtenSize.equals(totalSize)) {
+            // workaround for decryption when we have a length retrieved by
+            // CipherInputStream less than the original stream, and hence the total size
+            // we passed at the beginning is never reached
+            // we try to get a less precise size and make our decision based on that
+            progressHandler.publishProgress(progressHandler.getTotalSize(), 0, 0);
+            return;
+        }
+
+        if (!progressHandler.isHalted()) {
+            progressHandler.setHalted(true);
+            interactionInterface.progressHalted();
+        }
+    }
+
+    /**
+     * Publishes whatever wasn't yet and stops watching, then starts the next service waiting
+     * for this one, if any. Safe to call when {@link #watch(ServiceWatcherInteractionInterface)}
+     * wasn't, and more than once.
      */
     public void stopWatch() {
-        if (handlerThread.isAlive()) handler.post(runnable);
+        if (!isStopped.compareAndSet(false, true)) return;
+        progressHandler.setProcessedBytesListener(null);
+
+        handler.post(() -> {
+            handler.removeCallbacks(haltRunnable);
+
+            // unless the decryption workaround already published the total
+            if (interactionInterface != null
+                    && progressHandler.getWrittenSize() < progressHandler.getTotalSize()
+                    && progressHandler.getProcessedBytes() != progressHandler.getWrittenSize()) {
+                publish();
+            }
+
+            onServiceFinished();
+        });
     }
 
     /**
-     * Convenience method to check whether another service is working in background
-     * If a service is found working (by checking {@link #handlerThread} for it's state)
-     * then we wait for an interval of 5 secs, before checking on it again.
+     * Starts the service, or queues it until the ones started before it have finished.
+     * Services are run one at a time so that the user sees one progress at a time, the next one
+     * is started as soon as the watcher of the one running is stopped.
      *
      * Be advised - this method is not sure to start a new service, especially when app has been closed
-     * as there are higher chances for android system to GC the thread when it is running low on memory
+     * as there are higher chances for android system to kill the process when it is running low on memory
      */
     public static synchronized void runService(final Context context, final Intent intent) {
+        applicationContext = context.getApplicationContext();
+
+        if (!isServiceRunning) {
+            isServiceRunning = true;
+            context.startService(intent);
+            return;
+        }
+
         pendingIntents.add(intent);
-        switch (pendingIntents.size()) {
-            case 1:
-                // initialize waiting handlers
-                postWaiting(context);
-                break;
-            case 2:
-                // to avoid notifying repeatedly
-                notificationManager.notify(NotificationConstants.WAIT_ID, builder.build());
+        if (pendingIntents.size() == 1) {
+            // to avoid notifying repeatedly
+            getNotificationManager().notify(NotificationConstants.WAIT_ID, getWaitingBuilder().build());
         }
     }
 
-    /**
-     * Helper method to {@link #runService(Context, Intent)}
-     * Starts the wait watcher thread if not already started.
-     * Halting condition depends on the state of {@link #handlerThread}
-     */
-    private static synchronized void postWaiting(final Context context) {
-        waitingHandlerThread = new HandlerThread("service_startup_watcher");
-        waitingHandlerThread.start();
-        waitingHandler = new Handler(waitingHandlerThread.getLooper());
-        notificationManager = (NotificationManager)
-                context.getSystemService(Context.NOTIFICATION_SERVICE);
-        builder = new NotificationCompat.Builder(context, NotificationConstants.CHANNEL_NORMAL_ID)
-                .setContentTitle(context.getString(R.string.waiting_title))
-                .setContentText(context.getString(R.string.waiting_content))
-                .setAutoCancel(false)
-                .setSmallIcon(R.drawable.ic_all_inclusive_white_36dp)
-                .setProgress(0, 0, true);
-
-        NotificationConstants.setMetadata(context, builder, NotificationConstants.TYPE_NORMAL);
-
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                if (handlerThread==null || !handlerThread.isAlive()) {
-
-                    if (pendingIntents.size()==0) {
-                        // we've done all the work, free up resources (if not already killed by system)
-                        waitingHandler.removeCallbacks(this);
-                        waitingHandlerThread.quit();
-                        return;
-                    } else {
-                        if (pendingIntents.size()==1) {
-                            notificationManager.cancel(NotificationConstants.WAIT_ID);
-                        }
-                        context.startService(pendingIntents.element());
-                    }
-                }
-
-                Log.d(getClass().getSimpleName(), "Processes in progress, delay the check");
-                waitingHandler.postDelayed(this, 1000);
-            }
-        };
+    private static synchronized void onServiceFinished() {
+        Intent intent = pendingIntents.poll();
+        if (intent == null) {
+            isServiceRunning = false;
+            return;
+        }
+
+        if (pendingIntents.isEmpty()) {
+            getNotificationManager().cancel(NotificationConstants.WAIT_ID);
+        }
+        applicationContext.startService(intent);
+    }
 
-        waitingHandler.postDelayed(runnable, 0);
+    private static NotificationManager getNotificationManager() {
+        if (notificationManager == null) {
+            notificationManager = (NotificationManager)
+                    applicationContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        }
+        return notificationManager;
     }
 
-    public interface ServiceWatcherInteractionInterface {
+    private static NotificationCompat.Builder getWaitingBuilder() {
+        if (builder == null) {
+            builder = new NotificationCompat.Builder(applicationContext, NotificationConstants.CHANNEL_NORMAL_ID)
+                    .setContentTitle(applicationContext.getString(R.string.waiting_title))
+                    .setContentText(applicationContext.getString(R.string.waiting_content))
+                    .setAutoCancel(false)
+                    .setSmallIcon(R.drawable.ic_all_inclusive_white_36dp)
+                    .setProgress(0, 0, true);
 
-        int STATE_UNSET = -1;
-        int STATE_HALTED = 0;
-        int STATE_RESUMED = 1;
+            NotificationConstants.setMetadata(applicationContext, builder, NotificationConstants.TYPE_NORMAL);
+        }
+        return builder;
+    }
+
+    public interface ServiceWatcherInteractionInterface {
 
         /**
          * Progress has been halted for some reason
@@ -239,4 +295,4 @@ public class ServiceWatcherUtil {
          */
         boolean isDecryptService();
     }
-}
\ No newline at end of file
+}
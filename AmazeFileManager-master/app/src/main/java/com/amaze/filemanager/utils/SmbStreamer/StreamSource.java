@@ -5,12 +5,13 @@ package com.amaze.filemanager.utils.SmbStreamer;
  */
 import android.webkit.MimeTypeMap;
 
+import com.amaze.filemanager.utils.streams.BlockCache;
 import com.amaze.filemanager.utils.streams.RandomAccessStream;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
-import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 
 public class StreamSource extends RandomAccessStream {
@@ -20,6 +21,7 @@ public class StreamSource extends RandomAccessStream {
     protected String name;
     protected SmbFile file;
     InputStream input;
+    private final BlockCache.CachedFile cachedFile;
 
     public StreamSource(SmbFile file,long l) {
         super(l);
@@ -28,6 +30,20 @@ public class StreamSource extends RandomAccessStream {
         mime = MimeTypeMap.getFileExtensionFromUrl(file.getName());
         name = file.getName();
         this.file = file;
+        // smb streams skip without reading, so the cache can start them anywhere
+        cachedFile = BlockCache.getInstance().getFile(getCacheKey(file, l), l, true, position -> {
+            InputStream in = file.getInputStream();
+            while (position > 0) {
+                long skipped = in.skip(position);
+                if (skipped <= 0) throw new EOFException("Can't skip to " + position);
+                position -= skipped;
+            }
+            return in;
+        });
+    }
+
+    static String getCacheKey(SmbFile file, long length) {
+        return file.getPath() + ':' + length;
     }
 
     /**
@@ -55,11 +71,13 @@ public class StreamSource extends RandomAccessStream {
      * In the libs folder there is a library modified by me. If you want to use a stock one, you
      * have to set somehow the buffer size to be equal with http server's buffer size which is 8192.
      */
+    @Override
     public void open() throws IOException {
         try {
-            input = file.getInputStream();//new SmbFileInputStream(file, bufferSize, 1);
-            if(fp>0)
-                input.skip(fp);
+            input = cachedFile.openStream(fp);
+            cachedFile.load(fp);
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -74,7 +92,7 @@ public class StreamSource extends RandomAccessStream {
 
     public int read(byte[] bytes, int start, int offs) throws IOException {
         int read =  input.read(bytes, start, offs);
-        fp += read;
+        if(read > 0) fp += read;
         return read;
     }
 
@@ -89,6 +107,7 @@ public class StreamSource extends RandomAccessStream {
 
     @Override
     public void close() {
+        if (input == null) return;
         try {
             input.close();
         } catch (IOException e) {
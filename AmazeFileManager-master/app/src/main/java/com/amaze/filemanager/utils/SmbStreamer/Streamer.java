@@ -1,12 +1,12 @@
 package com.amaze.filemanager.utils.SmbStreamer;
 
-import android.util.Log;
+import android.support.annotation.NonNull;
 
-import com.amaze.filemanager.utils.cloud.CloudUtil;
+import com.amaze.filemanager.utils.streams.BlockCache;
+import com.amaze.filemanager.utils.streams.HttpStreamServer;
+import com.amaze.filemanager.utils.streams.RandomAccessStream;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Properties;
 import java.util.regex.Pattern;
 
 import jcifs.smb.SmbFile;
@@ -14,7 +14,7 @@ import jcifs.smb.SmbFile;
 /**
  * Created by Arpit on 06-07-2015.
  */
-public class Streamer extends StreamServer {
+public class Streamer extends HttpStreamServer {
 
     public static final int PORT = 7871;
     public static final String URL = "http://127.0.0.1:" + PORT;
@@ -30,7 +30,7 @@ public class Streamer extends StreamServer {
     // private String mime;
 
     protected Streamer(int port) throws IOException {
-        super(port, new File("."));
+        super(port);
     }
 
     public static Streamer getInstance() {
@@ -48,6 +48,8 @@ public class Streamer extends StreamServer {
     }
 
     public void setStreamSrc(SmbFile file, long len) {
+        // a file changed since it was last streamed has to be read again
+        BlockCache.getInstance().invalidate(StreamSource.getCacheKey(file, len));
         this.file = file;
         //this.extras = extraFiles;
         this.length = len;
@@ -60,75 +62,10 @@ public class Streamer extends StreamServer {
     }
 
     @Override
-    public Response serve(String uri, String method, Properties header, Properties parms, Properties files) {
-        Response res;
-        SmbFile sourceFile = null;
-        String name = getNameFromPath(uri);
-        if (file != null && file.getName().equals(name))
-            sourceFile = file;
-        /*else if(extras!=null){
-            for(SmbFile i : extras){
-                if(i!=null && i.getName().equals(name)){
-                    sourceFile = i;
-                    break;
-                }
-            }
-        }*/
-        if (sourceFile == null)
-            res = new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, null);
-        else {
-            long startFrom = 0;
-            long endAt = -1;
-            String range = header.getProperty("range");
-            if (range != null) {
-                if (range.startsWith("bytes=")) {
-                    range = range.substring("bytes=".length());
-                    int minus = range.indexOf('-');
-                    try {
-                        if (minus > 0) {
-                            startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
-                        }
-                    } catch (NumberFormatException nfe) {
-                    }
-                }
-            }
-            Log.d(CloudUtil.TAG, "Request: " + range + " from: " + startFrom + ", to: " + endAt);
-
-            // Change return code and add Content-Range header when skipping
-            // is requested
-            //source.open();
-            final StreamSource source = new StreamSource(sourceFile, length);
-            long fileLen = source.length();
-            if (range != null && startFrom > 0) {
-                if (startFrom >= fileLen) {
-                    res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, null);
-                    res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
-                } else {
-                    if (endAt < 0)
-                        endAt = fileLen - 1;
-                    long newLen = fileLen - startFrom;
-                    if (newLen < 0)
-                        newLen = 0;
-                    Log.d(CloudUtil.TAG, "start=" + startFrom + ", endAt=" + endAt + ", newLen=" + newLen);
-                    final long dataLen = newLen;
-                    source.moveTo(startFrom);
-                    Log.d(CloudUtil.TAG, "Skipped " + startFrom + " bytes");
-
-                    res = new Response(HTTP_PARTIALCONTENT, source.getMimeType(), source);
-                    res.addHeader("Content-length", "" + dataLen);
-                }
-            } else {
-                source.reset();
-                res = new Response(HTTP_OK, source.getMimeType(), source);
-                res.addHeader("Content-Length", "" + fileLen);
-            }
-        }
-
-        res.addHeader("Accept-Ranges", "bytes"); // Announce that the file
-        // server accepts partial
-        // content requestes
-        return res;
+    protected RandomAccessStream getSource(@NonNull String path) {
+        SmbFile file = this.file;
+        if (file == null || !file.getName().equals(getNameFromPath(path))) return null;
+        return new StreamSource(file, length);
     }
 
     private static String getNameFromPath(String path) {
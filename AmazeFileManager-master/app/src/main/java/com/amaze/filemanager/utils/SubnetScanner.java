@@ -6,35 +6,82 @@ package com.amaze.filemanager.utils;
 
 import android.content.Context;
 import android.net.wifi.WifiManager;
-import android.text.format.Formatter;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
 
-import java.net.UnknownHostException;
+import com.amaze.filemanager.utils.lan.AdaptiveTimeout;
+import com.amaze.filemanager.utils.lan.HostCache;
+import com.amaze.filemanager.utils.lan.NameQueries;
+import com.amaze.filemanager.utils.lan.Subnet;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-import jcifs.Config;
-import jcifs.UniAddress;
-import jcifs.netbios.NbtAddress;
-import jcifs.smb.SmbFile;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Finds SMB servers in a network. Every host is probed with non blocking connections to the SMB
+ * ports, all from this thread through a {@link Selector}; hosts that accept are asked their name
+ * over NetBIOS and multicast DNS, and reported as soon as they answer. A NetBIOS broadcast finds
+ * named hosts even before they are probed.
+ *
+ * Timeouts follow the round trip times measured, see {@link AdaptiveTimeout}, and computers
+ * found lately are reported right away, see {@link HostCache}.
+ */
 public class SubnetScanner extends Thread {
 
-    private static final int RETRY_COUNT = 5;
+    private static final int[] SMB_PORTS = {445, 139};
+
+    /**
+     * Hosts probed at the same time, each takes a socket per port
+     */
+    private static final int MAX_PROBING_HOSTS = 128;
+
+    /**
+     * Networks bigger than this are only scanned around the device
+     */
+    private static final int MAX_HOSTS = 1024;
+
+    private static final int DEFAULT_PREFIX_LENGTH = 24;
+    private static final long INITIAL_TIMEOUT_MILLIS = 1000;
+    private static final long MIN_TIMEOUT_MILLIS = 300;
+    private static final long MAX_TIMEOUT_MILLIS = 3000;
+    private static final int MAX_PACKET_SIZE = 1500;
 
-    private Thread bdThread;
     private final Object mLock;
-    private List<ComputerParcelable> mResults;
+    private final List<ComputerParcelable> mResults;
     private ScanObserver observer;
-    private ExecutorService pool;
-    private List<Future<ComputerParcelable>> tasks;
     private Context context;
+    @Nullable
+    private final Subnet subnet;
+    private final int[] ports;
+
+    private final AdaptiveTimeout connectTimeout =
+            new AdaptiveTimeout(INITIAL_TIMEOUT_MILLIS, MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS);
+    private final AdaptiveTimeout nameTimeout =
+            new AdaptiveTimeout(INITIAL_TIMEOUT_MILLIS, MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS);
+
+    private volatile Selector selector;
+    private DatagramChannel netBiosChannel, mdnsChannel;
+    private final Map<Integer, Host> probing = new HashMap<>();
+    private final Set<String> reported = new HashSet<>();
+    private int transactionId = 0;
 
     public interface ScanObserver {
         void computerFound(ComputerParcelable computer);
@@ -42,137 +89,298 @@ public class SubnetScanner extends Thread {
         void searchFinished();
     }
 
-    class Task implements Callable<ComputerParcelable> {
-        String addr;
+    /**
+     * A host being probed, then asked its name
+     */
+    private class Host {
+        final int address;
+        final long started = SystemClock.elapsedRealtime();
+        final List<SocketChannel> connecting = new ArrayList<>();
+        long deadline, namingStarted;
+        boolean naming = false;
 
-        public Task(String str) {
-            this.addr = str;
+        Host(int address) {
+            this.address = address;
+            deadline = started + connectTimeout.get();
         }
 
-        public ComputerParcelable call() {
-            try {
-                NbtAddress[] allByAddress = NbtAddress.getAllByAddress(this.addr);
-                if (allByAddress == null || allByAddress.length <= 0) {
-                    return new ComputerParcelable(null, this.addr);
-                }
-                return new ComputerParcelable(allByAddress[0].getHostName(), this.addr);
-            } catch (UnknownHostException e) {
-                return new ComputerParcelable(null, this.addr);
+        /**
+         * A port refused the connection, the host isn't a server if none is left
+         */
+        void onRefused(SocketChannel channel) throws IOException {
+            connectTimeout.onRoundTrip(SystemClock.elapsedRealtime() - started);
+            connecting.remove(channel);
+            channel.close();
+            if (connecting.isEmpty()) probing.remove(address);
+        }
+
+        void onConnected() throws IOException {
+            long now = SystemClock.elapsedRealtime();
+            connectTimeout.onRoundTrip(now - started);
+            closeChannels();
+
+            naming = true;
+            namingStarted = now;
+            deadline = now + nameTimeout.get();
+            InetAddress inetAddress = Subnet.toInetAddress(address);
+            netBiosChannel.send(NameQueries.netBiosNodeStatus(nextTransactionId(), false),
+                    new InetSocketAddress(inetAddress, NameQueries.NETBIOS_PORT));
+            mdnsChannel.send(NameQueries.mdnsReverseLookup(nextTransactionId(), address),
+                    new InetSocketAddress(inetAddress, NameQueries.MDNS_PORT));
+        }
+
+        void onNamed(String name) {
+            if (naming) nameTimeout.onRoundTrip(SystemClock.elapsedRealtime() - namingStarted);
+            probing.remove(address);
+            onFound(new ComputerParcelable(name, Subnet.toString(address)));
+        }
+
+        void onTimeout() throws IOException {
+            probing.remove(address);
+            if (naming) {
+                // a server, but nothing tells its name
+                String addr = Subnet.toString(address);
+                onFound(new ComputerParcelable(addr, addr));
+            } else {
+                closeChannels();
             }
         }
+
+        void closeChannels() throws IOException {
+            for (SocketChannel channel : connecting) channel.close();
+            connecting.clear();
+        }
     }
 
-    static {
-        configure();
+    public SubnetScanner(Context context) {
+        this(context, null);
     }
 
-    private static void configure() {
-        Config.setProperty("jcifs.resolveOrder", "BCAST");
-        Config.setProperty("jcifs.smb.client.responseTimeout", "30000");
-        Config.setProperty("jcifs.netbios.retryTimeout", "5000");
-        Config.setProperty("jcifs.netbios.cachePolicy", "-1");
+    /**
+     * @param subnet the range to scan, if null the Wi-Fi network
+     */
+    public SubnetScanner(Context context, @Nullable Subnet subnet) {
+        this(context, subnet, SMB_PORTS);
     }
 
-    public SubnetScanner(Context context) {
+    SubnetScanner(Context context, @Nullable Subnet subnet, int[] ports) {
         this.context = context;
+        this.subnet = subnet;
+        this.ports = ports;
         mLock = new Object();
-        tasks = new ArrayList<>(260);
-        pool = Executors.newFixedThreadPool(60);
         mResults = new ArrayList<>();
     }
 
     public void run() {
-        int ipAddress = ((WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE))
-                .getConnectionInfo().getIpAddress();
-        if (ipAddress != 0) {
-            tryWithBroadcast();
-            String formatIpAddress = Formatter.formatIpAddress(ipAddress);
-            String substring = formatIpAddress.substring(0, formatIpAddress.lastIndexOf(46) + 1);
-            if (!isInterrupted()) {
-                for (ipAddress = 0; ipAddress < 100; ipAddress++) {
-                    this.tasks.add(this.pool.submit(new Task(substring + ipAddress)));
-                    this.tasks.add(this.pool.submit(new Task(substring + (ipAddress + 100))));
-                    if (ipAddress < 56) {
-                        this.tasks.add(this.pool.submit(new Task(substring + (ipAddress + 200))));
-                    }
-                }
-                while (!this.tasks.isEmpty()) {
-                    int size = this.tasks.size();
-                    int i = 0;
-                    while (i < size) {
-                        if (!isInterrupted()) {
-                            try {
-                                ComputerParcelable computer = (ComputerParcelable) ((Future) this.tasks.get(i)).get(1, TimeUnit.MILLISECONDS);
-                                this.tasks.remove(i);
-                                size--;
-                                if (computer.name != null) {
-                                    onFound(computer);
-                                }
-                                ipAddress = size;
-                            } catch (InterruptedException e) {
-                                return;
-                            } catch (ExecutionException e2) {
-                                ipAddress = size;
-                            } catch (TimeoutException e3) {
-                                ipAddress = size;
-                            }
-                            i++;
-                            size = ipAddress;
-                        } else {
-                            return;
-                        }
-                    }
-                }
-                try {
-                    this.bdThread.join();
-                } catch (InterruptedException e4) {
-                }
-            } else {
-                return;
+        Subnet subnet = this.subnet != null ? this.subnet : getWifiSubnet();
+        if (subnet != null) {
+            try {
+                scan(subnet);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (ClosedSelectorException e) {
+                // interrupted
+            } finally {
+                close();
             }
+            if (isInterrupted()) return;
         }
+
         synchronized (this.mLock) {
             if (this.observer != null) {
                 this.observer.searchFinished();
             }
         }
-        this.pool.shutdown();
-    }
-
-    private void tryWithBroadcast() {
-        this.bdThread = new Thread() {
-            public void run() {
-                for (int i = 0; i < SubnetScanner.RETRY_COUNT; i++) {
-                    try {
-                        SmbFile smbFile = new SmbFile("smb://");
-                        smbFile.setConnectTimeout(5000);
-                        SmbFile[] listFiles = smbFile.listFiles();
-                        for (SmbFile smbFile2 : listFiles) {
-                            SmbFile[] listFiles2 = smbFile2.listFiles();
-                            for (SmbFile files : listFiles2) {
-                                try {
-                                    String substring = files.getName().substring(0, files.getName().length() - 1);
-                                    UniAddress byName = UniAddress.getByName(substring);
-                                    if (byName != null) {
-                                        SubnetScanner.this.onFound(new ComputerParcelable(substring, byName.getHostAddress()));
-                                    }
-                                } catch (Throwable e) {
-
-                                }
-                            }
-                        }
-                    } catch (Throwable e2) {
+    }
+
+    private void scan(Subnet subnet) throws IOException {
+        selector = Selector.open();
+        if (isInterrupted()) return;
+
+        netBiosChannel = openDatagramChannel();
+        mdnsChannel = openDatagramChannel();
+
+        for (ComputerParcelable computer : HostCache.getInstance().getRecent()) {
+            try {
+                if (subnet.contains(Subnet.toInt((Inet4Address) InetAddress.getByName(computer.addr)))) {
+                    onFound(computer);
+                }
+            } catch (IOException | ClassCastException e) {
+                // not an IPv4 address
+            }
+        }
+
+        // every named host answers the broadcast, even those far in the range
+        if (subnet.getHostCount() > 1) {
+            netBiosChannel.send(NameQueries.netBiosNodeStatus(nextTransactionId(), true),
+                    new InetSocketAddress(Subnet.toInetAddress(subnet.getBroadcast()), NameQueries.NETBIOS_PORT));
+        }
+
+        ByteBuffer packet = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        int next = 0;
+        while (!isInterrupted()) {
+            while (probing.size() < MAX_PROBING_HOSTS && next < subnet.getHostCount()) {
+                probe(subnet.getHost(next++));
+            }
+            if (probing.isEmpty()) break;
+
+            long now = SystemClock.elapsedRealtime();
+            long deadline = Long.MAX_VALUE;
+            for (Host host : probing.values()) deadline = Math.min(deadline, host.deadline);
+            if (deadline > now) selector.select(deadline - now);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+
+                if (key.channel() instanceof SocketChannel) {
+                    onConnectable((SocketChannel) key.channel(), (Host) key.attachment());
+                } else {
+                    onReadable((DatagramChannel) key.channel(), packet);
+                }
+            }
+
+            now = SystemClock.elapsedRealtime();
+            for (Host host : new ArrayList<>(probing.values())) {
+                if (host.deadline <= now) host.onTimeout();
+            }
+        }
+    }
+
+    private void probe(int address) throws IOException {
+        Host host = new Host(address);
+        probing.put(address, host);
+
+        // every port is pending before any connects, so a port refused right away doesn't look
+        // like the last one
+        SocketChannel[] channels = new SocketChannel[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            channels[i] = SocketChannel.open();
+            host.connecting.add(channels[i]);
+            channels[i].configureBlocking(false);
+        }
+
+        InetAddress inetAddress = Subnet.toInetAddress(address);
+        for (int i = 0; i < ports.length; i++) {
+            SocketChannel channel = channels[i];
+            try {
+                if (channel.connect(new InetSocketAddress(inetAddress, ports[i]))) {
+                    host.onConnected();
+                    return;
+                }
+            } catch (IOException e) {
+                // unreachable right away
+                host.onRefused(channel);
+                continue;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, host);
+        }
+    }
+
+    private void onConnectable(SocketChannel channel, Host host) throws IOException {
+        if (host.naming || !probing.containsKey(host.address)) {
+            channel.close();
+            return;
+        }
+
+        boolean connected;
+        try {
+            connected = channel.finishConnect();
+        } catch (IOException e) {
+            host.onRefused(channel);
+            return;
+        }
+        if (connected) host.onConnected();
+    }
+
+    private void onReadable(DatagramChannel channel, ByteBuffer packet) throws IOException {
+        while (true) {
+            packet.clear();
+            InetSocketAddress from = (InetSocketAddress) channel.receive(packet);
+            if (from == null || !(from.getAddress() instanceof Inet4Address)) return;
+            packet.flip();
+
+            String name = channel == netBiosChannel ? NameQueries.readNetBiosName(packet)
+                    : NameQueries.readMdnsName(packet);
+            if (name == null) continue;
+
+            int address = Subnet.toInt((Inet4Address) from.getAddress());
+            Host host = probing.get(address);
+            if (host != null) {
+                host.closeChannels();
+                host.onNamed(name);
+            } else {
+                // answered the broadcast
+                onFound(new ComputerParcelable(name, Subnet.toString(address)));
+            }
+        }
+    }
+
+    private DatagramChannel openDatagramChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setBroadcast(true);
+        channel.register(selector, SelectionKey.OP_READ);
+        return channel;
+    }
+
+    private int nextTransactionId() {
+        return transactionId++ & 0xFFFF;
+    }
+
+    private void close() {
+        Selector selector = this.selector;
+        if (selector == null) return;
+
+        try {
+            for (SelectionKey key : selector.keys()) key.channel().close();
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        }
+        if (netBiosChannel != null) closeQuietly(netBiosChannel);
+        if (mdnsChannel != null) closeQuietly(mdnsChannel);
+        for (Host host : probing.values()) {
+            for (SocketChannel channel : host.connecting) closeQuietly(channel);
+        }
+    }
+
+    /**
+     * The Wi-Fi network the device is in, narrowed to {@link #MAX_HOSTS} hosts around it
+     */
+    @Nullable
+    private Subnet getWifiSubnet() {
+        int ipAddress = ((WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE))
+                .getConnectionInfo().getIpAddress();
+        if (ipAddress == 0) return null;
 
+        // it's in network byte order
+        int address = Integer.reverseBytes(ipAddress);
+        int prefixLength = DEFAULT_PREFIX_LENGTH;
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(Subnet.toInetAddress(address));
+            if (networkInterface != null) {
+                for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                    if (interfaceAddress.getAddress() instanceof Inet4Address
+                            && Subnet.toInt((Inet4Address) interfaceAddress.getAddress()) == address) {
+                        prefixLength = interfaceAddress.getNetworkPrefixLength();
                     }
                 }
             }
-        };
-        this.bdThread.start();
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+        return new Subnet(address, prefixLength).narrow(address, MAX_HOSTS);
     }
 
     private void onFound(ComputerParcelable computer) {
-        mResults.add(computer);
+        if (!reported.add(computer.addr)) return;
+
+        HostCache.getInstance().put(computer);
         synchronized (this.mLock) {
+            mResults.add(computer);
             if (this.observer != null) {
                 this.observer.computerFound(computer);
             }
@@ -187,16 +395,22 @@ public class SubnetScanner extends Thread {
 
     public void interrupt() {
         super.interrupt();
-        try {
-            this.pool.shutdownNow();
-        } catch (Throwable th) {
-            
-        }
+        Selector selector = this.selector;
+        if (selector != null) selector.wakeup();
     }
 
     public List<ComputerParcelable> getResults() {
-        return new ArrayList<>(this.mResults);
+        synchronized (this.mLock) {
+            return new ArrayList<>(this.mResults);
+        }
     }
 
-}
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
 
+}
@@ -0,0 +1,98 @@
+package com.amaze.filemanager.utils;
+
+/**
+ * Keeps the last samples of an operation's progress in a ring buffer and derives its speed and
+ * time remaining from them.
+ *
+ * The instantaneous rate is taken between the last two samples. The smoothed rate is the average
+ * over the samples of the last {@link #WINDOW_MILLIS}, so a slow or fast burst moves it only
+ * gradually; it is what should be shown to the user and used for the time remaining.
+ *
+ * Not thread safe, samples are added and read by the {@link ServiceWatcherUtil} of the operation.
+ */
+public class ThroughputMeter {
+
+    static final int CAPACITY = 32;
+    static final long WINDOW_MILLIS = 5000;
+
+    public static final long UNKNOWN_TIME = -1;
+
+    private final long[] times = new long[CAPACITY];
+    private final long[] bytes = new long[CAPACITY];
+    /**
+     * Index of the last sample
+     */
+    private int last = -1;
+    private int count = 0;
+
+    /**
+     * @param time of the sample, in milliseconds from any fixed point
+     * @param position bytes processed so far
+     */
+    public void addSample(long time, long position) {
+        last = (last + 1) % CAPACITY;
+        times[last] = time;
+        bytes[last] = position;
+        if (count < CAPACITY) count++;
+    }
+
+    /**
+     * Forgets every sample, the next rates only count from the next samples on
+     */
+    public void reset() {
+        last = -1;
+        count = 0;
+    }
+
+    /**
+     * @return bytes processed so far, according to the last sample
+     */
+    public long getPosition() {
+        return count == 0 ? 0 : bytes[last];
+    }
+
+    /**
+     * @return bytes per second between the last two samples, 0 if there aren't two yet
+     */
+    public long getInstantaneousRate() {
+        if (count < 2) return 0;
+        return getRate(previous(last));
+    }
+
+    /**
+     * @return bytes per second over the last {@link #WINDOW_MILLIS}, 0 if there aren't two samples
+     */
+    public long getSmoothedRate() {
+        if (count < 2) return 0;
+
+        int oldest = previous(last);
+        for (int i = 2; i < count; i++) {
+            int sample = previous(oldest);
+            if (times[last] - times[sample] > WINDOW_MILLIS) break;
+            oldest = sample;
+        }
+        return getRate(oldest);
+    }
+
+    /**
+     * @return seconds left to reach totalBytes at the smoothed rate, {@link #UNKNOWN_TIME} if
+     * nothing is moving
+     */
+    public long getSecondsRemaining(long totalBytes) {
+        long rate = getSmoothedRate();
+        if (rate <= 0) return UNKNOWN_TIME;
+
+        long remaining = Math.max(0, totalBytes - getPosition());
+        return (remaining + rate - 1) / rate;
+    }
+
+    private long getRate(int from) {
+        long elapsed = times[last] - times[from];
+        if (elapsed <= 0) return 0;
+        return (bytes[last] - bytes[from]) * 1000 / elapsed;
+    }
+
+    private static int previous(int index) {
+        return (index + CAPACITY - 1) % CAPACITY;
+    }
+}
@@ -242,7 +242,7 @@ public class Utils {
      */
     public static String formatTimer(long timer) {
         final long min = TimeUnit.SECONDS.toMinutes(timer);
-        final long sec = TimeUnit.SECONDS.toSeconds(timer - TimeUnit.MINUTES.toMillis(min));
+        final long sec = timer - TimeUnit.MINUTES.toSeconds(min);
         return String.format("%02d:%02d", min, sec);
     }
 }
@@ -4,14 +4,17 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.Uri;
 
+import com.amaze.filemanager.asynchronous.loaders.AppInfoCache;
 import com.amaze.filemanager.asynchronous.loaders.AppListLoader;
 
 /**
  * Created by vishal on 23/2/17.
  *
  * A broadcast receiver that watches over app installation and removal and
- * notifies {@link AppListLoader} for the same
+ * notifies {@link AppListLoader} for the same, after forgetting what {@link AppInfoCache} knew
+ * about the packages concerned, so that only those are looked at again
  */
 
 public class PackageReceiver extends BroadcastReceiver {
@@ -36,6 +39,16 @@ public class PackageReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (data != null) {
+            AppInfoCache.getInstance().remove(data.getSchemeSpecificPart());
+        }
+
+        String[] packages = intent.getStringArrayExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST);
+        if (packages != null) {
+            for (String packageName : packages) AppInfoCache.getInstance().remove(packageName);
+        }
+
         listLoader.onContentChanged();
     }
 }
@@ -1,10 +1,12 @@
 package com.amaze.filemanager.utils.cloud;
 
-import com.amaze.filemanager.utils.SmbStreamer.StreamSource;
+import com.amaze.filemanager.utils.streams.BlockCache;
 import com.amaze.filemanager.utils.streams.RandomAccessStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Vishal on 30-04-2017.
@@ -13,14 +15,39 @@ import java.io.InputStream;
 public class CloudStreamSource extends RandomAccessStream {
     protected long fp;
     protected String name;
-    private InputStream inputStream;
+    private final BlockCache.CachedFile cachedFile;
+    private InputStream input;
+    private boolean closed = false;
 
+    private static final AtomicInteger streamCount = new AtomicInteger(0);
+
+    /**
+     * Reads a stream that can't be opened again, seeking back only works for what's still cached
+     */
     public CloudStreamSource(String fileName, long length, InputStream inputStream) {
-        super(length);
+        this(BlockCache.getInstance().getFile("stream:" + streamCount.incrementAndGet(), length,
+                false, once(fileName, inputStream)), fileName);
+    }
+
+    /**
+     * Reads through the cache, which reopens the file from the start when seeking back past
+     * what it holds
+     */
+    CloudStreamSource(BlockCache.CachedFile cachedFile, String fileName) {
+        super(cachedFile.length());
 
         fp = 0;
         this.name = fileName;
-        this.inputStream = inputStream;
+        this.cachedFile = cachedFile;
+    }
+
+    private static BlockCache.Opener once(String fileName, InputStream inputStream) {
+        final AtomicBoolean opened = new AtomicBoolean(false);
+        return position -> {
+            if (inputStream == null) throw new IOException("No stream for " + fileName);
+            if (opened.getAndSet(true)) throw new IOException("Can't read " + fileName + " again");
+            return inputStream;
+        };
     }
 
     /**
@@ -48,10 +75,16 @@ public class CloudStreamSource extends RandomAccessStream {
      * In the libs folder there is a library modified by me. If you want to use a stock one, you
      * have to set somehow the buffer size to be equal with http server's buffer size which is 8192.
      */
+    @Override
     public void open() throws IOException {
+        // the server opens and closes the source once per range it serves
+        close();
+        closed = false;
         try {
-            if(fp>0)
-                inputStream.skip(fp);
+            input = cachedFile.openStream(fp);
+            cachedFile.load(fp);
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -59,25 +92,29 @@ public class CloudStreamSource extends RandomAccessStream {
 
     @Override
     public int read() throws IOException {
-        int read = inputStream.read();
-        if(read != -1) fp++;
-        return read;
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
     }
 
     @Override
     public int read(byte[] bytes, int start, int offs) throws IOException {
-        int read =  inputStream.read(bytes, start, offs);
-        fp += read;
+        if (closed) throw new IOException("Stream closed");
+        if (input == null) input = cachedFile.openStream(fp);
+        int read =  input.read(bytes, start, offs);
+        if(read > 0) fp += read;
         return read;
     }
 
     @Override
     public void close() {
+        closed = true;
+        if (input == null) return;
         try {
-            inputStream.close();
+            input.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        input = null;
     }
 
     public String getName(){
@@ -91,6 +128,7 @@ public class CloudStreamSource extends RandomAccessStream {
         }
 
         fp = position;
+        input = null;
     }
 
     @Override
@@ -1,11 +1,12 @@
 package com.amaze.filemanager.utils.cloud;
 
-import android.util.Log;
+import android.support.annotation.NonNull;
+
+import com.amaze.filemanager.utils.streams.BlockCache;
+import com.amaze.filemanager.utils.streams.HttpStreamServer;
+import com.amaze.filemanager.utils.streams.RandomAccessStream;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Properties;
 import java.util.regex.Pattern;
 
 import jcifs.smb.SmbFile;
@@ -14,11 +15,12 @@ import jcifs.smb.SmbFile;
  * Created by Vishal on 30-04-2017.
  */
 
-public class CloudStreamer extends CloudStreamServer {
+public class CloudStreamer extends HttpStreamServer {
 
     public static final int PORT = 7871;
     public static final String URL = "http://127.0.0.1:" + PORT;
-    private InputStream inputStream;
+    private BlockCache.Opener opener;
+    private String cacheKey;
     private String fileName;
     long length = 0;
     private static CloudStreamer instance;
@@ -28,7 +30,7 @@ public class CloudStreamer extends CloudStreamServer {
     // private String mime;
 
     protected CloudStreamer(int port) throws IOException {
-        super(port, new File("."));
+        super(port);
     }
 
     public static CloudStreamer getInstance() {
@@ -45,8 +47,16 @@ public class CloudStreamer extends CloudStreamServer {
         return pattern.matcher(file.getName()).matches();
     }
 
-    public void setStreamSrc(InputStream inputStream, String fileName, long length) {
-        this.inputStream = inputStream;
+    /**
+     * @param opener opens the file from the start, it's called again when seeking back past what
+     *               is cached
+     * @param path identifies the file in the cache, which is cleared so that a file changed since
+     *             it was last streamed is read again
+     */
+    public void setStreamSrc(BlockCache.Opener opener, String path, String fileName, long length) {
+        this.cacheKey = path + ':' + length;
+        BlockCache.getInstance().invalidate(cacheKey);
+        this.opener = opener;
         this.fileName = fileName;
         this.length = length;
     }
@@ -58,64 +68,9 @@ public class CloudStreamer extends CloudStreamServer {
     }
 
     @Override
-    public CloudStreamServer.Response serve(String uri, String method, Properties header, Properties parms, Properties files) {
-        CloudStreamServer.Response res = null;
-
-        if (inputStream == null)
-            res = new CloudStreamServer.Response(HTTP_NOTFOUND, MIME_PLAINTEXT, null);
-        else {
-
-            long startFrom = 0;
-            long endAt = -1;
-            String range = header.getProperty("range");
-            if (range != null) {
-                if (range.startsWith("bytes=")) {
-                    range = range.substring("bytes=".length());
-                    int minus = range.indexOf('-');
-                    try {
-                        if (minus > 0) {
-                            startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
-                        }
-                    } catch (NumberFormatException nfe) {
-                    }
-                }
-            }
-            Log.d(CloudUtil.TAG, "Request: " + range + " from: " + startFrom + ", to: " + endAt);
-
-            // Change return code and add Content-Range header when skipping
-            // is requested
-            //source.open();
-            final CloudStreamSource source = new CloudStreamSource(fileName, length, inputStream);
-            long fileLen = source.length();
-            if (range != null && startFrom > 0) {
-                if (startFrom >= fileLen) {
-                    res = new CloudStreamServer.Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, null);
-                    res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
-                } else {
-                    if (endAt < 0)
-                        endAt = fileLen - 1;
-                    long newLen = fileLen - startFrom;
-                    if (newLen < 0)
-                        newLen = 0;
-                    Log.d(CloudUtil.TAG, "start=" + startFrom + ", endAt=" + endAt + ", newLen=" + newLen);
-                    final long dataLen = newLen;
-                    source.moveTo(startFrom);
-                    Log.d(CloudUtil.TAG, "Skipped " + startFrom + " bytes");
-
-                    res = new CloudStreamServer.Response(HTTP_PARTIALCONTENT, null, source);
-                    res.addHeader("Content-length", "" + dataLen);
-                }
-            } else {
-                source.reset();
-                res = new CloudStreamServer.Response(HTTP_OK, null, source);
-                res.addHeader("Content-Length", "" + fileLen);
-            }
-        }
-
-        res.addHeader("Accept-Ranges", "bytes"); // Announce that the file
-        // server accepts partial
-        // content requestes
-        return res;
+    protected RandomAccessStream getSource(@NonNull String path) {
+        if (opener == null) return null;
+        return new CloudStreamSource(
+                BlockCache.getInstance().getFile(cacheKey, length, false, opener), fileName);
     }
 }
@@ -136,7 +136,11 @@ public class CloudUtil {
 
         new Thread(() -> {
             try {
-                streamer.setStreamSrc(baseFile.getInputStream(activity), baseFile.getName(), baseFile.length(activity));
+                streamer.setStreamSrc(position -> {
+                    InputStream inputStream = baseFile.getInputStream(activity);
+                    if (inputStream == null) throw new IOException("Can't open " + baseFile.getPath());
+                    return inputStream;
+                }, baseFile.getPath(), baseFile.getName(), baseFile.length(activity));
                 activity.runOnUiThread(() -> {
                     try {
                         File file = new File(Uri.parse(CloudUtil.stripPath(serviceType, baseFile.getPath())).getPath());
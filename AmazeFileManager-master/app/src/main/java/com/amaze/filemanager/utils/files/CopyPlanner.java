@@ -0,0 +1,259 @@
+package com.amaze.filemanager.utils.files;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.amaze.filemanager.filesystem.HybridFile;
+import com.amaze.filemanager.filesystem.HybridFileParcelable;
+import com.amaze.filemanager.utils.OpenMode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds out, before copying files into a directory, which of them are already there and how many
+ * bytes are going to be copied.
+ *
+ * Each destination directory is listed once into a set of names, so finding the conflicts costs
+ * one lookup per file to copy. Directories that are already in the destination are merged with
+ * it: their children are listed once, to become the files to copy into that directory. The
+ * directories that aren't are only walked to sum their size. All of these listings are run as
+ * separate tasks on a fixed pool of threads, like in {@link ParallelFileWalker}.
+ */
+public class CopyPlanner {
+
+    private static final String TAG = "CopyPlanner";
+
+    private final Context context;
+    private final OpenMode targetMode;
+    private final boolean rootMode;
+    private final boolean measureSizes;
+
+    private ExecutorService executor;
+
+    /**
+     * Number of directories queued or being listed, {@link #plan(ArrayList, String)} returns
+     * when it drops to 0
+     */
+    private final AtomicInteger pendingDirectories = new AtomicInteger(0);
+
+    /**
+     * @param measure whether to sum the size of the files to copy, not needed when they are
+     *                going to be renamed
+     */
+    public CopyPlanner(Context context, OpenMode targetMode, boolean rootMode, boolean measure) {
+        this.context = context;
+        this.targetMode = targetMode;
+        this.rootMode = rootMode;
+        this.measureSizes = measure;
+    }
+
+    /**
+     * Plans copying the files to the target directory, blocking until every directory involved
+     * has been listed
+     */
+    public Plan plan(ArrayList<HybridFileParcelable> filesToCopy, String target) {
+        HybridFile destination = new HybridFile(targetMode, target);
+        FolderPlan root = new FolderPlan(target, filesToCopy, measureSizes);
+
+        executor = Executors.newFixedThreadPool(ParallelFileWalker.getParallelism(destination, rootMode));
+        // held by this thread until the root is submitted
+        pendingDirectories.set(1);
+        submit(() -> {
+            for (HybridFileParcelable file : filesToCopy) {
+                root.sizes.put(file.getPath(), new AtomicLong(0));
+            }
+            // the files to copy come from the user, they may not know their size
+            classify(root, destination, true);
+        });
+        finishDirectory();
+
+        synchronized (pendingDirectories) {
+            while (pendingDirectories.get() > 0) {
+                try {
+                    pendingDirectories.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        executor.shutdownNow();
+
+        return new Plan(root, measureSizes);
+    }
+
+    /**
+     * Splits the files to copy into folder in conflicting and not, merging conflicting
+     * directories and measuring the rest
+     */
+    private void classify(FolderPlan folder, HybridFile destination, boolean askSizes) {
+        final Set<String> existing = new HashSet<>();
+        destination.forEachChildrenFile(context, rootMode, file -> existing.add(file.getName()));
+
+        for (HybridFileParcelable file : new ArrayList<>(folder.filesToCopy)) {
+            boolean isDirectory = askSizes ? file.isDirectory(context) : file.isDirectory();
+            boolean conflicts = existing.contains(file.getName());
+
+            if (conflicts && isDirectory) {
+                // copied into the directory already there, through a folder of its own
+                folder.filesToCopy.remove(file);
+                FolderPlan merged = new FolderPlan(folder.path + "/" + file.getName(), new ArrayList<>(),
+                        measureSizes);
+                folder.merged.add(merged);
+                submit(() -> merge(merged, file));
+                continue;
+            }
+
+            if (conflicts) folder.conflictingFiles.add(file);
+
+            if (!measureSizes) continue;
+            AtomicLong size = folder.sizes.get(file.getPath());
+            if (isDirectory) {
+                submit(() -> measure(file, size));
+            } else {
+                size.set(askSizes ? file.length(context) : file.getSize());
+            }
+        }
+    }
+
+    private void merge(FolderPlan folder, HybridFileParcelable directory) {
+        directory.forEachChildrenFile(context, rootMode, file -> {
+            folder.filesToCopy.add(file);
+            folder.sizes.put(file.getPath(), new AtomicLong(0));
+        });
+        classify(folder, new HybridFile(targetMode, folder.path), false);
+    }
+
+    private void measure(HybridFile directory, AtomicLong size) {
+        directory.forEachChildrenFile(context, rootMode, file -> {
+            if (file.isDirectory()) {
+                submit(() -> measure(file, size));
+            } else {
+                size.addAndGet(file.getSize());
+            }
+        });
+    }
+
+    private void submit(Runnable listing) {
+        pendingDirectories.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    listing.run();
+                } catch (Exception e) {
+                    Log.w(TAG, "Error planning copy", e);
+                } finally {
+                    finishDirectory();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // planning is over, interrupted
+            finishDirectory();
+        }
+    }
+
+    private void finishDirectory() {
+        if (pendingDirectories.decrementAndGet() == 0) {
+            synchronized (pendingDirectories) {
+                pendingDirectories.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The files to copy into one directory of the destination
+     */
+    public static class FolderPlan {
+        private final String path;
+        private final ArrayList<HybridFileParcelable> filesToCopy;
+        private final ArrayList<HybridFileParcelable> conflictingFiles = new ArrayList<>();
+        private final ArrayList<FolderPlan> merged = new ArrayList<>();
+        private final Map<String, AtomicLong> sizes = new HashMap<>();
+        private final boolean measured;
+
+        FolderPlan(String path, ArrayList<HybridFileParcelable> filesToCopy, boolean measured) {
+            this.path = path;
+            this.filesToCopy = filesToCopy;
+            this.measured = measured;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Files and directories to copy into the folder, those the user chooses not to replace
+         * have to be removed from here
+         */
+        public ArrayList<HybridFileParcelable> getFilesToCopy() {
+            return filesToCopy;
+        }
+
+        /**
+         * Files to copy that already exist in the folder
+         */
+        public ArrayList<HybridFileParcelable> getConflictingFiles() {
+            return conflictingFiles;
+        }
+
+        /**
+         * @return size of what is left in {@link #getFilesToCopy()}, -1 if it wasn't measured
+         */
+        public long getBytes() {
+            if (!measured) return -1;
+
+            long bytes = 0;
+            for (HybridFileParcelable file : filesToCopy) {
+                AtomicLong size = sizes.get(file.getPath());
+                if (size != null) bytes += size.get();
+            }
+            return bytes;
+        }
+    }
+
+    public static class Plan {
+        private final ArrayList<FolderPlan> folders = new ArrayList<>();
+        private final boolean measured;
+
+        Plan(FolderPlan root, boolean measured) {
+            this.measured = measured;
+
+            LinkedList<FolderPlan> queue = new LinkedList<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                FolderPlan folder = queue.remove();
+                folders.add(folder);
+                queue.addAll(folder.merged);
+            }
+        }
+
+        /**
+         * @return every destination folder to copy into, the target first, then the folders
+         * merged into it breadth first
+         */
+        public ArrayList<FolderPlan> getFolders() {
+            return folders;
+        }
+
+        /**
+         * @return size of the files still to copy, -1 if they weren't measured
+         */
+        public long getTotalBytes() {
+            if (!measured) return -1;
+
+            long bytes = 0;
+            for (FolderPlan folder : folders) bytes += folder.getBytes();
+            return bytes;
+        }
+    }
+}
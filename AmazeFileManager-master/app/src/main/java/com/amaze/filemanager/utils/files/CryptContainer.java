@@ -0,0 +1,298 @@
+package com.amaze.filemanager.utils.files;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.amaze.filemanager.utils.ProgressHandler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+
+/**
+ * Second version of the {@link CryptUtil#CRYPT_EXTENSION} format, the first one being a single
+ * GCM ciphertext of the whole file with a fixed IV.
+ *
+ * The file starts with a header: {@link #MAGIC}, the version byte, the size of the plaintext
+ * segments as an int and a random nonce prefix. The plaintext is then split into segments of that
+ * size (the last one may be shorter or empty), each one encrypted with AES/GCM on its own, its tag
+ * following it. The nonce of a segment is the prefix, the index of the segment and whether it's
+ * the last one, so segments can't be reordered, and the file can't be truncated, without a tag
+ * failing.
+ *
+ * Segments don't depend on each other, so they are encrypted and decrypted on several threads,
+ * and any part of the file can be decrypted without reading what comes before it, see
+ * {@link CryptStreamSource}.
+ */
+public class CryptContainer {
+
+    public static final byte[] MAGIC = {'A', 'M', 'A', 'Z', 'E', 'A', 'Z', 'E'};
+    public static final int VERSION = 2;
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    static final int NONCE_PREFIX_SIZE = 7;
+    static final int NONCE_SIZE = NONCE_PREFIX_SIZE + 5;
+    static final int TAG_SIZE = 16;
+    public static final int HEADER_SIZE = MAGIC.length + 1 + 4 + NONCE_PREFIX_SIZE;
+
+    /**
+     * Segments read ahead of the one being written, for each thread
+     */
+    private static final int PENDING_SEGMENTS_PER_THREAD = 4;
+
+    /**
+     * Gets a cipher for a single segment
+     */
+    public interface SegmentCipher {
+        /**
+         * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+         * @param nonce the 12 byte nonce of the segment
+         */
+        @NonNull
+        Cipher init(int mode, @NonNull byte[] nonce) throws GeneralSecurityException;
+    }
+
+    /**
+     * What's written before the first segment
+     */
+    static final class Header {
+        final int segmentSize;
+        final byte[] noncePrefix;
+
+        Header(int segmentSize, byte[] noncePrefix) {
+            this.segmentSize = segmentSize;
+            this.noncePrefix = noncePrefix;
+        }
+
+        int getCipherSegmentSize() {
+            return segmentSize + TAG_SIZE;
+        }
+
+        /**
+         * Length of the plaintext of a container of the given size
+         *
+         * @throws IOException if no container can have that size
+         */
+        long getPlainLength(long containerLength) throws IOException {
+            long cipherLength = containerLength - HEADER_SIZE;
+            long segments = getSegmentCount(containerLength);
+            long lastSegmentLength = cipherLength - (segments - 1) * getCipherSegmentSize();
+            if (cipherLength <= 0 || lastSegmentLength < TAG_SIZE) {
+                throw new IOException("Truncated encrypted file");
+            }
+            return cipherLength - segments * TAG_SIZE;
+        }
+
+        long getSegmentCount(long containerLength) {
+            long cipherLength = containerLength - HEADER_SIZE;
+            int cipherSegmentSize = getCipherSegmentSize();
+            return Math.max((cipherLength + cipherSegmentSize - 1) / cipherSegmentSize, 1);
+        }
+
+        byte[] getNonce(long index, boolean last) throws IOException {
+            if (index > 0xffffffffL) throw new IOException("File too big to encrypt");
+
+            byte[] nonce = Arrays.copyOf(noncePrefix, NONCE_SIZE);
+            nonce[NONCE_PREFIX_SIZE] = (byte) (index >>> 24);
+            nonce[NONCE_PREFIX_SIZE + 1] = (byte) (index >>> 16);
+            nonce[NONCE_PREFIX_SIZE + 2] = (byte) (index >>> 8);
+            nonce[NONCE_PREFIX_SIZE + 3] = (byte) index;
+            nonce[NONCE_PREFIX_SIZE + 4] = (byte) (last ? 1 : 0);
+            return nonce;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            DataOutputStream dataOut = new DataOutputStream(out);
+            dataOut.write(MAGIC);
+            dataOut.writeByte(VERSION);
+            dataOut.writeInt(segmentSize);
+            dataOut.write(noncePrefix);
+            dataOut.flush();
+        }
+
+        static Header readFrom(InputStream in) throws IOException {
+            DataInputStream dataIn = new DataInputStream(in);
+            byte[] magic = new byte[MAGIC.length];
+            dataIn.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a segmented encrypted file");
+            if (dataIn.readUnsignedByte() != VERSION) {
+                throw new IOException("Unsupported encrypted file version");
+            }
+            int segmentSize = dataIn.readInt();
+            if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Invalid segment size " + segmentSize);
+            }
+            byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+            dataIn.readFully(noncePrefix);
+            return new Header(segmentSize, noncePrefix);
+        }
+    }
+
+    private final SegmentCipher segmentCipher;
+    private final int threads;
+    @Nullable
+    private final ProgressHandler progressHandler;
+
+    /**
+     * @param threads encrypting or decrypting segments, the calling thread only reads and writes
+     * @param progressHandler gets the bytes read from the source, may be null
+     */
+    public CryptContainer(@NonNull SegmentCipher segmentCipher, int threads,
+                          @Nullable ProgressHandler progressHandler) {
+        this.segmentCipher = segmentCipher;
+        this.threads = Math.max(threads, 1);
+        this.progressHandler = progressHandler;
+    }
+
+    /**
+     * Whether the stream starts like a container, as opposed to a file of the first version;
+     * the stream is left where it was
+     */
+    public static boolean isContainer(@NonNull BufferedInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.mark(MAGIC.length);
+        try {
+            new DataInputStream(in).readFully(magic);
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.reset();
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Encrypts in into out, neither is closed
+     *
+     * @return false if cancelled through the {@link ProgressHandler}
+     */
+    public boolean encrypt(@NonNull InputStream in, @NonNull OutputStream out)
+            throws GeneralSecurityException, IOException {
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        new SecureRandom().nextBytes(noncePrefix);
+        Header header = new Header(SEGMENT_SIZE, noncePrefix);
+        header.writeTo(out);
+
+        return process(Cipher.ENCRYPT_MODE, header, in, out, header.segmentSize);
+    }
+
+    /**
+     * Decrypts in, which must be a container, into out; neither is closed
+     *
+     * @return false if cancelled through the {@link ProgressHandler}
+     * @throws javax.crypto.AEADBadTagException if the file was changed or the key is wrong
+     */
+    public boolean decrypt(@NonNull InputStream in, @NonNull OutputStream out)
+            throws GeneralSecurityException, IOException {
+        Header header = Header.readFrom(in);
+        addProgress(HEADER_SIZE);
+
+        return process(Cipher.DECRYPT_MODE, header, in, out, header.getCipherSegmentSize());
+    }
+
+    /**
+     * Reads in segment by segment, each of them is handed to a worker and written in order once
+     * it's done; the segment after the one read is always read too, to know which one is the last
+     */
+    private boolean process(int mode, Header header, InputStream in, OutputStream out,
+                            int inputSegmentSize) throws GeneralSecurityException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Queue<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            byte[] segment = new byte[inputSegmentSize];
+            int length = readFully(in, segment);
+            if (mode == Cipher.DECRYPT_MODE && length < TAG_SIZE) {
+                throw new IOException("Truncated encrypted file");
+            }
+
+            for (long index = 0; ; index++) {
+                if (isCancelled()) return false;
+
+                byte[] next = null;
+                int nextLength = 0;
+                if (length == inputSegmentSize) {
+                    next = new byte[inputSegmentSize];
+                    nextLength = readFully(in, next);
+                }
+                boolean last = nextLength == 0;
+
+                if (mode == Cipher.DECRYPT_MODE && !last && nextLength < TAG_SIZE) {
+                    throw new IOException("Truncated encrypted file");
+                }
+
+                final byte[] nonce = header.getNonce(index, last);
+                final byte[] input = segment;
+                final int inputLength = length;
+                pending.add(executor.submit(() ->
+                        segmentCipher.init(mode, nonce).doFinal(input, 0, inputLength)));
+                addProgress(length);
+
+                while (pending.size() >= threads * PENDING_SEGMENTS_PER_THREAD
+                        || (last && !pending.isEmpty())) {
+                    out.write(get(pending.remove()));
+                    if (isCancelled()) return false;
+                }
+
+                if (last) return true;
+                segment = next;
+                length = nextLength;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads until buffer is full or the stream ends
+     *
+     * @return the bytes read
+     */
+    static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) break;
+            length += read;
+        }
+        return length;
+    }
+
+    private void addProgress(long bytes) {
+        if (progressHandler != null) progressHandler.addProcessedBytes(bytes);
+    }
+
+    private boolean isCancelled() {
+        return progressHandler != null && progressHandler.getCancelled();
+    }
+
+    private static byte[] get(Future<byte[]> future) throws GeneralSecurityException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while encrypting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.amaze.filemanager.utils.files;
+
+import android.support.annotation.NonNull;
+
+import com.amaze.filemanager.utils.streams.RandomAccessStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * Reads the plaintext of a {@link CryptContainer} file from any position, decrypting only the
+ * segments that are read; lets encrypted media be played without decrypting it to the cache
+ * first.
+ */
+public class CryptStreamSource extends RandomAccessStream {
+
+    private final File file;
+    private final CryptContainer.Header header;
+    private final CryptContainer.SegmentCipher segmentCipher;
+    private final long containerLength, segmentCount;
+
+    private RandomAccessFile input;
+    private long position = 0;
+
+    private final byte[] cipherSegment;
+    private byte[] plainSegment;
+    private long plainSegmentIndex = -1;
+
+    private CryptStreamSource(File file, CryptContainer.Header header,
+                              CryptContainer.SegmentCipher segmentCipher, long length) {
+        super(length);
+
+        this.file = file;
+        this.header = header;
+        this.segmentCipher = segmentCipher;
+        this.containerLength = file.length();
+        this.segmentCount = header.getSegmentCount(containerLength);
+        cipherSegment = new byte[header.getCipherSegmentSize()];
+    }
+
+    /**
+     * @throws IOException if file isn't a {@link CryptContainer}
+     */
+    @NonNull
+    public static CryptStreamSource create(@NonNull File file,
+                                           @NonNull CryptContainer.SegmentCipher segmentCipher)
+            throws IOException {
+        CryptContainer.Header header;
+        InputStream in = new FileInputStream(file);
+        try {
+            header = CryptContainer.Header.readFrom(in);
+        } finally {
+            in.close();
+        }
+        return new CryptStreamSource(file, header, segmentCipher,
+                header.getPlainLength(file.length()));
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (input == null) input = new RandomAccessFile(file, "r");
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+        if (count == 0) return 0;
+        if (position >= length()) return -1;
+
+        long index = position / header.segmentSize;
+        if (index != plainSegmentIndex) decryptSegment(index);
+
+        int segmentOffset = (int) (position - index * header.segmentSize);
+        int read = Math.min(count, plainSegment.length - segmentOffset);
+        System.arraycopy(plainSegment, segmentOffset, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    private void decryptSegment(long index) throws IOException {
+        open();
+        long offset = CryptContainer.HEADER_SIZE + index * cipherSegment.length;
+        int length = (int) Math.min(cipherSegment.length, containerLength - offset);
+        input.seek(offset);
+        input.readFully(cipherSegment, 0, length);
+        try {
+            Cipher cipher = segmentCipher.init(Cipher.DECRYPT_MODE,
+                    header.getNonce(index, index == segmentCount - 1));
+            plainSegment = cipher.doFinal(cipherSegment, 0, length);
+        } catch (GeneralSecurityException e) {
+            plainSegmentIndex = -1;
+            throw new IOException("Could not decrypt " + file.getName(), e);
+        }
+        plainSegmentIndex = index;
+    }
+
+    @Override
+    public void moveTo(long position) {
+        this.position = position;
+    }
+
+    @Override
+    protected long getCurrentPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.amaze.filemanager.utils.files;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.widget.Toast;
+
+import com.amaze.filemanager.R;
+import com.amaze.filemanager.ui.icons.MimeTypes;
+import com.amaze.filemanager.utils.streams.HttpStreamServer;
+import com.amaze.filemanager.utils.streams.RandomAccessStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Streams the plaintext of an encrypted media file to a player, see {@link CryptStreamSource}.
+ * Served under the name of the file without {@link CryptUtil#CRYPT_EXTENSION} so that the player
+ * gets the right type.
+ *
+ * The plaintext must not leave the device: the server only listens on the loopback interface,
+ * the path starts with a random token made for each launch, and the server is stopped when the
+ * player returns or the activity is destroyed, see {@link #stopStreaming()}.
+ */
+public class CryptStreamer extends HttpStreamServer {
+
+    public static final int PORT = 7871;
+    public static final String HOST = "127.0.0.1";
+    public static final String URL = "http://" + HOST + ":" + PORT;
+
+    /**
+     * Request code the player is started with, its result means playback ended
+     */
+    public static final int REQUEST_CODE_PLAY = 7871;
+
+    private static final int TOKEN_LENGTH = 16;
+
+    private static final Pattern pattern = Pattern.compile("^.*\\.(?i)(mp3|wma|wav|aac|ogg|m4a|flac|mp4|avi|mpg|mpeg|3gp|3gpp|mkv|flv|rmvb)$");
+
+    private static CryptStreamer instance;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private File file;
+    private CryptContainer.SegmentCipher segmentCipher;
+    private String token;
+
+    protected CryptStreamer(int port) throws IOException {
+        super(port, InetAddress.getByName(HOST));
+    }
+
+    public static synchronized CryptStreamer getInstance() {
+        if (instance == null)
+            try {
+                instance = new CryptStreamer(PORT);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        return instance;
+    }
+
+    /**
+     * Whether the file, once decrypted, can be played by a media player
+     */
+    public static boolean isStreamMedia(@NonNull String encryptedName) {
+        return pattern.matcher(getPlainName(encryptedName)).matches();
+    }
+
+    /**
+     * Serves the file until the next call or {@link #stop()}, under a new token
+     *
+     * @return the path the file is served under
+     */
+    public String setStreamSrc(@NonNull File file, @NonNull CryptContainer.SegmentCipher segmentCipher) {
+        byte[] bytes = new byte[TOKEN_LENGTH];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(TOKEN_LENGTH * 2);
+        for (byte b : bytes) token.append(String.format("%02x", b));
+
+        synchronized (this) {
+            this.token = token.toString();
+            this.file = file;
+            this.segmentCipher = segmentCipher;
+        }
+        return "/" + token + "/" + Uri.encode(getPlainName(file.getName()));
+    }
+
+    /**
+     * Forgets the file, and stops serving it
+     */
+    @Override
+    public void stop() {
+        synchronized (this) {
+            token = null;
+            file = null;
+            segmentCipher = null;
+        }
+        super.stop();
+        synchronized (CryptStreamer.class) {
+            if (instance == this) instance = null;
+        }
+    }
+
+    /**
+     * Stops the server if it is running, once playback ended or there's nobody left to play
+     */
+    public static void stopStreaming() {
+        CryptStreamer streamer;
+        synchronized (CryptStreamer.class) {
+            streamer = instance;
+        }
+        if (streamer != null) new Thread(streamer::stop).start();
+    }
+
+    @Override
+    protected RandomAccessStream getSource(@NonNull String path) {
+        File file;
+        String token;
+        CryptContainer.SegmentCipher segmentCipher;
+        synchronized (this) {
+            file = this.file;
+            token = this.token;
+            segmentCipher = this.segmentCipher;
+        }
+        if (file == null || token == null
+                || !path.equals("/" + token + "/" + getPlainName(file.getName()))) {
+            return null;
+        }
+        try {
+            return CryptStreamSource.create(file, segmentCipher);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Opens the player for the encrypted file, which has to be in the segmented format, see
+     * {@link CryptUtil#isSeekable(File)}
+     */
+    public static void launch(@NonNull final File file, @NonNull final Activity activity) {
+        new Thread(() -> {
+            try {
+                CryptStreamer streamer = getInstance();
+                if (streamer == null) return;
+                final String path = streamer.setStreamSrc(file, CryptUtil.getSegmentCipher(activity));
+
+                final String plainName = getPlainName(file.getName());
+                activity.runOnUiThread(() -> {
+                    try {
+                        Uri uri = Uri.parse(URL + path);
+                        Intent i = new Intent(Intent.ACTION_VIEW);
+                        i.setDataAndType(uri, MimeTypes.getMimeType(plainName, false));
+                        PackageManager packageManager = activity.getPackageManager();
+                        List<ResolveInfo> resInfos = packageManager.queryIntentActivities(i, 0);
+                        if (resInfos != null && resInfos.size() > 0) {
+                            activity.startActivityForResult(i, REQUEST_CODE_PLAY);
+                        } else {
+                            stopStreaming();
+                            Toast.makeText(activity,
+                                    activity.getString(R.string.smb_launch_error),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    } catch (ActivityNotFoundException e) {
+                        stopStreaming();
+                        e.printStackTrace();
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }).start();
+    }
+
+    private static String getPlainName(String encryptedName) {
+        return encryptedName.endsWith(CryptUtil.CRYPT_EXTENSION)
+                ? encryptedName.substring(0, encryptedName.length() - CryptUtil.CRYPT_EXTENSION.length())
+                : encryptedName;
+    }
+}
@@ -43,6 +43,8 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -90,6 +92,10 @@ import javax.security.auth.x500.X500Principal;
  *
  * We use buffered streams to process files, usage of NIO will probably mildly effect the performance.
  *
+ * Files are encrypted into a {@link CryptContainer}, whose segments are encrypted and decrypted on
+ * every core and can be read out of order, see {@link CryptStreamSource}. Files encrypted as a
+ * single GCM ciphertext before it existed are still decrypted.
+ *
  * Be sure to use constructors to encrypt/decrypt files only, and to call service through
  * {@link ServiceWatcherUtil} and to initialize watchers beforehand
  */
@@ -101,7 +107,7 @@ public class CryptUtil {
     private static final String KEY_STORE_ANDROID = "AndroidKeyStore";
     private static final String KEY_ALIAS_AMAZE = "AmazeKey";
     private static final String PREFERENCE_KEY = "aes_key";
-    // TODO: Generate a random IV every time, and keep track of it (in database against encrypted files)
+    // only used for passwords and to decrypt files of the first format, containers have a random nonce
     private static final String IV = "LxbHiJhhUXcj";    // 12 byte long IV supported by android for GCM
 
     public static final String CRYPT_EXTENSION = ".aze";
@@ -200,7 +206,9 @@ public class CryptUtil {
             BufferedOutputStream outputStream = new BufferedOutputStream(targetFile.getOutputStream(context),
                     GenericCopyUtil.DEFAULT_BUFFER_SIZE);
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            if (CryptContainer.isContainer(inputStream)) {
+                decryptSegments(context, inputStream, outputStream);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 aesDecrypt(inputStream, outputStream);
             } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
                 rsaDecrypt(context, inputStream, outputStream);
@@ -253,11 +261,7 @@ public class CryptUtil {
             BufferedOutputStream outputStream = new BufferedOutputStream(targetFile.getOutputStream(context),
                     GenericCopyUtil.DEFAULT_BUFFER_SIZE);
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                aesEncrypt(inputStream, outputStream);
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                rsaEncrypt(context, inputStream, outputStream);
-            }
+            encryptSegments(context, inputStream, outputStream);
         }
     }
 
@@ -291,37 +295,41 @@ public class CryptUtil {
     }
 
     /**
-     * Helper method to encrypt a file
+     * Helper method to encrypt a file into a {@link CryptContainer}
      * @param inputStream stream associated with the file to be encrypted
      * @param outputStream stream associated with new output encrypted file
      */
-    @RequiresApi(api = Build.VERSION_CODES.M)
-    private void aesEncrypt(BufferedInputStream inputStream, BufferedOutputStream outputStream)
+    private void encryptSegments(Context context, BufferedInputStream inputStream,
+                                 BufferedOutputStream outputStream)
             throws GeneralSecurityException, IOException {
 
-        Cipher cipher = Cipher.getInstance(ALGO_AES);
-
-        GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(128, IV.getBytes());
-
-        cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(), gcmParameterSpec);
+        try {
+            new CryptContainer(getSegmentCipher(context), Runtime.getRuntime().availableProcessors(),
+                    progressHandler).encrypt(inputStream, outputStream);
+        } finally {
 
-        byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-        int count;
+            outputStream.flush();
+            outputStream.close();
+            inputStream.close();
+        }
+    }
 
-        CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher);
+    /**
+     * Helper method to decrypt a {@link CryptContainer}
+     * @param inputStream stream associated with encrypted file
+     * @param outputStream stream associated with new output decrypted file
+     */
+    private void decryptSegments(Context context, BufferedInputStream inputStream,
+                                 BufferedOutputStream outputStream)
+            throws GeneralSecurityException, IOException {
 
         try {
-
-            while ((count = inputStream.read(buffer)) != -1) {
-                if (!progressHandler.getCancelled()) {
-                    cipherOutputStream.write(buffer, 0, count);
-                    ServiceWatcherUtil.position +=count;
-                } else break;
-            }
+            new CryptContainer(getSegmentCipher(context), Runtime.getRuntime().availableProcessors(),
+                    progressHandler).decrypt(inputStream, outputStream);
         } finally {
 
-            cipherOutputStream.flush();
-            cipherOutputStream.close();
+            outputStream.flush();
+            outputStream.close();
             inputStream.close();
         }
     }
@@ -349,7 +357,7 @@ public class CryptUtil {
             while ((count = cipherInputStream.read(buffer)) != -1) {
                 if (!progressHandler.getCancelled()) {
                     outputStream.write(buffer, 0, count);
-                    ServiceWatcherUtil.position +=count;
+                    progressHandler.addProcessedBytes(count);
                 } else break;
             }
         } finally {
@@ -386,36 +394,6 @@ public class CryptUtil {
         }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
-    private void rsaEncrypt(Context context, BufferedInputStream inputStream, BufferedOutputStream outputStream)
-            throws GeneralSecurityException, IOException {
-
-        Cipher cipher = Cipher.getInstance(ALGO_AES, "BC");
-        RSAKeygen keygen = new RSAKeygen(context);
-
-        IvParameterSpec ivParameterSpec = new IvParameterSpec(IV.getBytes());
-        cipher.init(Cipher.ENCRYPT_MODE, keygen.getSecretKey(), ivParameterSpec);
-
-        byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
-        int count;
-
-        CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher);
-        try {
-
-            while ((count = inputStream.read(buffer)) != -1) {
-                if (!progressHandler.getCancelled()) {
-                    cipherOutputStream.write(buffer, 0, count);
-                    ServiceWatcherUtil.position +=count;
-                } else break;
-            }
-        } finally {
-
-            cipherOutputStream.flush();
-            cipherOutputStream.close();
-            inputStream.close();
-        }
-    }
-
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
     private void rsaDecrypt(Context context, BufferedInputStream inputStream,
                                    BufferedOutputStream outputStream) throws GeneralSecurityException, IOException {
@@ -435,7 +413,7 @@ public class CryptUtil {
             while ((count = cipherInputStream.read(buffer)) != -1) {
                 if (!progressHandler.getCancelled()) {
                     outputStream.write(buffer, 0, count);
-                    ServiceWatcherUtil.position +=count;
+                    progressHandler.addProcessedBytes(count);
                 } else break;
             }
         } finally {
@@ -493,6 +471,49 @@ public class CryptUtil {
         } else return cipherText;
     }
 
+    /**
+     * Gets the ciphers for the segments of a {@link CryptContainer}, with the key of this device
+     */
+    public static CryptContainer.SegmentCipher getSegmentCipher(Context context)
+            throws GeneralSecurityException, IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            final Key key = getSecretKey();
+            return (mode, nonce) -> {
+                Cipher cipher = Cipher.getInstance(ALGO_AES);
+                cipher.init(mode, key, new GCMParameterSpec(128, nonce));
+                return cipher;
+            };
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            final Key key = new RSAKeygen(context).getSecretKey();
+            return (mode, nonce) -> {
+                Cipher cipher = Cipher.getInstance(ALGO_AES, "BC");
+                cipher.init(mode, key, new IvParameterSpec(nonce));
+                return cipher;
+            };
+        } else throw new GeneralSecurityException("No key store before API 18");
+    }
+
+    /**
+     * Whether the file is a {@link CryptContainer}, that can be read from any position, as
+     * opposed to a file encrypted in the first format
+     */
+    public static boolean isSeekable(File file) {
+        BufferedInputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(file), CryptContainer.MAGIC.length);
+            return CryptContainer.isContainer(inputStream);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
     /**
      * Method initializes a Cipher to be used by {@link android.hardware.fingerprint.FingerprintManager}
      */
@@ -21,6 +21,7 @@ import com.amaze.filemanager.utils.OpenMode;
 import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.provider.UtilitiesProvider;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 
@@ -68,32 +69,66 @@ public class EncryptDecryptUtils {
         decryptIntent.putExtra(EncryptService.TAG_OPEN_MODE, openMode.ordinal());
         decryptIntent.putExtra(EncryptService.TAG_SOURCE, sourceFile);
         decryptIntent.putExtra(EncryptService.TAG_DECRYPT_PATH, decryptPath);
-        SharedPreferences preferences1 = PreferenceManager.getDefaultSharedPreferences(main.getContext());
 
-        EncryptedEntry encryptedEntry;
+        checkPassword(c, mainActivity, main, sourceFile, decryptIntent, utilsProvider,
+                new DecryptButtonCallbackInterface() {
+                    @Override
+                    public void confirm(Intent intent) {
+                        ServiceWatcherUtil.runService(main.getContext(), intent);
+                    }
 
-        try {
-            encryptedEntry = findEncryptedEntry(main.getContext(), sourceFile.getPath());
-        } catch (GeneralSecurityException | IOException e) {
-            e.printStackTrace();
+                    @Override
+                    public void failed() {
+                        Toast.makeText(main.getContext(), main.getActivity().getString(R.string.crypt_decryption_fail_password), Toast.LENGTH_LONG).show();
+                    }
+                });
+    }
 
-            // we couldn't find any entry in database or lost the key to decipher
-            Toast.makeText(main.getContext(), main.getActivity().getString(R.string.crypt_decryption_fail), Toast.LENGTH_LONG).show();
-            return;
-        }
+    /**
+     * Plays an encrypted media file through {@link CryptStreamer} instead of decrypting it to the
+     * cache, the file has to be local and in the segmented format, see {@link CryptUtil#isSeekable(File)}
+     */
+    public static void streamFile(Context c, final MainActivity mainActivity, final MainFragment main,
+                                  final HybridFileParcelable sourceFile, UtilitiesProvider utilsProvider) {
 
-        DecryptButtonCallbackInterface decryptButtonCallbackInterface =
+        Intent decryptIntent = new Intent(main.getContext(), DecryptService.class);
+        decryptIntent.putExtra(EncryptService.TAG_OPEN_MODE, OpenMode.FILE.ordinal());
+        decryptIntent.putExtra(EncryptService.TAG_SOURCE, sourceFile);
+
+        checkPassword(c, mainActivity, main, sourceFile, decryptIntent, utilsProvider,
                 new DecryptButtonCallbackInterface() {
                     @Override
                     public void confirm(Intent intent) {
-                        ServiceWatcherUtil.runService(main.getContext(), intent);
+                        CryptStreamer.launch(new File(sourceFile.getPath()), mainActivity);
                     }
 
                     @Override
                     public void failed() {
                         Toast.makeText(main.getContext(), main.getActivity().getString(R.string.crypt_decryption_fail_password), Toast.LENGTH_LONG).show();
                     }
-                };
+                });
+    }
+
+    /**
+     * Asks for the password the file was encrypted with, or the fingerprint, and calls back
+     */
+    private static void checkPassword(Context c, final MainActivity mainActivity, final MainFragment main,
+                                      HybridFileParcelable sourceFile, Intent decryptIntent,
+                                      UtilitiesProvider utilsProvider,
+                                      DecryptButtonCallbackInterface decryptButtonCallbackInterface) {
+        SharedPreferences preferences1 = PreferenceManager.getDefaultSharedPreferences(main.getContext());
+
+        EncryptedEntry encryptedEntry;
+
+        try {
+            encryptedEntry = findEncryptedEntry(main.getContext(), sourceFile.getPath());
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+
+            // we couldn't find any entry in database or lost the key to decipher
+            Toast.makeText(main.getContext(), main.getActivity().getString(R.string.crypt_decryption_fail), Toast.LENGTH_LONG).show();
+            return;
+        }
 
         if (encryptedEntry == null) {
             // couldn't find the matching path in database, we lost the password
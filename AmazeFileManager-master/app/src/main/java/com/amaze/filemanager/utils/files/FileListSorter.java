@@ -21,18 +21,44 @@ package com.amaze.filemanager.utils.files;
 
 import com.amaze.filemanager.adapters.data.LayoutElementParcelable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares {@link LayoutElementParcelable}s by the keys they compute when created
+ * ({@link LayoutElementParcelable#nameKey}, {@link LayoutElementParcelable#extensionKey}, date and
+ * size), so no string is created or case folded while sorting.
+ */
 public class FileListSorter implements Comparator<LayoutElementParcelable> {
 
+    /**
+     * Lists at least this long are sorted in parallel by {@link #sort(List, FileListSorter)}
+     */
+    public static final int PARALLEL_SORT_THRESHOLD = 20000;
+
     private int dirsOnTop = 0;
     private int asc = 1;
     private int sort = 0;
+    private boolean natural = false;
 
     public FileListSorter(int dir, int sort, int asc) {
+        this(dir, sort, asc, false);
+    }
+
+    /**
+     * @param natural whether numbers in names are compared by value ("file2" before "file10")
+     */
+    public FileListSorter(int dir, int sort, int asc, boolean natural) {
         this.dirsOnTop = dir;
         this.asc = asc;
         this.sort = sort;
+        this.natural = natural;
     }
 
     private boolean isDirectory(LayoutElementParcelable path) {
@@ -45,36 +71,14 @@ public class FileListSorter implements Comparator<LayoutElementParcelable> {
      */
     @Override
     public int compare(LayoutElementParcelable file1, LayoutElementParcelable file2) {
-
-        /*File f1;
-
-        if(!file1.hasSymlink()) {
-
-            f1=new File(file1.getDesc());
-        } else {
-            f1=new File(file1.getSymlink());
-        }
-
-        File f2;
-
-        if(!file2.hasSymlink()) {
-
-            f2=new File(file2.getDesc());
-        } else {
-            f2=new File(file1.getSymlink());
-        }*/
-
         if (dirsOnTop == 0) {
             if (isDirectory(file1) && !isDirectory(file2)) {
                 return -1;
-
-
             } else if (isDirectory(file2) && !isDirectory(file1)) {
                 return 1;
             }
         } else if (dirsOnTop == 1) {
             if (isDirectory(file1) && !isDirectory(file2)) {
-
                 return 1;
             } else if (isDirectory(file2) && !isDirectory(file1)) {
                 return -1;
@@ -84,46 +88,148 @@ public class FileListSorter implements Comparator<LayoutElementParcelable> {
         if (sort == 0) {
 
             // sort by name
-            return asc * file1.title.compareToIgnoreCase(file2.title);
+            return asc * compareNames(file1, file2);
         } else if (sort == 1) {
 
             // sort by last modified
-            return asc * Long.valueOf(file1.date).compareTo(file2.date);
+            return asc * compareLongs(file1.date, file2.date);
         } else if (sort == 2) {
 
             // sort by size
             if (!file1.isDirectory && !file2.isDirectory) {
-
-                return asc * Long.valueOf(file1.longSize).compareTo(file2.longSize);
+                return asc * compareLongs(file1.longSize, file2.longSize);
             } else {
-
-                return file1.title.compareToIgnoreCase(file2.title);
+                return compareNames(file1, file2);
             }
 
         } else if(sort ==3) {
 
             // sort by type
             if(!file1.isDirectory && !file2.isDirectory) {
-
-                final String ext_a = getExtension(file1.title);
-                final String ext_b = getExtension(file2.title);
-
-
-                final int res = asc*ext_a.compareTo(ext_b);
+                final int res = asc * file1.extensionKey.compareTo(file2.extensionKey);
                 if (res == 0) {
-                    return asc * file1.title.compareToIgnoreCase(file2.title);
+                    return asc * compareNames(file1, file2);
                 }
                 return res;
             } else {
-                return  file1.title.compareToIgnoreCase(file2.title);
+                return compareNames(file1, file2);
             }
         }
         return 0;
+    }
+
+    private int compareNames(LayoutElementParcelable file1, LayoutElementParcelable file2) {
+        if (natural) {
+            int res = compareNatural(file1.nameKey, file2.nameKey);
+            // "file02" and "file2" are still different files
+            if (res != 0) return res;
+        }
+        return file1.nameKey.compareTo(file2.nameKey);
+    }
 
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
     }
 
-    private static String getExtension(String a) {
-        return a.substring(a.lastIndexOf(".") + 1).toLowerCase();
+    /**
+     * Compares runs of digits by their value and everything else char by char
+     */
+    static int compareNatural(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i), cb = b.charAt(j);
+            if (isDigit(ca) && isDigit(cb)) {
+                // skip leading zeroes, then the longer number is the bigger one
+                int startA = i, startB = j;
+                while (startA < a.length() - 1 && a.charAt(startA) == '0' && isDigit(a.charAt(startA + 1))) startA++;
+                while (startB < b.length() - 1 && b.charAt(startB) == '0' && isDigit(b.charAt(startB + 1))) startB++;
+                int endA = startA, endB = startB;
+                while (endA < a.length() && isDigit(a.charAt(endA))) endA++;
+                while (endB < b.length() && isDigit(b.charAt(endB))) endB++;
+
+                int lengthA = endA - startA, lengthB = endB - startB;
+                if (lengthA != lengthB) return lengthA - lengthB;
+                for (int k = 0; k < lengthA; k++) {
+                    int diff = a.charAt(startA + k) - b.charAt(startB + k);
+                    if (diff != 0) return diff;
+                }
+
+                i = endA;
+                j = endB;
+            } else {
+                if (ca != cb) return ca - cb;
+                i++;
+                j++;
+            }
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Sorts the list, splitting it between all cores when it's at least
+     * {@link #PARALLEL_SORT_THRESHOLD} long (Arrays.parallelSort() isn't available before Nougat)
+     */
+    public static void sort(List<LayoutElementParcelable> list, FileListSorter sorter) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (list.size() < PARALLEL_SORT_THRESHOLD || parallelism < 2) {
+            Collections.sort(list, sorter);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            int chunkSize = (list.size() + parallelism - 1) / parallelism;
+            List<Future<ArrayList<LayoutElementParcelable>>> chunks = new ArrayList<>(parallelism);
+            for (int start = 0; start < list.size(); start += chunkSize) {
+                final ArrayList<LayoutElementParcelable> chunk =
+                        new ArrayList<>(list.subList(start, Math.min(start + chunkSize, list.size())));
+                chunks.add(executor.submit(() -> {
+                    Collections.sort(chunk, sorter);
+                    return chunk;
+                }));
+            }
+
+            ArrayList<LayoutElementParcelable> sorted = new ArrayList<>();
+            for (Future<ArrayList<LayoutElementParcelable>> chunk : chunks) {
+                sorted = merge(sorted, chunk.get(), sorter);
+            }
+
+            for (int i = 0; i < sorted.size(); i++) {
+                list.set(i, sorted.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Collections.sort(list, sorter);
+        } catch (ExecutionException e) {
+            // the chunks are only sorted, this can't really happen
+            Collections.sort(list, sorter);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Merges two lists sorted by the same comparator into a new sorted list
+     */
+    public static ArrayList<LayoutElementParcelable> merge(List<LayoutElementParcelable> first,
+                                                            List<LayoutElementParcelable> second,
+                                                            Comparator<LayoutElementParcelable> comparator) {
+        ArrayList<LayoutElementParcelable> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0, j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (comparator.compare(second.get(j), first.get(i)) < 0) {
+                merged.add(second.get(j++));
+            } else {
+                merged.add(first.get(i++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
     }
 
 }
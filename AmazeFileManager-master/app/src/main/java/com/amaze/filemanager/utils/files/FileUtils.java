@@ -75,7 +75,6 @@ import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.amaze.filemanager.utils.share.ShareTask;
 import com.amaze.filemanager.utils.theme.AppTheme;
 import com.cloudrail.si.interfaces.CloudStorage;
-import com.cloudrail.si.types.CloudMetaData;
 import com.googlecode.concurrenttrees.radix.ConcurrentRadixTree;
 import com.googlecode.concurrenttrees.radix.node.concrete.voidvalue.VoidValue;
 
@@ -92,54 +91,29 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicLong;
 
-import jcifs.smb.SmbFile;
 
 /**
  * Functions that deal with files
  */
 public class FileUtils {
 
+    /**
+     * @see FolderSizeCalculator#getSize(Context, HybridFile, OnProgressUpdate)
+     */
     public static long folderSize(File directory, OnProgressUpdate<Long> updateState) {
-        long length = 0;
-        try {
-            for (File file:directory.listFiles()) {
-                if (file.isFile())
-                    length += file.length();
-                else
-                    length += folderSize(file, null); //null because updateState would be called for children dirs
-
-                if(updateState != null)
-                    updateState.onUpdate(length);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return length;
+        return folderSize(new HybridFile(OpenMode.FILE, directory.getPath()), updateState);
     }
 
+    /**
+     * @see FolderSizeCalculator#getSize(Context, HybridFile, OnProgressUpdate)
+     */
     public static long folderSize(HybridFile directory, OnProgressUpdate<Long> updateState) {
-        if(directory.isSimpleFile())
-            return folderSize(new File(directory.getPath()), updateState);
+        if(FolderSizeCalculator.canCalculate(directory.getMode()))
+            return FolderSizeCalculator.getInstance().getSize(AppConfig.getInstance(), directory, updateState);
         else
             return directory.folderSize(AppConfig.getInstance());
     }
 
-    public static long folderSize(SmbFile directory) {
-        long length = 0;
-        try {
-            for (SmbFile file:directory.listFiles()) {
-
-                if (file.isFile())
-                    length += file.length();
-                else
-                    length += folderSize(file);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return length;
-    }
-
     /**
      * Use recursive <code>ls</code> to get folder size.
      *
@@ -167,29 +141,13 @@ public class FileUtils {
     }
 
 
-    public static long folderSizeCloud(OpenMode openMode, CloudMetaData sourceFileMeta) {
-
-        DataUtils dataUtils = DataUtils.getInstance();
-        long length = 0;
-        CloudStorage cloudStorage = dataUtils.getAccount(openMode);
-        for (CloudMetaData metaData : cloudStorage.getChildren(CloudUtil.stripPath(openMode, sourceFileMeta.getPath()))) {
-
-            if (metaData.getFolder()) {
-                length += folderSizeCloud(openMode, metaData);
-            } else {
-                length += metaData.getSize();
-            }
-        }
-
-        return length;
-    }
-
     /**
-     * Helper method to get size of an otg folder
+     * Helper method to get size of an otg folder, from the sizes listed with the files
      */
     public static long otgFolderSize(String path, final Context context) {
         final AtomicLong totalBytes = new AtomicLong(0);
-        OTGUtil.getDocumentFiles(path, context, file -> totalBytes.addAndGet(getBaseFileSize(file, context)));
+        OTGUtil.getDocumentFiles(path, context, file -> totalBytes.addAndGet(file.isDirectory() ?
+                otgFolderSize(file.getPath(), context) : file.getSize()));
         return totalBytes.longValue();
     }
 
@@ -0,0 +1,183 @@
+package com.amaze.filemanager.utils.files;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.amaze.filemanager.filesystem.HybridFile;
+import com.amaze.filemanager.utils.OnProgressUpdate;
+import com.amaze.filemanager.utils.OpenMode;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the size of directory trees, walking them with a {@link ParallelFileWalker} and
+ * remembering the size of every directory found on the way.
+ *
+ * A size is reused until a file operation reports a change inside it (see
+ * {@link #invalidate(String)}), the directory's modification date changes (local files only, the
+ * other mediums would need a round trip to check it) or it gets older than {@link #MAX_AGE}, which
+ * covers files changed by other apps.
+ */
+public class FolderSizeCalculator {
+
+    public static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Minimum time between two partial totals
+     */
+    private static final long PROGRESS_INTERVAL = 100;
+
+    private final Map<String, Entry> sizes = new ConcurrentHashMap<>();
+
+    private FolderSizeCalculator() {
+    }
+
+    private static class FolderSizeCalculatorHolder {
+        private static final FolderSizeCalculator INSTANCE = new FolderSizeCalculator();
+    }
+
+    public static FolderSizeCalculator getInstance() {
+        return FolderSizeCalculatorHolder.INSTANCE;
+    }
+
+    /**
+     * Whether the size of directories in the given medium is computed here, root directories
+     * are left to the shell and SFTP ones to the server
+     */
+    public static boolean canCalculate(OpenMode mode) {
+        switch (mode) {
+            case FILE:
+            case SMB:
+            case OTG:
+            case DROPBOX:
+            case BOX:
+            case GDRIVE:
+            case ONEDRIVE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the size of everything inside the directory, blocking until it's known
+     *
+     * @param updateState gets the partial totals while the tree is walked, may be null
+     */
+    public long getSize(@NonNull Context context, @NonNull HybridFile directory,
+                        @Nullable final OnProgressUpdate<Long> updateState) {
+        final String root = toKey(directory.getPath());
+        Entry cached = sizes.get(root);
+        if (cached != null && cached.isValid(directory.getMode(), root)) return cached.size;
+
+        // totals of every directory in the tree, so that they can be reused on their own
+        final Map<String, AtomicLong> totals = new ConcurrentHashMap<>();
+        final Map<String, Long> dates = new ConcurrentHashMap<>();
+        final AtomicLong total = new AtomicLong(0);
+        final long[] lastUpdate = {SystemClock.elapsedRealtime()};
+        totals.put(root, total);
+
+        ParallelFileWalker walker = new ParallelFileWalker(context, false,
+                ParallelFileWalker.getParallelism(directory, false));
+        walker.walk(directory, file -> {
+            if (file.isDirectory()) {
+                // SMB directories end with a slash, the parents of files below don't
+                String path = toKey(file.getPath());
+                totals.put(path, new AtomicLong(0));
+                dates.put(path, file.getDate());
+                return true;
+            }
+
+            long size = file.getSize();
+            if (size <= 0) return false;
+
+            // add to every directory between the file and the root
+            String parent = file.getPath();
+            do {
+                parent = parent.substring(0, Math.max(parent.lastIndexOf('/'), 0));
+                AtomicLong parentTotal = totals.get(parent);
+                if (parentTotal != null && parentTotal != total) parentTotal.addAndGet(size);
+            } while (parent.length() > root.length());
+            long current = total.addAndGet(size);
+
+            if (updateState != null) {
+                synchronized (lastUpdate) {
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastUpdate[0] >= PROGRESS_INTERVAL) {
+                        lastUpdate[0] = now;
+                        updateState.onUpdate(current);
+                    }
+                }
+            }
+            return false;
+        });
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, AtomicLong> directoryTotal : totals.entrySet()) {
+            String path = directoryTotal.getKey();
+            Long date = path.equals(root) ? getDate(directory.getMode(), root) : dates.get(path);
+            sizes.put(path, new Entry(directoryTotal.getValue().get(), date == null ? 0 : date, now));
+        }
+        return total.get();
+    }
+
+    /**
+     * Forgets the size of the given path, its children and every directory containing it; to be
+     * called whenever a file is created, deleted, moved or written to
+     */
+    public void invalidate(@NonNull String path) {
+        path = toKey(path);
+        String descendantsPrefix = path.endsWith("/") ? path : path + "/";
+        Iterator<String> iterator = sizes.keySet().iterator();
+        while (iterator.hasNext()) {
+            String cachedPath = iterator.next();
+            if (cachedPath.equals(path) || cachedPath.startsWith(descendantsPrefix)
+                    || isAncestor(cachedPath, path)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The path without its trailing slash, so that a directory has the same key whether the
+     * medium lists it with one or not
+     */
+    private static String toKey(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/' && path.charAt(end - 2) != '/') end--;
+        return path.substring(0, end);
+    }
+
+    private static boolean isAncestor(String ancestor, String path) {
+        return path.length() > ancestor.length() && path.startsWith(ancestor)
+                && (ancestor.endsWith("/") || path.charAt(ancestor.length()) == '/');
+    }
+
+    private static long getDate(OpenMode mode, String path) {
+        return mode == OpenMode.FILE ? new File(path).lastModified() : 0;
+    }
+
+    private static final class Entry {
+        final long size;
+        final long date;
+        final long computedAt;
+
+        Entry(long size, long date, long computedAt) {
+            this.size = size;
+            this.date = date;
+            this.computedAt = computedAt;
+        }
+
+        boolean isValid(OpenMode mode, String path) {
+            return System.currentTimeMillis() - computedAt < MAX_AGE
+                    && (mode != OpenMode.FILE || getDate(mode, path) == date);
+        }
+    }
+}
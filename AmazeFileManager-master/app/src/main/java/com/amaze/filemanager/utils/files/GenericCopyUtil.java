@@ -39,7 +39,6 @@ import com.amaze.filemanager.filesystem.HybridFile;
 import com.amaze.filemanager.utils.DataUtils;
 import com.amaze.filemanager.utils.OTGUtil;
 import com.amaze.filemanager.utils.OpenMode;
-import com.amaze.filemanager.utils.ServiceWatcherUtil;
 import com.amaze.filemanager.utils.cloud.CloudUtil;
 import com.cloudrail.si.interfaces.CloudStorage;
 
@@ -51,11 +50,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
 
 /**
  * 
@@ -73,6 +69,20 @@ public class GenericCopyUtil {
 
     public static final int DEFAULT_BUFFER_SIZE =  8192;
 
+    /**
+     * Buffer sizes used for each kind of medium, see {@link #getBufferSize(OpenMode, OpenMode)}
+     */
+    private static final int LOCAL_BUFFER_SIZE = 256 * 1024;
+    private static final int REMOTE_BUFFER_SIZE = 64 * 1024;
+    private static final int SFTP_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Maximum number of bytes handed to the kernel in one go when both ends are {@link FileChannel}s
+     */
+    private static final long TRANSFER_SLICE_SIZE = 8 * 1024 * 1024;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
     public GenericCopyUtil(Context context, ProgressHandler progressHandler) {
         this.mContext = context;
         this.progressHandler = progressHandler;
@@ -81,10 +91,10 @@ public class GenericCopyUtil {
     /**
      * Starts copy of file
      * Supports : {@link File}, {@link jcifs.smb.SmbFile}, {@link DocumentFile}, {@link CloudStorage}
+     * Data is always moved in bounded slices, progress is reported for each one of them
+     * through {@link ProgressHandler#addProcessedBytes(long)}.
      * @param lowOnMemory defines whether system is running low on memory, in which case we'll switch to
-     *                    using streams instead of channel which maps the who buffer in memory.
-     *                    TODO: Use buffers even on low memory but don't map the whole file to memory but
-     *                          parts of it, and transfer each part instead.
+     *                    using streams instead of channels.
      */
     private void startCopy(boolean lowOnMemory) throws IOException {
 
@@ -321,6 +331,7 @@ public class GenericCopyUtil {
 
         this.mSourceFile = sourceFile;
         this.mTargetFile = targetFile;
+        this.bufferSize = getBufferSize(sourceFile.getMode(), targetFile.getMode());
 
         startCopy(false);
     }
@@ -328,44 +339,46 @@ public class GenericCopyUtil {
     private void copyFile(BufferedInputStream bufferedInputStream, FileChannel outChannel)
             throws IOException {
 
-        MappedByteBuffer byteBuffer = outChannel.map(FileChannel.MapMode.READ_WRITE, 0,
-                mSourceFile.getSize());
-        int count = 0;
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        while (count != -1) {
-
-            count = bufferedInputStream.read(buffer);
-            if (count!=-1 && !progressHandler.getCancelled()) {
+        // never map the whole target, write through a bounded buffer instead
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
+        byte[] buffer = byteBuffer.array();
+        int count;
+        while ((count = bufferedInputStream.read(buffer)) != -1 && !progressHandler.getCancelled()) {
 
-                byteBuffer.put(buffer, 0, count);
-                ServiceWatcherUtil.position +=count;
-            } else break;
+            byteBuffer.clear();
+            byteBuffer.limit(count);
+            while (byteBuffer.hasRemaining()) outChannel.write(byteBuffer);
+            progressHandler.addProcessedBytes(count);
         }
     }
 
     private void copyFile(FileChannel inChannel, FileChannel outChannel) throws IOException {
 
-        //MappedByteBuffer inByteBuffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
-        //MappedByteBuffer outByteBuffer = outChannel.map(FileChannel.MapMode.READ_WRITE, 0, inChannel.size());
+        // transfer slice by slice, so that the kernel never has to map more than a window of the
+        // file at once and cancellation is checked in between
+        long size = inChannel.size();
+        long position = 0L;
+        while (position < size && !progressHandler.getCancelled()) {
 
-        ReadableByteChannel inByteChannel = new CustomReadableByteChannel(inChannel);
-        outChannel.transferFrom(inByteChannel, 0, mSourceFile.getSize());
+            long transferred = inChannel.transferTo(position,
+                    Math.min(TRANSFER_SLICE_SIZE, size - position), outChannel);
+            if (transferred <= 0) break;
+
+            position += transferred;
+            progressHandler.addProcessedBytes(transferred);
+        }
     }
 
     private void copyFile(BufferedInputStream bufferedInputStream, BufferedOutputStream bufferedOutputStream)
             throws IOException {
-        int count = 0;
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        int count;
+        byte[] buffer = new byte[bufferSize];
 
         try {
-            while (count != -1) {
+            while ((count = bufferedInputStream.read(buffer)) != -1 && !progressHandler.getCancelled()) {
 
-                count = bufferedInputStream.read(buffer);
-                if (count!=-1 && !progressHandler.getCancelled()) {
-
-                    bufferedOutputStream.write(buffer, 0 , count);
-                    ServiceWatcherUtil.position +=count;
-                } else break;
+                bufferedOutputStream.write(buffer, 0 , count);
+                progressHandler.addProcessedBytes(count);
             }
         } finally {
             bufferedOutputStream.flush();
@@ -374,40 +387,17 @@ public class GenericCopyUtil {
 
     private void copyFile(FileChannel inChannel, BufferedOutputStream bufferedOutputStream)
             throws IOException {
-        MappedByteBuffer inBuffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, mSourceFile.getSize());
 
-        int count = -1;
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        // never map the whole source, read through a bounded buffer instead
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
+        byte[] buffer = byteBuffer.array();
+        int count;
         try {
-            while (inBuffer.hasRemaining() && count != 0) {
-
-                int tempPosition = inBuffer.position();
-
-                try {
-
-                    // try normal way of getting bytes
-                    ByteBuffer tempByteBuffer = inBuffer.get(buffer);
-                    count = tempByteBuffer.position() - tempPosition;
-                } catch (BufferUnderflowException exception) {
-                    exception.printStackTrace();
-
-                    // not enough bytes left in the channel to read, iterate over each byte and store
-                    // in the buffer
-
-                    // reset the counter bytes
-                    count = 0;
-                    for (int i=0; i<buffer.length && inBuffer.hasRemaining(); i++) {
-                        buffer[i] = inBuffer.get();
-                        count++;
-                    }
-                }
-
-                if (count != -1 && !progressHandler.getCancelled()) {
-
-                    bufferedOutputStream.write(buffer, 0, count);
-                    ServiceWatcherUtil.position = inBuffer.position();
-                } else break;
+            while ((count = inChannel.read(byteBuffer)) != -1 && !progressHandler.getCancelled()) {
 
+                bufferedOutputStream.write(buffer, 0, count);
+                byteBuffer.clear();
+                progressHandler.addProcessedBytes(count);
             }
         } finally {
             bufferedOutputStream.flush();
@@ -415,39 +405,29 @@ public class GenericCopyUtil {
     }
 
     /**
-     * Inner class responsible for getting a {@link ReadableByteChannel} from the input channel
-     * and to watch over the read progress
+     * Size of the buffer used to move data between a source and a target, smallest of what suits
+     * either medium best.
      */
-    private class CustomReadableByteChannel implements ReadableByteChannel {
-
-        ReadableByteChannel byteChannel;
-
-
-        CustomReadableByteChannel(ReadableByteChannel byteChannel) {
-            this.byteChannel = byteChannel;
-        }
-
-        @Override
-        public int read(ByteBuffer dst) throws IOException {
-            int bytes;
-            if (((bytes = byteChannel.read(dst))>0) && !progressHandler.getCancelled()) {
-
-                ServiceWatcherUtil.position += bytes;
-                return bytes;
-
-            } else
-                return 0;
-        }
-
-        @Override
-        public boolean isOpen() {
-            return byteChannel.isOpen();
-        }
-
-        @Override
-        public void close() throws IOException {
+    public static int getBufferSize(OpenMode sourceMode, OpenMode targetMode) {
+        return Math.min(getBufferSize(sourceMode), getBufferSize(targetMode));
+    }
 
-            byteChannel.close();
+    private static int getBufferSize(OpenMode mode) {
+        switch (mode) {
+            case SFTP:
+                // sshj won't read or write more than a packet at a time
+                return SFTP_BUFFER_SIZE;
+            case SMB:
+                // jcifs splits reads and writes at ~60 KB anyway
+            case OTG:
+                // USB mass storage bulk transfers top out at 64 KB
+            case GDRIVE:
+            case DROPBOX:
+            case BOX:
+            case ONEDRIVE:
+                return REMOTE_BUFFER_SIZE;
+            default:
+                return LOCAL_BUFFER_SIZE;
         }
     }
 }
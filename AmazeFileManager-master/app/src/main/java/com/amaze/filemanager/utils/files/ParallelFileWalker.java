@@ -0,0 +1,146 @@
+package com.amaze.filemanager.utils.files;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.amaze.filemanager.filesystem.HybridFile;
+import com.amaze.filemanager.filesystem.HybridFileParcelable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a directory tree listing several directories at the same time.
+ *
+ * Every directory found is listed as a separate task on a fixed pool of threads, idle threads
+ * pick up whichever directory is queued next, so big subtrees end up split between all of them.
+ * {@link Visitor#onFileFound(HybridFileParcelable)} is therefore called from several threads.
+ *
+ * ForkJoinPool would be the natural fit, but it's not available before Lollipop.
+ */
+public class ParallelFileWalker {
+
+    private static final String TAG = "ParallelFileWalker";
+
+    private final Context context;
+    private final boolean rootMode;
+    private final int parallelism;
+
+    private ExecutorService executor;
+
+    /**
+     * Number of directories queued or being listed, {@link #walk(HybridFile, Visitor)} returns
+     * when it drops to 0
+     */
+    private final AtomicInteger pendingDirectories = new AtomicInteger(0);
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param parallelism number of directories listed at the same time, use 1 for mediums not
+     *                    supporting concurrent access (root shell, OTG)
+     */
+    public ParallelFileWalker(Context context, boolean rootMode, int parallelism) {
+        this.context = context;
+        this.rootMode = rootMode;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Number of threads to use for walking a tree in the given medium
+     */
+    public static int getParallelism(HybridFile file, boolean rootMode) {
+        if (rootMode || file.isRoot() || file.isOtgFile()) return 1;
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Walks the children of the given directory, blocking until the whole tree has been visited
+     * or {@link #cancel()} is called
+     */
+    public void walk(HybridFile directory, Visitor visitor) {
+        if (!directory.isDirectory(context)) {// do you have permission to read this directory?
+            Log.d(TAG, "Cannot walk " + directory.getPath() + ": Permission Denied");
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(parallelism);
+        // held by this thread until the root is submitted
+        pendingDirectories.set(1);
+        submit(directory, visitor);
+        finishDirectory();
+
+        synchronized (pendingDirectories) {
+            while (pendingDirectories.get() > 0 && !cancelled) {
+                try {
+                    pendingDirectories.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                }
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stops listing new directories, the ones being listed are abandoned as soon as possible
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (pendingDirectories) {
+            pendingDirectories.notifyAll();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void submit(HybridFile directory, Visitor visitor) {
+        pendingDirectories.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!cancelled) list(directory, visitor);
+                } catch (Exception e) {
+                    Log.w(TAG, "Error listing " + directory.getPath(), e);
+                } finally {
+                    finishDirectory();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // walk is over, cancelled
+            finishDirectory();
+        }
+    }
+
+    private void list(HybridFile directory, Visitor visitor) {
+        directory.forEachChildrenFile(context, rootMode, file -> {
+            if (cancelled) return;
+
+            if (visitor.onFileFound(file) && file.isDirectory()) {
+                submit(file, visitor);
+            }
+        });
+    }
+
+    private void finishDirectory() {
+        if (pendingDirectories.decrementAndGet() == 0) {
+            synchronized (pendingDirectories) {
+                pendingDirectories.notifyAll();
+            }
+        }
+    }
+
+    public interface Visitor {
+        /**
+         * Called once for each file or directory found, possibly from several threads at once
+         *
+         * @return whether to descend into the file, if it's a directory
+         */
+        boolean onFileFound(HybridFileParcelable file);
+    }
+}
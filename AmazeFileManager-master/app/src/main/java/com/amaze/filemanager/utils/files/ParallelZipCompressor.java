@@ -0,0 +1,325 @@
+package com.amaze.filemanager.utils.files;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.amaze.filemanager.ui.icons.MimeTypes;
+import com.amaze.filemanager.utils.ProgressHandler;
+
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes files into a ZIP archive, deflating them on several threads.
+ *
+ * Files up to {@link #MAX_BUFFERED_SIZE} are deflated by a pool of workers into memory, keeping
+ * their CRC and sizes, and copied raw into the archive in order. Bigger files are deflated by the
+ * thread writing the archive when their turn comes, while the workers go on with the small files
+ * after them; at most {@link #MAX_BUFFERED_BYTES} of source data is buffered ahead of the writer.
+ * Media and archives, which wouldn't get any smaller, are stored without compression.
+ *
+ * Progress is reported to the {@link ProgressHandler} as the files are read, which is also where
+ * cancellation is checked.
+ */
+public class ParallelZipCompressor {
+
+    public static final int MAX_BUFFERED_SIZE = 8 * 1024 * 1024;
+    public static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Already compressed types, among the ones not caught by their mime type prefix
+     */
+    private static final Set<String> COMPRESSED_MIME_TYPES = new HashSet<>(Arrays.asList(
+            "application/zip", "application/x-gzip", "application/x-bzip", "application/x-bzip2",
+            "application/x-xz", "application/x-compress", "application/x-ace-compressed",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/rar",
+            "application/java-archive", "application/vnd.android.package-archive",
+            "application/epub+zip", "application/x-ibooks+zip", "application/vnd.ms-cab-compressed",
+            "crypt/aze"));
+
+    /**
+     * Media types that are usually not compressed
+     */
+    private static final Set<String> UNCOMPRESSED_MEDIA_TYPES = new HashSet<>(Arrays.asList(
+            "image/bmp", "image/x-ms-bmp", "image/svg+xml", "image/tiff", "audio/x-wav",
+            "audio/wav"));
+
+    private final int threads;
+    @Nullable
+    private final ProgressHandler progressHandler;
+
+    /**
+     * @param threads workers deflating files, the thread calling {@link #compress(List, OutputStream)}
+     *                also deflates the big ones
+     * @param progressHandler gets the bytes read and the files started, may be null
+     */
+    public ParallelZipCompressor(int threads, @Nullable ProgressHandler progressHandler) {
+        this.threads = Math.max(threads, 1);
+        this.progressHandler = progressHandler;
+    }
+
+    /**
+     * Whether deflating the file is pointless, going by its mime type
+     */
+    public static boolean isCompressed(@NonNull String path) {
+        String mimeType = MimeTypes.getMimeType(path, false);
+        if (mimeType == null || UNCOMPRESSED_MEDIA_TYPES.contains(mimeType)) return false;
+        return mimeType.startsWith("image/") || mimeType.startsWith("video/")
+                || mimeType.startsWith("audio/") || COMPRESSED_MIME_TYPES.contains(mimeType);
+    }
+
+    /**
+     * Writes every file and the contents of every directory into out, which is closed at the end.
+     * When cancelled or failing, what was written so far is no valid archive and has to be deleted
+     * by the caller.
+     *
+     * @return false if cancelled through the {@link ProgressHandler}
+     */
+    public boolean compress(@NonNull List<File> files, @NonNull OutputStream out) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            collect(files.get(i), "", i, entries);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new BufferedOutputStream(out,
+                GenericCopyUtil.DEFAULT_BUFFER_SIZE));
+        List<Future<ScatterZipOutputStream>> compressed = new ArrayList<>(entries.size());
+        boolean finished = false;
+        try {
+            int submitted = 0;
+            long buffered = 0;
+            int lastRoot = -1;
+            for (int written = 0; written < entries.size(); written++) {
+                // keep the workers ahead of the writer
+                while (submitted < entries.size()
+                        && (submitted == written || buffered < MAX_BUFFERED_BYTES)) {
+                    final Entry entry = entries.get(submitted++);
+                    if (entry.length <= MAX_BUFFERED_SIZE) {
+                        compressed.add(executor.submit(() -> compressToMemory(entry)));
+                        buffered += entry.length;
+                    } else {
+                        compressed.add(null);
+                    }
+                }
+
+                if (isCancelled()) return false;
+
+                Entry entry = entries.get(written);
+                if (progressHandler != null && entry.root != lastRoot) {
+                    lastRoot = entry.root;
+                    progressHandler.setFileName(files.get(entry.root).getName());
+                    progressHandler.setSourceFilesProcessed(entry.root + 1);
+                }
+
+                Future<ScatterZipOutputStream> future = compressed.set(written, null);
+                if (future == null) {
+                    writeDirectly(entry, zos);
+                } else {
+                    ScatterZipOutputStream scatter = get(future);
+                    try {
+                        scatter.writeTo(zos);
+                    } finally {
+                        scatter.close();
+                    }
+                    buffered -= entry.length;
+                }
+            }
+            zos.finish();
+            finished = true;
+            return true;
+        } catch (InterruptedIOException e) {
+            if (isCancelled()) return false;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            // an unfinished archive is broken anyway, don't try to write its central directory
+            if (finished) zos.close();
+            else out.close();
+        }
+    }
+
+    /**
+     * Lists the entries in the same order and with the same names as they were always written
+     */
+    private static void collect(File file, String path, int root, List<Entry> entries) {
+        if (!file.isDirectory()) {
+            entries.add(new Entry(file, path + "/" + file.getName(), root));
+            return;
+        }
+
+        File[] children = file.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            collect(child, path + File.separator + file.getName(), root, entries);
+        }
+    }
+
+    private ScatterZipOutputStream compressToMemory(Entry entry) throws IOException {
+        MemoryBackingStore store = new MemoryBackingStore((int) entry.length);
+        StreamCompressor compressor = StreamCompressor.create(Deflater.DEFAULT_COMPRESSION, store);
+        ScatterZipOutputStream scatter = new ScatterZipOutputStream(store, compressor);
+        final InputStream in = open(entry.file);
+        try {
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(
+                    createZipEntry(entry), () -> in));
+        } finally {
+            // the entry is already in the store, only the deflater is released
+            compressor.close();
+        }
+        return scatter;
+    }
+
+    private void writeDirectly(Entry entry, ZipArchiveOutputStream zos) throws IOException {
+        ZipArchiveEntry zipEntry = createZipEntry(entry);
+        InputStream in = open(entry.file);
+        try {
+            if (zipEntry.getMethod() == ZipEntry.STORED) {
+                // stored entries need their crc before the data
+                zipEntry.setCrc(crc(entry.file));
+                zipEntry.setCompressedSize(entry.length);
+            }
+            zos.putArchiveEntry(zipEntry);
+            byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                zos.write(buffer, 0, length);
+            }
+            zos.closeArchiveEntry();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ZipArchiveEntry createZipEntry(Entry entry) {
+        ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.name);
+        zipEntry.setTime(entry.file.lastModified());
+        zipEntry.setSize(entry.length);
+        zipEntry.setMethod(isCompressed(entry.file.getName()) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        return zipEntry;
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private InputStream open(File file) throws IOException {
+        return new FilterInputStream(new FileInputStream(file)) {
+            @Override
+            public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+                if (isCancelled()) throw new InterruptedIOException("Compression cancelled");
+                int read = super.read(buffer, offset, count);
+                if (read > 0 && progressHandler != null) progressHandler.addProcessedBytes(read);
+                return read;
+            }
+        };
+    }
+
+    private boolean isCancelled() {
+        return progressHandler != null && progressHandler.getCancelled();
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class Entry {
+        final File file;
+        final String name;
+        final long length;
+        /**
+         * Index of the file selected by the user this entry comes from
+         */
+        final int root;
+
+        Entry(File file, String name, int root) {
+            this.file = file;
+            this.name = name;
+            this.length = file.length();
+            this.root = root;
+        }
+    }
+
+    /**
+     * Keeps a deflated entry in memory until it's copied into the archive
+     */
+    private static final class MemoryBackingStore implements ScatterGatherBackingStore {
+        private final ExposedByteArrayOutputStream buffer;
+
+        MemoryBackingStore(int expectedSize) {
+            buffer = new ExposedByteArrayOutputStream(Math.max(expectedSize, 32));
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(buffer.getBuffer(), 0, buffer.size());
+        }
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length) {
+            buffer.write(data, offset, length);
+        }
+
+        public void closeForWriting() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
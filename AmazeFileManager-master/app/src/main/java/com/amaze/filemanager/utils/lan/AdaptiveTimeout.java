@@ -0,0 +1,38 @@
+package com.amaze.filemanager.utils.lan;
+
+/**
+ * A timeout following the round trip times measured so far, the way TCP computes its
+ * retransmission timeout (RFC 6298): the smoothed time plus four times its variation.
+ */
+public class AdaptiveTimeout {
+
+    private final long initial, min, max;
+    private long smoothed = -1, variation;
+
+    /**
+     * @param initial the timeout until a round trip is measured, in milliseconds
+     */
+    public AdaptiveTimeout(long initial, long min, long max) {
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+    }
+
+    public synchronized void onRoundTrip(long millis) {
+        if (smoothed == -1) {
+            smoothed = millis;
+            variation = millis / 2;
+        } else {
+            variation = (3 * variation + Math.abs(smoothed - millis)) / 4;
+            smoothed = (7 * smoothed + millis) / 8;
+        }
+    }
+
+    /**
+     * In milliseconds
+     */
+    public synchronized long get() {
+        if (smoothed == -1) return initial;
+        return Math.max(min, Math.min(max, smoothed + 4 * variation));
+    }
+}
@@ -0,0 +1,70 @@
+package com.amaze.filemanager.utils.lan;
+
+import android.support.annotation.NonNull;
+
+import com.amaze.filemanager.utils.ComputerParcelable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The computers found by the last scans, so that a new scan shows them right away and then
+ * only confirms them.
+ */
+public class HostCache {
+
+    public static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+    private static final int MAX_HOSTS = 512;
+
+    private final Map<String, Entry> hosts = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    private static class Entry {
+        final ComputerParcelable computer;
+        final long seen;
+
+        Entry(ComputerParcelable computer, long seen) {
+            this.computer = computer;
+            this.seen = seen;
+        }
+    }
+
+    private static class HostCacheHolder {
+        private static final HostCache INSTANCE = new HostCache();
+    }
+
+    public static HostCache getInstance() {
+        return HostCacheHolder.INSTANCE;
+    }
+
+    public synchronized void put(@NonNull ComputerParcelable computer) {
+        hosts.put(computer.addr, new Entry(computer, System.currentTimeMillis()));
+    }
+
+    /**
+     * Computers seen in the last {@link #MAX_AGE_MILLIS}, in the order they were last seen
+     */
+    @NonNull
+    public synchronized List<ComputerParcelable> getRecent() {
+        long now = System.currentTimeMillis();
+        List<ComputerParcelable> recent = new ArrayList<>();
+        for (Iterator<Entry> iterator = hosts.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (now - entry.seen > MAX_AGE_MILLIS) iterator.remove();
+            else recent.add(entry.computer);
+        }
+        return recent;
+    }
+
+    public synchronized void clear() {
+        hosts.clear();
+    }
+}
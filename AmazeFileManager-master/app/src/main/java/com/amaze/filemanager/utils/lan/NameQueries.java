@@ -0,0 +1,205 @@
+package com.amaze.filemanager.utils.lan;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Builds and reads the UDP packets asking a host its name: NetBIOS node status (RFC 1002), which
+ * Windows and Samba answer, and multicast DNS reverse lookups (RFC 6762), sent unicast.
+ */
+public final class NameQueries {
+
+    public static final int NETBIOS_PORT = 137;
+    public static final int MDNS_PORT = 5353;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int TYPE_PTR = 12;
+    private static final int TYPE_NBSTAT = 0x21;
+    private static final int CLASS_IN = 1;
+    private static final int FLAG_BROADCAST = 0x0010;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int NETBIOS_GROUP = 0x8000;
+    private static final int NETBIOS_NAME_LENGTH = 15;
+
+    private NameQueries() {}
+
+    /**
+     * Asks the NetBIOS names of the host, or of every host if sent to the broadcast address
+     */
+    @NonNull
+    public static ByteBuffer netBiosNodeStatus(int transactionId, boolean broadcast) {
+        ByteBuffer packet = ByteBuffer.allocate(50);
+        writeHeader(packet, transactionId, broadcast ? FLAG_BROADCAST : 0);
+
+        // the wildcard name "*", first level encoded
+        packet.put((byte) 32);
+        byte[] name = new byte[16];
+        name[0] = '*';
+        for (byte b : name) {
+            packet.put((byte) ('A' + (b >> 4 & 0xF)));
+            packet.put((byte) ('A' + (b & 0xF)));
+        }
+        packet.put((byte) 0);
+        packet.putShort((short) TYPE_NBSTAT);
+        packet.putShort((short) CLASS_IN);
+        packet.flip();
+        return packet;
+    }
+
+    /**
+     * The name of the computer in a node status response: its first unique workstation or file
+     * server name
+     *
+     * @return null if the packet isn't such a response
+     */
+    @Nullable
+    public static String readNetBiosName(@NonNull ByteBuffer packet) {
+        try {
+            int flags = readHeader(packet);
+            if ((flags & FLAG_RESPONSE) == 0 || packet.getShort(6) == 0) return null;
+
+            skipName(packet);
+            if ((packet.getShort() & 0xFFFF) != TYPE_NBSTAT) return null;
+            packet.position(packet.position() + 2 + 4 + 2); // class, TTL, length
+
+            int count = packet.get() & 0xFF;
+            byte[] name = new byte[NETBIOS_NAME_LENGTH];
+            for (int i = 0; i < count; i++) {
+                packet.get(name);
+                int suffix = packet.get() & 0xFF;
+                int nameFlags = packet.getShort() & 0xFFFF;
+                if ((nameFlags & NETBIOS_GROUP) == 0 && (suffix == 0x00 || suffix == 0x20)) {
+                    String string = new String(name, ASCII).trim();
+                    if (!string.isEmpty()) return string;
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // not a well formed response
+        }
+        return null;
+    }
+
+    /**
+     * Asks the host the name of address, with a reverse lookup
+     */
+    @NonNull
+    public static ByteBuffer mdnsReverseLookup(int transactionId, int address) {
+        ByteBuffer packet = ByteBuffer.allocate(64);
+        writeHeader(packet, transactionId, 0);
+
+        String[] labels = {String.valueOf(address & 0xFF), String.valueOf(address >> 8 & 0xFF),
+                String.valueOf(address >> 16 & 0xFF), String.valueOf(address >>> 24), "in-addr", "arpa"};
+        for (String label : labels) {
+            packet.put((byte) label.length());
+            packet.put(label.getBytes(ASCII));
+        }
+        packet.put((byte) 0);
+        packet.putShort((short) TYPE_PTR);
+        packet.putShort((short) CLASS_IN);
+        packet.flip();
+        return packet;
+    }
+
+    /**
+     * The host name in a reverse lookup response, without ".local"
+     *
+     * @return null if the packet isn't such a response
+     */
+    @Nullable
+    public static String readMdnsName(@NonNull ByteBuffer packet) {
+        try {
+            int flags = readHeader(packet);
+            int questions = packet.getShort(4) & 0xFFFF, answers = packet.getShort(6) & 0xFFFF;
+            if ((flags & FLAG_RESPONSE) == 0) return null;
+
+            for (int i = 0; i < questions; i++) {
+                skipName(packet);
+                packet.position(packet.position() + 4);
+            }
+            for (int i = 0; i < answers; i++) {
+                skipName(packet);
+                int type = packet.getShort() & 0xFFFF;
+                packet.position(packet.position() + 2 + 4); // class, TTL
+                int length = packet.getShort() & 0xFFFF;
+                int end = packet.position() + length;
+                if (type == TYPE_PTR) {
+                    String name = readName(packet);
+                    if (name.endsWith(".local")) name = name.substring(0, name.length() - ".local".length());
+                    if (!name.isEmpty()) return name;
+                }
+                packet.position(end);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // not a well formed response
+        }
+        return null;
+    }
+
+    private static void writeHeader(ByteBuffer packet, int transactionId, int flags) {
+        packet.putShort((short) transactionId);
+        packet.putShort((short) flags);
+        packet.putShort((short) 1); // questions
+        packet.putShort((short) 0); // answers
+        packet.putShort((short) 0); // authority records
+        packet.putShort((short) 0); // additional records
+    }
+
+    /**
+     * @return the flags
+     */
+    private static int readHeader(ByteBuffer packet) {
+        packet.position(0);
+        packet.getShort();
+        int flags = packet.getShort() & 0xFFFF;
+        packet.position(12);
+        return flags;
+    }
+
+    private static void skipName(ByteBuffer packet) {
+        while (true) {
+            int length = packet.get() & 0xFF;
+            if (length == 0) return;
+            if ((length & 0xC0) == 0xC0) {
+                // a pointer ends the name
+                packet.get();
+                return;
+            }
+            packet.position(packet.position() + length);
+        }
+    }
+
+    /**
+     * Reads a DNS name, following compression pointers
+     */
+    private static String readName(ByteBuffer packet) {
+        StringBuilder name = new StringBuilder();
+        int position = packet.position(), end = -1;
+        // pointers only go backwards, so this many jumps is a loop
+        for (int jumps = 0; jumps < packet.limit(); ) {
+            int length = packet.get(position) & 0xFF;
+            if (length == 0) {
+                if (end == -1) end = position + 1;
+                break;
+            }
+            if ((length & 0xC0) == 0xC0) {
+                if (end == -1) end = position + 2;
+                position = (length & 0x3F) << 8 | packet.get(position + 1) & 0xFF;
+                jumps++;
+                continue;
+            }
+            byte[] label = new byte[length];
+            for (int i = 0; i < length; i++) label[i] = packet.get(position + 1 + i);
+            if (name.length() > 0) name.append('.');
+            name.append(new String(label, UTF_8));
+            position += 1 + length;
+        }
+        packet.position(end == -1 ? packet.limit() : end);
+        return name.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.amaze.filemanager.utils.lan;
+
+import android.support.annotation.NonNull;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 range in CIDR notation, like 192.168.1.0/24.
+ */
+public final class Subnet {
+
+    private final int network;
+    private final int prefixLength;
+
+    public Subnet(int address, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException("Invalid prefix length " + prefixLength);
+        }
+        this.prefixLength = prefixLength;
+        this.network = address & mask(prefixLength);
+    }
+
+    /**
+     * @param cidr like 192.168.1.0/24, or a single address
+     * @throws IllegalArgumentException if cidr isn't an IPv4 range
+     */
+    @NonNull
+    public static Subnet parse(@NonNull String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash == -1 ? cidr : cidr.substring(0, slash);
+        int prefixLength;
+        try {
+            prefixLength = slash == -1 ? 32 : Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid range " + cidr, e);
+        }
+
+        String[] parts = address.split("\\.");
+        if (parts.length != 4) throw new IllegalArgumentException("Invalid range " + cidr);
+        int value = 0;
+        for (String part : parts) {
+            int octet;
+            try {
+                octet = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid range " + cidr, e);
+            }
+            if (octet < 0 || octet > 255) throw new IllegalArgumentException("Invalid range " + cidr);
+            value = value << 8 | octet;
+        }
+        return new Subnet(value, prefixLength);
+    }
+
+    /**
+     * The subnet around address with at most maxHosts hosts, for networks too big to scan whole
+     */
+    @NonNull
+    public Subnet narrow(int address, int maxHosts) {
+        int prefix = prefixLength;
+        while (prefix < 32 && new Subnet(address, prefix).getHostCount() > maxHosts) prefix++;
+        return prefix == prefixLength ? this : new Subnet(address, prefix);
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Addresses that can be hosts: all but the network and broadcast ones, unless the range is
+     * too small to have those
+     */
+    public int getHostCount() {
+        long size = 1L << (32 - prefixLength);
+        return (int) Math.min(Integer.MAX_VALUE, size <= 2 ? size : size - 2);
+    }
+
+    public int getHost(int index) {
+        if (index < 0 || index >= getHostCount()) {
+            throw new IndexOutOfBoundsException("Host " + index + " of " + getHostCount());
+        }
+        return prefixLength >= 31 ? network + index : network + 1 + index;
+    }
+
+    public int getBroadcast() {
+        return network | ~mask(prefixLength);
+    }
+
+    public boolean contains(int address) {
+        return (address & mask(prefixLength)) == network;
+    }
+
+    @Override
+    public String toString() {
+        return toString(network) + "/" + prefixLength;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Subnet && ((Subnet) obj).network == network
+                && ((Subnet) obj).prefixLength == prefixLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * network + prefixLength;
+    }
+
+    @NonNull
+    public static String toString(int address) {
+        return (address >>> 24) + "." + (address >> 16 & 0xFF) + "." + (address >> 8 & 0xFF) + "."
+                + (address & 0xFF);
+    }
+
+    public static int toInt(@NonNull Inet4Address address) {
+        byte[] bytes = address.getAddress();
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+    }
+
+    @NonNull
+    public static InetAddress toInetAddress(int address) {
+        try {
+            return InetAddress.getByAddress(new byte[] {(byte) (address >>> 24), (byte) (address >> 16),
+                    (byte) (address >> 8), (byte) address});
+        } catch (UnknownHostException e) {
+            // only thrown for addresses of the wrong length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int mask(int prefixLength) {
+        return prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+    }
+}
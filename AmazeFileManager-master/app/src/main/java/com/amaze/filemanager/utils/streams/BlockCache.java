@@ -0,0 +1,498 @@
+package com.amaze.filemanager.utils.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.amaze.filemanager.utils.application.AppConfig;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches remote files being streamed in fixed size blocks, so that a player seeking back or
+ * asking again for a range it already read doesn't go to the network.
+ *
+ * The most recently used blocks are kept in memory, older ones are moved to the app's cache dir
+ * up to {@link #DISK_LIMIT} and dropped after that, least recently used first. Every block read
+ * schedules the next {@link #PREFETCH_BLOCKS} to be fetched in the background.
+ *
+ * Files are read through one upstream stream each, which is only reopened when a block before it
+ * (or, if the file can seek, far after it) is needed. Files that can't seek are always reopened
+ * from the start and every block on the way is kept.
+ */
+public class BlockCache {
+
+    private static final String TAG = "BlockCache";
+
+    public static final int BLOCK_SIZE = 256 * 1024;
+    public static final int MEMORY_BLOCKS = 32;
+    public static final long DISK_LIMIT = 64 * 1024 * 1024;
+    public static final int PREFETCH_BLOCKS = 4;
+
+    /**
+     * Files whose upstream stream is kept open
+     */
+    private static final int MAX_FILES = 4;
+
+    /**
+     * Opens a file being cached
+     */
+    public interface Opener {
+        /**
+         * @param position where the stream must start, always 0 for files that can't seek
+         */
+        @NonNull
+        InputStream open(long position) throws IOException;
+    }
+
+    private final int blockSize;
+    private final int memoryBlocks;
+    private final long diskLimit;
+    private final int prefetchBlocks;
+    @Nullable
+    private final File directory;
+
+    private final Map<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, File> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskSize = 0;
+    private int diskFileCount = 0;
+
+    private final Map<String, CachedFile> files = new LinkedHashMap<String, CachedFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedFile> eldest) {
+            if (size() <= MAX_FILES) return false;
+            eldest.getValue().closeUpstream();
+            return true;
+        }
+    };
+
+    private final ThreadPoolExecutor prefetcher;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong bytesFetched = new AtomicLong(0);
+
+    BlockCache(@Nullable File directory, int blockSize, int memoryBlocks, long diskLimit,
+               int prefetchBlocks) {
+        this.directory = directory;
+        this.blockSize = blockSize;
+        this.memoryBlocks = memoryBlocks;
+        this.diskLimit = diskLimit;
+        this.prefetchBlocks = prefetchBlocks;
+
+        // blocks spilled by a previous run can't be found again
+        if (directory != null) {
+            File[] stale = directory.listFiles();
+            if (stale != null) {
+                for (File file : stale) file.delete();
+            }
+            directory.mkdirs();
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        prefetcher = new ThreadPoolExecutor(1, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(prefetchBlocks * 2, 1)), runnable -> {
+            Thread thread = new Thread(runnable, TAG + " prefetch #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    private static class BlockCacheHolder {
+        private static final BlockCache INSTANCE = new BlockCache(
+                AppConfig.getInstance() != null
+                        ? new File(AppConfig.getInstance().getCacheDir(), "streams") : null,
+                BLOCK_SIZE, MEMORY_BLOCKS, DISK_LIMIT, PREFETCH_BLOCKS);
+    }
+
+    public static BlockCache getInstance() {
+        return BlockCacheHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the cached file for the given key, creating it if needed
+     *
+     * @param key identifies the file and its version, e.g. its path and size
+     * @param seekable whether the opener can start at any position cheaply
+     */
+    @NonNull
+    public CachedFile getFile(@NonNull String key, long length, boolean seekable,
+                              @NonNull Opener opener) {
+        synchronized (files) {
+            CachedFile file = files.get(key);
+            if (file == null || file.length != length) {
+                if (file != null) file.closeUpstream();
+                file = new CachedFile(key, length, seekable, opener);
+                files.put(key, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Drops everything cached for the key, to be called when the file may have changed
+     */
+    public void invalidate(@NonNull String key) {
+        synchronized (files) {
+            CachedFile file = files.remove(key);
+            if (file != null) file.closeUpstream();
+        }
+
+        List<File> removed = new ArrayList<>();
+        String prefix = key + '#';
+        synchronized (this) {
+            memory.keySet().removeAll(keysWithPrefix(memory.keySet(), prefix));
+            for (String blockKey : keysWithPrefix(disk.keySet(), prefix)) {
+                File file = disk.remove(blockKey);
+                diskSize -= file.length();
+                removed.add(file);
+            }
+        }
+        for (File file : removed) file.delete();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Blocks found in the cache over blocks asked for, prefetches included
+     */
+    public float getHitRatio() {
+        long hits = this.hits.get(), total = hits + misses.get();
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    /**
+     * Bytes read from the upstream streams, skipped ones included
+     */
+    public long getBytesFetched() {
+        return bytesFetched.get();
+    }
+
+    private static List<String> keysWithPrefix(Set<String> keys, String prefix) {
+        List<String> matching = new ArrayList<>();
+        for (String key : keys) {
+            if (key.startsWith(prefix)) matching.add(key);
+        }
+        return matching;
+    }
+
+    @Nullable
+    private byte[] lookup(String blockKey) {
+        File file;
+        synchronized (this) {
+            byte[] block = memory.get(blockKey);
+            if (block != null) return block;
+            file = disk.remove(blockKey);
+            if (file == null) return null;
+            diskSize -= file.length();
+        }
+
+        // moved back to memory, the next eviction may write it again
+        byte[] block = new byte[(int) file.length()];
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                readFully(in, block);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached block " + blockKey, e);
+            return null;
+        } finally {
+            file.delete();
+        }
+        store(blockKey, block);
+        return block;
+    }
+
+    private void store(String blockKey, byte[] block) {
+        List<Map.Entry<String, byte[]>> evicted = new ArrayList<>();
+        synchronized (this) {
+            memory.put(blockKey, block);
+            Iterator<Map.Entry<String, byte[]>> iterator = memory.entrySet().iterator();
+            while (memory.size() > memoryBlocks && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        if (directory == null) return;
+
+        for (Map.Entry<String, byte[]> entry : evicted) {
+            spill(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void spill(String blockKey, byte[] block) {
+        File file;
+        synchronized (this) {
+            file = new File(directory, String.valueOf(diskFileCount++));
+        }
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(block);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write block " + blockKey, e);
+            file.delete();
+            return;
+        }
+
+        List<File> dropped = new ArrayList<>();
+        synchronized (this) {
+            File previous = disk.put(blockKey, file);
+            if (previous != null) {
+                diskSize -= previous.length();
+                dropped.add(previous);
+            }
+            diskSize += block.length;
+
+            Iterator<File> iterator = disk.values().iterator();
+            while (diskSize > diskLimit && iterator.hasNext()) {
+                File oldest = iterator.next();
+                diskSize -= oldest.length();
+                dropped.add(oldest);
+                iterator.remove();
+            }
+        }
+        for (File oldFile : dropped) oldFile.delete();
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = in.read(buffer, read, buffer.length - read);
+            if (count == -1) throw new EOFException((buffer.length - read) + " bytes missing");
+            read += count;
+        }
+    }
+
+    /**
+     * A file whose blocks are cached, shared by every stream reading it
+     */
+    public final class CachedFile {
+        private final String key;
+        private final long length;
+        private final boolean seekable;
+        private final Opener opener;
+
+        private InputStream upstream;
+        private long upstreamPosition;
+        private volatile long lastRequested = -1;
+        private final Set<Long> prefetching = Collections.synchronizedSet(new HashSet<>());
+
+        private CachedFile(String key, long length, boolean seekable, Opener opener) {
+            this.key = key;
+            this.length = length;
+            this.seekable = seekable;
+            this.opener = opener;
+        }
+
+        public long length() {
+            return length;
+        }
+
+        /**
+         * Opens a stream from the given position, which reads through the cache
+         */
+        @NonNull
+        public InputStream openStream(long position) {
+            return new BlockInputStream(this, position);
+        }
+
+        /**
+         * Makes sure the block containing the position is cached, fetching it if needed; used
+         * to find out whether the file can be read before answering a request
+         */
+        public void load(long position) throws IOException {
+            if (position < length) getBlock(position / blockSize);
+        }
+
+        private byte[] getBlock(long index) throws IOException {
+            String blockKey = key + '#' + index;
+            byte[] block = lookup(blockKey);
+            if (block != null) {
+                hits.incrementAndGet();
+                return block;
+            }
+
+            synchronized (this) {
+                // it may have been fetched while waiting
+                block = lookup(blockKey);
+                if (block != null) {
+                    hits.incrementAndGet();
+                    return block;
+                }
+                misses.incrementAndGet();
+                return fetch(index);
+            }
+        }
+
+        private byte[] fetch(long index) throws IOException {
+            long position = index * blockSize;
+            try {
+                boolean reopen = upstream == null || position < upstreamPosition
+                        || (seekable && position - upstreamPosition > (long) PREFETCH_BLOCKS * blockSize);
+                if (reopen) {
+                    closeUpstream();
+                    upstreamPosition = seekable ? position : 0;
+                    upstream = opener.open(upstreamPosition);
+                }
+
+                // what comes before has to be downloaded anyway, keep it
+                while (upstreamPosition < position) {
+                    long skippedIndex = upstreamPosition / blockSize;
+                    byte[] skipped = readBlock();
+                    String skippedKey = key + '#' + skippedIndex;
+                    synchronized (BlockCache.this) {
+                        if (memory.containsKey(skippedKey) || disk.containsKey(skippedKey)) continue;
+                    }
+                    store(skippedKey, skipped);
+                }
+
+                byte[] block = readBlock();
+                store(key + '#' + index, block);
+                return block;
+            } catch (IOException | RuntimeException e) {
+                closeUpstream();
+                throw e;
+            }
+        }
+
+        private byte[] readBlock() throws IOException {
+            byte[] block = new byte[(int) Math.min(blockSize, length - upstreamPosition)];
+            readFully(upstream, block);
+            upstreamPosition += block.length;
+            bytesFetched.addAndGet(block.length);
+            return block;
+        }
+
+        private void prefetchAfter(long index) {
+            lastRequested = index;
+            long blocks = (length + blockSize - 1) / blockSize;
+            for (long next = index + 1; next <= index + prefetchBlocks && next < blocks; next++) {
+                final long nextIndex = next;
+                String blockKey = key + '#' + nextIndex;
+                synchronized (BlockCache.this) {
+                    if (memory.containsKey(blockKey) || disk.containsKey(blockKey)) continue;
+                }
+                if (!prefetching.add(nextIndex)) continue;
+
+                try {
+                    prefetcher.execute(() -> {
+                        try {
+                            // the player may have seeked somewhere else in the meantime
+                            long requested = lastRequested;
+                            if (nextIndex > requested && nextIndex <= requested + prefetchBlocks) {
+                                getBlock(nextIndex);
+                            }
+                        } catch (IOException e) {
+                            Log.d(TAG, "Prefetch of block " + nextIndex + " failed: " + e.getMessage());
+                        } finally {
+                            prefetching.remove(nextIndex);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // the queue is full, the block is left to be prefetched by a later read
+                    prefetching.remove(nextIndex);
+                }
+            }
+        }
+
+        private synchronized void closeUpstream() {
+            if (upstream == null) return;
+            try {
+                upstream.close();
+            } catch (IOException e) {
+                Log.d(TAG, "Failed to close upstream of " + key + ": " + e.getMessage());
+            }
+            upstream = null;
+        }
+    }
+
+    /**
+     * Reads a {@link CachedFile} block by block
+     */
+    private final class BlockInputStream extends InputStream {
+        private final CachedFile file;
+        private long position;
+        private boolean closed = false;
+
+        BlockInputStream(CachedFile file, long position) {
+            this.file = file;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (offset < 0 || count < 0 || offset + count > buffer.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (count == 0) return 0;
+            if (position >= file.length) return -1;
+
+            long index = position / blockSize;
+            byte[] block = file.getBlock(index);
+            int blockOffset = (int) (position - index * blockSize);
+            int read = Math.min(count, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, buffer, offset, read);
+            position += read;
+            file.prefetchAfter(index);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) {
+            long skipped = Math.max(0, Math.min(count, file.length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
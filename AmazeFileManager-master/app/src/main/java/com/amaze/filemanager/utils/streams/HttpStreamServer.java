@@ -0,0 +1,520 @@
+package com.amaze.filemanager.utils.streams;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.amaze.filemanager.ui.icons.MimeTypes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small HTTP/1.1 server that lets media players read a {@link RandomAccessStream}, shared by the
+ * SMB and cloud streamers.
+ *
+ * Players open a new connection for almost every seek and keep a few of them open at a time, so
+ * connections are kept alive between requests and served by a bounded pool of threads instead of
+ * a thread each. Range requests get a 206 (multipart/byteranges if more than one range is asked
+ * for) or a 416. Bodies are copied straight from the source to the socket with a buffer owned by
+ * the worker thread; the source is only read as fast as the socket takes the data, so a paused
+ * player also pauses the SMB or cloud read instead of filling memory.
+ *
+ * Only GET and HEAD are supported, the streamers have nothing to receive.
+ */
+public abstract class HttpStreamServer {
+
+    private static final String TAG = "HttpStreamServer";
+
+    /**
+     * Connections served at the same time, any more get a 503 so that the player retries
+     */
+    public static final int MAX_CONNECTIONS = 16;
+
+    /**
+     * Time an idle connection is kept open waiting for the next request
+     */
+    public static final int KEEP_ALIVE_TIMEOUT = 15000;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final int MAX_RANGES = 16;
+    private static final String MIME_DEFAULT_BINARY = "application/octet-stream";
+    private static final String BOUNDARY = "AMAZE_STREAM_BOUNDARY";
+
+    public static final String
+            HTTP_OK = "200 OK",
+            HTTP_PARTIAL_CONTENT = "206 Partial Content",
+            HTTP_BAD_REQUEST = "400 Bad Request",
+            HTTP_NOT_FOUND = "404 Not Found",
+            HTTP_RANGE_NOT_SATISFIABLE = "416 Requested Range Not Satisfiable",
+            HTTP_NOT_IMPLEMENTED = "501 Not Implemented",
+            HTTP_SERVICE_UNAVAILABLE = "503 Service Unavailable";
+
+    /**
+     * Servers running in this process by port, the streamers share one and each has to stop the
+     * other before binding it
+     */
+    private static final Map<Integer, HttpStreamServer> servers = new HashMap<>();
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static final SimpleDateFormat gmtFormat;
+
+    static {
+        gmtFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        gmtFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor executor;
+    private final Thread acceptThread;
+    private final Set<Socket> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    /**
+     * Starts listening on the given port of every interface, stopping any other server of this
+     * process using it
+     *
+     * @param port 0 to use any free port, see {@link #getPort()}
+     */
+    protected HttpStreamServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Starts listening on the given port, stopping any other server of this process using it
+     *
+     * @param port 0 to use any free port, see {@link #getPort()}
+     * @param address to listen on, null for every interface
+     */
+    protected HttpStreamServer(int port, @Nullable InetAddress address) throws IOException {
+        HttpStreamServer previous;
+        synchronized (servers) {
+            previous = servers.get(port);
+        }
+        if (previous != null) previous.stop();
+
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address, port));
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(0, MAX_CONNECTIONS, KEEP_ALIVE_TIMEOUT,
+                TimeUnit.MILLISECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, TAG + " #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        synchronized (servers) {
+            servers.put(getPort(), this);
+        }
+
+        acceptThread = new Thread(this::acceptConnections, TAG + " accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Gets the file requested, or null if it isn't being streamed; a new instance is needed for
+     * every request as they are read from different threads
+     *
+     * @param path percent decoded path of the request, without parameters
+     */
+    @Nullable
+    protected abstract RandomAccessStream getSource(@NonNull String path);
+
+    /**
+     * Content type of the file requested
+     */
+    @NonNull
+    protected String getMimeType(@NonNull String path) {
+        String mimeType = MimeTypes.getMimeType(path, false);
+        return mimeType != null ? mimeType : MIME_DEFAULT_BINARY;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    public void stop() {
+        synchronized (servers) {
+            if (servers.get(getPort()) == this) servers.remove(getPort());
+        }
+
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        executor.shutdownNow();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                break;
+            }
+
+            try {
+                executor.execute(() -> serveConnection(socket));
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Too many connections, refusing one");
+                try {
+                    sendEmpty(socket.getOutputStream(), HTTP_SERVICE_UNAVAILABLE, false,
+                            "Retry-After: 1\r\n");
+                } catch (IOException ignored) {
+                }
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        connections.add(socket);
+        try {
+            if (executor.isShutdown()) return;
+            socket.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), MAX_HEADER_SIZE);
+            OutputStream out = socket.getOutputStream();
+
+            boolean keepAlive = true;
+            while (keepAlive) {
+                Request request;
+                try {
+                    request = Request.read(in);
+                } catch (ProtocolException e) {
+                    sendEmpty(out, HTTP_BAD_REQUEST, false, "");
+                    break;
+                }
+                if (request == null) break;
+
+                keepAlive = request.isKeepAlive() && !executor.isShutdown();
+                respond(request, out, keepAlive);
+            }
+        } catch (SocketTimeoutException e) {
+            // idle for too long
+        } catch (IOException e) {
+            // the player closed the connection, usually because it seeked somewhere else
+            Log.d(TAG, "Connection closed: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void respond(Request request, OutputStream out, boolean keepAlive)
+            throws IOException {
+        boolean head = request.method.equals("HEAD");
+        if (!head && !request.method.equals("GET")) {
+            sendEmpty(out, HTTP_NOT_IMPLEMENTED, keepAlive, "Allow: GET, HEAD\r\n");
+            return;
+        }
+
+        RandomAccessStream source = getSource(request.path);
+        if (source == null) {
+            sendEmpty(out, HTTP_NOT_FOUND, keepAlive, "");
+            return;
+        }
+
+        long length = source.length();
+        String mimeType = getMimeType(request.path);
+        // there are no validators to compare If-Range to, so it never matches
+        List<long[]> ranges = request.headers.containsKey("if-range") ? null
+                : parseRanges(request.headers.get("range"), length);
+        byte[] buffer = buffers.get();
+
+        if (ranges == null) {
+            sendHeaders(out, HTTP_OK, keepAlive, "Content-Type: " + mimeType + "\r\n"
+                    + "Content-Length: " + length + "\r\n");
+            if (!head) copy(source, 0, length, out, buffer);
+        } else if (ranges.isEmpty()) {
+            sendEmpty(out, HTTP_RANGE_NOT_SATISFIABLE, keepAlive,
+                    "Content-Range: bytes */" + length + "\r\n");
+        } else if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            sendHeaders(out, HTTP_PARTIAL_CONTENT, keepAlive, "Content-Type: " + mimeType + "\r\n"
+                    + "Content-Length: " + (range[1] - range[0] + 1) + "\r\n"
+                    + "Content-Range: " + contentRange(range, length) + "\r\n");
+            if (!head) copy(source, range[0], range[1] - range[0] + 1, out, buffer);
+        } else {
+            // the length of the whole body is known beforehand, so the connection can be reused
+            byte[][] partHeaders = new byte[ranges.size()][];
+            byte[] end = ("\r\n--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1");
+            long contentLength = end.length;
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                partHeaders[i] = ("\r\n--" + BOUNDARY + "\r\n"
+                        + "Content-Type: " + mimeType + "\r\n"
+                        + "Content-Range: " + contentRange(range, length) + "\r\n\r\n")
+                        .getBytes("ISO-8859-1");
+                contentLength += partHeaders[i].length + range[1] - range[0] + 1;
+            }
+
+            sendHeaders(out, HTTP_PARTIAL_CONTENT, keepAlive,
+                    "Content-Type: multipart/byteranges; boundary=" + BOUNDARY + "\r\n"
+                    + "Content-Length: " + contentLength + "\r\n");
+            if (!head) {
+                for (int i = 0; i < ranges.size(); i++) {
+                    long[] range = ranges.get(i);
+                    out.write(partHeaders[i]);
+                    copy(source, range[0], range[1] - range[0] + 1, out, buffer);
+                }
+                out.write(end);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Parses the value of a Range header
+     *
+     * @return the ranges asked for as inclusive {start, end} pairs, sorted and with the ones
+     * overlapping merged; an empty list if none can be satisfied or null if the header is missing
+     * or invalid, in which case the whole file is sent
+     */
+    @Nullable
+    static List<long[]> parseRanges(@Nullable String header, long length) {
+        if (header == null || !header.startsWith("bytes=")) return null;
+
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : header.substring("bytes=".length()).split(",")) {
+            spec = spec.trim();
+            int minus = spec.indexOf('-');
+            if (minus < 0) return null;
+
+            long start, end;
+            try {
+                if (minus == 0) {
+                    // last bytes of the file
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) continue;
+                    start = Math.max(length - suffix, 0);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, minus));
+                    end = minus == spec.length() - 1 ? Long.MAX_VALUE
+                            : Long.parseLong(spec.substring(minus + 1));
+                    if (start < 0 || end < start) return null;
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (start < length) ranges.add(new long[] {start, end});
+        }
+
+        Collections.sort(ranges, (a, b) -> a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+
+        // asking for many small pieces costs more than sending everything
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * Copies count bytes from the given position of the source; each write blocks until the
+     * socket has room for it, which is what keeps the source from being read ahead of the player
+     */
+    private static void copy(RandomAccessStream source, long position, long count,
+                             OutputStream out, byte[] buffer) throws IOException {
+        source.moveTo(position);
+        source.open();
+        try {
+            while (count > 0) {
+                int read = source.read(buffer, 0, (int) Math.min(buffer.length, count));
+                if (read <= 0) throw new EOFException("Source ended " + count + " bytes early");
+                out.write(buffer, 0, read);
+                count -= read;
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void sendEmpty(OutputStream out, String status, boolean keepAlive,
+                                  String headers) throws IOException {
+        sendHeaders(out, status, keepAlive, headers + "Content-Length: 0\r\n");
+        out.flush();
+    }
+
+    private static void sendHeaders(OutputStream out, String status, boolean keepAlive,
+                                    String headers) throws IOException {
+        String date;
+        synchronized (gmtFormat) {
+            date = gmtFormat.format(new Date());
+        }
+        String response = "HTTP/1.1 " + status + "\r\n"
+                + "Date: " + date + "\r\n"
+                + "Accept-Ranges: bytes\r\n"
+                + headers
+                + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                + "\r\n";
+        out.write(response.getBytes("ISO-8859-1"));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Request line and headers, header names are lower cased
+     */
+    static final class Request {
+        final String method;
+        final String path;
+        final String version;
+        final Map<String, String> headers;
+
+        private Request(String method, String path, String version, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.version = version;
+            this.headers = headers;
+        }
+
+        boolean isKeepAlive() {
+            String connection = headers.get("connection");
+            if (connection != null && connection.equalsIgnoreCase("close")) return false;
+            if (version.equals("HTTP/1.0")) {
+                return connection != null && connection.equalsIgnoreCase("keep-alive");
+            }
+            // a body that can't be skipped would be read as the next request
+            return !headers.containsKey("transfer-encoding");
+        }
+
+        /**
+         * Reads the next request and skips its body if it has one
+         *
+         * @return null if the connection was closed between requests
+         */
+        @Nullable
+        static Request read(InputStream in) throws IOException {
+            int[] headerSize = {0};
+            String requestLine = readLine(in, headerSize);
+            // some clients send an empty line after a request
+            while (requestLine != null && requestLine.isEmpty()) {
+                requestLine = readLine(in, headerSize);
+            }
+            if (requestLine == null) return null;
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3 || !parts[2].startsWith("HTTP/")) {
+                throw new ProtocolException("Malformed request line: " + requestLine);
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine(in, headerSize)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) throw new ProtocolException("Malformed header: " + line);
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+            if (line == null) throw new EOFException("Connection closed inside the headers");
+
+            String contentLength = headers.get("content-length");
+            if (contentLength != null) {
+                try {
+                    skipFully(in, Long.parseLong(contentLength));
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Malformed Content-Length: " + contentLength);
+                }
+            }
+
+            String uri = parts[1];
+            int query = uri.indexOf('?');
+            if (query >= 0) uri = uri.substring(0, query);
+            return new Request(parts[0].toUpperCase(Locale.US), Uri.decode(uri), parts[2],
+                    headers);
+        }
+
+        @Nullable
+        private static String readLine(InputStream in, int[] headerSize) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (++headerSize[0] > MAX_HEADER_SIZE) {
+                    throw new ProtocolException("Request headers too large");
+                }
+                if (b != '\r') line.write(b);
+            }
+            if (b == -1 && line.size() == 0) return null;
+            return line.toString("ISO-8859-1");
+        }
+
+        private static void skipFully(InputStream in, long count) throws IOException {
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped <= 0) {
+                    if (in.read() == -1) throw new EOFException("Connection closed inside the body");
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+    }
+}
@@ -47,6 +47,11 @@ public abstract class RandomAccessStream extends InputStream {
         throw new IOException("Use availableExact()!");
     }
 
+    /**
+     * Starts reading from the current position, to be called after {@link #moveTo(long)}
+     */
+    public abstract void open() throws IOException;
+
     public abstract int read() throws IOException;
 
     public abstract void moveTo(long position);
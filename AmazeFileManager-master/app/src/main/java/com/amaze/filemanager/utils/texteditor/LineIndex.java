@@ -0,0 +1,90 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+/**
+ * Where every {@link #LINES_PER_CHECKPOINT}th line of a file starts, so the number of lines
+ * before any position can be counted by only reading from the closest checkpoint.
+ *
+ * Built once by reading the whole file, usually in the background; the counts are only
+ * available after that.
+ */
+public class LineIndex {
+
+    public static final int LINES_PER_CHECKPOINT = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * checkpoints[i] is where line i * {@link #LINES_PER_CHECKPOINT} starts
+     */
+    private long[] checkpoints = new long[64];
+    private int checkpointCount = 1;
+    private long newlines = 0;
+
+    /**
+     * Reads in until its end, in isn't closed
+     *
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    void build(@NonNull InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (Thread.interrupted()) throw new InterruptedIOException("Line indexing interrupted");
+
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n' && ++newlines % LINES_PER_CHECKPOINT == 0) {
+                    addCheckpoint(position + i + 1);
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Lines in the file, the last one may be empty
+     */
+    public long getLineCount() {
+        return newlines + 1;
+    }
+
+    /**
+     * Counts the newlines in file before position
+     */
+    public long countNewlines(@NonNull PagedFile file, long position) throws IOException {
+        int checkpoint = Arrays.binarySearch(checkpoints, 0, checkpointCount, position);
+        if (checkpoint < 0) checkpoint = -checkpoint - 2;
+
+        long count = (long) checkpoint * LINES_PER_CHECKPOINT;
+        byte[] buffer = new byte[PagedFile.PAGE_SIZE];
+        for (long offset = checkpoints[checkpoint]; offset < position; ) {
+            int read = file.read(offset, buffer, 0, (int) Math.min(buffer.length, position - offset));
+            if (read == -1) break;
+            count += count(buffer, 0, read);
+            offset += read;
+        }
+        return count;
+    }
+
+    static int count(byte[] bytes, int offset, int length) {
+        int count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == '\n') count++;
+        }
+        return count;
+    }
+
+    private void addCheckpoint(long position) {
+        if (checkpointCount == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[checkpointCount++] = position;
+    }
+}
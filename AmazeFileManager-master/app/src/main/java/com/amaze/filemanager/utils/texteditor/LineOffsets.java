@@ -0,0 +1,41 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Where each line of a text starts, to find the line of any offset with a binary search.
+ */
+public class LineOffsets {
+
+    /**
+     * starts[i] is the offset line i starts at
+     */
+    private int[] starts = new int[64];
+    private int count = 1;
+
+    public LineOffsets(@NonNull CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != '\n') continue;
+
+            if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = i + 1;
+        }
+    }
+
+    /**
+     * Lines in the text, the last one may be empty
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * The line offset is in, starting from 0
+     */
+    public int getLine(int offset) {
+        int line = Arrays.binarySearch(starts, 0, count, offset);
+        return line >= 0 ? line : -line - 2;
+    }
+}
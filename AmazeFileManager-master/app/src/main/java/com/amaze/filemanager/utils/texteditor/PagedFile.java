@@ -0,0 +1,108 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a local file through pages of {@link #PAGE_SIZE} bytes, keeping the last
+ * {@link #MAX_PAGES} used in memory, so that moving around a big file only reads the parts shown.
+ */
+public class PagedFile implements Closeable {
+
+    public static final int PAGE_SIZE = 64 * 1024;
+    public static final int MAX_PAGES = 32;
+
+    private final File file;
+    private final RandomAccessFile input;
+    private long length;
+
+    private final Map<Long, byte[]> pages = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    public PagedFile(@NonNull File file) throws IOException {
+        this.file = file;
+        input = new RandomAccessFile(file, "r");
+        length = input.length();
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long length() {
+        return length;
+    }
+
+    /**
+     * Reads from position up to the end of its page
+     *
+     * @return the bytes read, -1 at the end of the file
+     */
+    public synchronized int read(long position, @NonNull byte[] buffer, int offset, int count)
+            throws IOException {
+        if (position >= length) return -1;
+
+        long index = position / PAGE_SIZE;
+        byte[] page = getPage(index);
+        int pageOffset = (int) (position - index * PAGE_SIZE);
+        int read = Math.min(count, page.length - pageOffset);
+        System.arraycopy(page, pageOffset, buffer, offset, read);
+        return read;
+    }
+
+    /**
+     * Copies count bytes from position to out without going through the pages, for reads that
+     * would only push out the pages being used
+     */
+    public void copyTo(long position, long count, @NonNull OutputStream out, @NonNull byte[] buffer)
+            throws IOException {
+        while (count > 0) {
+            int read;
+            synchronized (this) {
+                input.seek(position);
+                read = input.read(buffer, 0, (int) Math.min(buffer.length, count));
+            }
+            if (read == -1) throw new IOException(file.getName() + " ended " + count + " bytes early");
+            out.write(buffer, 0, read);
+            position += read;
+            count -= read;
+        }
+    }
+
+    /**
+     * Forgets what was read, to be called after the file is written
+     */
+    public synchronized void reload() throws IOException {
+        pages.clear();
+        length = input.length();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pages.clear();
+        input.close();
+    }
+
+    private byte[] getPage(long index) throws IOException {
+        byte[] page = pages.get(index);
+        if (page == null) {
+            page = new byte[(int) Math.min(PAGE_SIZE, length - index * PAGE_SIZE)];
+            input.seek(index * PAGE_SIZE);
+            input.readFully(page);
+            pages.put(index, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,530 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * A text file being edited, of any size: the file is read through a {@link PagedFile}, edits are
+ * kept in a {@link PieceTable}, and the editor only shows a window of about {@link #WINDOW_SIZE}
+ * bytes of whole lines at a time, see {@link #getWindow(long)}.
+ *
+ * Lines are counted in the background, see {@link #startIndexing(Runnable)}. Saving over the file
+ * only writes from the first change on, or only the changed spans if the length is the same, see
+ * {@link Snapshot#writeInPlace(File)}.
+ *
+ * Text is UTF-8. The editor works with "\n", the line separator of the file is put back on the
+ * parts that were edited. Like it always did, the editor adds a line separator at the end of
+ * files without one.
+ */
+public class PagedTextDocument implements Closeable {
+
+    public static final int WINDOW_SIZE = 128 * 1024;
+
+    /**
+     * Longest a line can be before a window cuts it
+     */
+    private static final int MAX_LINE_LENGTH = WINDOW_SIZE / 2;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PagedFile file;
+    private final PieceTable text;
+    private final boolean deleteOnClose;
+    private final String lineSeparator;
+
+    private int editCount = 0, savedEditCount = 0;
+    private boolean saving = false;
+
+    @Nullable
+    private LineIndex lineIndex;
+    @Nullable
+    private Thread indexer;
+    @Nullable
+    private Runnable onIndexed;
+
+    private PagedTextDocument(PagedFile file, boolean deleteOnClose) throws IOException {
+        this.file = file;
+        this.text = new PieceTable(file);
+        this.deleteOnClose = deleteOnClose;
+
+        byte[] start = readBytes(0, Math.min(text.length(), MAX_LINE_LENGTH));
+        int newline = indexOf(start, (byte) '\n');
+        lineSeparator = newline > 0 && start[newline - 1] == '\r' ? "\r\n" : "\n";
+    }
+
+    /**
+     * @param deleteOnClose whether file is a copy only made for the editor
+     */
+    @NonNull
+    public static PagedTextDocument open(@NonNull File file, boolean deleteOnClose) throws IOException {
+        PagedTextDocument document = new PagedTextDocument(new PagedFile(file), deleteOnClose);
+
+        long length = document.length();
+        if (length > 0 && document.readBytes(length - 1, length)[0] != '\n') {
+            document.text.replace(length, 0, document.lineSeparator.getBytes(CHARSET));
+            document.editCount = document.savedEditCount = 1;
+        }
+        return document;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file.getFile();
+    }
+
+    public synchronized long length() {
+        return text.length();
+    }
+
+    /**
+     * Whether the document was edited since it was opened or saved
+     */
+    public synchronized boolean isModified() {
+        return editCount != savedEditCount;
+    }
+
+    /**
+     * Whether a snapshot is being written over the file, the document can't be edited meanwhile
+     */
+    public synchronized boolean isSaving() {
+        return saving;
+    }
+
+    /**
+     * The part of the document to show around position: whole lines (unless they are longer
+     * than {@link #MAX_LINE_LENGTH}) adding up to about {@link #WINDOW_SIZE} bytes
+     *
+     * @return the start and the end of the window
+     */
+    @NonNull
+    public synchronized long[] getWindow(long position) throws IOException {
+        long length = text.length();
+        if (length <= WINDOW_SIZE) return new long[] {0, length};
+
+        position = Math.max(0, Math.min(position, length));
+        long start = findLineStart(Math.max(0, position - WINDOW_SIZE / 2));
+        long end = findLineEnd(Math.min(length, start + WINDOW_SIZE));
+        if (end == length) {
+            // as much as fits before the end
+            start = Math.min(start, findLineStart(Math.max(0, length - WINDOW_SIZE)));
+        }
+        return new long[] {start, end};
+    }
+
+    /**
+     * The window from start, which must be at the start of a line or the end of the last
+     * window, to go through the whole document a window at a time
+     */
+    @NonNull
+    public synchronized long[] getWindowFrom(long start) throws IOException {
+        return new long[] {start, findLineEnd(Math.min(text.length(), start + WINDOW_SIZE))};
+    }
+
+    /**
+     * The text between two positions, which must be at the start of characters
+     */
+    @NonNull
+    public synchronized String getText(long start, long end) throws IOException {
+        String string = new String(readBytes(start, end), CHARSET);
+        return lineSeparator.equals("\n") ? string : string.replace(lineSeparator, "\n");
+    }
+
+    /**
+     * Replaces the text between two positions
+     *
+     * @return the end of the new text
+     */
+    public synchronized long replace(long start, long end, @NonNull String replacement) {
+        if (saving) throw new IllegalStateException("Document edited while saved over its file");
+
+        byte[] bytes = encode(replacement);
+        text.replace(start, end - start, bytes);
+        editCount++;
+        return start + bytes.length;
+    }
+
+    /**
+     * Replaces the text between two positions, which was oldText, with newText; only the part
+     * that differs is replaced, so that unchanged text stays in the file
+     *
+     * @return the end of the new text
+     */
+    public synchronized long replaceChanged(long start, long end, @NonNull String oldText,
+                                            @NonNull String newText) {
+        int max = Math.min(oldText.length(), newText.length());
+        int prefix = 0;
+        while (prefix < max && oldText.charAt(prefix) == newText.charAt(prefix)) prefix++;
+        if (prefix > 0 && Character.isHighSurrogate(oldText.charAt(prefix - 1))) prefix--;
+        int suffix = 0;
+        while (suffix < max - prefix && oldText.charAt(oldText.length() - 1 - suffix)
+                == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(oldText.charAt(oldText.length() - suffix))) suffix--;
+
+        if (prefix + suffix == oldText.length() && prefix + suffix == newText.length()) return end;
+
+        String unchangedEnd = oldText.substring(oldText.length() - suffix);
+        long changeEnd = replace(start + getByteCount(oldText.substring(0, prefix)),
+                end - getByteCount(unchangedEnd), newText.substring(prefix, newText.length() - suffix));
+        return changeEnd + getByteCount(unchangedEnd);
+    }
+
+    /**
+     * The bytes text takes in the document
+     */
+    public int getByteCount(@NonNull CharSequence text) {
+        return encode(text.toString()).length;
+    }
+
+    /**
+     * Starts counting lines in the background unless they are already counted, the counts are -1
+     * until it's done
+     *
+     * @param onIndexed called once the lines are counted, right away if they already are, and
+     *                  every time they are counted again after saving; replaces the last one given
+     */
+    public void startIndexing(@Nullable Runnable onIndexed) {
+        boolean indexed;
+        synchronized (this) {
+            this.onIndexed = onIndexed;
+            indexed = lineIndex != null;
+            if (!indexed && indexer == null) index();
+        }
+        if (indexed && onIndexed != null) onIndexed.run();
+    }
+
+    private synchronized void index() {
+        if (indexer != null) indexer.interrupt();
+        lineIndex = null;
+
+        final File indexedFile = file.getFile();
+        indexer = new Thread(() -> {
+            LineIndex index = new LineIndex();
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(indexedFile), BUFFER_SIZE);
+                index.build(in);
+            } catch (IOException e) {
+                // interrupted or the file can't be read, there will be no counts
+                return;
+            } finally {
+                closeQuietly(in);
+            }
+
+            Runnable listener;
+            synchronized (PagedTextDocument.this) {
+                if (indexer != Thread.currentThread()) return;
+                lineIndex = index;
+                indexer = null;
+                listener = this.onIndexed;
+            }
+            if (listener != null) listener.run();
+        }, "PagedTextDocument indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    /**
+     * Lines in the document, -1 until they are counted
+     */
+    public synchronized long getLineCount() throws IOException {
+        long newlines = countNewlines(text.length());
+        return newlines != -1 ? newlines + 1 : -1;
+    }
+
+    /**
+     * The line position is in, starting from 0; -1 until the lines are counted
+     */
+    public synchronized long getLineNumber(long position) throws IOException {
+        return countNewlines(position);
+    }
+
+    /**
+     * The document as it is now, to be written in the background
+     */
+    @NonNull
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(text.getPieces(), text.getAdded(), text.length(), editCount);
+    }
+
+    /**
+     * The snapshot was written somewhere other than the file the document reads from, the
+     * document is unmodified unless it was edited since
+     */
+    public synchronized void onSaved(@NonNull Snapshot snapshot) {
+        savedEditCount = snapshot.editCount;
+    }
+
+    /**
+     * Reads the file again after a snapshot was written over it without
+     * {@link Snapshot#writeInPlace(File)}; edits made since the snapshot are lost
+     */
+    public void reload(@NonNull Snapshot snapshot) throws IOException {
+        synchronized (this) {
+            file.reload();
+            text.reset();
+            editCount = savedEditCount = snapshot.editCount;
+            index();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (indexer != null) indexer.interrupt();
+        indexer = null;
+        file.close();
+        if (deleteOnClose) file.getFile().delete();
+    }
+
+    /**
+     * What the document contained at some point
+     */
+    public final class Snapshot {
+        private final List<PieceTable.Piece> pieces;
+        private final byte[] added;
+        private final long length;
+        private final int editCount;
+
+        private Snapshot(List<PieceTable.Piece> pieces, byte[] added, long length, int editCount) {
+            this.pieces = pieces;
+            this.added = added;
+            this.length = length;
+            this.editCount = editCount;
+        }
+
+        /**
+         * Writes the whole document to out, which isn't closed
+         */
+        public void writeTo(@NonNull OutputStream out) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (PieceTable.Piece piece : pieces) {
+                write(piece, out, buffer);
+            }
+        }
+
+        /**
+         * Writes the document over the file it reads from, which is then read again. Only the
+         * spans that were replaced are written if the length didn't change, otherwise everything
+         * from the first change on is; the document can't be edited meanwhile. Must be the last
+         * snapshot.
+         *
+         * @param tempDirectory where the changed part of the document is written first, as the
+         *                      document reads the file being written over
+         * @return the bytes written to the file
+         */
+        public long writeInPlace(@Nullable File tempDirectory) throws IOException {
+            synchronized (PagedTextDocument.this) {
+                if (PagedTextDocument.this.editCount != editCount) {
+                    throw new IllegalStateException("Not the last snapshot");
+                }
+                saving = true;
+            }
+
+            // on failure the pieces and the edit count stay, the edits are still there to be saved
+            boolean saved = false, written = false;
+            try {
+                int firstChange = 0;
+                long unchanged = 0;
+                while (firstChange < pieces.size() && isInPlace(pieces.get(firstChange), unchanged)) {
+                    unchanged += pieces.get(firstChange++).length;
+                }
+                long originalLength = file.length();
+                if (firstChange == pieces.size() && length == originalLength) {
+                    saved = true;
+                    return 0;
+                }
+
+                long bytesWritten;
+                if (length == originalLength && onlyAddedPiecesMoved(firstChange, unchanged)) {
+                    bytesWritten = writeAddedPieces(firstChange, unchanged);
+                } else {
+                    bytesWritten = rewriteFrom(firstChange, unchanged, tempDirectory);
+                }
+                saved = written = true;
+                return bytesWritten;
+            } finally {
+                synchronized (PagedTextDocument.this) {
+                    saving = false;
+                    if (written) {
+                        file.reload();
+                        text.reset();
+                        index();
+                    }
+                    if (saved) savedEditCount = editCount;
+                }
+            }
+        }
+
+        private boolean onlyAddedPiecesMoved(int firstChange, long position) {
+            for (int i = firstChange; i < pieces.size(); i++) {
+                PieceTable.Piece piece = pieces.get(i);
+                if (!piece.added && !isInPlace(piece, position)) return false;
+                position += piece.length;
+            }
+            return true;
+        }
+
+        private long writeAddedPieces(int firstChange, long position) throws IOException {
+            long written = 0;
+            RandomAccessFile out = new RandomAccessFile(file.getFile(), "rw");
+            try {
+                for (int i = firstChange; i < pieces.size(); i++) {
+                    PieceTable.Piece piece = pieces.get(i);
+                    if (piece.added) {
+                        out.seek(position);
+                        out.write(added, (int) piece.start, (int) piece.length);
+                        written += piece.length;
+                    }
+                    position += piece.length;
+                }
+            } finally {
+                out.close();
+            }
+            return written;
+        }
+
+        private long rewriteFrom(int firstChange, long position, @Nullable File tempDirectory)
+                throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            File temp = File.createTempFile("editor", null, tempDirectory);
+            try {
+                OutputStream tempOut = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE);
+                try {
+                    for (int i = firstChange; i < pieces.size(); i++) {
+                        write(pieces.get(i), tempOut, buffer);
+                    }
+                } finally {
+                    tempOut.close();
+                }
+
+                RandomAccessFile out = new RandomAccessFile(file.getFile(), "rw");
+                InputStream tempIn = new FileInputStream(temp);
+                try {
+                    out.seek(position);
+                    int read;
+                    while ((read = tempIn.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    out.setLength(length);
+                } finally {
+                    tempIn.close();
+                    out.close();
+                }
+                return length - position;
+            } finally {
+                temp.delete();
+            }
+        }
+
+        private void write(PieceTable.Piece piece, OutputStream out, byte[] buffer) throws IOException {
+            if (piece.added) out.write(added, (int) piece.start, (int) piece.length);
+            else file.copyTo(piece.start, piece.length, out, buffer);
+        }
+    }
+
+    /**
+     * Whether piece is the same part of the file, at the same position
+     */
+    private static boolean isInPlace(PieceTable.Piece piece, long position) {
+        return !piece.added && piece.start == position;
+    }
+
+    private long countNewlines(long position) throws IOException {
+        if (lineIndex == null) return -1;
+
+        long count = 0, pieceStart = 0;
+        byte[] added = text.getAdded();
+        for (PieceTable.Piece piece : text.getPieces()) {
+            if (pieceStart >= position) break;
+            long length = Math.min(piece.length, position - pieceStart);
+            if (piece.added) {
+                count += LineIndex.count(added, (int) piece.start, (int) length);
+            } else {
+                count += lineIndex.countNewlines(file, piece.start + length)
+                        - lineIndex.countNewlines(file, piece.start);
+            }
+            pieceStart += piece.length;
+        }
+        return count;
+    }
+
+    /**
+     * Start of the line position is in, or the start of the character at position if the line
+     * is too long
+     */
+    private long findLineStart(long position) throws IOException {
+        if (position <= 0) return 0;
+
+        long from = Math.max(0, position - MAX_LINE_LENGTH);
+        byte[] bytes = readBytes(from, position);
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') return from + i + 1;
+        }
+        return from == 0 ? 0 : toCharacterStart(position);
+    }
+
+    /**
+     * Start of the line after the one position is in, or the start of the character at position
+     * if the line is too long
+     */
+    private long findLineEnd(long position) throws IOException {
+        long length = text.length();
+        if (position >= length) return length;
+
+        long to = Math.min(length, position + MAX_LINE_LENGTH);
+        int newline = indexOf(readBytes(position, to), (byte) '\n');
+        if (newline != -1) return position + newline + 1;
+        return to == length ? length : toCharacterStart(position);
+    }
+
+    /**
+     * Moves position back to the first byte of the UTF-8 sequence it's in
+     */
+    private long toCharacterStart(long position) throws IOException {
+        byte[] bytes = readBytes(Math.max(0, position - 3), position + 1);
+        int i = bytes.length - 1;
+        while (i > 0 && (bytes[i] & 0xC0) == 0x80) i--;
+        return position - (bytes.length - 1 - i);
+    }
+
+    private byte[] readBytes(long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        text.readFully(start, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private byte[] encode(String string) {
+        if (!lineSeparator.equals("\n")) string = string.replace("\n", lineSeparator);
+        return string.getBytes(CHARSET);
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
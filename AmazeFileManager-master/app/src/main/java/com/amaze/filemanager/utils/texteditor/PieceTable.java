@@ -0,0 +1,172 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The bytes of a document as a list of pieces, each one a range of the original file or of a
+ * buffer with everything inserted, so that an edit never copies the file.
+ *
+ * The buffer is only ever appended to and pieces never change, so a copy of the list of pieces
+ * keeps describing the same document after more edits, see {@link #getPieces()}.
+ */
+class PieceTable {
+
+    static final class Piece {
+        /**
+         * Whether the piece is in the buffer of inserted bytes rather than in the file
+         */
+        final boolean added;
+        final long start, length;
+
+        Piece(boolean added, long start, long length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+
+        Piece subPiece(long from, long to) {
+            return new Piece(added, start + from, to - from);
+        }
+    }
+
+    private final PagedFile original;
+    private byte[] added = new byte[1024];
+    private int addedLength = 0;
+    private List<Piece> pieces = new ArrayList<>();
+    private long length;
+
+    PieceTable(@NonNull PagedFile original) {
+        this.original = original;
+        reset();
+    }
+
+    /**
+     * Makes the document the whole original file again
+     */
+    void reset() {
+        pieces = new ArrayList<>();
+        length = original.length();
+        if (length > 0) pieces.add(new Piece(false, 0, length));
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Replaces count bytes at position with bytes
+     */
+    void replace(long position, long count, @NonNull byte[] bytes) {
+        if (position < 0 || count < 0 || position + count > length) {
+            throw new IndexOutOfBoundsException("Replacing " + position + "+" + count + " of " + length);
+        }
+
+        Piece inserted = bytes.length > 0 ? append(bytes) : null;
+        List<Piece> before = new ArrayList<>(), after = new ArrayList<>();
+        long pieceStart = 0;
+        for (Piece piece : pieces) {
+            long pieceEnd = pieceStart + piece.length;
+            if (pieceStart < position) {
+                before.add(piece.subPiece(0, Math.min(piece.length, position - pieceStart)));
+            }
+            if (pieceEnd > position + count) {
+                after.add(piece.subPiece(Math.max(0, position + count - pieceStart), piece.length));
+            }
+            pieceStart = pieceEnd;
+        }
+
+        List<Piece> result = new ArrayList<>(before.size() + after.size() + 1);
+        for (Piece piece : before) add(result, piece);
+        if (inserted != null) add(result, inserted);
+        for (Piece piece : after) add(result, piece);
+        pieces = result;
+        length += bytes.length - count;
+    }
+
+    /**
+     * Reads from position up to the end of the piece it's in
+     *
+     * @return the bytes read, -1 at the end of the document
+     */
+    int read(long position, @NonNull byte[] buffer, int offset, int count) throws IOException {
+        return read(pieces, position, buffer, offset, count);
+    }
+
+    int read(@NonNull List<Piece> pieces, long position, @NonNull byte[] buffer, int offset, int count)
+            throws IOException {
+        long pieceStart = 0;
+        for (Piece piece : pieces) {
+            if (position < pieceStart + piece.length) {
+                long pieceOffset = position - pieceStart;
+                int read = (int) Math.min(count, piece.length - pieceOffset);
+                if (!piece.added) return original.read(piece.start + pieceOffset, buffer, offset, read);
+
+                System.arraycopy(added, (int) (piece.start + pieceOffset), buffer, offset, read);
+                return read;
+            }
+            pieceStart += piece.length;
+        }
+        return -1;
+    }
+
+    /**
+     * Fills buffer from position, which must be at least count bytes before the end
+     */
+    void readFully(long position, @NonNull byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            int read = read(position, buffer, offset, count);
+            if (read == -1) throw new IndexOutOfBoundsException("Reading past the end of the document");
+            position += read;
+            offset += read;
+            count -= read;
+        }
+    }
+
+    /**
+     * The pieces making the document now, unaffected by later edits
+     */
+    @NonNull
+    List<Piece> getPieces() {
+        return Collections.unmodifiableList(pieces);
+    }
+
+    /**
+     * The buffer the added pieces point into, only valid for the pieces got before it
+     */
+    @NonNull
+    byte[] getAdded() {
+        return added;
+    }
+
+    private Piece append(byte[] bytes) {
+        if (addedLength + bytes.length > added.length) {
+            // a new array, so that the pieces got before keep theirs
+            added = Arrays.copyOf(added, Math.max(added.length * 2, addedLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, added, addedLength, bytes.length);
+        Piece piece = new Piece(true, addedLength, bytes.length);
+        addedLength += bytes.length;
+        return piece;
+    }
+
+    /**
+     * Adds piece to pieces, merging it with the last one if they are contiguous
+     */
+    private static void add(List<Piece> pieces, Piece piece) {
+        if (piece.length == 0) return;
+        if (!pieces.isEmpty()) {
+            Piece last = pieces.get(pieces.size() - 1);
+            if (last.added == piece.added && last.start + last.length == piece.start) {
+                pieces.set(pieces.size() - 1, new Piece(last.added, last.start, last.length + piece.length));
+                return;
+            }
+        }
+        pieces.add(piece);
+    }
+}
@@ -0,0 +1,191 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds a query in text, either literally ignoring case or as a regular expression.
+ *
+ * Literal queries use Boyer-Moore-Horspool on case folded characters, so most of the text is
+ * skipped over instead of compared at every offset. A {@link PagedTextDocument} is searched a
+ * window at a time, so matches can't span two windows.
+ */
+public abstract class TextSearch {
+
+    public interface OnMatchFoundListener {
+        /**
+         * @return whether to keep searching
+         */
+        boolean onMatchFound(int start, int end);
+    }
+
+    public interface OnMatchesFoundListener {
+        /**
+         * Called after every window of the document is searched
+         *
+         * @param matches in the window, may be empty
+         * @return whether to keep searching
+         */
+        boolean onMatchesFound(@NonNull List<Match> matches);
+    }
+
+    /**
+     * Where a match is in a document
+     */
+    public static final class Match {
+        public final long start, end;
+        /**
+         * The line the match starts in, starting from 0
+         */
+        public final long line;
+
+        Match(long start, long end, long line) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Finds query ignoring case, like {@link String#equalsIgnoreCase(String)} compares
+     */
+    @NonNull
+    public static TextSearch literal(@NonNull String query) {
+        return new LiteralSearch(query);
+    }
+
+    /**
+     * Finds what matches regex, ignoring case
+     *
+     * @throws PatternSyntaxException if regex isn't valid
+     */
+    @NonNull
+    public static TextSearch regex(@NonNull String regex) {
+        return new RegexSearch(Pattern.compile(regex,
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.MULTILINE));
+    }
+
+    /**
+     * Searches the whole document, in order
+     */
+    public void find(@NonNull PagedTextDocument document, @NonNull OnMatchesFoundListener listener)
+            throws IOException {
+        long lines = 0;
+        for (long start = 0; start < document.length(); ) {
+            long[] window = document.getWindowFrom(start);
+            final String text = document.getText(window[0], window[1]);
+            final LineOffsets lineOffsets = new LineOffsets(text);
+            final List<Match> matches = new ArrayList<>();
+            final long windowStart = window[0], linesBefore = lines;
+
+            find(text, new OnMatchFoundListener() {
+                int offset = 0;
+                long position = windowStart;
+
+                @Override
+                public boolean onMatchFound(int start, int end) {
+                    position += document.getByteCount(text.subSequence(offset, start));
+                    long matchEnd = position + document.getByteCount(text.subSequence(start, end));
+                    matches.add(new Match(position, matchEnd, linesBefore + lineOffsets.getLine(start)));
+                    offset = end;
+                    position = matchEnd;
+                    return true;
+                }
+            });
+            if (!listener.onMatchesFound(matches)) return;
+
+            lines += lineOffsets.getLineCount() - 1;
+            start = window[1];
+        }
+    }
+
+    /**
+     * Calls listener for every match in text that doesn't overlap the one before, in order
+     */
+    public abstract void find(@NonNull CharSequence text, @NonNull OnMatchFoundListener listener);
+
+    private static class LiteralSearch extends TextSearch {
+
+        private static final int TABLE_SIZE = 256;
+
+        private final char[] query;
+        /**
+         * How far the query can move when the text under its last character is a character that
+         * falls in the entry; characters sharing an entry get the smallest shift of them
+         */
+        private final int[] shifts = new int[TABLE_SIZE];
+
+        LiteralSearch(String query) {
+            this.query = new char[query.length()];
+            for (int i = 0; i < query.length(); i++) {
+                this.query[i] = fold(query.charAt(i));
+            }
+
+            int last = this.query.length - 1;
+            for (int i = 0; i < TABLE_SIZE; i++) shifts[i] = this.query.length;
+            for (int i = 0; i < last; i++) {
+                shifts[this.query[i] % TABLE_SIZE] = last - i;
+            }
+        }
+
+        @Override
+        public void find(@NonNull CharSequence text, @NonNull OnMatchFoundListener listener) {
+            int length = query.length;
+            if (length == 0) return;
+
+            int last = length - 1;
+            int position = 0;
+            while (position + length <= text.length()) {
+                char end = fold(text.charAt(position + last));
+                if (end == query[last] && matchesAt(text, position, last)) {
+                    if (!listener.onMatchFound(position, position + length)) return;
+                    position += length;
+                } else {
+                    position += shifts[end % TABLE_SIZE];
+                }
+            }
+        }
+
+        /**
+         * Whether the query up to count matches text at position
+         */
+        private boolean matchesAt(CharSequence text, int position, int count) {
+            for (int i = 0; i < count; i++) {
+                if (fold(text.charAt(position + i)) != query[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Same as the comparison in {@link String#regionMatches(boolean, int, String, int, int)}
+         */
+        private static char fold(char c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+    }
+
+    private static class RegexSearch extends TextSearch {
+
+        private final Pattern pattern;
+
+        RegexSearch(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void find(@NonNull CharSequence text, @NonNull OnMatchFoundListener listener) {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                // empty matches can't be highlighted
+                if (matcher.end() == matcher.start()) continue;
+                if (!listener.onMatchFound(matcher.start(), matcher.end())) return;
+            }
+        }
+    }
+}
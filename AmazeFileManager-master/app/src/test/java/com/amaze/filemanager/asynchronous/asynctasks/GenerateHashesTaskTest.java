@@ -0,0 +1,43 @@
+package com.amaze.filemanager.asynchronous.asynctasks;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the single pass digests of {@link GenerateHashesTask} against known values.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class GenerateHashesTaskTest {
+
+    private static final byte[] INPUT = "The quick brown fox jumps over the lazy dog"
+            .getBytes(Charset.forName("US-ASCII"));
+
+    @Test
+    public void testDigestComputesAllAlgorithmsInOnePass() throws Exception {
+        String[] hashes = GenerateHashesTask.digest(new ByteArrayInputStream(INPUT),
+                new String[] {"MD5", "SHA-1", "SHA-256"}, 7, INPUT.length, null);
+
+        assertArrayEquals(new String[] {
+                "9e107d9d372bb6826bd81d3542a419d6",
+                "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12",
+                "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592"
+        }, hashes);
+    }
+
+    @Test
+    public void testToHexKeepsLeadingZeroes() {
+        assertEquals("000fa0ff", GenerateHashesTask.toHex(new byte[] {0x00, 0x0f, (byte) 0xa0, (byte) 0xff}));
+    }
+}
@@ -0,0 +1,100 @@
+package com.amaze.filemanager.asynchronous.loaders;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class AppInfoCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(temporaryFolder.newFolder(), "app-info-cache");
+    }
+
+    @Test
+    public void testUpdatedPackageIsMissing() {
+        AppInfoCache cache = new AppInfoCache(file);
+        cache.setLocale("en_US");
+        cache.put("com.example", new AppInfoCache.Entry("Example", 100, 10, 1000));
+
+        assertEquals("Example", cache.get("com.example", 1000).label);
+        assertNull(cache.get("com.example", 2000));
+        assertNull(cache.get("com.other", 1000));
+    }
+
+    @Test
+    public void testSavedEntriesAreRead() {
+        AppInfoCache cache = new AppInfoCache(file);
+        cache.setLocale("en_US");
+        cache.put("com.example", new AppInfoCache.Entry("Example", 100, 10, 1000));
+        cache.save();
+
+        AppInfoCache read = new AppInfoCache(file);
+        read.setLocale("en_US");
+        AppInfoCache.Entry entry = read.get("com.example", 1000);
+        assertNotNull(entry);
+        assertEquals("Example", entry.label);
+        assertEquals(100, entry.size);
+        assertEquals(10, entry.lastModified);
+    }
+
+    @Test
+    public void testLocaleChangeForgetsLabels() {
+        AppInfoCache cache = new AppInfoCache(file);
+        cache.setLocale("en_US");
+        cache.put("com.example", new AppInfoCache.Entry("Example", 100, 10, 1000));
+        cache.save();
+
+        AppInfoCache read = new AppInfoCache(file);
+        read.setLocale("fr_FR");
+        assertNull(read.get("com.example", 1000));
+    }
+
+    @Test
+    public void testRemovedPackagesAreForgotten() {
+        AppInfoCache cache = new AppInfoCache(file);
+        cache.setLocale("en_US");
+        cache.put("com.example", new AppInfoCache.Entry("Example", 100, 10, 1000));
+        cache.put("com.other", new AppInfoCache.Entry("Other", 100, 10, 1000));
+        cache.put("com.third", new AppInfoCache.Entry("Third", 100, 10, 1000));
+
+        cache.retain(Collections.singleton("com.example"));
+        cache.remove("com.example");
+        cache.save();
+
+        AppInfoCache read = new AppInfoCache(file);
+        read.setLocale("en_US");
+        assertNull(read.get("com.example", 1000));
+        assertNull(read.get("com.other", 1000));
+        assertNull(read.get("com.third", 1000));
+    }
+
+    @Test
+    public void testUnreadableFileIsIgnored() throws IOException {
+        assertTrue(file.createNewFile());
+
+        AppInfoCache cache = new AppInfoCache(file);
+        cache.setLocale("en_US");
+        assertNull(cache.get("com.example", 1000));
+    }
+}
@@ -25,6 +25,9 @@ import java.util.concurrent.CountDownLatch;
 
 import eu.chainfire.libsuperuser.Shell;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class)
@@ -66,6 +69,30 @@ public class RootHelperTest {
         runVerify(true);
     }
 
+    @Test
+    public void testParseListing() {
+        List<HybridFileParcelable> files = RootHelper.parseListing("/system", Arrays.asList(
+                "drwxr-xr-x/4096/1500000000/.",
+                "drwxr-xr-x/4096/1500000000/bin",
+                "-rw-r--r--/1234/1500000001/build prop",
+                "lrwxrwxrwx/3/1500000002/etc",
+                ">detc//vendor/etc"));
+
+        assertEquals(3, files.size());
+
+        assertEquals("/system/bin", files.get(0).getPath());
+        assertTrue(files.get(0).isDirectory());
+
+        assertEquals("build prop", files.get(1).getName());
+        assertEquals(1234, files.get(1).getSize());
+        assertEquals(1500000001000L, files.get(1).getDate());
+        assertFalse(files.get(1).isDirectory());
+
+        assertEquals("lrwxrwxrwx", files.get(2).getPermission());
+        assertEquals("/vendor/etc", files.get(2).getLink());
+        assertTrue(files.get(2).isDirectory());
+    }
+
     private void runVerify(boolean root) throws InterruptedException {
         List<String> result = new ArrayList<>();
         CountDownLatch waiter = new CountDownLatch(expected.size());
@@ -45,6 +45,11 @@ public class B0rkenZipTest {
 
         }
 
+        @Override
+        public void onProgress(long bytes) {
+
+        }
+
         @Override
         public void onFinish() {
 
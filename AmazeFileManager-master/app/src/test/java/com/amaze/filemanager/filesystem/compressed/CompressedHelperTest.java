@@ -43,6 +43,9 @@ public class CompressedHelperTest {
             @Override
             public void onUpdate(String entryPath) { }
 
+            @Override
+            public void onProgress(long bytes) { }
+
             @Override
             public void onFinish() { }
 
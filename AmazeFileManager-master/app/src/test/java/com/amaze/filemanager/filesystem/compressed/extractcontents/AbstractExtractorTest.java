@@ -9,6 +9,7 @@ import com.amaze.filemanager.filesystem.compressed.TestArchives;
 import org.apache.commons.compress.utils.IOUtils;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -27,6 +28,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.*;
 
@@ -38,6 +40,12 @@ public abstract class AbstractExtractorTest {
 
     protected abstract String getArchiveType();
 
+    /**
+     * Bytes reported through {@link Extractor.OnUpdate#onProgress(long)} by the extractors of
+     * {@link #createExtractor(boolean)}
+     */
+    private final AtomicLong progress = new AtomicLong(0L);
+
     @Before
     public void setUp() throws Exception {
         ShadowEnvironment.setExternalStorageState(Environment.MEDIA_MOUNTED);
@@ -98,6 +106,11 @@ public abstract class AbstractExtractorTest {
 
                             }
 
+                            @Override
+                            public void onProgress(long bytes) {
+
+                            }
+
                             @Override
                             public void onFinish() {
                                 latch.countDown();
@@ -118,6 +131,70 @@ public abstract class AbstractExtractorTest {
         latch.await();
     }
 
+    @Test
+    public void testProgressIsCountedOnce() throws Exception {
+        createExtractor(false).extractEverything();
+
+        assertEquals(2 + 3 + 4 + 5 + 512, progress.get());
+        verifyExtractedArchiveContents();
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        createExtractor(true).extractEverything();
+
+        File extractedArchiveRoot = new File(Environment.getExternalStorageDirectory(), "test-archive");
+        assertFalse(new File(new File(extractedArchiveRoot, "1"), "8").exists());
+        assertFalse(new File(new File(extractedArchiveRoot, "a/b/c/d"), "lipsum.bin").exists());
+    }
+
+    /**
+     * Extracts the test archive many times over; prints the time each extraction took
+     */
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void testBenchmark() throws Exception {
+        final int runs = 50;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            createExtractor(false).extractEverything();
+        }
+        long elapsed = System.nanoTime() - start;
+        verifyExtractedArchiveContents();
+
+        System.out.println("Extracting test-archive." + getArchiveType() + ": "
+                + elapsed / runs / 1000 + "us per extraction");
+    }
+
+    private Extractor createExtractor(boolean cancelled) throws Exception {
+        return extractorClass().getConstructor(Context.class, String.class, String.class, Extractor.OnUpdate.class)
+                .newInstance(RuntimeEnvironment.application,
+                        getArchiveFile().getAbsolutePath(),
+                        Environment.getExternalStorageDirectory().getAbsolutePath(), new Extractor.OnUpdate() {
+                            @Override
+                            public void onStart(long totalBytes, String firstEntryName) {
+                            }
+
+                            @Override
+                            public void onUpdate(String entryPath) {
+                            }
+
+                            @Override
+                            public void onProgress(long bytes) {
+                                progress.addAndGet(bytes);
+                            }
+
+                            @Override
+                            public void onFinish() {
+                            }
+
+                            @Override
+                            public boolean isCancelled() {
+                                return cancelled;
+                            }
+                        });
+    }
+
     private void verifyExtractedArchiveContents() throws IOException {
         File extractedArchiveRoot = new File(Environment.getExternalStorageDirectory(), "test-archive");
         assertTrue(extractedArchiveRoot.exists());
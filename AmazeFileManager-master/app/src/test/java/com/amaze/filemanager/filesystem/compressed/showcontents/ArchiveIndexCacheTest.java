@@ -0,0 +1,107 @@
+package com.amaze.filemanager.filesystem.compressed.showcontents;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class ArchiveIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File archive;
+    private int indexed;
+
+    @Before
+    public void setUp() throws IOException {
+        archive = temporaryFolder.newFile("archive.tar");
+        write(archive, 100);
+        indexed = 0;
+    }
+
+    @Test
+    public void testGetParent() {
+        assertEquals("", ArchiveIndex.getParent("a"));
+        assertEquals("", ArchiveIndex.getParent("a/"));
+        assertEquals("", ArchiveIndex.getParent("/a"));
+        assertEquals("a/b", ArchiveIndex.getParent("a/b/c"));
+        assertEquals("a/b", ArchiveIndex.getParent("a/b/c/"));
+    }
+
+    @Test
+    public void testChildren() throws IOException {
+        ArchiveIndex index = new ArchiveIndexCache(null, 0).getIndex(archive, false, this::index);
+
+        List<ArchiveIndex.Entry> root = index.getChildren("");
+        assertEquals(2, root.size());
+        assertEquals("a/", root.get(0).path);
+        assertTrue(root.get(0).directory);
+        assertEquals("c", root.get(1).path);
+        assertEquals("a/b", index.getChildren("a").get(0).path);
+        assertTrue(index.getChildren("c").isEmpty());
+        assertEquals(3, index.getEntryCount());
+    }
+
+    @Test
+    public void testIndexedOnceUntilArchiveChanges() throws IOException {
+        ArchiveIndexCache cache = new ArchiveIndexCache(null, 0);
+        cache.getIndex(archive, false, this::index);
+        cache.getIndex(archive, false, this::index);
+        assertEquals(1, indexed);
+
+        write(archive, 200);
+        cache.getIndex(archive, false, this::index);
+        assertEquals(2, indexed);
+    }
+
+    @Test
+    public void testPersisted() throws IOException {
+        File directory = temporaryFolder.newFolder("archive-index");
+        new ArchiveIndexCache(directory, 0).getIndex(archive, true, this::index);
+        assertEquals(1, directory.listFiles().length);
+
+        // as if the app had been restarted
+        ArchiveIndex index = new ArchiveIndexCache(directory, 0).getIndex(archive, true, this::index);
+        assertEquals(1, indexed);
+        assertEquals(2, index.getChildren("").size());
+        assertEquals("a/b", index.getChildren("a").get(0).path);
+        assertEquals(42, index.getChildren("a").get(0).size);
+    }
+
+    @Test
+    public void testSmallArchivesAreNotPersisted() throws IOException {
+        File directory = temporaryFolder.newFolder("archive-index");
+        new ArchiveIndexCache(directory, 1000).getIndex(archive, true, this::index);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private void index(ArchiveIndex index) {
+        indexed++;
+        index.add("", new ArchiveIndex.Entry("a/", 0, 0, true));
+        index.add("a", new ArchiveIndex.Entry("a/b", 1000, 42, false));
+        index.add("", new ArchiveIndex.Entry("c", 1000, 1, false));
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[length]);
+        out.close();
+    }
+}
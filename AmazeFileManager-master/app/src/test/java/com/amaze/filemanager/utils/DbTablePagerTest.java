@@ -0,0 +1,145 @@
+package com.amaze.filemanager.utils;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class DbTablePagerTest {
+
+    private static final int ROWS = DbTablePager.PAGE_SIZE * 2 + 50;
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE \"my table\" (id INTEGER, name TEXT, data BLOB)");
+        database.beginTransaction();
+        for (int i = 0; i < ROWS; i++) {
+            database.execSQL("INSERT INTO \"my table\" VALUES (?, ?, ?)",
+                    new Object[] {i, i == 7 ? "50%_off" : "row " + i, new byte[] {1}});
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void testColumnsAndCount() {
+        DbTablePager pager = new DbTablePager(database, "my table");
+        assertEquals(Arrays.asList("id", "name", "data"), pager.loadColumns());
+        assertEquals(DbTablePager.UNKNOWN_COUNT, pager.getCount());
+        assertEquals(ROWS, pager.loadCount());
+        assertEquals(ROWS, pager.getCount());
+    }
+
+    @Test
+    public void testReadsPagesInOrder() {
+        DbTablePager pager = new DbTablePager(database, "my table");
+        pager.loadColumns();
+        for (int page = 0; page * DbTablePager.PAGE_SIZE < ROWS; page++) pager.loadPage(page);
+
+        for (int i = 0; i < ROWS; i++) {
+            assertArrayEquals(new String[] {String.valueOf(i), i == 7 ? "50%_off" : "row " + i, "(BLOB)"},
+                    pager.getRow(i));
+        }
+        assertNull(pager.getRow(ROWS));
+    }
+
+    @Test
+    public void testReadsPageWithoutPrevious() {
+        DbTablePager pager = new DbTablePager(database, "my table");
+        pager.loadColumns();
+        pager.loadPage(2);
+
+        assertNull(pager.getRow(0));
+        assertEquals(String.valueOf(DbTablePager.PAGE_SIZE * 2), pager.getRow(DbTablePager.PAGE_SIZE * 2)[0]);
+    }
+
+    @Test
+    public void testForgetsOldPages() {
+        database.beginTransaction();
+        for (int i = ROWS; i < DbTablePager.PAGE_SIZE * (DbTablePager.MAX_PAGES + 1); i++) {
+            database.execSQL("INSERT INTO \"my table\" VALUES (?, 'row', NULL)", new Object[] {i});
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+
+        DbTablePager pager = new DbTablePager(database, "my table");
+        pager.loadColumns();
+        for (int page = 0; page <= DbTablePager.MAX_PAGES; page++) pager.loadPage(page);
+
+        assertNull(pager.getRow(0));
+        assertEquals(String.valueOf(DbTablePager.PAGE_SIZE * DbTablePager.MAX_PAGES),
+                pager.getRow(DbTablePager.PAGE_SIZE * DbTablePager.MAX_PAGES)[0]);
+    }
+
+    @Test
+    public void testSort() {
+        DbTablePager pager = new DbTablePager(database, "my table");
+        pager.loadColumns();
+        pager.loadPage(0);
+
+        pager.setSort(0, false);
+        assertNull(pager.getRow(0));
+        pager.loadPage(0);
+        pager.loadPage(1);
+        assertEquals(String.valueOf(ROWS - 1), pager.getRow(0)[0]);
+        assertEquals(String.valueOf(ROWS - 1 - DbTablePager.PAGE_SIZE), pager.getRow(DbTablePager.PAGE_SIZE)[0]);
+    }
+
+    @Test
+    public void testFilterEscapesWildcards() {
+        DbTablePager pager = new DbTablePager(database, "my table");
+        pager.loadColumns();
+
+        pager.setFilter(1, "%_");
+        assertEquals(1, pager.loadCount());
+        pager.loadPage(0);
+        assertEquals("50%_off", pager.getRow(0)[1]);
+        assertNull(pager.getRow(1));
+
+        pager.setFilter(0, "12");
+        // 12, 112, 120 to 129 and 212
+        assertEquals(13, pager.loadCount());
+
+        pager.setFilter(0, "");
+        assertEquals(ROWS, pager.loadCount());
+    }
+
+    @Test
+    public void testTableWithoutRowId() {
+        database.execSQL("CREATE TABLE keys (k TEXT PRIMARY KEY) WITHOUT ROWID");
+        database.beginTransaction();
+        for (int i = 0; i < ROWS; i++) {
+            database.execSQL("INSERT INTO keys VALUES (?)", new Object[] {String.format("%04d", i)});
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+
+        DbTablePager pager = new DbTablePager(database, "keys");
+        pager.loadColumns();
+        pager.loadPage(0);
+        pager.loadPage(1);
+        assertEquals("0000", pager.getRow(0)[0]);
+        assertEquals(String.format("%04d", DbTablePager.PAGE_SIZE), pager.getRow(DbTablePager.PAGE_SIZE)[0]);
+    }
+}
@@ -0,0 +1,99 @@
+package com.amaze.filemanager.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentIdCacheTest {
+
+    private DocumentIdCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new DocumentIdCache();
+        cache.setRoot("content://tree/usb");
+    }
+
+    @Test
+    public void testListing() {
+        cache.onListed("", children("DCIM", "id:DCIM", "Music", "id:Music"), 0);
+        cache.onListed("DCIM", children("Camera", "id:DCIM/Camera"), 0);
+
+        assertEquals("id:DCIM", cache.get("DCIM"));
+        assertEquals("id:DCIM/Camera", cache.get("DCIM/Camera"));
+        assertTrue(cache.isMissing("Movies", 1000));
+        assertFalse(cache.isMissing("Music", 1000));
+        // too old to tell
+        assertFalse(cache.isMissing("Movies", DocumentIdCache.LISTING_MAX_AGE_MILLIS + 1));
+        // never listed
+        assertFalse(cache.isMissing("Music/Album", 1000));
+    }
+
+    @Test
+    public void testListingAgainForgetsRemovedChildren() {
+        cache.onListed("", children("DCIM", "id:DCIM", "Music", "id:Music"), 0);
+        cache.onListed("DCIM", children("Camera", "id:DCIM/Camera"), 0);
+        cache.onListed("Music", children("song.mp3", "id:Music/song.mp3"), 0);
+
+        cache.onListed("", children("Music", "id:Music"), 0);
+        assertNull(cache.get("DCIM"));
+        assertNull(cache.get("DCIM/Camera"));
+        assertEquals("id:Music/song.mp3", cache.get("Music/song.mp3"));
+        assertFalse(cache.isMissing("DCIM/Camera", 0));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.onListed("", children("DCIM", "id:DCIM"), 0);
+        cache.onListed("DCIM", children("Camera", "id:DCIM/Camera"), 0);
+        cache.put("DCIMx", "id:DCIMx");
+
+        cache.invalidate("DCIM");
+        assertNull(cache.get("DCIM"));
+        assertNull(cache.get("DCIM/Camera"));
+        assertEquals("id:DCIMx", cache.get("DCIMx"));
+        // it may have been created again
+        assertFalse(cache.isMissing("DCIM", 0));
+    }
+
+    @Test
+    public void testPutAddsToListing() {
+        cache.onListed("", children("DCIM", "id:DCIM"), 0);
+        assertTrue(cache.isMissing("new.txt", 0));
+        cache.put("new.txt", "id:new.txt");
+        assertFalse(cache.isMissing("new.txt", 0));
+    }
+
+    @Test
+    public void testNewRootForgetsEverything() {
+        cache.put("DCIM", "id:DCIM");
+        cache.setRoot("content://tree/usb");
+        assertEquals("id:DCIM", cache.get("DCIM"));
+        cache.setRoot("content://tree/other");
+        assertNull(cache.get("DCIM"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreEvicted() {
+        cache.put("first", "id:first");
+        for (int i = 0; i < DocumentIdCache.MAX_PATHS; i++) {
+            cache.put("file" + i, "id" + i);
+            cache.get("first");
+        }
+        assertEquals("id:first", cache.get("first"));
+        assertNull(cache.get("file0"));
+    }
+
+    private static Map<String, String> children(String... namesAndIds) {
+        Map<String, String> children = new HashMap<>();
+        for (int i = 0; i < namesAndIds.length; i += 2) children.put(namesAndIds[i], namesAndIds[i + 1]);
+        return children;
+    }
+}
@@ -0,0 +1,77 @@
+package com.amaze.filemanager.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThroughputMeterTest {
+
+    @Test
+    public void testNothingToMeasure() {
+        ThroughputMeter meter = new ThroughputMeter();
+        assertEquals(0, meter.getSmoothedRate());
+        assertEquals(ThroughputMeter.UNKNOWN_TIME, meter.getSecondsRemaining(100));
+
+        meter.addSample(1000, 0);
+        assertEquals(0, meter.getInstantaneousRate());
+        assertEquals(0, meter.getSmoothedRate());
+        assertEquals(ThroughputMeter.UNKNOWN_TIME, meter.getSecondsRemaining(100));
+    }
+
+    @Test
+    public void testSmoothsOverWindow() {
+        ThroughputMeter meter = new ThroughputMeter();
+        // 1000 bytes/s for 4 seconds, then a burst of 9000 bytes in one second
+        for (int i = 0; i <= 4; i++) meter.addSample(i * 1000, i * 1000);
+        meter.addSample(5000, 13000);
+
+        assertEquals(9000, meter.getInstantaneousRate());
+        assertEquals(13000 * 1000 / 5000, meter.getSmoothedRate());
+    }
+
+    @Test
+    public void testForgetsSamplesOutOfWindow() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.addSample(0, 0);
+        // nothing for a long time, then 2000 bytes/s
+        for (int i = 0; i <= 10; i++) meter.addSample(100_000 + i * 1000, i * 2000);
+
+        assertEquals(2000, meter.getSmoothedRate());
+    }
+
+    @Test
+    public void testWrapsAround() {
+        ThroughputMeter meter = new ThroughputMeter();
+        // more samples than fit, 100 ms apart, all within the window
+        for (int i = 0; i < ThroughputMeter.CAPACITY * 3; i++) meter.addSample(i * 100, i * 500);
+
+        assertEquals(5000, meter.getInstantaneousRate());
+        assertEquals(5000, meter.getSmoothedRate());
+        assertEquals((ThroughputMeter.CAPACITY * 3 - 1) * 500, meter.getPosition());
+    }
+
+    @Test
+    public void testSecondsRemaining() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.addSample(0, 0);
+        meter.addSample(2000, 4000);
+
+        assertEquals(3, meter.getSecondsRemaining(10000));
+        // rounded up, there is still something to do
+        assertEquals(1, meter.getSecondsRemaining(4001));
+        assertEquals(0, meter.getSecondsRemaining(4000));
+    }
+
+    @Test
+    public void testReset() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.addSample(0, 0);
+        meter.addSample(1000, 1000);
+        meter.reset();
+        meter.addSample(60_000, 1000);
+        assertEquals(0, meter.getSmoothedRate());
+
+        meter.addSample(61_000, 4000);
+        assertEquals(3000, meter.getSmoothedRate());
+    }
+}
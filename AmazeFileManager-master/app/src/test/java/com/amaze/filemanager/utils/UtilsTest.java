@@ -2,6 +2,7 @@ package com.amaze.filemanager.utils;
 
 import org.junit.Test;
 
+import static com.amaze.filemanager.utils.Utils.formatTimer;
 import static com.amaze.filemanager.utils.Utils.sanitizeInput;
 import static org.junit.Assert.*;
 
@@ -17,4 +18,12 @@ public class UtilsTest {
         assertEquals("an apple",sanitizeInput("an ...apple"));  //test the removing of dots which are between two words.
         assertEquals("an apple.",sanitizeInput(";an |apple...."));  //test the removing of pipe sign and dots which are between two words. And test the fourth dot is not removed.
     }
+
+    @Test
+    public void testFormatTimer() {
+        assertEquals("00:00", formatTimer(0));
+        assertEquals("00:59", formatTimer(59));
+        assertEquals("01:15", formatTimer(75));
+        assertEquals("61:01", formatTimer(3661));
+    }
 }
\ No newline at end of file
@@ -242,6 +242,30 @@ public class CloudStreamSourceTest {
         assertEquals(-1, n);
     }
 
+    /**
+     * Purpose: Open the file again after it was closed, as the server does for each range
+     * Input: open(), close(), moveTo(readPosition), open()
+     * Expected:
+     *          buff[0] = text[readPosition]
+     *          n = buff.length
+     */
+    @Test
+    public void reopenAfterClose() throws IOException {
+        int readPosition = 5;
+        byte[] buff = new byte[1];
+
+        cs.open();
+        cs.read(buff);
+        cs.close();
+
+        cs.moveTo(readPosition);
+        cs.open();
+
+        int n = cs.read(buff);
+        assertEquals(text[readPosition], buff[0]);
+        assertEquals(buff.length, n);
+    }
+
     /**
      * Purpose: Get length of the text from a file
      * Input: no
@@ -0,0 +1,119 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.BuildConfig;
+import com.amaze.filemanager.filesystem.HybridFileParcelable;
+import com.amaze.filemanager.filesystem.RootHelper;
+import com.amaze.filemanager.utils.OpenMode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class CopyPlannerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File source, target;
+
+    @Before
+    public void setUp() throws IOException {
+        source = temporaryFolder.newFolder("source");
+        target = temporaryFolder.newFolder("target");
+
+        write(new File(source, "a.txt"), 10);
+        write(new File(source, "d/x"), 5);
+        write(new File(source, "d/y"), 7);
+        write(new File(source, "d/sub/z"), 3);
+        write(new File(source, "e/q"), 100);
+
+        write(new File(target, "a.txt"), 1);
+        write(new File(target, "d/y"), 1);
+        write(new File(target, "d/sub/other"), 1);
+    }
+
+    @Test
+    public void testMergesConflictingFolders() {
+        CopyPlanner.Plan plan = plan(true);
+        List<CopyPlanner.FolderPlan> folders = plan.getFolders();
+
+        assertEquals(3, folders.size());
+        assertEquals(target.getPath(), folders.get(0).getPath());
+        assertEquals(target.getPath() + "/d", folders.get(1).getPath());
+        assertEquals(target.getPath() + "/d/sub", folders.get(2).getPath());
+
+        assertEquals(names("a.txt", "e"), names(folders.get(0).getFilesToCopy()));
+        assertEquals(names("a.txt"), names(folders.get(0).getConflictingFiles()));
+        assertEquals(names("x", "y"), names(folders.get(1).getFilesToCopy()));
+        assertEquals(names("y"), names(folders.get(1).getConflictingFiles()));
+        assertEquals(names("z"), names(folders.get(2).getFilesToCopy()));
+        assertTrue(folders.get(2).getConflictingFiles().isEmpty());
+    }
+
+    @Test
+    public void testMeasuresWhatIsLeftToCopy() {
+        CopyPlanner.Plan plan = plan(true);
+        assertEquals(125, plan.getTotalBytes());
+
+        CopyPlanner.FolderPlan folder = plan.getFolders().get(1);
+        assertEquals(12, folder.getBytes());
+        folder.getFilesToCopy().removeAll(folder.getConflictingFiles());
+        assertEquals(5, folder.getBytes());
+        assertEquals(118, plan.getTotalBytes());
+    }
+
+    @Test
+    public void testNotMeasured() {
+        CopyPlanner.Plan plan = plan(false);
+        assertEquals(-1, plan.getTotalBytes());
+        assertEquals(-1, plan.getFolders().get(0).getBytes());
+        assertEquals(3, plan.getFolders().size());
+    }
+
+    private CopyPlanner.Plan plan(boolean measure) {
+        ArrayList<HybridFileParcelable> filesToCopy = new ArrayList<>();
+        for (String name : new String[] {"a.txt", "d", "e"}) {
+            filesToCopy.add(RootHelper.generateBaseFile(new File(source, name), true));
+        }
+
+        return new CopyPlanner(RuntimeEnvironment.application, OpenMode.FILE, false, measure)
+                .plan(filesToCopy, target.getPath());
+    }
+
+    private static Set<String> names(String... names) {
+        Set<String> set = new HashSet<>();
+        for (String name : names) set.add(name);
+        return set;
+    }
+
+    private static Set<String> names(List<HybridFileParcelable> files) {
+        Set<String> set = new HashSet<>();
+        for (HybridFileParcelable file : files) set.add(file.getName());
+        return set;
+    }
+
+    private static void write(File file, int length) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[length]);
+        out.close();
+    }
+}
@@ -0,0 +1,205 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.BuildConfig;
+import com.amaze.filemanager.utils.ProgressHandler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class CryptContainerTest {
+
+    private static final int SEGMENT_SIZE = CryptContainer.SEGMENT_SIZE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Random random;
+    private CryptContainer.SegmentCipher segmentCipher;
+
+    @Before
+    public void setUp() {
+        random = new Random(42);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        final SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+        segmentCipher = (mode, nonce) -> {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, keySpec, new GCMParameterSpec(128, nonce));
+            return cipher;
+        };
+    }
+
+    @Test
+    public void testRoundTrip() throws GeneralSecurityException, IOException {
+        int[] lengths = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1,
+                10 * SEGMENT_SIZE, 10 * SEGMENT_SIZE + 1234};
+        for (int length : lengths) {
+            byte[] plain = random(length);
+            byte[] encrypted = encrypt(plain, 4);
+            assertEquals(length, getPlainLength(encrypted));
+            assertArrayEquals("length " + length, plain, decrypt(encrypted, 4));
+            assertArrayEquals("length " + length, plain, decrypt(encrypted, 1));
+        }
+    }
+
+    @Test
+    public void testNonceIsRandom() throws GeneralSecurityException, IOException {
+        byte[] plain = random(100);
+        assertFalse(Arrays.equals(encrypt(plain, 1), encrypt(plain, 1)));
+    }
+
+    @Test
+    public void testIsContainer() throws GeneralSecurityException, IOException {
+        BufferedInputStream container = new BufferedInputStream(
+                new ByteArrayInputStream(encrypt(random(100), 1)));
+        assertTrue(CryptContainer.isContainer(container));
+        // the stream is still at the start
+        assertEquals(CryptContainer.MAGIC[0], container.read());
+
+        assertFalse(CryptContainer.isContainer(
+                new BufferedInputStream(new ByteArrayInputStream(random(100)))));
+        assertFalse(CryptContainer.isContainer(
+                new BufferedInputStream(new ByteArrayInputStream(new byte[3]))));
+    }
+
+    @Test
+    public void testTamperedSegmentFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(random(3 * SEGMENT_SIZE), 2);
+        encrypted[CryptContainer.HEADER_SIZE + SEGMENT_SIZE + 100] ^= 1;
+        assertDecryptionFails(encrypted);
+    }
+
+    @Test
+    public void testTruncatedFileFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(random(3 * SEGMENT_SIZE), 2);
+        // drops the last segment, which is the only one marked as such
+        int segment = SEGMENT_SIZE + CryptContainer.TAG_SIZE;
+        assertDecryptionFails(Arrays.copyOf(encrypted, CryptContainer.HEADER_SIZE + 2 * segment));
+    }
+
+    @Test
+    public void testReorderedSegmentsFail() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(random(3 * SEGMENT_SIZE), 2);
+        int segment = SEGMENT_SIZE + CryptContainer.TAG_SIZE;
+        byte[] first = Arrays.copyOfRange(encrypted, CryptContainer.HEADER_SIZE,
+                CryptContainer.HEADER_SIZE + segment);
+        System.arraycopy(encrypted, CryptContainer.HEADER_SIZE + segment, encrypted,
+                CryptContainer.HEADER_SIZE, segment);
+        System.arraycopy(first, 0, encrypted, CryptContainer.HEADER_SIZE + segment, segment);
+        assertDecryptionFails(encrypted);
+    }
+
+    @Test
+    public void testProgressAndCancel() throws GeneralSecurityException, IOException {
+        byte[] plain = random(5 * SEGMENT_SIZE + 10);
+        ProgressHandler progressHandler = new ProgressHandler();
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        assertTrue(new CryptContainer(segmentCipher, 2, progressHandler)
+                .encrypt(new ByteArrayInputStream(plain), encrypted));
+        assertEquals(plain.length, progressHandler.getProcessedBytes());
+
+        // decryption counts what's read, as the service knows the size of the encrypted file
+        progressHandler = new ProgressHandler();
+        assertTrue(new CryptContainer(segmentCipher, 2, progressHandler).decrypt(
+                new ByteArrayInputStream(encrypted.toByteArray()), new ByteArrayOutputStream()));
+        assertEquals(encrypted.size(), progressHandler.getProcessedBytes());
+
+        progressHandler = new ProgressHandler();
+        progressHandler.setCancelled(true);
+        assertFalse(new CryptContainer(segmentCipher, 2, progressHandler)
+                .encrypt(new ByteArrayInputStream(plain), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testStreamSource() throws GeneralSecurityException, IOException {
+        byte[] plain = random(7 * SEGMENT_SIZE + 321);
+        File file = temporaryFolder.newFile("video.mp4.aze");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(encrypt(plain, 4));
+        out.close();
+
+        CryptStreamSource source = CryptStreamSource.create(file, segmentCipher);
+        assertEquals(plain.length, source.length());
+        try {
+            long[] positions = {0, 5 * SEGMENT_SIZE - 10, SEGMENT_SIZE, 17, plain.length - 100};
+            for (long position : positions) {
+                source.moveTo(position);
+                source.open();
+                byte[] read = new byte[(int) Math.min(SEGMENT_SIZE + 50, plain.length - position)];
+                int length = 0;
+                while (length < read.length) {
+                    length += source.read(read, length, read.length - length);
+                }
+                assertArrayEquals("position " + position, Arrays.copyOfRange(plain,
+                        (int) position, (int) position + read.length), read);
+            }
+            assertEquals(-1, source.read());
+        } finally {
+            source.close();
+        }
+    }
+
+    private void assertDecryptionFails(byte[] encrypted) throws IOException {
+        try {
+            decrypt(encrypted, 2);
+            fail("Decrypted a changed file");
+        } catch (AEADBadTagException expected) {
+        } catch (GeneralSecurityException e) {
+            fail("Unexpected " + e);
+        }
+    }
+
+    private long getPlainLength(byte[] encrypted) throws IOException {
+        return CryptContainer.Header.readFrom(new ByteArrayInputStream(encrypted))
+                .getPlainLength(encrypted.length);
+    }
+
+    private byte[] encrypt(byte[] plain, int threads) throws GeneralSecurityException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(new CryptContainer(segmentCipher, threads, null)
+                .encrypt(new ByteArrayInputStream(plain), out));
+        return out.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] encrypted, int threads) throws GeneralSecurityException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(new CryptContainer(segmentCipher, threads, null)
+                .decrypt(new ByteArrayInputStream(encrypted), out));
+        return out.toByteArray();
+    }
+
+    private byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -3,8 +3,15 @@ package com.amaze.filemanager.utils.files;
 import com.amaze.filemanager.adapters.data.LayoutElementParcelable;
 import com.amaze.filemanager.utils.OpenMode;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.*;
@@ -439,4 +446,103 @@ public class FileListSorterTest {
 
         assertEquals(fileListSorter.compare(file1, file2), 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Purpose: with natural ordering numbers in names are compared by value
+     * Input: FileListSorter(-1,0,1,true) compare("file2.txt","file10.txt") and ("file02.txt","file2.txt")
+     * Expected:
+     * file2.txt is before file10.txt, file02.txt and file2.txt are not equal
+     */
+    @Test
+    public void testNaturalOrder() {
+        FileListSorter fileListSorter = new FileListSorter(-1,0,1,true);
+        LayoutElementParcelable file1 = createFile("file2.txt", false, 0, 0);
+        LayoutElementParcelable file2 = createFile("File10.txt", false, 0, 0);
+        LayoutElementParcelable file3 = createFile("file02.txt", false, 0, 0);
+
+        assertThat(fileListSorter.compare(file1, file2), lessThan(0));
+        assertThat(fileListSorter.compare(file2, file1), greaterThan(0));
+        assertNotEquals(0, fileListSorter.compare(file1, file3));
+        assertThat(new FileListSorter(-1,0,1).compare(file1, file2), greaterThan(0));
+    }
+
+    /**
+     * Purpose: lists longer than the parallel threshold are sorted the same as Collections.sort
+     * Input: FileListSorter.sort() on a shuffled list of PARALLEL_SORT_THRESHOLD * 2 files
+     * Expected:
+     * same order as Collections.sort()
+     */
+    @Test
+    public void testParallelSort() {
+        for (int sort = 0; sort <= 3; sort++) {
+            FileListSorter fileListSorter = new FileListSorter(0, sort, 1);
+            List<LayoutElementParcelable> expected = createFiles(FileListSorter.PARALLEL_SORT_THRESHOLD * 2);
+            List<LayoutElementParcelable> actual = new ArrayList<>(expected);
+
+            Collections.sort(expected, fileListSorter);
+            FileListSorter.sort(actual, fileListSorter);
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Compares the precomputed keys with the comparator which used to compute them on every call,
+     * printing the time taken by both to sort the same list
+     */
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void testSortKeysBenchmark() {
+        Comparator<LayoutElementParcelable> legacy = (file1, file2) -> {
+            if (file1.isDirectory && !file2.isDirectory) return -1;
+            else if (file2.isDirectory && !file1.isDirectory) return 1;
+
+            if (!file1.isDirectory && !file2.isDirectory) {
+                String ext1 = file1.title.substring(file1.title.lastIndexOf(".") + 1).toLowerCase();
+                String ext2 = file2.title.substring(file2.title.lastIndexOf(".") + 1).toLowerCase();
+                int res = ext1.compareTo(ext2);
+                if (res != 0) return res;
+            }
+            return file1.title.compareToIgnoreCase(file2.title);
+        };
+        FileListSorter fileListSorter = new FileListSorter(0, 3, 1);
+        List<LayoutElementParcelable> files = createFiles(50000);
+
+        long legacyTime = 0, keysTime = 0;
+        for (int i = 0; i < 5; i++) {
+            List<LayoutElementParcelable> legacySorted = new ArrayList<>(files);
+            long start = System.nanoTime();
+            Collections.sort(legacySorted, legacy);
+            legacyTime += System.nanoTime() - start;
+
+            List<LayoutElementParcelable> keysSorted = new ArrayList<>(files);
+            start = System.nanoTime();
+            Collections.sort(keysSorted, fileListSorter);
+            keysTime += System.nanoTime() - start;
+
+            assertEquals(legacySorted, keysSorted);
+        }
+
+        System.out.println("Sorting " + files.size() + " files by type: computed keys "
+                + legacyTime / 5000000 + "ms, precomputed keys " + keysTime / 5000000 + "ms");
+    }
+
+    private static List<LayoutElementParcelable> createFiles(int count) {
+        String[] extensions = {"txt", "JPG", "mp3", "Apk", "pdf", "zip"};
+        Random random = new Random(count);
+        List<LayoutElementParcelable> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean directory = random.nextInt(10) == 0;
+            String name = (random.nextBoolean() ? "File" : "file") + random.nextInt(count)
+                    + (directory ? "" : "." + extensions[random.nextInt(extensions.length)]);
+            files.add(createFile(name, directory, random.nextInt(1000000), random.nextInt(1000000)));
+        }
+        return files;
+    }
+
+    private static LayoutElementParcelable createFile(String name, boolean directory, long size, long date) {
+        return new LayoutElementParcelable(name, "C:\\AmazeFileManager\\" + name, "user",
+                "symlink", String.valueOf(size), size, true,
+                String.valueOf(date), directory, false, OpenMode.UNKNOWN);
+    }
+}
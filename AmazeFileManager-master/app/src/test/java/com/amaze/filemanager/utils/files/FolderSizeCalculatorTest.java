@@ -0,0 +1,88 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.BuildConfig;
+import com.amaze.filemanager.filesystem.HybridFile;
+import com.amaze.filemanager.utils.OpenMode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class FolderSizeCalculatorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = temporaryFolder.newFolder("sizes");
+        File child = new File(root, "child");
+        child.mkdir();
+        write(new File(root, "a"), 100);
+        write(new File(child, "b"), 200);
+        write(new File(child, "c"), 300);
+    }
+
+    @Test
+    public void testSizesOfTreeAndSubtrees() {
+        FolderSizeCalculator calculator = FolderSizeCalculator.getInstance();
+
+        assertEquals(600, calculator.getSize(RuntimeEnvironment.application, hybridFile(root), null));
+        assertEquals(500, calculator.getSize(RuntimeEnvironment.application,
+                hybridFile(new File(root, "child")), null));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        FolderSizeCalculator calculator = FolderSizeCalculator.getInstance();
+        assertEquals(600, calculator.getSize(RuntimeEnvironment.application, hybridFile(root), null));
+
+        // the date of root doesn't change, only invalidating can tell
+        File created = new File(root, "child/d");
+        write(created, 400);
+        calculator.invalidate(created.getPath());
+
+        assertEquals(1000, calculator.getSize(RuntimeEnvironment.application, hybridFile(root), null));
+    }
+
+    @Test
+    public void testTrailingSlashes() throws IOException {
+        FolderSizeCalculator calculator = FolderSizeCalculator.getInstance();
+        // like SMB lists directories
+        assertEquals(600, calculator.getSize(RuntimeEnvironment.application,
+                new HybridFile(OpenMode.FILE, root.getPath() + "/"), null));
+        assertEquals(500, calculator.getSize(RuntimeEnvironment.application,
+                new HybridFile(OpenMode.FILE, new File(root, "child").getPath() + "/"), null));
+
+        write(new File(root, "child/d"), 400);
+        calculator.invalidate(new File(root, "child").getPath() + "/");
+
+        assertEquals(1000, calculator.getSize(RuntimeEnvironment.application, hybridFile(root), null));
+    }
+
+    private static HybridFile hybridFile(File file) {
+        return new HybridFile(OpenMode.FILE, file.getPath());
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[length]);
+        out.close();
+    }
+}
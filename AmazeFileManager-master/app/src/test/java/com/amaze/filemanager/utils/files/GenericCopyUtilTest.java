@@ -0,0 +1,32 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.utils.OpenMode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GenericCopyUtilTest {
+
+    @Test
+    public void testBufferSizeIsSmallestOfBothEnds() {
+        int local = GenericCopyUtil.getBufferSize(OpenMode.FILE, OpenMode.FILE);
+        int smb = GenericCopyUtil.getBufferSize(OpenMode.FILE, OpenMode.SMB);
+        int sftp = GenericCopyUtil.getBufferSize(OpenMode.SMB, OpenMode.SFTP);
+
+        assertTrue(local > smb);
+        assertTrue(smb > sftp);
+        assertEquals(smb, GenericCopyUtil.getBufferSize(OpenMode.OTG, OpenMode.FILE));
+        assertEquals(sftp, GenericCopyUtil.getBufferSize(OpenMode.SFTP, OpenMode.FILE));
+    }
+
+    @Test
+    public void testBufferSizeNeverBelowDefault() {
+        for (OpenMode source : OpenMode.values()) {
+            for (OpenMode target : OpenMode.values()) {
+                assertTrue(GenericCopyUtil.getBufferSize(source, target)
+                        >= GenericCopyUtil.DEFAULT_BUFFER_SIZE);
+            }
+        }
+    }
+}
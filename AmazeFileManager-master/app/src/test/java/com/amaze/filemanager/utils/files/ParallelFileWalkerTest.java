@@ -0,0 +1,149 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.BuildConfig;
+import com.amaze.filemanager.asynchronous.asynctasks.SearchAsyncTask;
+import com.amaze.filemanager.filesystem.HybridFile;
+import com.amaze.filemanager.utils.OpenMode;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link ParallelFileWalker} against the plain recursive walk {@link SearchAsyncTask} used
+ * to do, and compares their throughput on a synthetic tree.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class ParallelFileWalkerTest {
+
+    private static final int FANOUT = 4;
+    private static final int DEPTH = 3;
+    private static final int FILES_PER_DIRECTORY = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = temporaryFolder.newFolder("tree");
+        createTree(root, DEPTH);
+    }
+
+    @Test
+    public void testVisitsSameFilesAsRecursiveWalk() {
+        Set<String> expected = new HashSet<>();
+        walkRecursively(new HybridFile(OpenMode.FILE, root.getPath()), expected);
+
+        Set<String> actual = Collections.synchronizedSet(new HashSet<>());
+        new ParallelFileWalker(RuntimeEnvironment.application, false, 4)
+                .walk(new HybridFile(OpenMode.FILE, root.getPath()), file -> {
+                    actual.add(file.getPath());
+                    return true;
+                });
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testCancelStopsWalk() {
+        ParallelFileWalker walker = new ParallelFileWalker(RuntimeEnvironment.application, false, 4);
+        Set<String> visited = Collections.synchronizedSet(new HashSet<>());
+        walker.walk(new HybridFile(OpenMode.FILE, root.getPath()), file -> {
+            visited.add(file.getPath());
+            walker.cancel();
+            return true;
+        });
+
+        assertTrue(walker.isCancelled());
+        assertTrue(visited.size() < countFiles(DEPTH));
+    }
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void benchmarkAgainstRecursiveWalk() throws IOException {
+        // about 15000 files, enough for the walk to outweigh starting the threads
+        root = temporaryFolder.newFolder("big-tree");
+        createTree(root, DEPTH + 2);
+        SearchAsyncTask.SearchFilter filter = SearchAsyncTask.createSubstringFilter("FILE-1");
+        int total = countFiles(DEPTH + 2);
+
+        long start = System.nanoTime();
+        Set<String> recursiveMatches = new HashSet<>();
+        walkRecursively(new HybridFile(OpenMode.FILE, root.getPath()), file -> {
+            // what the old search did for every file
+            if (file.getName().toLowerCase().contains("FILE-1".toLowerCase())) recursiveMatches.add(file.getPath());
+        });
+        long recursiveTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Set<String> parallelMatches = Collections.synchronizedSet(new HashSet<>());
+        new ParallelFileWalker(RuntimeEnvironment.application, false,
+                Runtime.getRuntime().availableProcessors())
+                .walk(new HybridFile(OpenMode.FILE, root.getPath()), file -> {
+                    if (filter.searchFilter(file.getName())) parallelMatches.add(file.getPath());
+                    return true;
+                });
+        long parallelTime = System.nanoTime() - start;
+
+        assertEquals(recursiveMatches, parallelMatches);
+
+        System.out.println(String.format("Walked %d files: recursive %.0f files/s, parallel %.0f files/s",
+                total, total / (recursiveTime / 1e9), total / (parallelTime / 1e9)));
+    }
+
+    private void walkRecursively(HybridFile directory, Set<String> paths) {
+        walkRecursively(directory, file -> paths.add(file.getPath()));
+    }
+
+    private void walkRecursively(HybridFile directory, PathCallback callback) {
+        directory.forEachChildrenFile(RuntimeEnvironment.application, false, file -> {
+            callback.onPath(file);
+            if (file.isDirectory()) walkRecursively(file, callback);
+        });
+    }
+
+    private interface PathCallback {
+        void onPath(HybridFile file);
+    }
+
+    private int countFiles(int depth) {
+        int total = 0;
+        int directories = 1;
+        for (int level = 0; level < depth; level++) {
+            total += directories * (FILES_PER_DIRECTORY + FANOUT);
+            directories *= FANOUT;
+        }
+        return total + directories * FILES_PER_DIRECTORY;
+    }
+
+    private void createTree(File directory, int depth) throws IOException {
+        for (int i = 0; i < FILES_PER_DIRECTORY; i++) {
+            assertTrue(new File(directory, "file-" + i + ".txt").createNewFile());
+        }
+        if (depth == 0) return;
+
+        for (int i = 0; i < FANOUT; i++) {
+            File child = new File(directory, "dir-" + i);
+            assertTrue(child.mkdir());
+            createTree(child, depth - 1);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.amaze.filemanager.utils.files;
+
+import com.amaze.filemanager.BuildConfig;
+import com.amaze.filemanager.utils.ProgressHandler;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class ParallelZipCompressorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random(42);
+    }
+
+    @Test
+    public void testEntriesAndContents() throws IOException {
+        File folder = temporaryFolder.newFolder("folder");
+        File child = new File(folder, "child");
+        child.mkdir();
+        new File(folder, "empty").mkdir();
+        Map<String, byte[]> expected = new HashMap<>();
+        expected.put("/folder/a.txt", write(new File(folder, "a.txt"), text(1000)));
+        expected.put("/folder/child/b.gif", write(new File(child, "b.gif"), random(5000)));
+        expected.put("/folder/child/big.txt",
+                write(new File(child, "big.txt"), text(ParallelZipCompressor.MAX_BUFFERED_SIZE + 1)));
+        expected.put("/folder/child/big.gz",
+                write(new File(child, "big.gz"), random(ParallelZipCompressor.MAX_BUFFERED_SIZE + 1)));
+        File single = temporaryFolder.newFile("single.txt");
+        expected.put("/single.txt", write(single, new byte[0]));
+
+        ProgressHandler progressHandler = new ProgressHandler();
+        File zip = new File(temporaryFolder.getRoot(), "out.zip");
+        assertTrue(new ParallelZipCompressor(4, progressHandler)
+                .compress(Arrays.asList(folder, single), new FileOutputStream(zip)));
+
+        long total = 0;
+        for (byte[] content : expected.values()) total += content.length;
+        assertEquals(total, progressHandler.getProcessedBytes());
+        assertEquals(2, progressHandler.getSourceFilesProcessed());
+
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            Map<String, byte[]> actual = new HashMap<>();
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                actual.put(entry.getName(), read(zipFile.getInputStream(entry)));
+
+                boolean stored = entry.getName().endsWith(".gif") || entry.getName().endsWith(".gz");
+                assertEquals(entry.getName(), stored ? ZipEntry.STORED : ZipEntry.DEFLATED,
+                        entry.getMethod());
+            }
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (String name : expected.keySet()) {
+                assertArrayEquals(name, expected.get(name), actual.get(name));
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void testIsCompressed() {
+        assertTrue(ParallelZipCompressor.isCompressed("a.gif"));
+        assertTrue(ParallelZipCompressor.isCompressed("a.tar.gz"));
+        assertTrue(ParallelZipCompressor.isCompressed("a.jar"));
+        assertFalse(ParallelZipCompressor.isCompressed("a.txt"));
+        assertFalse(ParallelZipCompressor.isCompressed("a"));
+    }
+
+    @Test
+    public void testCancel() throws IOException {
+        File folder = temporaryFolder.newFolder("folder");
+        for (int i = 0; i < 10; i++) {
+            write(new File(folder, i + ".txt"), text(100000));
+        }
+
+        ProgressHandler progressHandler = new ProgressHandler();
+        progressHandler.setCancelled(true);
+        assertFalse(new ParallelZipCompressor(4, progressHandler).compress(
+                Collections.singletonList(folder),
+                new FileOutputStream(new File(temporaryFolder.getRoot(), "out.zip"))));
+        assertEquals(0, progressHandler.getProcessedBytes());
+    }
+
+    /**
+     * Compresses a mix of many small text files, a few big ones and some media with different
+     * numbers of threads; prints the time each took
+     */
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void testBenchmark() throws IOException {
+        File folder = temporaryFolder.newFolder("corpus");
+        for (int i = 0; i < 200; i++) {
+            write(new File(folder, i + ".txt"), text(64 * 1024 + random.nextInt(256 * 1024)));
+        }
+        for (int i = 0; i < 20; i++) {
+            write(new File(folder, i + ".gif"), random(512 * 1024));
+        }
+        for (int i = 0; i < 2; i++) {
+            write(new File(folder, "big" + i + ".txt"), text(16 * 1024 * 1024));
+        }
+
+        List<Integer> threadCounts = new ArrayList<>(Arrays.asList(1, 2, 4));
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (!threadCounts.contains(processors)) threadCounts.add(processors);
+
+        StringBuilder results = new StringBuilder("Compressing a mixed corpus:");
+        for (int threads : threadCounts) {
+            File zip = new File(temporaryFolder.getRoot(), threads + ".zip");
+            long start = System.nanoTime();
+            assertTrue(new ParallelZipCompressor(threads, null)
+                    .compress(Collections.singletonList(folder), new FileOutputStream(zip)));
+            results.append(' ').append(threads).append(" threads ")
+                    .append((System.nanoTime() - start) / 1000000).append("ms,");
+        }
+        System.out.println(results.substring(0, results.length() - 1));
+    }
+
+    private byte[] text(int length) {
+        String[] words = {"amaze", "file", "manager", "zip", "compress", "thread", "entry", "\n"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        while (out.size() < length) {
+            byte[] word = (words[random.nextInt(words.length)] + " ").getBytes();
+            out.write(word, 0, Math.min(word.length, length - out.size()));
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        return content;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[GenericCopyUtil.DEFAULT_BUFFER_SIZE];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,106 @@
+package com.amaze.filemanager.utils.lan;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NameQueriesTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void testNetBiosNodeStatus() {
+        ByteBuffer query = NameQueries.netBiosNodeStatus(0x1234, true);
+        assertEquals(50, query.remaining());
+        assertEquals(0x1234, query.getShort(0));
+        assertEquals(0x0010, query.getShort(2));
+        // "*" followed by 15 zero bytes, first level encoded
+        assertEquals('C', query.get(13));
+        assertEquals('K', query.get(14));
+        assertEquals('A', query.get(15));
+    }
+
+    @Test
+    public void testReadNetBiosName() {
+        ByteBuffer response = netBiosResponse(new String[] {"WORKGROUP", "NAS"},
+                new int[] {0x00, 0x20}, new boolean[] {true, false});
+        assertEquals("NAS", NameQueries.readNetBiosName(response));
+
+        // only a group name
+        response = netBiosResponse(new String[] {"WORKGROUP"}, new int[] {0x00}, new boolean[] {true});
+        assertNull(NameQueries.readNetBiosName(response));
+
+        // cut short
+        response = netBiosResponse(new String[] {"NAS"}, new int[] {0x20}, new boolean[] {false});
+        response.limit(response.limit() - 10);
+        assertNull(NameQueries.readNetBiosName(response));
+
+        // a query isn't a response
+        assertNull(NameQueries.readNetBiosName(NameQueries.netBiosNodeStatus(1, false)));
+    }
+
+    @Test
+    public void testMdnsReverseLookup() {
+        ByteBuffer query = NameQueries.mdnsReverseLookup(7, Subnet.parse("192.168.1.20").getHost(0));
+        query.position(12);
+        byte[] name = new byte[query.remaining() - 5];
+        query.get(name);
+        assertEquals("\u000220\u00011\u0003168\u0003192\u0007in-addr\u0004arpa", new String(name, ASCII));
+    }
+
+    @Test
+    public void testReadMdnsName() {
+        ByteBuffer response = ByteBuffer.allocate(128);
+        writeHeader(response, 0x8400, 1, 1);
+        // the question, then an answer pointing back to its name
+        response.put(NameQueries.mdnsReverseLookup(7, 0).array(), 12, 22);
+        response.putShort((short) 12).putShort((short) 1);
+        response.putShort((short) 0xC00C).putShort((short) 12).putShort((short) 1).putInt(120);
+        int lengthPosition = response.position();
+        response.putShort((short) 0);
+        putLabel(response, "printer");
+        putLabel(response, "local");
+        response.put((byte) 0);
+        response.putShort(lengthPosition, (short) (response.position() - lengthPosition - 2));
+        response.flip();
+        assertEquals("printer", NameQueries.readMdnsName(response));
+
+        // a pointer loop
+        ByteBuffer loop = ByteBuffer.allocate(64);
+        writeHeader(loop, 0x8400, 0, 1);
+        loop.putShort((short) 0xC00C).putShort((short) 12).putShort((short) 1).putInt(120).putShort((short) 2);
+        loop.putShort((short) 0xC018);
+        loop.flip();
+        assertNull(NameQueries.readMdnsName(loop));
+    }
+
+    private static ByteBuffer netBiosResponse(String[] names, int[] suffixes, boolean[] groups) {
+        ByteBuffer response = ByteBuffer.allocate(512);
+        writeHeader(response, 0x8400, 0, 1);
+        response.put(NameQueries.netBiosNodeStatus(1, false).array(), 12, 34);
+        response.putShort((short) 0x21).putShort((short) 1).putInt(0);
+        response.putShort((short) (1 + names.length * 18));
+        response.put((byte) names.length);
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = new byte[15];
+            java.util.Arrays.fill(name, (byte) ' ');
+            System.arraycopy(names[i].getBytes(ASCII), 0, name, 0, names[i].length());
+            response.put(name).put((byte) suffixes[i]).putShort((short) (groups[i] ? 0x8400 : 0x0400));
+        }
+        response.flip();
+        return response;
+    }
+
+    private static void writeHeader(ByteBuffer packet, int flags, int questions, int answers) {
+        packet.putShort((short) 0).putShort((short) flags).putShort((short) questions)
+                .putShort((short) answers).putShort((short) 0).putShort((short) 0);
+    }
+
+    private static void putLabel(ByteBuffer packet, String label) {
+        packet.put((byte) label.length()).put(label.getBytes(ASCII));
+    }
+}
@@ -0,0 +1,59 @@
+package com.amaze.filemanager.utils.lan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SubnetTest {
+
+    @Test
+    public void testParse() {
+        Subnet subnet = Subnet.parse("192.168.1.77/24");
+        assertEquals("192.168.1.0/24", subnet.toString());
+        assertEquals(254, subnet.getHostCount());
+        assertEquals("192.168.1.1", Subnet.toString(subnet.getHost(0)));
+        assertEquals("192.168.1.254", Subnet.toString(subnet.getHost(253)));
+        assertEquals("192.168.1.255", Subnet.toString(subnet.getBroadcast()));
+
+        assertEquals(Subnet.parse("10.0.0.5/32"), Subnet.parse("10.0.0.5"));
+        assertEquals(1, Subnet.parse("10.0.0.5").getHostCount());
+        assertEquals(2, Subnet.parse("10.0.0.4/31").getHostCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidOctet() {
+        Subnet.parse("192.168.256.0/24");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidPrefix() {
+        Subnet.parse("192.168.1.0/33");
+    }
+
+    @Test
+    public void testContains() {
+        Subnet subnet = Subnet.parse("172.16.0.0/12");
+        assertTrue(subnet.contains(Subnet.parse("172.31.255.1").getHost(0)));
+        assertFalse(subnet.contains(Subnet.parse("172.32.0.1").getHost(0)));
+    }
+
+    @Test
+    public void testNarrow() {
+        int address = Subnet.parse("10.1.2.3").getHost(0);
+        Subnet subnet = Subnet.parse("10.0.0.0/8").narrow(address, 1024);
+        assertEquals("10.1.0.0/22", subnet.toString());
+        assertTrue(subnet.contains(address));
+
+        Subnet small = Subnet.parse("10.1.2.0/24");
+        assertEquals(small, small.narrow(address, 1024));
+    }
+
+    @Test
+    public void testAddressConversions() {
+        int address = Subnet.parse("200.100.50.25").getHost(0);
+        assertEquals("200.100.50.25", Subnet.toString(address));
+        assertEquals("/200.100.50.25", Subnet.toInetAddress(address).toString());
+    }
+}
@@ -0,0 +1,161 @@
+package com.amaze.filemanager.utils.streams;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class BlockCacheTest {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCKS = 64;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private byte[] content;
+    private List<Long> opens;
+
+    @Before
+    public void setUp() {
+        content = new byte[BLOCK_SIZE * BLOCKS - 100];
+        new Random(BLOCKS).nextBytes(content);
+        opens = new ArrayList<>();
+    }
+
+    @Test
+    public void testRepeatedReadIsCached() throws IOException {
+        BlockCache cache = new BlockCache(null, BLOCK_SIZE, BLOCKS, 0, 0);
+        BlockCache.CachedFile file = cache.getFile("file", content.length, true, this::open);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 5000, 9000), read(file, 5000, 4000));
+        long fetched = cache.getBytesFetched();
+
+        assertArrayEquals(Arrays.copyOfRange(content, 6000, 8000), read(file, 6000, 2000));
+        assertEquals(fetched, cache.getBytesFetched());
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testSeekableFileIsReopenedAtPosition() throws IOException {
+        BlockCache cache = new BlockCache(null, BLOCK_SIZE, BLOCKS, 0, 0);
+        BlockCache.CachedFile file = cache.getFile("file", content.length, true, this::open);
+
+        read(file, 0, 10);
+        assertArrayEquals(Arrays.copyOfRange(content, 40 * BLOCK_SIZE, 40 * BLOCK_SIZE + 10),
+                read(file, 40 * BLOCK_SIZE, 10));
+        assertTrue(opens.contains(40L * BLOCK_SIZE));
+        // the blocks in between were not downloaded
+        assertTrue(cache.getBytesFetched() < 20 * BLOCK_SIZE);
+    }
+
+    @Test
+    public void testUnseekableFileKeepsBlocksReadOnTheWay() throws IOException {
+        BlockCache cache = new BlockCache(null, BLOCK_SIZE, BLOCKS, 0, 0);
+        BlockCache.CachedFile file = cache.getFile("file", content.length, false, this::open);
+
+        read(file, 30 * BLOCK_SIZE, 10);
+        assertEquals(Arrays.asList(0L), opens);
+
+        // seeking back is served by the blocks read to get to the first position
+        long fetched = cache.getBytesFetched();
+        assertArrayEquals(Arrays.copyOfRange(content, 10 * BLOCK_SIZE, 12 * BLOCK_SIZE),
+                read(file, 10 * BLOCK_SIZE, 2 * BLOCK_SIZE));
+        assertEquals(fetched, cache.getBytesFetched());
+        assertEquals(1, opens.size());
+    }
+
+    @Test
+    public void testBlocksSpillToDisk() throws IOException {
+        File directory = temporaryFolder.newFolder("streams");
+        BlockCache cache = new BlockCache(directory, BLOCK_SIZE, 4, 16 * BLOCK_SIZE, 0);
+        BlockCache.CachedFile file = cache.getFile("file", content.length, false, this::open);
+
+        assertArrayEquals(content, read(file, 0, content.length));
+        long fetched = cache.getBytesFetched();
+        File[] spilled = directory.listFiles();
+        assertEquals(16, spilled.length);
+
+        // the last blocks are still in memory or on disk
+        assertArrayEquals(Arrays.copyOfRange(content, content.length - 10 * BLOCK_SIZE, content.length),
+                read(file, content.length - 10 * BLOCK_SIZE, 10 * BLOCK_SIZE));
+        assertEquals(fetched, cache.getBytesFetched());
+
+        // the first ones were dropped and have to be read again
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 10), read(file, 0, 10));
+        assertEquals(2, opens.size());
+    }
+
+    @Test
+    public void testNextBlocksArePrefetched() throws Exception {
+        BlockCache cache = new BlockCache(null, BLOCK_SIZE, BLOCKS, 0, BlockCache.PREFETCH_BLOCKS);
+        BlockCache.CachedFile file = cache.getFile("file", content.length, true, this::open);
+
+        read(file, 0, 10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getBytesFetched() < (1 + BlockCache.PREFETCH_BLOCKS) * BLOCK_SIZE
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals((1 + BlockCache.PREFETCH_BLOCKS) * BLOCK_SIZE, cache.getBytesFetched());
+
+        long hits = cache.getHitCount();
+        assertArrayEquals(Arrays.copyOfRange(content, BLOCK_SIZE, 3 * BLOCK_SIZE),
+                read(file, BLOCK_SIZE, 2 * BLOCK_SIZE));
+        assertTrue(cache.getHitCount() >= hits + 2);
+        // prefetching went on with the stream opened for the first block
+        assertEquals(1, opens.size());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        BlockCache cache = new BlockCache(null, BLOCK_SIZE, BLOCKS, 0, 0);
+        read(cache.getFile("file", content.length, true, this::open), 0, 10);
+        cache.invalidate("file");
+
+        read(cache.getFile("file", content.length, true, this::open), 0, 10);
+        assertEquals(2, opens.size());
+    }
+
+    private InputStream open(long position) {
+        synchronized (opens) {
+            opens.add(position);
+        }
+        return new ByteArrayInputStream(content, (int) position, content.length - (int) position);
+    }
+
+    private static byte[] read(BlockCache.CachedFile file, long position, int count)
+            throws IOException {
+        byte[] data = new byte[count];
+        InputStream in = file.openStream(position);
+        int read = 0;
+        while (read < count) {
+            int n = in.read(data, read, count - read);
+            if (n == -1) break;
+            read += n;
+        }
+        in.close();
+        return Arrays.copyOf(data, read);
+    }
+}
@@ -0,0 +1,328 @@
+package com.amaze.filemanager.utils.streams;
+
+import android.support.annotation.NonNull;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class HttpStreamServerTest {
+
+    private static final int FILE_SIZE = 256 * 1024;
+
+    private byte[] content;
+    private TestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(FILE_SIZE).nextBytes(content);
+        server = new TestServer(content);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testParseRanges() {
+        assertNull(HttpStreamServer.parseRanges(null, 100));
+        assertNull(HttpStreamServer.parseRanges("items=0-10", 100));
+        assertNull(HttpStreamServer.parseRanges("bytes=10-5", 100));
+        assertNull(HttpStreamServer.parseRanges("bytes=a-b", 100));
+
+        assertRanges(HttpStreamServer.parseRanges("bytes=10-19", 100), 10, 19);
+        assertRanges(HttpStreamServer.parseRanges("bytes=10-", 100), 10, 99);
+        assertRanges(HttpStreamServer.parseRanges("bytes=-30", 100), 70, 99);
+        assertRanges(HttpStreamServer.parseRanges("bytes=90-200", 100), 90, 99);
+        assertRanges(HttpStreamServer.parseRanges("bytes=-200", 100), 0, 99);
+        // overlapping and adjacent ranges are merged
+        assertRanges(HttpStreamServer.parseRanges("bytes=50-59, 0-9,5-14,15-19", 100),
+                0, 19, 50, 59);
+        // unsatisfiable ones are dropped
+        assertRanges(HttpStreamServer.parseRanges("bytes=0-9,100-", 100), 0, 9);
+        assertRanges(HttpStreamServer.parseRanges("bytes=100-,-0", 100));
+    }
+
+    @Test
+    public void testFullFile() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            Response response = request(socket, "GET", "/file.mp4", null);
+            assertEquals(200, response.status);
+            assertEquals("bytes", response.headers.get("accept-ranges"));
+            assertEquals("video/mp4", response.headers.get("content-type"));
+            assertArrayEquals(content, response.body);
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            for (int i = 0; i < 3; i++) {
+                Response response = request(socket, "GET", "/file.mp4", "bytes=" + i * 1000 + "-");
+                assertEquals(206, response.status);
+                assertEquals("keep-alive", response.headers.get("connection"));
+                assertArrayEquals(Arrays.copyOfRange(content, i * 1000, FILE_SIZE), response.body);
+            }
+
+            Response response = request(socket, "HEAD", "/file.mp4", null);
+            assertEquals(200, response.status);
+            assertEquals(String.valueOf(FILE_SIZE), response.headers.get("content-length"));
+            assertEquals(0, response.body.length);
+
+            assertEquals(404, request(socket, "GET", "/other.mp4", null).status);
+        }
+    }
+
+    @Test
+    public void testSingleRange() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            Response response = request(socket, "GET", "/file.mp4", "bytes=100-199");
+            assertEquals(206, response.status);
+            assertEquals("bytes 100-199/" + FILE_SIZE, response.headers.get("content-range"));
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.body);
+
+            response = request(socket, "GET", "/file.mp4", "bytes=-10");
+            assertEquals("bytes " + (FILE_SIZE - 10) + "-" + (FILE_SIZE - 1) + "/" + FILE_SIZE,
+                    response.headers.get("content-range"));
+            assertArrayEquals(Arrays.copyOfRange(content, FILE_SIZE - 10, FILE_SIZE), response.body);
+        }
+    }
+
+    @Test
+    public void testMultipleRanges() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            Response response = request(socket, "GET", "/file.mp4", "bytes=0-9,1000-1009");
+            assertEquals(206, response.status);
+            String contentType = response.headers.get("content-type");
+            assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+            String body = new String(response.body, "ISO-8859-1");
+            assertTrue(body.contains("--" + boundary + "\r\nContent-Type: video/mp4\r\n"
+                    + "Content-Range: bytes 0-9/" + FILE_SIZE + "\r\n\r\n"
+                    + new String(content, 0, 10, "ISO-8859-1")));
+            assertTrue(body.contains("Content-Range: bytes 1000-1009/" + FILE_SIZE + "\r\n\r\n"
+                    + new String(content, 1000, 10, "ISO-8859-1")));
+            assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+
+            // the connection is still usable after the multipart body
+            assertEquals(206, request(socket, "GET", "/file.mp4", "bytes=0-0").status);
+        }
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            Response response = request(socket, "GET", "/file.mp4", "bytes=" + FILE_SIZE + "-");
+            assertEquals(416, response.status);
+            assertEquals("bytes */" + FILE_SIZE, response.headers.get("content-range"));
+        }
+    }
+
+    /**
+     * Load harness: a few players seeking around the file on their own connections, while others
+     * read it from start to end; prints the seek latency and the total throughput
+     */
+    @Test
+    @Ignore("Load test, run by hand")
+    public void testLoad() throws Exception {
+        final int seekers = 4, seeksPerClient = 50, readers = 4, seekSize = 64 * 1024;
+        ExecutorService clients = Executors.newFixedThreadPool(seekers + readers);
+        List<Future<List<Long>>> seeks = new ArrayList<>();
+        List<Future<Long>> reads = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < seekers; i++) {
+            final Random random = new Random(i);
+            seeks.add(clients.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                    for (int j = 0; j < seeksPerClient; j++) {
+                        int position = random.nextInt(FILE_SIZE - seekSize);
+                        long requested = System.nanoTime();
+                        Response response = request(socket, "GET", "/file.mp4",
+                                "bytes=" + position + "-" + (position + seekSize - 1));
+                        latencies.add(System.nanoTime() - requested);
+                        assertArrayEquals(Arrays.copyOfRange(content, position,
+                                position + seekSize), response.body);
+                    }
+                }
+                return latencies;
+            }));
+        }
+        for (int i = 0; i < readers; i++) {
+            reads.add(clients.submit((Callable<Long>) () -> {
+                try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                    Response response = request(socket, "GET", "/file.mp4", null);
+                    assertArrayEquals(content, response.body);
+                    return (long) response.body.length;
+                }
+            }));
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        long bytes = 0;
+        for (Future<List<Long>> seek : seeks) {
+            latencies.addAll(seek.get());
+            bytes += seeksPerClient * seekSize;
+        }
+        for (Future<Long> read : reads) {
+            bytes += read.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+
+        Collections.sort(latencies);
+        System.out.println("Seek latency: median " + latencies.get(latencies.size() / 2) / 1000
+                + "us, p95 " + latencies.get(latencies.size() * 95 / 100) / 1000 + "us; "
+                + (seekers + readers) + " streams: " + bytes * 1000 / elapsed + "MB/s");
+    }
+
+    private static void assertRanges(List<long[]> ranges, long... expected) {
+        long[] flattened = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            flattened[i * 2] = ranges.get(i)[0];
+            flattened[i * 2 + 1] = ranges.get(i)[1];
+        }
+        assertArrayEquals(expected, flattened);
+    }
+
+    private static Response request(Socket socket, String method, String path, String range)
+            throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((method + " " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n"
+                + (range != null ? "Range: " + range + "\r\n" : "") + "\r\n")
+                .getBytes("ISO-8859-1"));
+        out.flush();
+
+        // not buffered, the next response must still be in the socket
+        InputStream in = socket.getInputStream();
+        Response response = new Response();
+        response.status = Integer.parseInt(readLine(in).split(" ")[1]);
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            response.headers.put(line.substring(0, colon).toLowerCase(),
+                    line.substring(colon + 1).trim());
+        }
+
+        int length = method.equals("HEAD") ? 0
+                : Integer.parseInt(response.headers.get("content-length"));
+        response.body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(response.body, read, length - read);
+            if (count == -1) throw new EOFException();
+            read += count;
+        }
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) throw new EOFException();
+            if (b != '\r') line.write(b);
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    private static class Response {
+        int status;
+        Map<String, String> headers = new HashMap<>();
+        byte[] body;
+    }
+
+    private static class TestServer extends HttpStreamServer {
+        private final byte[] content;
+
+        TestServer(byte[] content) throws IOException {
+            super(0);
+            this.content = content;
+        }
+
+        @Override
+        protected RandomAccessStream getSource(@NonNull String path) {
+            return path.equals("/file.mp4") ? new ByteArraySource(content) : null;
+        }
+
+        @NonNull
+        @Override
+        protected String getMimeType(@NonNull String path) {
+            return "video/mp4";
+        }
+    }
+
+    private static class ByteArraySource extends RandomAccessStream {
+        private final byte[] content;
+        private int position;
+
+        ByteArraySource(byte[] content) {
+            super(content.length);
+            this.content = content;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public int read() {
+            return position < content.length ? content[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) {
+            if (position >= content.length) return -1;
+            count = Math.min(count, content.length - position);
+            System.arraycopy(content, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void moveTo(long position) {
+            this.position = (int) position;
+        }
+
+        @Override
+        protected long getCurrentPosition() {
+            return position;
+        }
+    }
+}
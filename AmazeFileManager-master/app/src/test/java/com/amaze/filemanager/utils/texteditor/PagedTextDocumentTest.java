@@ -0,0 +1,257 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class PagedTextDocumentTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private PagedTextDocument document;
+
+    @After
+    public void tearDown() throws IOException {
+        if (document != null) document.close();
+    }
+
+    @Test
+    public void testAddsMissingNewline() throws IOException {
+        document = open("one\ntwo");
+        assertEquals("one\ntwo\n", document.getText(0, document.length()));
+        assertFalse(document.isModified());
+
+        document = open("");
+        assertEquals(0, document.length());
+    }
+
+    @Test
+    public void testWindowsAreWholeLines() throws IOException {
+        String text = lines(20000);
+        document = open(text);
+        assertTrue(document.length() > PagedTextDocument.WINDOW_SIZE);
+
+        long[] positions = {0, document.length() / 2, document.length() - 1, document.length()};
+        for (long position : positions) {
+            long[] window = document.getWindow(position);
+            assertTrue(window[0] <= position && position <= window[1]);
+            assertTrue(window[1] - window[0] <= PagedTextDocument.WINDOW_SIZE + 100);
+            assertTrue(window[0] == 0 || text.charAt((int) window[0] - 1) == '\n');
+            assertTrue(text.charAt((int) window[1] - 1) == '\n');
+        }
+        assertEquals(document.length(), document.getWindow(document.length())[1]);
+    }
+
+    @Test
+    public void testLongLinesAreCutBetweenCharacters() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 3 * PagedTextDocument.WINDOW_SIZE) line.append("a\u00e9\u20ac");
+        document = open(line + "\n");
+
+        long[] window = document.getWindow(document.length() / 2);
+        // decoding anything else than whole characters gives replacement characters
+        assertFalse(document.getText(window[0], window[1]).contains("\ufffd"));
+    }
+
+    @Test
+    public void testReplace() throws IOException {
+        document = open("one\ntwo\nthree\n");
+        long end = document.replace(4, 7, "2\n2.5");
+        assertEquals(4 + "2\n2.5".length(), end);
+        assertEquals("one\n2\n2.5\nthree\n", document.getText(0, document.length()));
+        assertTrue(document.isModified());
+    }
+
+    @Test
+    public void testReplaceChangedOnlyReplacesTheDifference() throws IOException {
+        String text = lines(20000);
+        File file = temporaryFolder.newFile("window.txt");
+        write(file, text);
+        document = PagedTextDocument.open(file, false);
+
+        long[] window = document.getWindow(document.length() / 2);
+        String shown = document.getText(window[0], window[1]);
+        String edited = shown.replaceFirst("line", "LINE");
+        assertEquals(window[1], document.replaceChanged(window[0], window[1], shown, edited));
+        assertEquals(edited, document.getText(window[0], window[1]));
+        // the window is the same length, so only the changed word needs writing
+        assertEquals(4, document.snapshot().writeInPlace(temporaryFolder.getRoot()));
+
+        assertEquals(window[1] + 1, document.replaceChanged(window[0], window[1], edited,
+                edited.replaceFirst("\n", "\n\n")));
+    }
+
+    @Test
+    public void testCrlfIsKept() throws IOException {
+        document = open("one\r\ntwo\r\n");
+        assertEquals("one\ntwo\n", document.getText(0, document.length()));
+        assertEquals("one\n".length(), document.getText(0, 5).length());
+
+        document.replace(5, 10, "2\n3\n");
+        assertEquals("one\r\n2\r\n3\r\n", write(document));
+        assertEquals(4, document.getByteCount("2\n3"));
+    }
+
+    @Test
+    public void testLineCounts() throws IOException, InterruptedException {
+        String text = lines(5000);
+        document = open(text);
+        assertEquals(-1, document.getLineCount());
+
+        index(document);
+        assertEquals(5001, document.getLineCount());
+        int position = text.indexOf("line 3000\n");
+        assertEquals(3000, document.getLineNumber(position));
+
+        document.replace(0, 0, "a\nb\n");
+        assertEquals(5003, document.getLineCount());
+        assertEquals(3002, document.getLineNumber(position + 4));
+    }
+
+    @Test
+    public void testSameLengthEditsArePatched() throws IOException, InterruptedException {
+        String text = lines(20000);
+        File file = temporaryFolder.newFile("patched.txt");
+        write(file, text);
+        document = PagedTextDocument.open(file, false);
+        index(document);
+
+        int first = text.indexOf("line 100\n"), second = text.indexOf("line 15000\n");
+        document.replace(first, first + 4, "LINE");
+        document.replace(second, second + 4, "LINE");
+        assertEquals(8, document.snapshot().writeInPlace(temporaryFolder.getRoot()));
+
+        String expected = text.replace("line 100\n", "LINE 100\n").replace("line 15000\n", "LINE 15000\n");
+        assertEquals(expected, read(file));
+        assertEquals(expected, document.getText(0, document.length()));
+        assertFalse(document.isModified());
+    }
+
+    @Test
+    public void testOnlyTheEndIsRewritten() throws IOException {
+        String text = lines(20000);
+        File file = temporaryFolder.newFile("rewritten.txt");
+        write(file, text);
+        document = PagedTextDocument.open(file, false);
+
+        int position = text.indexOf("line 19000\n");
+        document.replace(position, position + 4, "a longer line");
+        long written = document.snapshot().writeInPlace(temporaryFolder.getRoot());
+        assertEquals(text.length() - position + "a longer line".length() - 4, written);
+
+        String expected = text.replace("line 19000\n", "a longer line 19000\n");
+        assertEquals(expected, read(file));
+        assertEquals(expected, document.getText(0, document.length()));
+
+        // shorter
+        document.replace(0, document.length(), "short\n");
+        document.snapshot().writeInPlace(temporaryFolder.getRoot());
+        assertEquals("short\n", read(file));
+    }
+
+    @Test
+    public void testFailedSaveKeepsEdits() throws IOException {
+        File file = temporaryFolder.newFile("failed.txt");
+        write(file, "one\ntwo\n");
+        document = PagedTextDocument.open(file, false);
+        document.replace(0, 3, "a longer one");
+
+        try {
+            // no directory to write the changed part to
+            document.snapshot().writeInPlace(new File(temporaryFolder.getRoot(), "missing"));
+            fail("Saved without a temporary directory");
+        } catch (IOException expected) {
+        }
+
+        assertEquals("one\ntwo\n", read(file));
+        assertEquals("a longer one\ntwo\n", write(document));
+        assertTrue(document.isModified());
+        assertFalse(document.isSaving());
+
+        document.snapshot().writeInPlace(temporaryFolder.getRoot());
+        assertEquals("a longer one\ntwo\n", read(file));
+        assertFalse(document.isModified());
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterEdits() throws IOException {
+        document = open("one\ntwo\n");
+        document.replace(0, 3, "1");
+        PagedTextDocument.Snapshot snapshot = document.snapshot();
+        StringBuilder big = new StringBuilder();
+        while (big.length() < 10000) big.append("more ");
+        document.replace(0, 1, big.toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(out);
+        assertEquals("1\ntwo\n", new String(out.toByteArray(), UTF_8));
+
+        document.onSaved(snapshot);
+        assertTrue(document.isModified());
+    }
+
+    private PagedTextDocument open(String text) throws IOException {
+        if (document != null) document.close();
+        File file = temporaryFolder.newFile();
+        write(file, text);
+        return PagedTextDocument.open(file, true);
+    }
+
+    private static void index(PagedTextDocument document) throws InterruptedException {
+        final CountDownLatch indexed = new CountDownLatch(1);
+        document.startIndexing(indexed::countDown);
+        assertTrue(indexed.await(10, TimeUnit.SECONDS));
+    }
+
+    private static String lines(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) text.append("line ").append(i).append('\n');
+        return text.toString();
+    }
+
+    private static String write(PagedTextDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.snapshot().writeTo(out);
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes(UTF_8));
+        out.close();
+    }
+
+    private static String read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        byte[] bytes = new byte[(int) in.length()];
+        in.readFully(bytes);
+        in.close();
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+package com.amaze.filemanager.utils.texteditor;
+
+import com.amaze.filemanager.BuildConfig;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.multidex.ShadowMultiDex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMultiDex.class})
+public class TextSearchTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLiteralIgnoresCase() {
+        assertEquals("[0, 3][8, 11]", find(TextSearch.literal("abc"), "aBc abd ABC"));
+        assertEquals("[2, 4]", find(TextSearch.literal("\u00c9t"), "l'\u00e9t\u00e9"));
+        assertEquals("", find(TextSearch.literal("abcd"), "abc"));
+        assertEquals("", find(TextSearch.literal(""), "abc"));
+    }
+
+    @Test
+    public void testLiteralMatchesDontOverlap() {
+        assertEquals("[0, 2][2, 4]", find(TextSearch.literal("aa"), "aaaaa"));
+    }
+
+    @Test
+    public void testLiteralFindsWhatRegionMatchesDoes() {
+        Random random = new Random(42);
+        String alphabet = "abAB\u00e9\u00c9 \n";
+        for (int round = 0; round < 200; round++) {
+            String text = randomString(random, alphabet, 300);
+            String query = randomString(random, alphabet, 1 + random.nextInt(4));
+
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i + query.length() <= text.length(); i++) {
+                if (text.regionMatches(true, i, query, 0, query.length())) {
+                    expected.append('[').append(i).append(", ").append(i + query.length()).append(']');
+                    i += query.length() - 1;
+                }
+            }
+            assertEquals(query + " in " + text, expected.toString(), find(TextSearch.literal(query), text));
+        }
+    }
+
+    @Test
+    public void testRegex() {
+        assertEquals("[0, 5][6, 9]", find(TextSearch.regex("^\\w+$"), "first\nTWO"));
+        // empty matches are skipped
+        assertEquals("[1, 2]", find(TextSearch.regex("b*"), "abc"));
+    }
+
+    @Test
+    public void testLineOffsets() {
+        LineOffsets lineOffsets = new LineOffsets("one\ntwo\n\nfour");
+        assertEquals(4, lineOffsets.getLineCount());
+        assertEquals(0, lineOffsets.getLine(0));
+        assertEquals(0, lineOffsets.getLine(3));
+        assertEquals(1, lineOffsets.getLine(4));
+        assertEquals(2, lineOffsets.getLine(8));
+        assertEquals(3, lineOffsets.getLine(12));
+    }
+
+    @Test
+    public void testDocumentSearch() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            text.append(i % 1000 == 0 ? "caf\u00e9 FOUND " : "caf\u00e9 ").append(i).append('\n');
+        }
+        File file = temporaryFolder.newFile("search.txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.toString().getBytes("UTF-8"));
+        out.close();
+
+        PagedTextDocument document = PagedTextDocument.open(file, false);
+        try {
+            final List<TextSearch.Match> matches = new ArrayList<>();
+            final int[] windows = {0};
+            TextSearch.literal("found").find(document, found -> {
+                matches.addAll(found);
+                windows[0]++;
+                return true;
+            });
+
+            assertEquals(30, matches.size());
+            assertEquals(true, windows[0] > 1);
+            for (int i = 0; i < matches.size(); i++) {
+                TextSearch.Match match = matches.get(i);
+                assertEquals(i * 1000, match.line);
+                assertEquals("FOUND", document.getText(match.start, match.end));
+            }
+        } finally {
+            document.close();
+        }
+    }
+
+    private static String find(TextSearch search, String text) {
+        final StringBuilder matches = new StringBuilder();
+        search.find(text, (start, end) -> {
+            matches.append('[').append(start).append(", ").append(end).append(']');
+            return true;
+        });
+        return matches.toString();
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder string = new StringBuilder();
+        for (int i = 0; i < length; i++) string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return string.toString();
+    }
+}